@@ -1,12 +1,13 @@
 // src/app/dashboard/dashboard.ts
-import { Component, OnInit } from '@angular/core';
+import { Component, OnInit, PLATFORM_ID, inject } from '@angular/core';
 // Quitamos PacienteService ya que no se usa aquí directamente
 import { AuthService } from '../auth/auth';
 import { Router } from '@angular/router';
-import { CommonModule } from '@angular/common';
+import { CommonModule, KeyValue, isPlatformBrowser } from '@angular/common';
 import { MatButtonModule } from '@angular/material/button';
 import { MatCardModule } from '@angular/material/card'; // Importamos MatCardModule
 import { MatIconModule } from '@angular/material/icon'; // Importamos MatIconModule
+import { Estadisticas, EstadisticasService } from './estadisticas.service';
 
 /**
  * Componente principal del dashboard de la aplicación.
@@ -53,10 +54,23 @@ export class Dashboard implements OnInit {
   nombreUsuario: string | null = null;
   mensajeBienvenida: string = '';
 
+  // Estadísticas precalculadas en el servidor (un solo request)
+  estadisticas: Estadisticas | null = null;
+  errorEstadisticas = false;
+  private esNavegador = isPlatformBrowser(inject(PLATFORM_ID));
+
+  // Etiquetas de las categorías de transfusión
+  readonly etiquetasTransfusion: { [categoria: string]: string } = {
+    testigoJehova: 'Testigos de Jehová',
+    noSeTransfunde: 'No se transfunden',
+    sinRestriccion: 'Sin restricción'
+  };
+
   constructor(
     // Quitamos pacienteService
     private authService: AuthService,
-    private router: Router
+    private router: Router,
+    private estadisticasService: EstadisticasService
   ) {}
 
   ngOnInit(): void {
@@ -73,8 +87,28 @@ export class Dashboard implements OnInit {
     }
 
     console.log(`Dashboard cargado para rol: ${this.rolUsuario}`);
+
+    if (this.esNavegador) {
+      this.cargarEstadisticas();
+    }
   }
 
+  cargarEstadisticas(): void {
+    this.estadisticasService.getEstadisticas().subscribe({
+      next: (estadisticas) => {
+        this.estadisticas = estadisticas;
+        this.errorEstadisticas = false;
+      },
+      error: (err) => {
+        console.error('Error al cargar estadísticas:', err);
+        this.errorEstadisticas = true;
+      }
+    });
+  }
+
+  // Conserva el orden del servidor (mayor a menor) en el pipe keyvalue
+  ordenOriginal = (_a: KeyValue<string, number>, _b: KeyValue<string, number>): number => 0;
+
   // Método para verificar si el usuario puede crear/modificar pacientes
   puedeGestionarPacientes(): boolean {
     return this.rolUsuario === 'MEDICO' || this.rolUsuario === 'ADMIN';
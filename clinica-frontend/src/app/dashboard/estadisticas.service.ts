@@ -0,0 +1,37 @@
+import { Injectable } from '@angular/core';
+import { HttpClient } from '@angular/common/http';
+import { Observable } from 'rxjs';
+
+// --- INTERFACES ---
+// Estadísticas precalculadas del dashboard (GET /api/estadisticas)
+export interface Estadisticas {
+  pacientes: number;
+  pacientesPorObraSocial: { [obraSocial: string]: number };   // De mayor a menor
+  pacientesPorInstitucion: { [institucion: string]: number };
+  pacientesPorGenero: { [genero: string]: number };
+  pacientesPorTransfusion: { [categoria: string]: number };   // testigoJehova, noSeTransfunde, sinRestriccion
+  usuarios: number;
+  usuariosPorRol: { [rol: string]: number };
+  recalculadoEn?: string;
+}
+// --- FIN INTERFACES ---
+
+/**
+ * Servicio de estadísticas del dashboard.
+ * El servidor mantiene un único documento con todos los contadores, así que
+ * el dashboard carga con un solo request pequeño sin importar la cantidad
+ * de pacientes o usuarios.
+ */
+@Injectable({
+  providedIn: 'root'
+})
+export class EstadisticasService {
+
+  private apiUrl = 'http://localhost:8080/api/estadisticas';
+
+  constructor(private http: HttpClient) {}
+
+  getEstadisticas(): Observable<Estadisticas> {
+    return this.http.get<Estadisticas>(this.apiUrl);
+  }
+}
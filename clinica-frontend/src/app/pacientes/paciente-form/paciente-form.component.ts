@@ -5,7 +5,8 @@ import { MaterialModule } from '../../material/material-module';
 import { ActivatedRoute, Router, RouterLink } from '@angular/router'; // RouterLink ya estaba
 import { PacienteService, Paciente } from '../paciente.service';
 import { AuthService } from '../../auth/auth'; // Importa AuthService desde auth.ts
-import { Observable, Subscription, of } from 'rxjs'; // Importa Subscription y 'of'
+import { Observable, Subscription, forkJoin, from, of } from 'rxjs'; // Importa Subscription y 'of'
+import { concatMap, switchMap, toArray } from 'rxjs/operators';
 import { HttpErrorResponse } from '@angular/common/http';
 import { CdkTextareaAutosize } from '@angular/cdk/text-field';
 
@@ -73,6 +74,15 @@ export class PacienteFormComponent implements OnInit, OnDestroy {
   private parentRouteSubscription: Subscription | undefined;
   private dataLoaded = false;
 
+  // Cantidad de entradas de historia/evolución que ya existían al cargar:
+  // las que estén después de ese índice son nuevas y se envían con POST
+  private historiaCargadas = 0;
+  private evolucionCargadas = 0;
+  // Entradas recientes de historia/evolución que se muestran en el formulario
+  private readonly registrosPorSeccion = 50;
+  // Versión del paciente cargado: se envía en If-Match para no pisar cambios de otro usuario
+  private versionPaciente: number | null = null;
+
   constructor(
     private fb: FormBuilder,
     private route: ActivatedRoute, // Ruta actual (hija o /nuevo)
@@ -256,6 +266,7 @@ export class PacienteFormComponent implements OnInit, OnDestroy {
       this.pacienteService.getPacientePorId(id).subscribe({
         next: (paciente: Paciente) => {
           console.log('Datos COMPLETOS recibidos:', paciente);
+          this.versionPaciente = paciente.version ?? null;
           // Limpia FormArrays ANTES de patchValue
           this.alergiasArray.clear();
           this.emailsArray.clear();
@@ -300,19 +311,16 @@ export class PacienteFormComponent implements OnInit, OnDestroy {
           // Medicación Actual
           paciente.medicacionActual?.forEach(item => this.medicacionItems.push(this.fb.group(item)));
 
-          // Historia Clínica
-          paciente.historiaClinica?.forEach(item => this.historiaItems.push(this.fb.group(item)));
-
           // Parámetros de Diálisis
           if (paciente.parametrosDialisis) {
             this.parametrosDialisisForm.patchValue(paciente.parametrosDialisis);
           }
 
-          // Evolución Mensual
-          paciente.evolucionMensual?.forEach(item => this.evolucionItems.push(this.fb.group(item)));
-
           console.log("Formulario después de patchValue:", this.pacienteForm.value);
           this.isLoading = false; this.dataLoaded = true;
+
+          // Historia Clínica y Evolución Mensual (colecciones aparte)
+          this.cargarRegistrosClinicos(id);
         },
         error: (err: HttpErrorResponse | any) => {
           console.error('Error al cargar paciente:', err);
@@ -359,18 +367,22 @@ export class PacienteFormComponent implements OnInit, OnDestroy {
       };
       console.log('Enviando para CREAR paciente:', datosParaCrear);
       guardarObservable = this.pacienteService.crearPaciente(datosParaCrear);
+    } else if (formGroupName === 'historiaClinica' || formGroupName === 'evolucionMensual') {
+      // --- ALTA DE NOTAS (historia / evolución) ---
+      guardarObservable = this.agregarEntradasNuevas(formGroupName, datosSeccion.items);
     } else {
       // --- ACTUALIZACIÓN ---
       console.log(`Enviando para ACTUALIZAR sección ${formGroupName} del paciente ${this.pacienteId}:`, datosSeccion);
       // Mapea los datos del formulario al formato esperado por el backend
       const datosActualizar: Partial<Paciente> = this.mapFormDataToBackend(formGroupName!, datosSeccion);
       console.log('Datos mapeados para actualizar:', datosActualizar);
-      guardarObservable = this.pacienteService.actualizarPaciente(this.pacienteId!, datosActualizar);
+      guardarObservable = this.pacienteService.actualizarPaciente(this.pacienteId!, datosActualizar, this.versionPaciente);
     }
 
     guardarObservable.subscribe({
       next: (pacienteGuardado: Paciente) => {
          this.isLoading = false; const id = pacienteGuardado.id;
+         this.versionPaciente = pacienteGuardado.version ?? null;
          if (!id) { /* ... */ return; }
 
          if (isCreating) {
@@ -404,7 +416,13 @@ export class PacienteFormComponent implements OnInit, OnDestroy {
              setTimeout(() => this.mensajeExito = null, 3000);
          }
        },
-      error: (err: HttpErrorResponse | any) => { /* ... */ }
+      error: (err: HttpErrorResponse | any) => {
+        this.isLoading = false;
+        console.error('Error al guardar paciente:', err);
+        this.mensajeError = err?.status === 412
+          ? 'Otro usuario modificó este paciente. Recargue la página para ver los cambios antes de guardar.'
+          : 'Error al guardar los datos del paciente.';
+      }
     });
   }
 
@@ -435,11 +453,47 @@ export class PacienteFormComponent implements OnInit, OnDestroy {
     this.medicacionItems.clear();
     paciente.medicacionActual?.forEach(item => this.medicacionItems.push(this.fb.group(item)));
 
-    this.historiaItems.clear();
-    paciente.historiaClinica?.forEach(item => this.historiaItems.push(this.fb.group(item)));
+  }
 
-    this.evolucionItems.clear();
-    paciente.evolucionMensual?.forEach(item => this.evolucionItems.push(this.fb.group(item)));
+  // Carga las entradas más recientes de historia y evolución en sus FormArrays
+  private cargarRegistrosClinicos(id: string): void {
+    forkJoin({
+      historia: this.pacienteService.getHistoria(id, 0, this.registrosPorSeccion),
+      evolucion: this.pacienteService.getEvolucion(id, 0, this.registrosPorSeccion)
+    }).subscribe({
+      next: ({ historia, evolucion }) => {
+        this.historiaItems.clear();
+        historia.registros.forEach(item => this.historiaItems.push(this.fb.group(item)));
+        this.historiaCargadas = this.historiaItems.length;
+
+        this.evolucionItems.clear();
+        evolucion.registros.forEach(item => this.evolucionItems.push(this.fb.group(item)));
+        this.evolucionCargadas = this.evolucionItems.length;
+      },
+      error: (err: HttpErrorResponse | any) => {
+        console.error('Error al cargar historia/evolución:', err);
+        this.mensajeError = 'Error al cargar la historia clínica del paciente.';
+      }
+    });
+  }
+
+  // Historia y evolución se guardan enviando solo las entradas nuevas, de a una y en orden,
+  // a los endpoints de alta (POST /historia y /evolucion). Las anteriores no se reenvían.
+  // Al terminar se releen las entradas y el paciente para refrescar el formulario.
+  private agregarEntradasNuevas(formGroupName: string, items: any[]): Observable<Paciente> {
+    const esHistoria = formGroupName === 'historiaClinica';
+    const nuevas = items.slice(esHistoria ? this.historiaCargadas : this.evolucionCargadas);
+
+    return from(nuevas).pipe(
+      concatMap(item => esHistoria
+        ? this.pacienteService.agregarHistorial(this.pacienteId!, item)
+        : this.pacienteService.agregarEvolucion(this.pacienteId!, item)),
+      toArray(),
+      switchMap(() => {
+        this.cargarRegistrosClinicos(this.pacienteId!);
+        return this.pacienteService.getPacientePorId(this.pacienteId!);
+      })
+    );
   }
 
   // Método para mapear datos del formulario al formato esperado por el backend
@@ -465,10 +519,6 @@ export class PacienteFormComponent implements OnInit, OnDestroy {
         return {
           medicacionActual: datosSeccion.items
         };
-      case 'historiaClinica':
-        return {
-        historiaClinica: datosSeccion.items
-        };
       case 'parametrosDialisis':
         // Convertir el FormGroup a Map<String, String>
         const parametros: { [key: string]: string } = {};
@@ -480,10 +530,6 @@ export class PacienteFormComponent implements OnInit, OnDestroy {
         return {
           parametrosDialisis: parametros
         };
-      case 'evolucionMensual':
-        return {
-          evolucionMensual: datosSeccion.items
-        };
       default:
         return {};
     }
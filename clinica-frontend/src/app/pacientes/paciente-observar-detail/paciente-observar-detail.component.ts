@@ -1,10 +1,10 @@
-import { Component, OnInit, HostListener,ViewChild, Inject, PLATFORM_ID  } from '@angular/core';
+import { Component, OnInit, OnDestroy, HostListener,ViewChild, Inject, PLATFORM_ID  } from '@angular/core';
 import { ActivatedRoute, Router } from '@angular/router';
 import { CommonModule } from '@angular/common';
 import { MaterialModule } from '../../material/material-module';
-import { PacienteService, Paciente } from '../paciente.service';
-import { Observable, of } from 'rxjs';
-import { catchError } from 'rxjs/operators';
+import { PacienteService, SeccionPaciente } from '../paciente.service';
+import { BehaviorSubject, Observable, Subscription, of } from 'rxjs';
+import { catchError, switchMap } from 'rxjs/operators';
 import { MatSidenav } from '@angular/material/sidenav';
 import { isPlatformBrowser } from '@angular/common';
 
@@ -25,13 +25,16 @@ import { isPlatformBrowser } from '@angular/common';
   templateUrl: './paciente-observar-detail.component.html',
   styleUrls: ['./paciente-observar-detail.component.css']
 })
-export class PacienteObservarDetailComponent implements OnInit {
+export class PacienteObservarDetailComponent implements OnInit, OnDestroy {
 
-  paciente$: Observable<Paciente | null> | undefined;
+  // Cada sección se pide por separado (solo sus campos), al entrar en ella
+  paciente$: Observable<SeccionPaciente | null> | undefined;
+  private seccion$ = new BehaviorSubject<string>('datos-personales');
   errorCarga: string | null = null;
   pacienteId: string | null = null;
   seccionActiva: string = 'datos-personales';
   objectKeys = Object.keys; // Para usar Object.keys en el template
+  private cambiosSub?: Subscription; // Cambios en vivo del paciente (SSE)
 
   window: any = {}; // Declaramos window como objeto vacío por defecto
 
@@ -53,21 +56,45 @@ export class PacienteObservarDetailComponent implements OnInit {
 
     if (this.pacienteId) {
       console.log('Cargando detalles para observación del paciente ID:', this.pacienteId);
-      this.paciente$ = this.pacienteService.getPacientePorId(this.pacienteId).pipe(
-        catchError(error => {
-          console.error('Error al cargar paciente:', error);
-          this.errorCarga = 'No se pudo cargar la información del paciente.';
-          return of(null);
-        })
+      const id = this.pacienteId;
+      this.seccion$.next(this.seccionActiva);
+      this.paciente$ = this.seccion$.pipe(
+        switchMap(seccion => this.pacienteService.getSeccion(id, seccion).pipe(
+          catchError(error => {
+            console.error('Error al cargar paciente:', error);
+            this.errorCarga = 'No se pudo cargar la información del paciente.';
+            return of(null);
+          })
+        ))
       );
+      this.escucharCambios(id);
     } else {
       console.error('No se proporcionó ID de paciente.');
       this.errorCarga = 'No se especificó un paciente.';
     }
   }
 
+  ngOnDestroy(): void {
+    this.cambiosSub?.unsubscribe();
+  }
+
+  // Si otro usuario modifica el paciente, se vuelve a pedir solo la sección visible
+  private escucharCambios(id: string): void {
+    if (!isPlatformBrowser(this.platformId)) {
+      return;
+    }
+    this.cambiosSub = this.pacienteService.escucharCambios(id).subscribe(cambio => {
+      if (cambio.tipo === 'BAJA') {
+        this.errorCarga = 'El paciente fue eliminado.';
+        return;
+      }
+      this.seccion$.next(this.seccionActiva);
+    });
+  }
+
   cambiarSeccion(seccion: string): void {
     this.seccionActiva = seccion;
+    this.seccion$.next(seccion);
     // Actualizar la URL sin recargar la página
     this.router.navigate(['/pacientes', this.pacienteId, 'observar', seccion]);
   }
@@ -78,10 +105,16 @@ export class PacienteObservarDetailComponent implements OnInit {
 
   descargarQr(): void {
     if (this.pacienteId) {
-      const link = document.createElement('a');
-      link.href = `http://localhost:8080/api/qr/${this.pacienteId}`;
-      link.download = `qr-paciente-${this.pacienteId}.png`;
-      link.click();
+      // Se pide por HttpClient para que viaje el token; la imagen sale de la caché del servidor
+      const id = this.pacienteId;
+      this.pacienteService.getQrImagen(id, 'png', 400).subscribe(imagen => {
+        const url = URL.createObjectURL(imagen);
+        const link = document.createElement('a');
+        link.href = url;
+        link.download = `qr-paciente-${id}.png`;
+        link.click();
+        URL.revokeObjectURL(url);
+      });
     }
   }
 
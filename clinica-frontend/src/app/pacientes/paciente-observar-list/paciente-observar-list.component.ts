@@ -1,10 +1,11 @@
-import { Component, OnInit } from '@angular/core';
-import { CommonModule } from '@angular/common';
+import { Component, OnDestroy, OnInit, PLATFORM_ID, inject } from '@angular/core';
+import { CommonModule, isPlatformBrowser } from '@angular/common';
 import { MaterialModule } from '../../material/material-module';
-import { PacienteService, Paciente } from '../paciente.service';
+import { CambioPaciente, PacienteService, PacienteResumen } from '../paciente.service';
 import { Router } from '@angular/router';
 import { FormControl, ReactiveFormsModule } from '@angular/forms';
-import { debounceTime, distinctUntilChanged } from 'rxjs/operators';
+import { catchError, debounceTime, distinctUntilChanged, switchMap } from 'rxjs/operators';
+import { Subscription, of } from 'rxjs';
 import { MatTableModule } from '@angular/material/table';
 import { MatProgressSpinnerModule } from '@angular/material/progress-spinner';
 
@@ -30,12 +31,18 @@ import { MatProgressSpinnerModule } from '@angular/material/progress-spinner';
   templateUrl: './paciente-observar-list.component.html',
   styleUrls: ['./paciente-observar-list.component.css']
 })
-export class PacienteObservarListComponent implements OnInit {
+export class PacienteObservarListComponent implements OnInit, OnDestroy {
 
-  pacientes: Paciente[] = [];
-  pacientesFiltrados: Paciente[] = [];
+  pacientes: PacienteResumen[] = [];
+  pacientesFiltrados: PacienteResumen[] = [];
+  siguienteCursor: string | null = null;
+  private token?: string; // Token de sincronización del listado cargado
+  hayMas = false;
+  buscando = false; // true mientras se muestran resultados de búsqueda en lugar del listado
   isLoading = false;
   errorMessage: string | null = null;
+  private cambiosSub?: Subscription; // Altas, bajas y cambios en vivo (SSE)
+  private esNavegador = isPlatformBrowser(inject(PLATFORM_ID));
 
   // Control para el buscador
   searchControl = new FormControl('');
@@ -50,26 +57,81 @@ export class PacienteObservarListComponent implements OnInit {
 
   ngOnInit(): void {
     this.cargarPacientes();
+    if (this.esNavegador) {
+      this.cambiosSub = this.pacienteService.escucharCambios().subscribe(cambio => this.aplicarCambio(cambio));
+    }
 
     // Configurar búsqueda reactiva
     this.searchControl.valueChanges
       .pipe(
         debounceTime(300), // Esperar 300ms después de que el usuario deje de escribir
-        distinctUntilChanged() // Solo emitir si el valor cambió
+        distinctUntilChanged(), // Solo emitir si el valor cambió
+        // La búsqueda se resuelve en el servidor; switchMap descarta respuestas de términos viejos
+        switchMap(searchTerm => {
+          const term = (searchTerm || '').trim();
+          this.buscando = term.length > 0;
+          if (!term) {
+            return of(this.pacientes);
+          }
+          return this.pacienteService.buscarPacientes(term).pipe(
+            catchError(error => {
+              console.error('Error al buscar pacientes:', error);
+              this.errorMessage = 'Error al buscar pacientes.';
+              return of([]);
+            })
+          );
+        })
       )
-      .subscribe(searchTerm => {
-        this.filtrarPacientes(searchTerm || '');
+      .subscribe(resultados => {
+        this.pacientesFiltrados = [...resultados];
       });
   }
 
+  ngOnDestroy(): void {
+    this.cambiosSub?.unsubscribe();
+    this.pacienteService.recordarListado({
+      pacientes: this.pacientes,
+      siguienteCursor: this.siguienteCursor,
+      hayMas: this.hayMas,
+      token: this.token
+    });
+  }
+
+  // Aplica un cambio recibido en vivo sobre las filas ya cargadas, sin volver a pedir la página
+  private aplicarCambio(cambio: CambioPaciente): void {
+    if (cambio.tipo === 'BAJA') {
+      this.pacientes = this.pacientes.filter(p => p.id !== cambio.pacienteId);
+      this.pacientesFiltrados = this.pacientesFiltrados.filter(p => p.id !== cambio.pacienteId);
+      return;
+    }
+    const actualizar = (lista: PacienteResumen[]) =>
+      lista.map(p => p.id === cambio.pacienteId ? { ...p, ...cambio.campos } : p);
+    if (cambio.tipo === 'MODIFICACION') {
+      this.pacientes = actualizar(this.pacientes);
+      this.pacientesFiltrados = actualizar(this.pacientesFiltrados);
+      return;
+    }
+    // Las altas van al final del orden; solo se agregan si ya se cargó la última página
+    if (cambio.tipo === 'ALTA' && !this.hayMas && !this.pacientes.some(p => p.id === cambio.pacienteId)) {
+      this.pacientes = [...this.pacientes, { id: cambio.pacienteId, ...cambio.campos }];
+      if (!this.buscando) {
+        this.pacientesFiltrados = [...this.pacientes];
+      }
+    }
+  }
+
   cargarPacientes(): void {
     this.isLoading = true;
     this.errorMessage = null;
 
-    this.pacienteService.getPacientes().subscribe({
-      next: (pacientes) => {
-        this.pacientes = pacientes;
-        this.pacientesFiltrados = [...pacientes]; // Copia inicial
+    // Al volver a la pantalla solo se piden los cambios desde la última visita
+    this.pacienteService.obtenerListado().subscribe({
+      next: (pagina) => {
+        this.pacientes = pagina.pacientes;
+        this.token = pagina.token;
+        this.pacientesFiltrados = [...pagina.pacientes]; // Copia inicial
+        this.siguienteCursor = pagina.siguienteCursor;
+        this.hayMas = pagina.hayMas;
         this.isLoading = false;
       },
       error: (error) => {
@@ -80,21 +142,32 @@ export class PacienteObservarListComponent implements OnInit {
     });
   }
 
-  filtrarPacientes(searchTerm: string): void {
-    if (!searchTerm.trim()) {
-      this.pacientesFiltrados = [...this.pacientes];
+  // Pide la página siguiente del listado y la agrega a la tabla
+  cargarMas(): void {
+    if (!this.hayMas || this.isLoading) {
       return;
     }
+    this.isLoading = true;
 
-    const term = searchTerm.toLowerCase();
-    this.pacientesFiltrados = this.pacientes.filter(paciente =>
-      paciente.documento?.toLowerCase().includes(term) ||
-      paciente.nombre?.toLowerCase().includes(term) ||
-      paciente.apellido?.toLowerCase().includes(term)
-    );
+    this.pacienteService.getPacientes(this.siguienteCursor).subscribe({
+      next: (pagina) => {
+        this.pacientes = [...this.pacientes, ...pagina.pacientes];
+        this.siguienteCursor = pagina.siguienteCursor;
+        this.hayMas = pagina.hayMas;
+        if (!this.buscando) {
+          this.pacientesFiltrados = [...this.pacientes];
+        }
+        this.isLoading = false;
+      },
+      error: (error) => {
+        console.error('Error al cargar más pacientes:', error);
+        this.errorMessage = 'Error al cargar más pacientes.';
+        this.isLoading = false;
+      }
+    });
   }
 
-  observarPaciente(paciente: Paciente): void {
+  observarPaciente(paciente: PacienteResumen): void {
     if (paciente.id) {
       // Navegar al detalle de observación del paciente
       this.router.navigate(['/pacientes', paciente.id, 'observar']);
@@ -1,12 +1,13 @@
 // src/app/pacientes/paciente.service.ts
 
 import { Injectable } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
+import { HttpClient, HttpDownloadProgressEvent, HttpEventType, HttpHeaders, HttpParams } from '@angular/common/http';
+import { Observable, filter, map, mergeMap, of, repeat, retry, switchMap } from 'rxjs';
 
 // --- INTERFAZ PACIENTE (Revisar y ajustar tipos) ---
 export interface Paciente {
   id?: string;
+  version?: number; // Se incrementa en cada modificación (ETag del paciente)
   qrCodeData?: string;
   nombre?: string;
   apellido?: string;
@@ -26,20 +27,21 @@ export interface Paciente {
   seTransfunde?: boolean;
   antecedentesPersonales?: Antecedente[];
   medicacionActual?: Medicacion[];
-  historiaClinica?: Historial[];
   parametrosDialisis?: { [key: string]: string };
-  evolucionMensual?: Evolucion[];
 }
 export interface Alergia { descripcion: string; }
 export interface Antecedente { nombre: string; detalle: string; }
 export interface Medicacion { nombre: string; dosis: string; }
+// Historia clínica y evolución se consultan aparte, paginadas (GET /{id}/historia y /{id}/evolucion)
 export interface Historial {
+  id?: string;
+  pacienteId?: string;
   fecha: string;
   profesional?: string;
   grupoSanguineo?: string;
-  peso?: string;
-  pesoSeco?: string;
-  altura?: string;
+  peso?: number | null; // kg
+  pesoSeco?: number | null; // kg
+  altura?: number | null; // cm
   fechaPrimeraDialisisVida?: string;
   fechaPrimeraDialisisClinica?: string;
   heparina?: string;
@@ -48,7 +50,88 @@ export interface Historial {
   medicacionDomiciliaria?: string;
   detalle?: string;
 }
-export interface Evolucion { fecha: string; profesional: string; informeGeneral: string; }
+export interface Evolucion { id?: string; pacienteId?: string; fecha: string; profesional: string; informeGeneral: string; }
+export interface PaginaRegistros<T> {
+  registros: T[];
+  pagina: number;
+  tamanio: number;
+  hayMas: boolean;
+}
+
+// Una sección de la ficha (GET /api/pacientes/{id}/secciones/{seccion}): solo trae
+// la cabecera y los campos de esa sección; las listas vienen paginadas
+export interface SeccionPaciente extends Paciente {
+  historiaClinica?: Historial[];
+  evolucionMensual?: Evolucion[];
+  pagina?: number;
+  tamanio?: number;
+  hayMas?: boolean;
+}
+
+// Resumen liviano que devuelve el listado paginado (GET /api/pacientes)
+export interface PacienteResumen {
+  id?: string;
+  nombre?: string;
+  apellido?: string;
+  documento?: string;
+  fechaNacimiento?: string | null;
+}
+// Rangos de fechas para el listado y la búsqueda (yyyy-MM-dd, inclusivos)
+export interface FiltroPacientes {
+  nacidoDesde?: string;
+  nacidoHasta?: string;
+  dialisisDesde?: string;
+  dialisisHasta?: string;
+}
+export interface PaginaPacientes {
+  pacientes: PacienteResumen[];
+  siguienteCursor: string | null;
+  hayMas: boolean;
+  token?: string; // Token para pedir luego solo los cambios (GET /changes)
+}
+// Operación JSON Patch (RFC 6902), p. ej. { op: 'replace', path: '/medicacionActual/2/dosis', value: '10 mg' }
+export interface OperacionParche {
+  op: 'add' | 'remove' | 'replace' | 'test';
+  path: string;
+  value?: any;
+}
+// Varios pacientes por ID en una sola petición (POST /api/pacientes/batch)
+export interface LotePacientes {
+  pacientes: Paciente[]; // En el orden pedido, solo con los campos solicitados
+  noEncontrados: string[];
+}
+// Cambios del listado desde un token (GET /api/pacientes/changes)
+export interface CambiosPacientes {
+  pacientes: PacienteResumen[];
+  eliminados: string[];
+  token: string;
+  recargar: boolean; // true: el token es muy viejo, hay que pedir el listado completo
+}
+// Cambio recibido en vivo (GET /api/pacientes/events y /{id}/events)
+export interface CambioPaciente {
+  tipo: 'ALTA' | 'MODIFICACION' | 'BAJA' | 'HISTORIA' | 'EVOLUCION';
+  pacienteId: string;
+  campos?: { [campo: string]: any };
+  eliminados?: string[];
+  fecha?: string;
+}
+// Un período (mes o semana) de la tendencia de diálisis
+export interface PuntoTendencia {
+  periodo: string; // Primer día del mes o lunes de la semana
+  registros: number;
+  pacientes: number;
+  pesoPromedio?: number; pesoMinimo?: number; pesoMaximo?: number;
+  pesoSecoPromedio?: number; pesoSecoMinimo?: number; pesoSecoMaximo?: number;
+  heparinaPromedio?: number;
+}
+// Tendencias de un paciente o de la unidad (GET /api/pacientes/{id}/tendencias y /tendencias)
+export interface Tendencias {
+  pacienteId?: string; // Vacío para la unidad
+  agrupacion: 'mes' | 'semana';
+  desde: string;
+  hasta: string;
+  puntos: PuntoTendencia[];
+}
 // --- FIN INTERFACES ---
 
 /**
@@ -66,10 +149,63 @@ export class PacienteService {
 
   private apiUrl = 'http://localhost:8080/api/pacientes';
 
+  // Último listado mostrado; al volver a la pantalla se sincroniza por cambios en vez de recargarlo
+  private listadoGuardado: PaginaPacientes | null = null;
+
   constructor(private http: HttpClient) { }
 
-  getPacientes(): Observable<Paciente[]> {
-    return this.http.get<Paciente[]>(this.apiUrl);
+  // Listado paginado por cursor: se reenvía siguienteCursor para pedir la página siguiente
+  getPacientes(cursor?: string | null, limite = 50, filtro?: FiltroPacientes): Observable<PaginaPacientes> {
+    let params = this.paramsFiltro(new HttpParams().set('limite', limite), filtro);
+    if (cursor) {
+      params = params.set('cursor', cursor);
+    }
+    return this.http.get<PaginaPacientes>(this.apiUrl, { params });
+  }
+
+  // Cambios del listado (altas, modificaciones y bajas) desde el token indicado
+  getCambios(since: string): Observable<CambiosPacientes> {
+    const params = new HttpParams().set('since', since);
+    return this.http.get<CambiosPacientes>(`${this.apiUrl}/changes`, { params });
+  }
+
+  // Listado para mostrar al entrar a la pantalla: la primera página si no hay nada guardado,
+  // o el listado guardado con los cambios aplicados desde su token
+  obtenerListado(): Observable<PaginaPacientes> {
+    const guardado = this.listadoGuardado;
+    if (!guardado?.token) {
+      return this.getPacientes();
+    }
+    return this.getCambios(guardado.token).pipe(
+      switchMap(cambios => {
+        if (cambios.recargar) {
+          this.listadoGuardado = null;
+          return this.getPacientes();
+        }
+        const eliminados = new Set(cambios.eliminados);
+        const modificados = new Map(cambios.pacientes.map(p => [p.id, p]));
+        const pacientes = guardado.pacientes
+          .filter(p => !eliminados.has(p.id!))
+          .map(p => modificados.get(p.id) ?? p);
+        // Los nuevos van al final del orden: solo se agregan si ya estaba cargada la última página
+        if (!guardado.hayMas) {
+          const presentes = new Set(pacientes.map(p => p.id));
+          pacientes.push(...cambios.pacientes.filter(p => !presentes.has(p.id)));
+        }
+        return of({ ...guardado, pacientes, token: cambios.token });
+      })
+    );
+  }
+
+  // Guarda el listado que se está mostrando para sincronizarlo al volver
+  recordarListado(pagina: PaginaPacientes): void {
+    this.listadoGuardado = pagina;
+  }
+
+  // Búsqueda indexada en el servidor por documento, nombre o apellido (ordenada por relevancia)
+  buscarPacientes(termino: string, limite = 20, filtro?: FiltroPacientes): Observable<PacienteResumen[]> {
+    const params = this.paramsFiltro(new HttpParams().set('q', termino).set('limite', limite), filtro);
+    return this.http.get<PacienteResumen[]>(`${this.apiUrl}/search`, { params });
   }
 
   getPacientePorId(id: string): Observable<Paciente> {
@@ -77,6 +213,32 @@ export class PacienteService {
     return this.http.get<Paciente>(url);
   }
 
+  // Imagen del QR del paciente (png o svg); el navegador la guarda y revalida con ETag
+  getQrImagen(id: string, formato: 'png' | 'svg' = 'png', tamanio?: number): Observable<Blob> {
+    let params = new HttpParams();
+    if (tamanio) {
+      params = params.set('tamanio', tamanio);
+    }
+    return this.http.get(`http://localhost:8080/api/qr/${id}.${formato}`, { params, responseType: 'blob' });
+  }
+
+  // Hoja de etiquetas QR en PDF: de una institución, de los IDs indicados (hasta 1000) o de todos los pacientes.
+  // Los filtros van en el cuerpo: tantos IDs no entran en la URL
+  getHojaQr(filtro: { institucion?: string; ids?: string[] } = {}): Observable<Blob> {
+    return this.http.post('http://localhost:8080/api/qr/hoja', filtro, { responseType: 'blob' });
+  }
+
+  // Hasta 500 pacientes en una sola consulta (para paneles e impresión); campos opcionales
+  getPacientesPorIds(ids: string[], campos?: (keyof Paciente)[]): Observable<LotePacientes> {
+    return this.http.post<LotePacientes>(`${this.apiUrl}/batch`, { ids, campos });
+  }
+
+  // Solo los campos de una sección (datos-personales, alergias, antecedentes, medicacion, historia, dialisis, evolucion)
+  getSeccion(id: string, seccion: string, pagina = 0, tamanio = 50): Observable<SeccionPaciente> {
+    const params = new HttpParams().set('pagina', pagina).set('tamanio', tamanio);
+    return this.http.get<SeccionPaciente>(`${this.apiUrl}/${id}/secciones/${seccion}`, { params });
+  }
+
   // Método para crear (envía los datos personales iniciales)
   crearPaciente(datosPersonales: any): Observable<Paciente> { // Usamos 'any' temporalmente para los datos personales
     // Creamos un objeto Paciente 'base' solo con los datos personales
@@ -84,14 +246,134 @@ export class PacienteService {
     return this.http.post<Paciente>(this.apiUrl, pacienteData);
   }
 
-  // Método para actualizar (podría recibir el paciente completo o parcial)
-  actualizarPaciente(id: string, pacienteData: Partial<Paciente>): Observable<Paciente> {
+  // Método para actualizar (podría recibir el paciente completo o parcial).
+  // Si se indica la versión leída, el servidor rechaza con 412 los cambios sobre una versión vieja.
+  actualizarPaciente(id: string, pacienteData: Partial<Paciente>, version?: number | null): Observable<Paciente> {
     const url = `${this.apiUrl}/${id}`;
-    return this.http.put<Paciente>(url, pacienteData);
+    const headers = version != null ? new HttpHeaders({ 'If-Match': `"${version}"` }) : undefined;
+    return this.http.put<Paciente>(url, pacienteData, { headers });
+  }
+
+  // Cambia solo los campos indicados; a diferencia de PUT, un valor null quita el campo (JSON Merge Patch)
+  modificarCampos(id: string, cambios: Partial<Paciente>, version?: number | null): Observable<Paciente> {
+    return this.http.patch<Paciente>(`${this.apiUrl}/${id}`, cambios,
+      { headers: this.headersParche('application/merge-patch+json', version) });
+  }
+
+  // Aplica operaciones puntuales (por ejemplo la dosis de un medicamento) en una sola escritura.
+  // Responde 409 si falla un 'test' y 412 si el paciente cambió desde la versión indicada.
+  aplicarOperaciones(id: string, operaciones: OperacionParche[], version?: number | null): Observable<Paciente> {
+    return this.http.patch<Paciente>(`${this.apiUrl}/${id}`, operaciones,
+      { headers: this.headersParche('application/json-patch+json', version) });
+  }
+
+  // Historia clínica paginada, más recientes primero (desde/hasta opcionales en formato yyyy-MM-dd)
+  getHistoria(id: string, pagina = 0, tamanio = 20, desde?: string, hasta?: string): Observable<PaginaRegistros<Historial>> {
+    return this.http.get<PaginaRegistros<Historial>>(`${this.apiUrl}/${id}/historia`,
+      { params: this.paramsRegistros(pagina, tamanio, desde, hasta) });
+  }
+
+  // Evolución mensual paginada, más recientes primero
+  getEvolucion(id: string, pagina = 0, tamanio = 20, desde?: string, hasta?: string): Observable<PaginaRegistros<Evolucion>> {
+    return this.http.get<PaginaRegistros<Evolucion>>(`${this.apiUrl}/${id}/evolucion`,
+      { params: this.paramsRegistros(pagina, tamanio, desde, hasta) });
+  }
+
+  // Tendencias de diálisis ya agregadas por el servidor; sin id, las de toda la unidad
+  getTendencias(id?: string, agrupacion: 'mes' | 'semana' = 'mes', desde?: string, hasta?: string): Observable<Tendencias> {
+    let params = new HttpParams().set('agrupacion', agrupacion);
+    if (desde) params = params.set('desde', desde);
+    if (hasta) params = params.set('hasta', hasta);
+    const url = id ? `${this.apiUrl}/${id}/tendencias` : `${this.apiUrl}/tendencias`;
+    return this.http.get<Tendencias>(url, { params });
+  }
+
+  // Agrega una entrada de historia clínica (append atómico en el servidor, sin reenviar las anteriores)
+  agregarHistorial(id: string, historial: Historial): Observable<Historial> {
+    return this.http.post<Historial>(`${this.apiUrl}/${id}/historia`, historial);
+  }
+
+  // Agrega una entrada de evolución mensual (append atómico en el servidor)
+  agregarEvolucion(id: string, evolucion: Evolucion): Observable<Evolucion> {
+    return this.http.post<Evolucion>(`${this.apiUrl}/${id}/evolucion`, evolucion);
   }
 
   eliminarPaciente(id: string): Observable<void> {
     const url = `${this.apiUrl}/${id}`;
     return this.http.delete<void>(url);
   }
+
+  // Cambios en vivo por Server-Sent Events: de un paciente si se indica el id, o del listado.
+  // Se lee con HttpClient (y no con EventSource) para que el interceptor agregue el token;
+  // si la conexión se corta, se vuelve a abrir a los pocos segundos.
+  escucharCambios(id?: string): Observable<CambioPaciente> {
+    const url = id ? `${this.apiUrl}/${id}/events` : `${this.apiUrl}/events`;
+    return new Observable<CambioPaciente>(suscriptor => {
+      let procesado = 0;
+      const conexion = this.http.get(url, {
+        observe: 'events',
+        responseType: 'text',
+        reportProgress: true,
+        headers: new HttpHeaders({ 'Accept': 'text/event-stream' })
+      }).pipe(
+        filter(evento => evento.type === HttpEventType.DownloadProgress),
+        map(evento => (evento as HttpDownloadProgressEvent).partialText ?? ''),
+        mergeMap(texto => {
+          // Solo se procesan los bloques completos (terminados en línea vacía) aún no leídos
+          const fin = texto.lastIndexOf('\n\n');
+          if (fin < procesado) {
+            return [];
+          }
+          const bloques = texto.substring(procesado, fin).split('\n\n');
+          procesado = fin + 2;
+          return bloques.map(bloque => this.leerEvento(bloque)).filter((c): c is CambioPaciente => c !== null);
+        })
+      ).subscribe({
+        next: cambio => suscriptor.next(cambio),
+        error: err => suscriptor.error(err),
+        complete: () => suscriptor.complete()
+      });
+      return () => conexion.unsubscribe();
+    }).pipe(
+      retry({ delay: 5000 }),
+      repeat({ delay: 1000 })
+    );
+  }
+
+  // Convierte un bloque SSE ("event: ...\ndata: ...") en un cambio; los comentarios se ignoran
+  private leerEvento(bloque: string): CambioPaciente | null {
+    const datos = bloque.split('\n')
+      .filter(linea => linea.startsWith('data:'))
+      .map(linea => linea.substring(5).trim())
+      .join('\n');
+    return datos ? JSON.parse(datos) as CambioPaciente : null;
+  }
+
+  private paramsFiltro(params: HttpParams, filtro?: FiltroPacientes): HttpParams {
+    Object.entries(filtro ?? {}).forEach(([clave, valor]) => {
+      if (valor) {
+        params = params.set(clave, valor);
+      }
+    });
+    return params;
+  }
+
+  private headersParche(tipo: string, version?: number | null): HttpHeaders {
+    let headers = new HttpHeaders({ 'Content-Type': tipo });
+    if (version != null) {
+      headers = headers.set('If-Match', `"${version}"`);
+    }
+    return headers;
+  }
+
+  private paramsRegistros(pagina: number, tamanio: number, desde?: string, hasta?: string): HttpParams {
+    let params = new HttpParams().set('pagina', pagina).set('tamanio', tamanio);
+    if (desde) {
+      params = params.set('desde', desde);
+    }
+    if (hasta) {
+      params = params.set('hasta', hasta);
+    }
+    return params;
+  }
 }
@@ -0,0 +1,85 @@
+package org.example.clinica.config;
+
+import org.example.clinica.service.CorreosSalientesService;
+import org.example.clinica.service.HojaQrService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Configuración de los pools de hilos usados para trabajo en segundo plano.
+ *
+ * Define:
+ * - importacionExecutor: procesa las importaciones masivas de pacientes.
+ * - correoExecutor: envía los correos de la cola de correos salientes.
+ * - hojaQrExecutor: dibuja en paralelo las etiquetas de las hojas de QR.
+ *
+ * Todos los pools son acotados (hilos y cola) para que una importación grande
+ * no pueda agotar los recursos del servidor.
+ *
+ * También habilita las tareas periódicas (@Scheduled).
+ */
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+
+    /**
+     * Pool para importaciones masivas. Un solo hilo: las importaciones se
+     * procesan de a una y el resto espera en la cola.
+     *
+     * @return executor de importaciones.
+     */
+    @Bean
+    public TaskExecutor importacionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("importacion-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Pool para el envío de correos (QR y bienvenidas). Los pendientes
+     * esperan en MongoDB, no en memoria: CorreosSalientesService solo toma
+     * tantos como hilos libres haya, así que la cola del pool es mínima.
+     *
+     * @return executor de envíos de correo.
+     */
+    @Bean
+    public TaskExecutor correoExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(CorreosSalientesService.ENVIOS_SIMULTANEOS);
+        executor.setMaxPoolSize(CorreosSalientesService.ENVIOS_SIMULTANEOS);
+        executor.setQueueCapacity(CorreosSalientesService.ENVIOS_SIMULTANEOS);
+        executor.setThreadNamePrefix("correo-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Pool para dibujar las etiquetas de las hojas de QR, un hilo por núcleo.
+     * Si varias hojas se generan a la vez y la cola se llena, el hilo del
+     * request dibuja la etiqueta él mismo: la hoja se hace más lenta pero
+     * nunca se rechaza.
+     *
+     * @return executor de etiquetas QR.
+     */
+    @Bean
+    public TaskExecutor hojaQrExecutor() {
+        int nucleos = Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(nucleos);
+        executor.setMaxPoolSize(nucleos);
+        executor.setQueueCapacity(2 * HojaQrService.ETIQUETAS_POR_TANDA);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("hoja-qr-");
+        executor.initialize();
+        return executor;
+    }
+}
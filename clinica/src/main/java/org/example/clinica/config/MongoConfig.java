@@ -0,0 +1,65 @@
+package org.example.clinica.config;
+
+import org.example.clinica.util.ValoresClinicos;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import java.time.LocalDate;
+
+/**
+ * Configuración de la conversión de tipos entre Java y MongoDB.
+ *
+ * - Las fechas (LocalDate) se guardan como fecha BSON a la medianoche UTC,
+ *   sin depender de la zona horaria del servidor.
+ * - Lectura tolerante: los documentos guardados antes de tipar las fechas y
+ *   las medidas clínicas todavía tienen texto en esos campos. Al leerlos se
+ *   convierten con ValoresClinicos; un texto irreconocible se lee como null
+ *   (el valor original queda intacto en la base hasta que se corrija).
+ */
+@Configuration
+public class MongoConfig {
+
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return MongoCustomConversions.create(adaptador -> {
+            adaptador.useNativeDriverJavaTimeCodecs();
+            adaptador.registerConverter(new TextoAFechaConverter());
+            adaptador.registerConverter(new TextoANumeroConverter());
+        });
+    }
+
+    /**
+     * Fechas guardadas como texto ("2024-01-31", "31/01/2024"...).
+     */
+    @ReadingConverter
+    static class TextoAFechaConverter implements Converter<String, LocalDate> {
+
+        @Override
+        public LocalDate convert(String texto) {
+            try {
+                return ValoresClinicos.parsearFecha(texto);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Medidas guardadas como texto ("70,5", "70.5 kg"...).
+     */
+    @ReadingConverter
+    static class TextoANumeroConverter implements Converter<String, Double> {
+
+        @Override
+        public Double convert(String texto) {
+            try {
+                return ValoresClinicos.parsearNumero(texto);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
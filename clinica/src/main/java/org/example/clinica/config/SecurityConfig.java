@@ -3,6 +3,7 @@ package org.example.clinica.config;
 import lombok.RequiredArgsConstructor;
 import org.example.clinica.model.postgres.Role;
 import org.example.clinica.security.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -58,6 +59,12 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
 
+                        /**
+                         * Despachos asíncronos y de error de una petición ya autorizada
+                         * (por ejemplo, el cierre de una conexión SSE de eventos).
+                         */
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+
                         /**
                          * --- MANEJO DE AUTENTICACIÓN Y LOGIN ---
                          * Permitir OPTIONS para preflight CORS (Angular → Backend)
@@ -70,14 +77,32 @@ public class SecurityConfig {
                         /**
                          * --- PERMISOS DEL MÓDULO PACIENTES ---
                          * Creación, modificación y eliminación: ADMIN y MÉDICO
+                         * Alta de notas de historia/evolución: ADMIN, MÉDICO y ENFERMERO
                          * Lectura: todos los roles asistenciales.
                          */
+                        // Lectura por lotes: es una consulta, mismos roles que los GET
+                        .requestMatchers(HttpMethod.POST, "/api/pacientes/batch")
+                        .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name(), Role.ENFERMERO.name(), Role.TECNICO.name())
                         .requestMatchers(HttpMethod.POST, "/api/pacientes")
                         .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name())
+                        // Notas de historia clínica y evolución: también las cargan enfermeros
+                        .requestMatchers(HttpMethod.POST, "/api/pacientes/*/historia", "/api/pacientes/*/evolucion")
+                        .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name(), Role.ENFERMERO.name())
                         .requestMatchers(HttpMethod.PUT, "/api/pacientes/**")
                         .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name())
+                        .requestMatchers(HttpMethod.PATCH, "/api/pacientes/**")
+                        .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name())
                         .requestMatchers(HttpMethod.DELETE, "/api/pacientes/**")
                         .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name())
+                        // Importación masiva y consulta de su progreso
+                        .requestMatchers("/api/pacientes/importar", "/api/pacientes/importar/**")
+                        .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name())
+                        // Contadores de la caché de pacientes (monitoreo)
+                        .requestMatchers(HttpMethod.GET, "/api/pacientes/cache")
+                        .hasRole(Role.ADMIN.name())
+                        // Exportación masiva de la colección (reportes)
+                        .requestMatchers(HttpMethod.GET, "/api/pacientes/export")
+                        .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name())
                         .requestMatchers(HttpMethod.GET, "/api/pacientes/**")
                         .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name(), Role.ENFERMERO.name(), Role.TECNICO.name())
                         .requestMatchers(HttpMethod.GET, "/api/pacientes")
@@ -85,11 +110,35 @@ public class SecurityConfig {
 
                         /**
                          * --- QR ---
-                         * Solo lectura de los datos asociados a códigos QR.
+                         * Solo lectura de los datos asociados a códigos QR. La hoja de
+                         * etiquetas se pide por POST porque los IDs van en el cuerpo.
                          */
+                        .requestMatchers(HttpMethod.POST, "/api/qr/hoja")
+                        .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name(), Role.ENFERMERO.name(), Role.TECNICO.name())
                         .requestMatchers(HttpMethod.GET, "/api/qr/**")
                         .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name(), Role.ENFERMERO.name(), Role.TECNICO.name())
 
+                        /**
+                         * --- ESTADÍSTICAS DEL DASHBOARD ---
+                         * Lectura: todos los roles. Recálculo manual: solo ADMIN.
+                         */
+                        .requestMatchers(HttpMethod.POST, "/api/estadisticas/recalcular")
+                        .hasRole(Role.ADMIN.name())
+                        .requestMatchers(HttpMethod.GET, "/api/estadisticas")
+                        .hasAnyRole(Role.ADMIN.name(), Role.MEDICO.name(), Role.ENFERMERO.name(), Role.TECNICO.name())
+
+                        /**
+                         * --- ÍNDICES DE MONGODB (diagnóstico) ---
+                         */
+                        .requestMatchers("/api/indices", "/api/indices/**")
+                        .hasRole(Role.ADMIN.name())
+
+                        /**
+                         * --- COLA DE CORREOS SALIENTES (diagnóstico y reintentos) ---
+                         */
+                        .requestMatchers("/api/correos", "/api/correos/**")
+                        .hasRole(Role.ADMIN.name())
+
                         /**
                          * --- USUARIOS ---
                          * Solo un ADMIN puede acceder al módulo usuarios.
@@ -133,10 +182,14 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList("http://localhost:4200"));
 
         // Métodos habilitados
-        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
+        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
 
         // Headers permitidos
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Cache-Control", "Content-Type"));
+        configuration.setAllowedHeaders(Arrays.asList(
+                "Authorization", "Cache-Control", "Content-Type", "If-Match", "If-None-Match"));
+
+        // Headers de respuesta legibles desde Angular (versión del paciente)
+        configuration.setExposedHeaders(Arrays.asList("ETag"));
 
         // Permitir envío de credenciales (token, cookies si hubiera)
         configuration.setAllowCredentials(true);
@@ -0,0 +1,54 @@
+package org.example.clinica.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lectura de los encabezados condicionales de HTTP (RFC 9110), compartida
+ * por los controladores que responden con ETag.
+ */
+final class CondicionesHttp {
+
+    private CondicionesHttp() {
+    }
+
+    /**
+     * Compara un encabezado If-None-Match (uno o varios ETags, o "*") con el
+     * ETag actual. La comparación es débil: "W/" no cuenta.
+     *
+     * @param encabezado Valor recibido.
+     * @param etag ETag actual, entre comillas.
+     * @return true si el cliente ya tiene esa versión.
+     */
+    static boolean coincideIfNoneMatch(String encabezado, String etag) {
+        for (String valor : encabezado.split(",")) {
+            String candidato = valor.trim();
+            if (candidato.startsWith("W/")) {
+                candidato = candidato.substring(2);
+            }
+            if (candidato.equals("*") || candidato.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Valores de los ETags fuertes de un encabezado If-Match (sin comillas).
+     * If-Match usa comparación fuerte: los ETags débiles ("W/...") nunca
+     * coinciden, así que se descartan, igual que los que no van entre comillas.
+     *
+     * @param encabezado Valor recibido (no "*").
+     * @return Valores en el orden recibido (vacío si ninguno puede coincidir).
+     */
+    static List<String> etiquetasIfMatch(String encabezado) {
+        List<String> etiquetas = new ArrayList<>();
+        for (String valor : encabezado.split(",")) {
+            String candidato = valor.trim();
+            if (candidato.length() >= 2 && candidato.startsWith("\"") && candidato.endsWith("\"")) {
+                etiquetas.add(candidato.substring(1, candidato.length() - 1));
+            }
+        }
+        return etiquetas;
+    }
+}
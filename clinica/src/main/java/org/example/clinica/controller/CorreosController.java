@@ -0,0 +1,57 @@
+package org.example.clinica.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.example.clinica.dto.EstadoCorreos;
+import org.example.clinica.model.mongo.CorreoSaliente;
+import org.example.clinica.service.CorreosSalientesService;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controlador de la cola de correos salientes (QR y bienvenidas).
+ *
+ * Ruta base: /api/correos
+ */
+@RestController
+@RequestMapping("/api/correos")
+@CrossOrigin(origins = "*")
+@RequiredArgsConstructor
+public class CorreosController {
+
+    private final CorreosSalientesService correosSalientesService;
+
+    /**
+     * Consultar el estado de la cola.
+     *
+     * Roles permitidos: ADMIN.
+     *
+     * @return cantidades por estado, pendiente más antiguo y últimos fallidos.
+     */
+    @GetMapping
+    public ResponseEntity<EstadoCorreos> estado() {
+        return ResponseEntity.ok(correosSalientesService.estado());
+    }
+
+    /**
+     * Volver a encolar un correo FALLIDO.
+     *
+     * Roles permitidos: ADMIN.
+     *
+     * @param id ID del correo.
+     * @return 200 OK con el correo reencolado,
+     *         404 si no existe o no está FALLIDO,
+     *         409 si ya hay un correo igual en cola.
+     */
+    @PostMapping("/{id}/reintentar")
+    public ResponseEntity<CorreoSaliente> reintentar(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(correosSalientesService.reintentar(id));
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.clinica.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.example.clinica.model.mongo.Estadisticas;
+import org.example.clinica.service.EstadisticasService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controlador de las estadísticas del dashboard.
+ *
+ * Devuelve un único documento precalculado (cantidades por obra social,
+ * institución, género, restricción de transfusiones y rol), por lo que el
+ * dashboard carga con un solo request pequeño sin importar cuántos
+ * pacientes o usuarios haya.
+ *
+ * Ruta base: /api/estadisticas
+ */
+@RestController
+@RequestMapping("/api/estadisticas")
+@CrossOrigin(origins = "*")
+@RequiredArgsConstructor
+public class EstadisticasController {
+
+    private final EstadisticasService estadisticasService;
+
+    /**
+     * Obtener las estadísticas del dashboard.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * @return 200 OK con las estadísticas actuales.
+     */
+    @GetMapping
+    public ResponseEntity<Estadisticas> obtener() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(estadisticasService.obtener());
+    }
+
+    /**
+     * Forzar el recálculo completo de las estadísticas.
+     *
+     * Roles permitidos: ADMIN.
+     *
+     * Normalmente no hace falta: se recalculan solas periódicamente.
+     *
+     * @return 200 OK con las estadísticas recalculadas.
+     */
+    @PostMapping("/recalcular")
+    public ResponseEntity<Estadisticas> recalcular() {
+        estadisticasService.recalcular();
+        return ResponseEntity.ok(estadisticasService.obtener());
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.clinica.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.example.clinica.dto.EstadoIndice;
+import org.example.clinica.service.IndicesMongoService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controlador de diagnóstico de los índices de MongoDB.
+ *
+ * Ruta base: /api/indices
+ */
+@RestController
+@RequestMapping("/api/indices")
+@CrossOrigin(origins = "*")
+@RequiredArgsConstructor
+public class IndicesController {
+
+    private final IndicesMongoService indicesMongoService;
+
+    /**
+     * Comparar los índices de la base con el registro de la aplicación.
+     *
+     * Roles permitidos: ADMIN.
+     *
+     * No modifica nada: informa por cada índice si está OK, FALTANTE,
+     * DISTINTO (mismas claves, otras opciones) o SOBRANTE (no registrado).
+     *
+     * @return estado de los índices.
+     */
+    @GetMapping
+    public ResponseEntity<List<EstadoIndice>> verificar() {
+        return ResponseEntity.ok(indicesMongoService.verificar());
+    }
+}
@@ -1,13 +1,54 @@
 package org.example.clinica.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.example.clinica.dto.CambiosPacientes;
+import org.example.clinica.dto.EstadisticasCache;
+import org.example.clinica.dto.FiltroPacientes;
+import org.example.clinica.dto.ImportacionEstado;
+import org.example.clinica.dto.LotePacientes;
+import org.example.clinica.dto.PacienteResumen;
+import org.example.clinica.dto.PaginaPacientes;
+import org.example.clinica.dto.PaginaRegistros;
+import org.example.clinica.dto.SolicitudLotePacientes;
+import org.example.clinica.dto.Tendencias;
+import org.example.clinica.exception.ParcheConflictoException;
+import org.example.clinica.exception.VersionConflictoException;
+import org.example.clinica.model.mongo.Evolucion;
+import org.example.clinica.model.mongo.Historial;
 import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.service.EventosPacientesService;
+import org.example.clinica.service.ExportacionPacientesService;
+import org.example.clinica.service.ImportacionPacientesService;
+import org.example.clinica.service.LotePacientesService;
+import org.example.clinica.service.PacienteCache;
 import org.example.clinica.service.PacienteService;
+import org.example.clinica.service.ParchePacienteService;
+import org.example.clinica.service.RegistrosClinicosService;
+import org.example.clinica.service.SeccionesPacienteService;
+import org.example.clinica.service.TendenciasService;
+import org.example.clinica.util.CamposPaciente;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.time.Instant;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Controlador REST del módulo Pacientes.
@@ -35,6 +76,33 @@ public class PacienteController {
      */
     private final PacienteService pacienteService;
 
+    // Exportación masiva en formato NDJSON
+    private final ExportacionPacientesService exportacionPacientesService;
+
+    // Importación masiva (JSON o CSV) procesada en segundo plano
+    private final ImportacionPacientesService importacionPacientesService;
+
+    // Historia clínica y evolución mensual (colecciones propias)
+    private final RegistrosClinicosService registrosClinicosService;
+
+    // Modificaciones parciales (PATCH) en una sola escritura
+    private final ParchePacienteService parchePacienteService;
+
+    // Lectura de varios pacientes por ID en una sola consulta
+    private final LotePacientesService lotePacientesService;
+
+    // Lectura por secciones para las pantallas de observación
+    private final SeccionesPacienteService seccionesPacienteService;
+
+    // Caché de lecturas por ID (solo se exponen sus contadores)
+    private final PacienteCache pacienteCache;
+
+    // Cambios en vivo por Server-Sent Events
+    private final EventosPacientesService eventosPacientesService;
+
+    // Tendencias de diálisis (agregación sobre la historia clínica)
+    private final TendenciasService tendenciasService;
+
     /**
      * Crear un nuevo paciente.
      *
@@ -42,23 +110,310 @@ public class PacienteController {
      *
      * @param paciente información recibida en el cuerpo de la petición.
      * @return paciente recién creado con su ID asignado.
+     *         si ya existe un paciente con ese documento → 409 Conflict.
      */
     @PostMapping
     public ResponseEntity<Paciente> crearPaciente(@RequestBody Paciente paciente) {
-        Paciente nuevoPaciente = pacienteService.crearPaciente(paciente);
-        return ResponseEntity.ok(nuevoPaciente);
+        try {
+            Paciente nuevoPaciente = pacienteService.crearPaciente(paciente);
+            return ResponseEntity.ok(nuevoPaciente);
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /**
+     * Importar pacientes en forma masiva desde un array JSON.
+     *
+     * Roles permitidos: ADMIN, MEDICO.
+     *
+     * La importación se procesa en segundo plano: se responde de inmediato con
+     * 202 Accepted y el jobId para consultar el progreso en
+     * GET /api/pacientes/importar/{jobId}.
+     *
+     * @param pacientes array de pacientes (máximo 10.000).
+     * @return estado inicial de la importación.
+     *         si el array está vacío o es demasiado grande → 400 Bad Request.
+     *         si hay demasiadas importaciones en cola → 503 Service Unavailable.
+     */
+    @PostMapping(value = "/importar", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ImportacionEstado> importarPacientesJson(@RequestBody List<Paciente> pacientes) {
+        try {
+            return aceptarImportacion(importacionPacientesService.importarJson(pacientes));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Importar pacientes en forma masiva desde un archivo CSV con cabecera.
+     *
+     * Roles permitidos: ADMIN, MEDICO.
+     *
+     * Columnas aceptadas: nombre, apellido, documento, fechaNacimiento, genero,
+     * estadoCivil, fechaPrimeraDialisis, telefonos, emails, domicilio, obraSocial,
+     * institucion, testigoJehova, seTransfunde. Teléfonos y emails admiten varios
+     * valores separados por '|'.
+     *
+     * @param csv contenido del archivo (Content-Type: text/csv).
+     * @return estado inicial de la importación.
+     *         si el CSV es inválido → 400 Bad Request.
+     *         si hay demasiadas importaciones en cola → 503 Service Unavailable.
+     */
+    @PostMapping(value = "/importar", consumes = "text/csv")
+    public ResponseEntity<ImportacionEstado> importarPacientesCsv(@RequestBody String csv) {
+        try {
+            return aceptarImportacion(importacionPacientesService.importarCsv(csv));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Consultar el progreso de una importación masiva.
+     *
+     * Roles permitidos: ADMIN, MEDICO.
+     *
+     * @param jobId identificador devuelto al iniciar la importación.
+     * @return estado actual con los errores por fila.
+     *         si no existe o expiró → 404 Not Found.
+     */
+    @GetMapping("/importar/{jobId}")
+    public ResponseEntity<ImportacionEstado> consultarImportacion(@PathVariable String jobId) {
+        return importacionPacientesService.consultar(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     /**
-     * Obtener la lista completa de pacientes.
+     * Obtener una página del listado de pacientes en formato resumido.
      *
      * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
      *
-     * @return lista con todos los pacientes almacenados.
+     * Solo devuelve id, nombre, apellido, documento y fecha de nacimiento.
+     * El documento completo se obtiene mediante GET /api/pacientes/{id}.
+     *
+     * Se puede filtrar por rango de fecha de nacimiento y de inicio de
+     * diálisis (límites inclusivos, yyyy-MM-dd); los filtros usan índices.
+     *
+     * Ejemplo: GET /api/pacientes?limite=50&cursor=665f1c...
+     *          GET /api/pacientes?dialisisDesde=2024-01-01&dialisisHasta=2024-03-31
+     *
+     * @param cursor ID del último paciente recibido (opcional, omitir en la primera página).
+     * @param limite cantidad de pacientes por página (por defecto 50, máximo 200).
+     * @param nacidoDesde fecha de nacimiento mínima (opcional).
+     * @param nacidoHasta fecha de nacimiento máxima (opcional).
+     * @param dialisisDesde fecha mínima de primera diálisis (opcional).
+     * @param dialisisHasta fecha máxima de primera diálisis (opcional).
+     * @return página de resúmenes con el cursor para continuar.
+     *         si el cursor o alguna fecha es inválida → 400 Bad Request.
      */
     @GetMapping
-    public ResponseEntity<List<Paciente>> listarPacientes() {
-        return ResponseEntity.ok(pacienteService.listarTodos());
+    public ResponseEntity<PaginaPacientes> listarPacientes(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limite,
+            @RequestParam(required = false) String nacidoDesde,
+            @RequestParam(required = false) String nacidoHasta,
+            @RequestParam(required = false) String dialisisDesde,
+            @RequestParam(required = false) String dialisisHasta) {
+        try {
+            FiltroPacientes filtro = FiltroPacientes.desdeParametros(nacidoDesde, nacidoHasta, dialisisDesde, dialisisHasta);
+            return ResponseEntity.ok(pacienteService.listarResumen(cursor, limite, filtro));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Obtener varios pacientes por ID en una sola petición.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Resuelve todos los IDs con una única consulta y devuelve los pacientes
+     * en el orden pedido. Los IDs inexistentes se informan en noEncontrados.
+     *
+     * Ejemplo: POST /api/pacientes/batch
+     *          {"ids": ["665f1c...", "665f1d..."], "campos": ["nombre", "apellido", "qrCodeData"]}
+     *
+     * @param solicitud IDs (hasta 500) y campos a incluir (opcional).
+     * @return pacientes encontrados y los IDs que no existen.
+     *         si no hay IDs, son demasiados o un campo no existe → 400 Bad Request.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<LotePacientes> obtenerLote(@RequestBody SolicitudLotePacientes solicitud) {
+        try {
+            return ResponseEntity.ok(lotePacientesService.obtener(solicitud.getIds(), solicitud.getCampos()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Obtener los cambios del listado desde la última sincronización.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Devuelve los resúmenes de los pacientes creados o modificados y los IDs
+     * de los eliminados desde el token indicado, junto con el token siguiente.
+     * El primer token lo entrega GET /api/pacientes.
+     *
+     * Ejemplo: GET /api/pacientes/changes?since=1718000000000
+     *
+     * @param since token recibido en la sincronización anterior.
+     * @return cambios y token siguiente; recargar = true si el cliente debe pedir el listado completo.
+     *         si el token es inválido → 400 Bad Request.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<CambiosPacientes> listarCambios(@RequestParam String since) {
+        try {
+            return ResponseEntity.ok(pacienteService.listarCambios(since));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Buscar pacientes por documento, nombre o apellido.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * La búsqueda se resuelve en el servidor con índices: coincidencia exacta o
+     * por prefijo del documento y por prefijo de nombre/apellido sin distinguir
+     * mayúsculas ni acentos. Los resultados vienen ordenados por relevancia.
+     *
+     * Acepta los mismos filtros por rango de fechas que el listado.
+     *
+     * Ejemplo: GET /api/pacientes/search?q=gomez&limite=20&nacidoHasta=1960-12-31
+     *
+     * @param q término de búsqueda.
+     * @param limite cantidad máxima de resultados (por defecto 20, máximo 50).
+     * @param nacidoDesde fecha de nacimiento mínima (opcional).
+     * @param nacidoHasta fecha de nacimiento máxima (opcional).
+     * @param dialisisDesde fecha mínima de primera diálisis (opcional).
+     * @param dialisisHasta fecha máxima de primera diálisis (opcional).
+     * @return lista de resúmenes de pacientes que coinciden.
+     *         si alguna fecha es inválida → 400 Bad Request.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<PacienteResumen>> buscarPacientes(
+            @RequestParam("q") String q,
+            @RequestParam(required = false) Integer limite,
+            @RequestParam(required = false) String nacidoDesde,
+            @RequestParam(required = false) String nacidoHasta,
+            @RequestParam(required = false) String dialisisDesde,
+            @RequestParam(required = false) String dialisisHasta) {
+        try {
+            FiltroPacientes filtro = FiltroPacientes.desdeParametros(nacidoDesde, nacidoHasta, dialisisDesde, dialisisHasta);
+            return ResponseEntity.ok(pacienteService.buscar(q, limite, filtro));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Exportar todos los pacientes en formato NDJSON (un paciente por línea).
+     *
+     * Roles permitidos: ADMIN, MEDICO.
+     *
+     * Los pacientes se leen con un cursor y se escriben a medida que llegan,
+     * por lo que la memoria utilizada no depende del tamaño de la colección.
+     *
+     * Ejemplo: GET /api/pacientes/export?campos=nombre,apellido,documento&since=2024-01-01&gzip=true
+     *
+     * @param campos lista de campos separada por comas (opcional, por defecto todos).
+     * @param since exporta solo pacientes dados de alta desde esa fecha o instante ISO (opcional).
+     * @param gzip si es true la salida se comprime y se descarga como pacientes.ndjson.gz.
+     * @param response respuesta HTTP donde se escribe el contenido.
+     *                 si algún parámetro es inválido → 400 Bad Request.
+     */
+    @GetMapping("/export")
+    public void exportarPacientes(
+            @RequestParam(required = false) String campos,
+            @RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletResponse response) throws IOException {
+
+        Set<String> seleccion;
+        Instant desde;
+        try {
+            seleccion = CamposPaciente.parsear(campos);
+            desde = ExportacionPacientesService.parsearDesde(since);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        String archivo = gzip ? "pacientes.ndjson.gz" : "pacientes.ndjson";
+        response.setContentType(gzip ? "application/gzip" : "application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + archivo + "\"");
+
+        OutputStream salida = response.getOutputStream();
+        if (gzip) {
+            try (GZIPOutputStream comprimida = new GZIPOutputStream(salida, 8192)) {
+                exportacionPacientesService.exportar(comprimida, seleccion, desde);
+            }
+        } else {
+            exportacionPacientesService.exportar(salida, seleccion, desde);
+        }
+    }
+
+    /**
+     * Consultar los contadores de la caché de pacientes.
+     *
+     * Roles permitidos: ADMIN.
+     *
+     * @return aciertos, fallos, desalojos, entradas y peso ocupado.
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<EstadisticasCache> estadisticasCache() {
+        return ResponseEntity.ok(pacienteCache.estadisticas());
+    }
+
+    /**
+     * Suscribirse a los cambios del listado de pacientes (Server-Sent Events).
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Emite eventos "alta", "baja" y "modificacion" (solo con los campos del
+     * resumen) para que el listado se actualice sin volver a pedir la página.
+     *
+     * @return conexión SSE abierta.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter eventosListado() {
+        return eventosPacientesService.suscribirListado();
+    }
+
+    /**
+     * Tendencias de diálisis de toda la unidad.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Por cada mes (o semana) del rango devuelve promedio, mínimo y máximo de
+     * peso y peso seco, promedio de heparina, cantidad de entradas y de
+     * pacientes. Se calcula en MongoDB y se guarda en caché unos minutos.
+     *
+     * @param agrupacion "mes" (por defecto) o "semana".
+     * @param desde fecha inicial inclusive, yyyy-MM-dd (por defecto un año antes de "hasta").
+     * @param hasta fecha final inclusive, yyyy-MM-dd (por defecto hoy).
+     * @return puntos de la tendencia, del más antiguo al más reciente.
+     *         si la agrupación o alguna fecha es inválida → 400 Bad Request.
+     */
+    @GetMapping("/tendencias")
+    public ResponseEntity<Tendencias> tendenciasUnidad(
+            @RequestParam(required = false) String agrupacion,
+            @RequestParam(required = false) String desde,
+            @RequestParam(required = false) String hasta) {
+        try {
+            return ResponseEntity.ok(tendenciasService.deLaUnidad(agrupacion, desde, hasta));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -66,49 +421,416 @@ public class PacienteController {
      *
      * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
      *
+     * La respuesta lleva un ETag con la versión del paciente. Si el cliente
+     * envía If-None-Match con ese valor, solo se consulta la versión en la
+     * base y se responde 304 sin cuerpo. El Cache-Control "no-cache, private"
+     * permite que el navegador guarde la respuesta y la revalide así solo.
+     *
      * @param id identificador del paciente.
+     * @param ifNoneMatch ETag guardado por el cliente (opcional).
      * @return si existe → 200 OK con el paciente.
+     *         si no cambió desde el ETag indicado → 304 Not Modified.
      *         si no existe → 404 Not Found.
      */
     @GetMapping("/{id}")
-    public ResponseEntity<Paciente> buscarPaciente(@PathVariable String id) {
+    public ResponseEntity<Paciente> buscarPaciente(
+            @PathVariable String id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        if (ifNoneMatch != null) {
+            Optional<Long> version = pacienteService.obtenerVersion(id);
+            if (version.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            String etag = etag(version.get());
+            if (CondicionesHttp.coincideIfNoneMatch(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .cacheControl(CacheControl.noCache().cachePrivate())
+                        .build();
+            }
+        }
+
         Optional<Paciente> paciente = pacienteService.buscarPorId(id);
-        return paciente.map(ResponseEntity::ok)
+        return paciente.map(p -> ResponseEntity.ok()
+                        .eTag(etag(p.getVersion()))
+                        .cacheControl(CacheControl.noCache().cachePrivate())
+                        .body(p))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * Obtener una sola sección de la ficha de un paciente.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Pensado para las pantallas de observación que se abren desde el QR:
+     * solo se leen y envían los campos de la sección pedida (más nombre,
+     * apellido y documento para el encabezado). Las secciones que son listas
+     * vienen paginadas e incluyen "pagina", "tamanio" y "hayMas".
+     *
+     * Secciones: datos-personales, alergias, antecedentes, medicacion,
+     * historia, dialisis, evolucion.
+     *
+     * Ejemplo: GET /api/pacientes/{id}/secciones/medicacion?pagina=0&tamanio=20
+     *
+     * @param id ID del paciente.
+     * @param seccion nombre de la sección.
+     * @param pagina número de página para secciones con listas (por defecto 0).
+     * @param tamanio elementos por página (por defecto 20, máximo 100).
+     * @param desde fecha inicial yyyy-MM-dd, solo historia y evolución (opcional).
+     * @param hasta fecha final yyyy-MM-dd, solo historia y evolución (opcional).
+     * @return campos de la sección.
+     *         si alguna fecha es inválida → 400 Bad Request.
+     *         si el paciente o la sección no existen → 404 Not Found.
+     */
+    @GetMapping("/{id}/secciones/{seccion}")
+    public ResponseEntity<ObjectNode> obtenerSeccion(
+            @PathVariable String id,
+            @PathVariable String seccion,
+            @RequestParam(required = false) Integer pagina,
+            @RequestParam(required = false) Integer tamanio,
+            @RequestParam(required = false) String desde,
+            @RequestParam(required = false) String hasta) {
+        try {
+            return ResponseEntity.ok(seccionesPacienteService.obtenerSeccion(id, seccion, pagina, tamanio, desde, hasta));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Suscribirse a los cambios de un paciente (Server-Sent Events).
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Emite "modificacion" con los campos cambiados, "baja" si se elimina y
+     * "historia"/"evolucion" con cada entrada nueva.
+     *
+     * @param id identificador del paciente.
+     * @return conexión SSE abierta.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter eventosPaciente(@PathVariable String id) {
+        return eventosPacientesService.suscribirPaciente(id);
+    }
+
     /**
      * Actualizar un paciente existente.
      *
      * Roles permitidos: ADMIN, MEDICO.
      *
+     * Si se envía If-Match con el ETag leído, la actualización solo se aplica
+     * si nadie modificó el paciente mientras tanto.
+     *
      * @param id ID del paciente a actualizar.
      * @param pacienteActualizado datos nuevos del paciente.
-     * @return el paciente ya actualizado.
+     * @param ifMatch ETag de la versión sobre la que se editó (opcional).
+     * @return el paciente ya actualizado, con su nuevo ETag.
+     *         si otro usuario lo modificó antes → 412 Precondition Failed.
+     *         si el documento ya lo tiene otro paciente → 409 Conflict.
      *         si no existe → 404 Not Found.
      */
     @PutMapping("/{id}")
-    public ResponseEntity<Paciente> actualizarPaciente(@PathVariable String id, @RequestBody Paciente pacienteActualizado) {
+    public ResponseEntity<Paciente> actualizarPaciente(
+            @PathVariable String id,
+            @RequestBody Paciente pacienteActualizado,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            Paciente paciente = pacienteService.actualizarPaciente(id, pacienteActualizado);
-            return ResponseEntity.ok(paciente);
+            Paciente paciente = pacienteService.actualizarPaciente(id, pacienteActualizado, versionesDeIfMatch(ifMatch));
+            return ResponseEntity.ok().eTag(etag(paciente.getVersion())).body(paciente);
+        } catch (VersionConflictoException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             // El servicio lanza excepción cuando el paciente no se encuentra
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * Modificar campos puntuales de un paciente con JSON Merge Patch.
+     *
+     * Roles permitidos: ADMIN, MEDICO.
+     *
+     * A diferencia de PUT, un valor null quita el campo. Los objetos anidados
+     * (por ejemplo parametrosDialisis) se fusionan clave por clave.
+     *
+     * Ejemplo: PATCH /api/pacientes/{id}  (Content-Type: application/merge-patch+json)
+     *          {"domicilio": "Av. Siempre Viva 742", "obraSocial": null}
+     *
+     * @param id ID del paciente.
+     * @param parche campos a cambiar o quitar.
+     * @param ifMatch ETag de la versión sobre la que se editó (opcional).
+     * @return el paciente ya modificado, con su nuevo ETag.
+     *         si el parche no respeta el modelo → 400 Bad Request.
+     *         si otro usuario lo modificó antes → 412 Precondition Failed.
+     *         si no existe → 404 Not Found.
+     */
+    @PatchMapping(value = "/{id}", consumes = ParchePacienteService.MERGE_PATCH)
+    public ResponseEntity<Paciente> aplicarMergePatch(
+            @PathVariable String id,
+            @RequestBody JsonNode parche,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return aplicarParche(() -> parchePacienteService.aplicarMergePatch(id, parche, versionesDeIfMatch(ifMatch)));
+    }
+
+    /**
+     * Modificar un paciente con operaciones JSON Patch (add, remove, replace, test).
+     *
+     * Roles permitidos: ADMIN, MEDICO.
+     *
+     * Permite cambiar un elemento de una lista sin reenviarla completa. Todas
+     * las operaciones se aplican juntas en una sola escritura, o ninguna.
+     *
+     * Ejemplo: PATCH /api/pacientes/{id}  (Content-Type: application/json-patch+json)
+     *          [{"op": "test", "path": "/medicacionActual/2/nombre", "value": "Enalapril"},
+     *           {"op": "replace", "path": "/medicacionActual/2/dosis", "value": "10 mg"}]
+     *
+     * @param id ID del paciente.
+     * @param operaciones lista de operaciones.
+     * @param ifMatch ETag de la versión sobre la que se editó (opcional).
+     * @return el paciente ya modificado, con su nuevo ETag.
+     *         si alguna operación es inválida → 400 Bad Request.
+     *         si falla un "test" o la ruta ya no existe → 409 Conflict.
+     *         si otro usuario lo modificó antes → 412 Precondition Failed.
+     *         si no existe → 404 Not Found.
+     */
+    @PatchMapping(value = "/{id}", consumes = ParchePacienteService.JSON_PATCH)
+    public ResponseEntity<Paciente> aplicarJsonPatch(
+            @PathVariable String id,
+            @RequestBody JsonNode operaciones,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return aplicarParche(() -> parchePacienteService.aplicarJsonPatch(id, operaciones, versionesDeIfMatch(ifMatch)));
+    }
+
+    /**
+     * Obtener la historia clínica de un paciente, paginada y más recientes primero.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Ejemplo: GET /api/pacientes/{id}/historia?desde=2024-01-01&hasta=2024-06-30&pagina=0&tamanio=20
+     *
+     * @param id ID del paciente.
+     * @param desde fecha inicial inclusive, yyyy-MM-dd (opcional).
+     * @param hasta fecha final inclusive, yyyy-MM-dd (opcional).
+     * @param pagina número de página desde 0 (por defecto 0).
+     * @param tamanio entradas por página (por defecto 20, máximo 100).
+     * @return página de entradas.
+     *         si alguna fecha es inválida → 400 Bad Request.
+     *         si el paciente no existe → 404 Not Found.
+     */
+    @GetMapping("/{id}/historia")
+    public ResponseEntity<PaginaRegistros<Historial>> listarHistorial(
+            @PathVariable String id,
+            @RequestParam(required = false) String desde,
+            @RequestParam(required = false) String hasta,
+            @RequestParam(required = false) Integer pagina,
+            @RequestParam(required = false) Integer tamanio) {
+        try {
+            return ResponseEntity.ok(registrosClinicosService.listarHistorial(id, desde, hasta, pagina, tamanio));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Agregar una entrada a la historia clínica de un paciente.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO.
+     *
+     * Solo se envía la entrada nueva; el servidor la inserta en la colección
+     * de historia sin leer ni reescribir las anteriores.
+     *
+     * @param id ID del paciente.
+     * @param historial entrada a agregar.
+     * @param maximo opcional: conserva solo las últimas N entradas.
+     * @return 201 Created con la entrada agregada.
+     *         si el paciente no existe → 404 Not Found.
+     */
+    @PostMapping("/{id}/historia")
+    public ResponseEntity<Historial> agregarHistorial(
+            @PathVariable String id,
+            @RequestBody Historial historial,
+            @RequestParam(required = false) Integer maximo) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(registrosClinicosService.agregarHistorial(id, historial, maximo));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Tendencias de diálisis de un paciente.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Mismos parámetros y puntos que GET /api/pacientes/tendencias, pero
+     * solo con la historia clínica del paciente. El resultado queda en caché
+     * hasta que se le agrega una entrada de historia.
+     *
+     * @param id ID del paciente.
+     * @return puntos de la tendencia, del más antiguo al más reciente.
+     *         si la agrupación o alguna fecha es inválida → 400 Bad Request.
+     *         si el paciente no existe → 404 Not Found.
+     */
+    @GetMapping("/{id}/tendencias")
+    public ResponseEntity<Tendencias> tendenciasPaciente(
+            @PathVariable String id,
+            @RequestParam(required = false) String agrupacion,
+            @RequestParam(required = false) String desde,
+            @RequestParam(required = false) String hasta) {
+        try {
+            return ResponseEntity.ok(tendenciasService.delPaciente(id, agrupacion, desde, hasta));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Obtener la evolución mensual de un paciente, paginada y más recientes primero.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Mismos parámetros que GET /api/pacientes/{id}/historia.
+     *
+     * @return página de entradas.
+     *         si alguna fecha es inválida → 400 Bad Request.
+     *         si el paciente no existe → 404 Not Found.
+     */
+    @GetMapping("/{id}/evolucion")
+    public ResponseEntity<PaginaRegistros<Evolucion>> listarEvolucion(
+            @PathVariable String id,
+            @RequestParam(required = false) String desde,
+            @RequestParam(required = false) String hasta,
+            @RequestParam(required = false) Integer pagina,
+            @RequestParam(required = false) Integer tamanio) {
+        try {
+            return ResponseEntity.ok(registrosClinicosService.listarEvolucion(id, desde, hasta, pagina, tamanio));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Agregar una entrada a la evolución mensual de un paciente.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO.
+     *
+     * @param id ID del paciente.
+     * @param evolucion entrada a agregar.
+     * @param maximo opcional: conserva solo las últimas N entradas.
+     * @return 201 Created con la entrada agregada.
+     *         si el paciente no existe → 404 Not Found.
+     */
+    @PostMapping("/{id}/evolucion")
+    public ResponseEntity<Evolucion> agregarEvolucion(
+            @PathVariable String id,
+            @RequestBody Evolucion evolucion,
+            @RequestParam(required = false) Integer maximo) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(registrosClinicosService.agregarEvolucion(id, evolucion, maximo));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     /**
      * Eliminar un paciente por su ID.
      *
      * Roles permitidos: ADMIN, MEDICO.
      *
      * @param id ID del paciente a eliminar.
+     * @param ifMatch ETag de la versión que se quiere eliminar (opcional).
      * @return 204 No Content en caso de éxito.
+     *         si otro usuario lo modificó antes → 412 Precondition Failed.
+     *         si no existe → 404 Not Found.
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> eliminarPaciente(@PathVariable String id) {
-        pacienteService.eliminarPaciente(id);
-        return ResponseEntity.noContent().build();
+    public ResponseEntity<Void> eliminarPaciente(
+            @PathVariable String id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        try {
+            pacienteService.eliminarPaciente(id, versionesDeIfMatch(ifMatch));
+            return ResponseEntity.noContent().build();
+        } catch (VersionConflictoException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (RuntimeException e) {
+            // El servicio lanza excepción cuando el paciente no se encuentra
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Respuesta 202 Accepted con la URL de progreso de la importación.
+     */
+    private ResponseEntity<ImportacionEstado> aceptarImportacion(ImportacionEstado estado) {
+        return ResponseEntity
+                .accepted()
+                .location(URI.create("/api/pacientes/importar/" + estado.getJobId()))
+                .body(estado);
+    }
+
+    /**
+     * ETag de un paciente: su versión entre comillas (sin versión → "0").
+     */
+    private static String etag(Long version) {
+        return "\"" + (version == null ? 0 : version) + "\"";
+    }
+
+    /**
+     * Ejecuta un parche y traduce sus errores a códigos HTTP.
+     */
+    private ResponseEntity<Paciente> aplicarParche(Supplier<Paciente> parche) {
+        try {
+            Paciente paciente = parche.get();
+            return ResponseEntity.ok().eTag(etag(paciente.getVersion())).body(paciente);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (ParcheConflictoException | DuplicateKeyException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (VersionConflictoException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (RuntimeException e) {
+            // El servicio lanza excepción cuando el paciente no se encuentra
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Obtiene las versiones aceptadas a partir de If-Match, que puede traer
+     * varios ETags ("3", "4"): la escritura procede si el paciente está en
+     * cualquiera de ellas. Los ETags débiles no cuentan (comparación fuerte).
+     *
+     * @return null si no se envió o es "*" (no se verifica versión).
+     * @throws VersionConflictoException si ningún valor corresponde a una versión.
+     */
+    private static Set<Long> versionesDeIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        Set<Long> versiones = new LinkedHashSet<>();
+        for (String etiqueta : CondicionesHttp.etiquetasIfMatch(ifMatch)) {
+            try {
+                versiones.add(Long.parseLong(etiqueta));
+            } catch (NumberFormatException e) {
+                // No es un ETag de este servidor: no coincide con ninguna versión
+            }
+        }
+        if (versiones.isEmpty()) {
+            throw new VersionConflictoException("If-Match no coincide con ninguna versión: " + ifMatch);
+        }
+        return versiones;
     }
 }
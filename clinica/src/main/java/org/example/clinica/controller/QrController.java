@@ -1,16 +1,32 @@
 package org.example.clinica.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.example.clinica.dto.SolicitudHojaQr;
+import org.example.clinica.service.HojaQrService;
+import org.example.clinica.service.PacienteService;
+import org.example.clinica.service.QrService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
 /**
- * Controlador encargado de generar la URL asociada a un QR
- * que redirige al módulo de observación de un paciente.
+ * Controlador de los códigos QR de los pacientes.
  *
- * Este endpoint no genera el código QR en sí, sino que devuelve
- * la URL que luego puede ser codificada como un QR desde el frontend
- * u otro servicio.
+ * - /generate/{pacienteId}: devuelve la URL que se codifica en el QR.
+ * - /{pacienteId}.png y /{pacienteId}.svg: devuelven la imagen del QR,
+ *   generada una sola vez y servida desde caché (ver QrService), con ETag
+ *   fuerte y Cache-Control largo. Reimprimir las pulseras de una sala
+ *   entera no vuelve a codificar nada.
+ * - POST /hoja: hoja de etiquetas QR en PDF para imprimir (ver HojaQrService).
  */
 @RestController
 @RequestMapping("/api/qr")
@@ -18,6 +34,13 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 public class QrController {
 
+    // La imagen de un paciente no cambia: el navegador puede guardarla mucho tiempo
+    private static final CacheControl CACHE_IMAGEN = CacheControl.maxAge(Duration.ofDays(30)).cachePrivate();
+
+    private final QrService qrService;
+    private final HojaQrService hojaQrService;
+    private final PacienteService pacienteService;
+
     /**
      * Endpoint para generar la URL que apunta a la vista de observación
      * de un paciente específico.
@@ -32,8 +55,108 @@ public class QrController {
     public ResponseEntity<String> generateQrUrl(@PathVariable String pacienteId) {
 
         // Construye la URL completa que será representada en el QR
-        String qrUrl = "http://localhost:4200/pacientes/" + pacienteId + "/observar";
+        String qrUrl = QrService.construirUrlPaciente(pacienteId);
 
         return ResponseEntity.ok(qrUrl);
     }
+
+    /**
+     * Imagen del QR de un paciente.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * El ETag depende solo de la URL codificada, el tamaño y el formato: si
+     * el cliente ya tiene la imagen (If-None-Match), se responde 304 sin
+     * generarla. Antes se verifica que el paciente exista (solo su versión,
+     * normalmente desde PacienteCache), para no entregar ni dejar guardada
+     * en el navegador por 30 días la imagen de un ID inexistente o borrado.
+     *
+     * @param pacienteId ID del paciente.
+     * @param formato "png" o "svg" (extensión de la ruta).
+     * @param tamanio Ancho y alto en píxeles (opcional, 64 a 1024, por defecto 200).
+     * @param ifNoneMatch ETag guardado por el cliente (opcional).
+     * @return 200 OK con la imagen,
+     *         304 Not Modified si el cliente ya la tiene,
+     *         400 Bad Request si el ID, el formato o el tamaño no son válidos,
+     *         404 Not Found si el paciente no existe.
+     */
+    @GetMapping("/{pacienteId}.{formato}")
+    public ResponseEntity<byte[]> imagenQr(
+            @PathVariable String pacienteId,
+            @PathVariable String formato,
+            @RequestParam(required = false) Integer tamanio,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        QrService.Formato formatoQr;
+        int tamanioQr;
+        try {
+            if (!ObjectId.isValid(pacienteId)) {
+                throw new IllegalArgumentException("ID de paciente inválido");
+            }
+            formatoQr = QrService.Formato.desdeExtension(formato);
+            tamanioQr = QrService.validarTamanio(tamanio);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (pacienteService.obtenerVersion(pacienteId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        String qrUrl = QrService.construirUrlPaciente(pacienteId);
+        String etag = qrService.etagQr(qrUrl, tamanioQr, formatoQr);
+        if (ifNoneMatch != null && CondicionesHttp.coincideIfNoneMatch(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(CACHE_IMAGEN)
+                    .build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(formatoQr.getTipoContenido()))
+                .eTag(etag)
+                .cacheControl(CACHE_IMAGEN)
+                .body(qrService.imagenQr(qrUrl, tamanioQr, formatoQr));
+    }
+
+    /**
+     * Hoja de etiquetas QR para imprimir, en PDF.
+     *
+     * Roles permitidos: ADMIN, MEDICO, ENFERMERO, TECNICO.
+     *
+     * Cada etiqueta tiene el QR, apellido, nombre, documento e institución
+     * del paciente. El PDF se escribe a medida que se generan las páginas,
+     * así que sirve para miles de etiquetas sin usar más memoria.
+     *
+     * Los filtros van en el cuerpo, como en /api/pacientes/batch: mil IDs no
+     * entran en la URL de un GET (los servidores limitan los encabezados a
+     * unos 8 KB).
+     *
+     * Ejemplos:
+     *   POST /api/qr/hoja {"institucion": "Centro Norte"}        → pacientes de una institución
+     *   POST /api/qr/hoja {"ids": ["64b7...", "64b8..."]}       → pacientes indicados
+     *   POST /api/qr/hoja (sin cuerpo o {})                      → todos los pacientes
+     *
+     * @param solicitud institución y/o IDs de pacientes (opcionales, hasta 1000 IDs).
+     * @param response respuesta HTTP donde se escribe el PDF.
+     *                 si algún ID es inválido o son demasiados → 400 Bad Request.
+     */
+    @PostMapping("/hoja")
+    public void hojaQr(
+            @RequestBody(required = false) SolicitudHojaQr solicitud,
+            HttpServletResponse response) throws IOException {
+
+        String institucion = solicitud == null ? null : solicitud.getInstitucion();
+        List<String> seleccion;
+        try {
+            seleccion = HojaQrService.validarIds(solicitud == null ? null : solicitud.getIds());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        response.setContentType(MediaType.APPLICATION_PDF_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"etiquetas-qr.pdf\"");
+        hojaQrService.escribir(response.getOutputStream(), institucion, seleccion);
+    }
 }
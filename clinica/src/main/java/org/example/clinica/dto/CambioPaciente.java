@@ -0,0 +1,47 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cambio sobre un paciente que se envía a las pantallas abiertas (SSE).
+ *
+ * Es un delta: solo viaja lo que cambió, no el documento completo.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CambioPaciente {
+
+    public enum Tipo {
+        ALTA,          // Paciente nuevo (campos del resumen)
+        MODIFICACION,  // Campos del paciente modificados
+        BAJA,          // Paciente eliminado
+        HISTORIA,      // Nueva entrada de historia clínica
+        EVOLUCION      // Nueva entrada de evolución mensual
+    }
+
+    private Tipo tipo;
+
+    private String pacienteId;
+
+    /**
+     * Campos nuevos o modificados con su valor. En HISTORIA y EVOLUCION, la entrada agregada.
+     * En modificaciones de listas puede incluir rutas como "medicacionActual.2.dosis".
+     */
+    private Map<String, Object> campos;
+
+    /**
+     * Campos quitados del documento (solo en MODIFICACION).
+     */
+    private List<String> eliminados;
+
+    private Instant fecha;
+}
@@ -0,0 +1,44 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cambios del listado de pacientes desde un token de sincronización
+ * (GET /api/pacientes/changes).
+ *
+ * El cliente reemplaza o agrega los resúmenes recibidos, quita los IDs
+ * eliminados y guarda el nuevo token para la próxima consulta. Si recargar
+ * es true, el token es demasiado viejo (o hubo demasiados cambios) y debe
+ * volver a pedir el listado completo.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CambiosPacientes {
+
+    /**
+     * Pacientes creados o modificados desde el token, en formato resumido.
+     */
+    private List<PacienteResumen> pacientes;
+
+    /**
+     * IDs de los pacientes eliminados desde el token.
+     */
+    private List<String> eliminados;
+
+    /**
+     * Token a enviar en la próxima sincronización.
+     */
+    private String token;
+
+    /**
+     * Indica que el cliente debe descartar su copia y recargar el listado.
+     */
+    private boolean recargar;
+}
@@ -0,0 +1,31 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Error ocurrido al importar una fila de una importación masiva de pacientes.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ErrorImportacion {
+
+    /**
+     * Número de fila dentro del archivo o del array recibido (comenzando en 1).
+     */
+    private int fila;
+
+    /**
+     * Documento del paciente de esa fila, si se pudo leer.
+     */
+    private String documento;
+
+    /**
+     * Descripción del problema.
+     */
+    private String mensaje;
+}
@@ -0,0 +1,57 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Contadores de la caché de pacientes, para monitoreo.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class EstadisticasCache {
+
+    /**
+     * Lecturas resueltas desde la caché.
+     */
+    private long aciertos;
+
+    /**
+     * Lecturas que tuvieron que ir a MongoDB.
+     */
+    private long fallos;
+
+    /**
+     * aciertos / (aciertos + fallos), entre 0 y 1.
+     */
+    private double tasaAciertos;
+
+    /**
+     * Pacientes desalojados por tamaño o vencimiento.
+     */
+    private long desalojos;
+
+    /**
+     * Pacientes actualmente en caché.
+     */
+    private long entradas;
+
+    /**
+     * Peso total aproximado en bytes de los pacientes en caché.
+     */
+    private long pesoTotal;
+
+    /**
+     * Peso máximo configurado en bytes.
+     */
+    private long pesoMaximo;
+
+    /**
+     * Lecturas que no consultaron la base porque se sumaron a una consulta
+     * ya en curso para el mismo paciente.
+     */
+    private long lecturasCompartidas;
+}
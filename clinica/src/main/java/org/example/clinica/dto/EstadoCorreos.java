@@ -0,0 +1,42 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.clinica.model.mongo.CorreoSaliente;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estado de la cola de correos salientes, para el endpoint de diagnóstico.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class EstadoCorreos {
+
+    /**
+     * Cantidad de correos por estado (PENDIENTE, ENVIANDO, ENVIADO, FALLIDO, CANCELADO).
+     */
+    private Map<String, Long> porEstado;
+
+    /**
+     * Alta del correo pendiente más antiguo, o null si la cola está vacía.
+     * Sirve para ver si los envíos están atrasados.
+     */
+    private Instant pendienteMasAntiguo;
+
+    /**
+     * Envíos en curso en esta instancia.
+     */
+    private int enviosEnCurso;
+
+    /**
+     * Últimos correos que agotaron los reintentos (dead letter).
+     */
+    private List<CorreoSaliente> fallidos;
+}
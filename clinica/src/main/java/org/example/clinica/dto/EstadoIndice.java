@@ -0,0 +1,65 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Estado de un índice de MongoDB comparado con el registro de índices.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class EstadoIndice {
+
+    /**
+     * El índice existe tal como está registrado.
+     */
+    public static final String OK = "OK";
+
+    /**
+     * No existía y se creó al iniciar.
+     */
+    public static final String CREADO = "CREADO";
+
+    /**
+     * Está registrado pero no existe en la base.
+     */
+    public static final String FALTANTE = "FALTANTE";
+
+    /**
+     * Existe con las mismas claves pero otras opciones (unique, sparse, TTL).
+     */
+    public static final String DISTINTO = "DISTINTO";
+
+    /**
+     * Existe en la base pero no está registrado.
+     */
+    public static final String SOBRANTE = "SOBRANTE";
+
+    /**
+     * No se pudo crear o corregir (por ejemplo, duplicados en un índice único).
+     */
+    public static final String ERROR = "ERROR";
+
+    private String coleccion;
+
+    /**
+     * Nombre del índice en la base (o el registrado, si no existe).
+     */
+    private String nombre;
+
+    /**
+     * Claves del índice, por ejemplo {"pacienteId": 1, "fecha": -1}.
+     */
+    private String claves;
+
+    private String estado;
+
+    /**
+     * Explicación de la diferencia o del error; null si está OK.
+     */
+    private String detalle;
+}
@@ -0,0 +1,61 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Filtros por rango de fechas para el listado y la búsqueda de pacientes.
+ *
+ * Todos los límites son opcionales e inclusivos. Se resuelven con los índices
+ * de fechaNacimiento y fechaPrimeraDialisis.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FiltroPacientes {
+
+    private LocalDate nacidoDesde;
+    private LocalDate nacidoHasta;
+    private LocalDate dialisisDesde;
+    private LocalDate dialisisHasta;
+
+    /**
+     * Arma el filtro a partir de los parámetros de la petición (yyyy-MM-dd).
+     *
+     * @return Filtro con los límites indicados (puede estar vacío).
+     * @throws IllegalArgumentException si alguna fecha no es válida.
+     */
+    public static FiltroPacientes desdeParametros(String nacidoDesde, String nacidoHasta,
+                                                  String dialisisDesde, String dialisisHasta) {
+        return FiltroPacientes.builder()
+                .nacidoDesde(parsear(nacidoDesde))
+                .nacidoHasta(parsear(nacidoHasta))
+                .dialisisDesde(parsear(dialisisDesde))
+                .dialisisHasta(parsear(dialisisHasta))
+                .build();
+    }
+
+    /**
+     * @return true si no se indicó ningún límite.
+     */
+    public boolean vacio() {
+        return nacidoDesde == null && nacidoHasta == null && dialisisDesde == null && dialisisHasta == null;
+    }
+
+    private static LocalDate parsear(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(valor.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha inválida (se espera yyyy-MM-dd): " + valor);
+        }
+    }
+}
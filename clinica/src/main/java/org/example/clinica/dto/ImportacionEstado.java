@@ -0,0 +1,58 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Estado de un trabajo de importación masiva de pacientes.
+ *
+ * Se devuelve al iniciar la importación y en cada consulta de progreso
+ * (GET /api/pacientes/importar/{jobId}).
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportacionEstado {
+
+    /**
+     * Estados posibles de una importación.
+     */
+    public enum Estado {
+        PENDIENTE,      // En cola, esperando a ser procesada.
+        EN_PROCESO,     // Insertando lotes.
+        FINALIZADA,     // Terminó (puede tener errores por fila).
+        FALLIDA         // Se interrumpió por un error general.
+    }
+
+    private String jobId;
+    private Estado estado;
+
+    /**
+     * Cantidad de filas recibidas.
+     */
+    private int total;
+
+    /**
+     * Filas ya procesadas (insertadas o con error).
+     */
+    private int procesados;
+
+    /**
+     * Pacientes insertados correctamente.
+     */
+    private int insertados;
+
+    /**
+     * Errores por fila; la importación continúa aunque una fila falle.
+     */
+    private List<ErrorImportacion> errores;
+
+    private Instant iniciadoEn;
+    private Instant finalizadoEn;
+}
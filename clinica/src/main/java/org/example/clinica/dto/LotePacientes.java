@@ -0,0 +1,32 @@
+package org.example.clinica.dto;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Respuesta de POST /api/pacientes/batch.
+ *
+ * Los pacientes vienen en el mismo orden que los IDs pedidos (sin repetidos)
+ * y solo con los campos solicitados; los IDs que no existen se listan aparte.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LotePacientes {
+
+    /**
+     * Pacientes encontrados, en el orden de la solicitud.
+     */
+    private List<ObjectNode> pacientes;
+
+    /**
+     * IDs pedidos que no corresponden a ningún paciente.
+     */
+    private List<String> noEncontrados;
+}
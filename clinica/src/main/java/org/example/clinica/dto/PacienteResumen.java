@@ -0,0 +1,33 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Proyección liviana de un Paciente utilizada en los listados.
+ *
+ * Solo contiene los datos necesarios para identificar al paciente en una tabla
+ * (nombre, apellido, documento y fecha de nacimiento). El documento completo,
+ * con historia clínica, evolución y parámetros de diálisis, se obtiene
+ * únicamente a través de GET /api/pacientes/{id}.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PacienteResumen {
+
+    /**
+     * Identificador del paciente en MongoDB.
+     */
+    private String id;
+
+    private String nombre;
+    private String apellido;
+    private String documento;
+    private LocalDate fechaNacimiento;
+}
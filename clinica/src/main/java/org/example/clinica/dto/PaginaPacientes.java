@@ -0,0 +1,43 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Página de resultados del listado de pacientes paginado por cursor.
+ *
+ * El cursor es el ID del último paciente devuelto. Para obtener la página
+ * siguiente el cliente lo reenvía en el parámetro "cursor"; cuando hayMas es
+ * false no quedan más pacientes por recorrer.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PaginaPacientes {
+
+    /**
+     * Resúmenes de los pacientes de esta página, ordenados por ID.
+     */
+    private List<PacienteResumen> pacientes;
+
+    /**
+     * Cursor a enviar para pedir la página siguiente (null si no hay más).
+     */
+    private String siguienteCursor;
+
+    /**
+     * Indica si existen más pacientes después de esta página.
+     */
+    private boolean hayMas;
+
+    /**
+     * Token de sincronización tomado antes de leer la página. Con él, el
+     * cliente pide luego solo los cambios (GET /api/pacientes/changes).
+     */
+    private String token;
+}
@@ -0,0 +1,44 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Página de entradas de historia clínica o de evolución mensual.
+ *
+ * Las entradas vienen ordenadas de la más reciente a la más antigua. Para
+ * pedir la página siguiente se envía pagina + 1; cuando hayMas es false no
+ * quedan entradas dentro del rango de fechas consultado.
+ *
+ * @param <T> Historial o Evolucion.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PaginaRegistros<T> {
+
+    /**
+     * Entradas de esta página, más recientes primero.
+     */
+    private List<T> registros;
+
+    /**
+     * Número de página (comienza en 0).
+     */
+    private int pagina;
+
+    /**
+     * Tamaño de página aplicado.
+     */
+    private int tamanio;
+
+    /**
+     * Indica si existen más entradas después de esta página.
+     */
+    private boolean hayMas;
+}
@@ -0,0 +1,48 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Un punto de una tendencia: los valores de la historia clínica agrupados en
+ * un período (mes o semana). Los promedios son null si en el período no hubo
+ * ningún valor numérico para esa medida.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PuntoTendencia {
+
+    /**
+     * Primer día del período (día 1 del mes, o lunes de la semana).
+     */
+    private LocalDate periodo;
+
+    /**
+     * Cantidad de entradas de historia clínica en el período.
+     */
+    private long registros;
+
+    /**
+     * Cantidad de pacientes distintos con entradas en el período.
+     */
+    private long pacientes;
+
+    private Double pesoPromedio;
+    private Double pesoMinimo;
+    private Double pesoMaximo;
+
+    private Double pesoSecoPromedio;
+    private Double pesoSecoMinimo;
+    private Double pesoSecoMaximo;
+
+    /**
+     * Dosis promedio de heparina (se toma el valor numérico del texto cargado).
+     */
+    private Double heparinaPromedio;
+}
@@ -0,0 +1,29 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cuerpo de POST /api/qr/hoja: filtros de los pacientes cuyas etiquetas QR
+ * se imprimen. Sin filtros se incluyen todos los pacientes.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SolicitudHojaQr {
+
+    /**
+     * Solo pacientes de esta institución (opcional).
+     */
+    private String institucion;
+
+    /**
+     * Solo estos pacientes (opcional, hasta HojaQrService.MAXIMO_IDS).
+     */
+    private List<String> ids;
+}
@@ -0,0 +1,30 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Cuerpo de POST /api/pacientes/batch: los IDs de pacientes a leer y,
+ * opcionalmente, los campos a devolver de cada uno.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SolicitudLotePacientes {
+
+    /**
+     * IDs de los pacientes, en el orden en que se quieren recibir.
+     */
+    private List<String> ids;
+
+    /**
+     * Campos a incluir (por ejemplo ["nombre", "apellido"]); vacío o null
+     * para devolver el documento completo.
+     */
+    private List<String> campos;
+}
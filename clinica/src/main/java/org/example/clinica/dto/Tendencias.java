@@ -0,0 +1,41 @@
+package org.example.clinica.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Evolución en el tiempo del peso, el peso seco y la heparina, calculada en
+ * el servidor a partir de la historia clínica y agrupada por mes o semana.
+ *
+ * Se usa tanto para un paciente como para toda la unidad (pacienteId null).
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class Tendencias {
+
+    /**
+     * Paciente consultado, o null si la tendencia es de toda la unidad.
+     */
+    private String pacienteId;
+
+    /**
+     * "mes" o "semana".
+     */
+    private String agrupacion;
+
+    private LocalDate desde;
+    private LocalDate hasta;
+
+    /**
+     * Puntos ordenados del período más antiguo al más reciente; los períodos
+     * sin entradas no aparecen.
+     */
+    private List<PuntoTendencia> puntos;
+}
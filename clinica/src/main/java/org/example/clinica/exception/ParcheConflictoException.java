@@ -0,0 +1,15 @@
+package org.example.clinica.exception;
+
+/**
+ * Se lanza cuando un parche (PATCH) es válido pero no se puede aplicar al
+ * estado actual del paciente: falló una operación "test", o la ruta a
+ * reemplazar o quitar ya no existe.
+ *
+ * El controlador la traduce a 409 Conflict.
+ */
+public class ParcheConflictoException extends RuntimeException {
+
+    public ParcheConflictoException(String mensaje) {
+        super(mensaje);
+    }
+}
@@ -0,0 +1,14 @@
+package org.example.clinica.exception;
+
+/**
+ * Se lanza cuando una escritura condicional (If-Match) no se aplica porque el
+ * documento fue modificado por otra persona después de que el cliente lo leyó.
+ *
+ * El controlador la traduce a 412 Precondition Failed.
+ */
+public class VersionConflictoException extends RuntimeException {
+
+    public VersionConflictoException(String mensaje) {
+        super(mensaje);
+    }
+}
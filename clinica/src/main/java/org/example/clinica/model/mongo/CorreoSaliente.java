@@ -0,0 +1,100 @@
+package org.example.clinica.model.mongo;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Correo pendiente de envío (outbox).
+ *
+ * Se guarda en la colección "correos_salientes" junto con el cambio que lo
+ * origina, y lo envía en segundo plano CorreosSalientesService. Así el
+ * request HTTP no espera al servidor SMTP y un envío fallido no se pierde:
+ * se reintenta con espera creciente y, si sigue fallando, queda en FALLIDO
+ * para revisarlo.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "correos_salientes")
+public class CorreoSaliente {
+
+    /**
+     * Tipos de correo.
+     */
+    public enum Tipo {
+        QR_PACIENTE,     // QR de acceso a la ficha, a los primeros emails del paciente
+        BIENVENIDA       // Bienvenida a un usuario nuevo del sistema
+    }
+
+    /**
+     * Estados del envío.
+     */
+    public enum Estado {
+        PENDIENTE,       // En cola (o esperando el próximo reintento)
+        ENVIANDO,        // Tomado por un worker
+        ENVIADO,
+        FALLIDO,         // Agotó los reintentos (dead letter)
+        CANCELADO        // Ya no corresponde enviarlo (el cambio no se guardó o quedó viejo)
+    }
+
+    @Id
+    private String id;
+
+    private Tipo tipo;
+
+    /**
+     * Clave de deduplicación: mientras haya un correo activo con la misma
+     * clave (índice único parcial sobre los activos) no se encola otro.
+     */
+    private String clave;
+
+    /**
+     * true mientras el correo está PENDIENTE o ENVIANDO; se quita al terminar,
+     * liberando la clave.
+     */
+    private Boolean activo;
+
+    /**
+     * ID del paciente (QR_PACIENTE) o email del usuario (BIENVENIDA).
+     */
+    private String referencia;
+
+    /**
+     * Destinatarios esperados. Para el QR se verifica al enviar que el
+     * paciente todavía tenga estos emails.
+     */
+    private List<String> destinatarios;
+
+    private Estado estado;
+
+    /**
+     * Intentos de envío fallidos.
+     */
+    private int intentos;
+
+    /**
+     * Momento a partir del cual puede enviarse (backoff entre reintentos).
+     */
+    private Instant proximoIntento;
+
+    /**
+     * Cuándo lo tomó un worker; si queda ENVIANDO demasiado tiempo (el
+     * proceso se cayó), otro worker lo retoma.
+     */
+    private Instant tomadoEn;
+
+    private String ultimoError;
+
+    private Instant creadoEn;
+
+    /**
+     * Momento en que se envió o se canceló. Índice TTL: esos correos se
+     * borran solos; los FALLIDOS no lo tienen y quedan hasta reintentarlos.
+     */
+    private Instant finalizadoEn;
+}
@@ -0,0 +1,77 @@
+package org.example.clinica.model.mongo;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estadísticas precalculadas para el dashboard.
+ *
+ * Se guarda un único documento en la colección "estadisticas". Los servicios
+ * de pacientes y usuarios lo mantienen al día con $inc en cada alta,
+ * modificación y baja, y una tarea periódica lo recalcula completo para
+ * corregir cualquier desvío. Leerlo cuesta lo mismo con diez pacientes que
+ * con cien mil.
+ *
+ * Las claves de los mapas son los valores tal como se cargaron; "Sin dato"
+ * agrupa los vacíos.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "estadisticas")
+public class Estadisticas {
+
+    /**
+     * ID del único documento de estadísticas.
+     */
+    public static final String ID_GLOBAL = "global";
+
+    @Id
+    private String id;
+
+    // ============================================================
+    // 🟦 PACIENTES
+    // ============================================================
+
+    private long pacientes;
+
+    @Builder.Default
+    private Map<String, Long> pacientesPorObraSocial = new LinkedHashMap<>();
+
+    @Builder.Default
+    private Map<String, Long> pacientesPorInstitucion = new LinkedHashMap<>();
+
+    @Builder.Default
+    private Map<String, Long> pacientesPorGenero = new LinkedHashMap<>();
+
+    /**
+     * Pacientes según su restricción de transfusiones:
+     * "testigoJehova", "noSeTransfunde" o "sinRestriccion".
+     */
+    @Builder.Default
+    private Map<String, Long> pacientesPorTransfusion = new LinkedHashMap<>();
+
+    // ============================================================
+    // 🟦 USUARIOS
+    // ============================================================
+
+    private long usuarios;
+
+    @Builder.Default
+    private Map<String, Long> usuariosPorRol = new LinkedHashMap<>();
+
+    // ============================================================
+    // 🟦 CONTROL
+    // ============================================================
+
+    /**
+     * Último recálculo completo.
+     */
+    private Instant recalculadoEn;
+}
@@ -1,12 +1,29 @@
 package org.example.clinica.model.mongo;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.*;
+import org.example.clinica.util.FechaFlexibleDeserializer;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.LocalDate;
+
+/**
+ * Entrada de la evolución mensual de un paciente.
+ *
+ * Se guarda en la colección "evolucion_mensual", una entrada por documento,
+ * indexada por (pacienteId, fecha) igual que Historial (ver IndicesMongoService).
+ */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+@Document(collection = "evolucion_mensual")
 public class Evolucion {
-    private String fecha;
+    @Id
+    private String id;
+    private String pacienteId; // Paciente al que pertenece la entrada
+    @JsonDeserialize(using = FechaFlexibleDeserializer.class)
+    private LocalDate fecha;
     private String profesional;
     private String informeGeneral;
 }
@@ -1,19 +1,48 @@
 package org.example.clinica.model.mongo;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.*;
+import org.example.clinica.util.FechaFlexibleDeserializer;
+import org.example.clinica.util.NumeroFlexibleDeserializer;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.LocalDate;
+
+/**
+ * Entrada de la historia clínica de un paciente.
+ *
+ * Se guarda en su propia colección "historia_clinica" (una entrada por
+ * documento) en lugar de dentro del Paciente, para que la ficha no crezca con
+ * cada control. El índice compuesto (pacienteId, fecha) resuelve las consultas
+ * paginadas por rango de fechas, más recientes primero; el índice por fecha,
+ * las tendencias de toda la unidad. Ambos se declaran en IndicesMongoService.
+ *
+ * Fechas y medidas (peso, peso seco, altura) se guardan tipadas para poder
+ * consultarlas por rango; se aceptan también en sus formatos de texto anteriores.
+ */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
+@Document(collection = "historia_clinica")
 public class Historial {
-    private String fecha;
+    @Id
+    private String id;
+    private String pacienteId; // Paciente al que pertenece la entrada
+    @JsonDeserialize(using = FechaFlexibleDeserializer.class)
+    private LocalDate fecha;
     private String profesional; // Quién lo hizo
     private String grupoSanguineo;
-    private String peso;
-    private String pesoSeco;
-    private String altura;
-    private String fechaPrimeraDialisisVida;
-    private String fechaPrimeraDialisisClinica;
+    @JsonDeserialize(using = NumeroFlexibleDeserializer.class)
+    private Double peso; // kg
+    @JsonDeserialize(using = NumeroFlexibleDeserializer.class)
+    private Double pesoSeco; // kg
+    @JsonDeserialize(using = NumeroFlexibleDeserializer.class)
+    private Double altura;
+    @JsonDeserialize(using = FechaFlexibleDeserializer.class)
+    private LocalDate fechaPrimeraDialisisVida;
+    @JsonDeserialize(using = FechaFlexibleDeserializer.class)
+    private LocalDate fechaPrimeraDialisisClinica;
     private String heparina;
     private String antecedentesEnfermedad;
     private String medicacionPrescritaDialisis;
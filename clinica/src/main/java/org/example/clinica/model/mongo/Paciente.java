@@ -1,9 +1,15 @@
 package org.example.clinica.model.mongo;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.*;
+import org.example.clinica.util.FechaFlexibleDeserializer;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -11,8 +17,12 @@ import java.util.Map;
  * Representa un Paciente dentro del sistema clínico.
  *
  * Este documento se almacena en MongoDB dentro de la colección "pacientes".
- * Contiene datos personales, antecedentes, medicación, historial clínico,
- * parámetros de diálisis, evolución mensual y información asociada al QR.
+ * Contiene datos personales, antecedentes, medicación, parámetros de
+ * diálisis e información asociada al QR.
+ *
+ * La historia clínica y la evolución mensual no se guardan aquí sino en sus
+ * propias colecciones (ver Historial y Evolucion), para que el documento del
+ * paciente no crezca con cada control.
  */
 @Data
 @AllArgsConstructor
@@ -26,6 +36,32 @@ public class Paciente {
     @Id
     private String id;
 
+    /**
+     * Versión del documento, se incrementa en cada modificación.
+     * Se expone como ETag para lecturas condicionales (If-None-Match) y
+     * escrituras condicionales (If-Match). Los documentos anteriores a este
+     * campo se consideran versión 0.
+     */
+    @Version
+    private Long version;
+
+    // ============================================================
+    // 🟦 AUDITORÍA
+    // ============================================================
+
+    /**
+     * Fecha de alta del paciente. La asigna PacienteService al crearlo;
+     * el valor enviado por el cliente se ignora.
+     */
+    private Instant creadoEn;
+
+    /**
+     * Fecha de la última modificación, mantenida por PacienteService en cada
+     * escritura. Permite que los listados se sincronicen de forma incremental
+     * (GET /api/pacientes/changes).
+     */
+    private Instant actualizadoEn;
+
     // ============================================================
     // 🟦 INFORMACIÓN PARA QR
     // ============================================================
@@ -43,17 +79,43 @@ public class Paciente {
 
     private String nombre;
     private String apellido;
-    private String fechaNacimiento;
+
+    /**
+     * Fechas tipadas: se guardan como fecha de MongoDB e indexadas, para
+     * filtrar por rango (por ejemplo, quienes iniciaron diálisis este
+     * trimestre). Se aceptan también en los formatos de texto anteriores.
+     */
+    @JsonDeserialize(using = FechaFlexibleDeserializer.class)
+    private LocalDate fechaNacimiento;
     private String documento;
     private String genero;
     private String estadoCivil;
-    private String fechaPrimeraDialisis;
+    @JsonDeserialize(using = FechaFlexibleDeserializer.class)
+    private LocalDate fechaPrimeraDialisis;
     private List<String> telefonos;
     private List<String> emails;
     private String domicilio;
     private String obraSocial;
     private String institucion;
 
+    // ============================================================
+    // 🟦 CLAVES DE BÚSQUEDA
+    // ============================================================
+
+    /**
+     * Nombre sin acentos y en minúsculas, mantenido por PacienteService en cada
+     * escritura. Permite búsquedas por prefijo usando un índice.
+     * No se expone en la API.
+     */
+    @JsonIgnore
+    private String nombreNormalizado;
+
+    /**
+     * Apellido sin acentos y en minúsculas (ver nombreNormalizado).
+     */
+    @JsonIgnore
+    private String apellidoNormalizado;
+
     // ============================================================
     // 🟦 ALERGIAS Y TRANSFUSIONES
     // ============================================================
@@ -92,15 +154,6 @@ public class Paciente {
      */
     private List<Medicacion> medicacionActual;
 
-    // ============================================================
-    // 🟦 HISTORIA CLÍNICA
-    // ============================================================
-
-    /**
-     * Registros clínicos realizados sobre el paciente.
-     */
-    private List<Historial> historiaClinica;
-
     // ============================================================
     // 🟦 PARÁMETROS DE DIÁLISIS
     // ============================================================
@@ -110,13 +163,4 @@ public class Paciente {
      * Se usa un Map<String, String> para flexibilidad en los valores.
      */
     private Map<String, String> parametrosDialisis;
-
-    // ============================================================
-    // 🟦 EVOLUCIÓN MENSUAL
-    // ============================================================
-
-    /**
-     * Registros de evolución mensual del paciente.
-     */
-    private List<Evolucion> evolucionMensual;
 }
@@ -0,0 +1,40 @@
+package org.example.clinica.model.mongo;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Marca de borrado de un paciente ("tombstone").
+ *
+ * Se guarda en la colección "pacientes_eliminados" cada vez que se elimina un
+ * paciente, para que los listados sincronizados por cambios sepan qué filas
+ * quitar. Las marcas se borran solas al cumplirse el tiempo de retención; un
+ * cliente que no se sincroniza hace más tiempo debe recargar el listado.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "pacientes_eliminados")
+public class PacienteEliminado {
+
+    /**
+     * Tiempo que se conservan las marcas de borrado.
+     */
+    public static final Duration RETENCION = Duration.ofDays(30);
+
+    /**
+     * ID del paciente eliminado.
+     */
+    @Id
+    private String id;
+
+    /**
+     * Momento del borrado. Índice TTL (ver IndicesMongoService): MongoDB
+     * elimina la marca al vencer la retención.
+     */
+    private Instant eliminadoEn;
+}
@@ -4,6 +4,6 @@ package org.example.clinica.model.postgres;
 public enum Role {
     ADMIN,          // Superusuario: Gestión total del sistema y usuarios.
     MEDICO,         // Crear, Modificar, Eliminar y Consultar pacientes y formularios.
-    ENFERMERO,      // Solo Consultar (GET) pacientes.
+    ENFERMERO,      // Consultar pacientes y agregar notas de historia clínica y evolución.
     TECNICO        // Solo Consultar su propio perfil.
 }
@@ -0,0 +1,9 @@
+package org.example.clinica.repository.mongo;
+
+import org.example.clinica.model.mongo.Evolucion;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface EvolucionRepository extends MongoRepository<Evolucion, String> {
+
+    void deleteByPacienteId(String pacienteId);
+}
@@ -0,0 +1,9 @@
+package org.example.clinica.repository.mongo;
+
+import org.example.clinica.model.mongo.Historial;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface HistorialRepository extends MongoRepository<Historial, String> {
+
+    void deleteByPacienteId(String pacienteId);
+}
@@ -3,11 +3,17 @@ package org.example.clinica.repository.postgres;
 
 import org.example.clinica.model.postgres.Usuario;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     Optional<Usuario> findByEmail(String email);
+
+    // Cantidad de usuarios por rol: filas [rol, cantidad]
+    @Query("select u.rol, count(u) from Usuario u group by u.rol")
+    List<Object[]> contarPorRol();
 }
\ No newline at end of file
@@ -0,0 +1,611 @@
+package org.example.clinica.service;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.example.clinica.dto.EstadoCorreos;
+import org.example.clinica.model.mongo.CorreoSaliente;
+import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.model.postgres.Usuario;
+import org.example.clinica.repository.postgres.UsuarioRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cola de correos salientes (outbox) y su despacho en segundo plano.
+ *
+ * Los servicios no llaman al SMTP durante el request: registran el correo en
+ * la colección "correos_salientes" y vuelven. Una tarea periódica toma los
+ * pendientes en lotes de hasta TAMANIO_LOTE y los envía en el pool acotado
+ * correoExecutor; cada lote viaja por una sola conexión SMTP reutilizada
+ * (EnvioSmtpService) y respeta su límite de envíos por minuto.
+ *
+ * Garantías:
+ * - Durabilidad: el QR de un paciente se encola ANTES de escribir el
+ *   paciente. Si el proceso se cae entre las dos escrituras, el correo ya
+ *   está guardado. Al enviarlo se verifica que el paciente exista y tenga
+ *   los emails esperados; si el cambio no llegó a guardarse (o quedó viejo
+ *   por otro cambio posterior), el correo se cancela. En una actualización
+ *   el QR se encola retenido y se libera solo si los emails cambiaron; si el
+ *   proceso se cae antes, queda disponible pasado RETENCION.
+ * - Deduplicación: un índice único parcial sobre "clave" admite un solo
+ *   correo activo (PENDIENTE o ENVIANDO) por clave. Encolar dos veces lo
+ *   mismo no envía dos correos.
+ * - Reintentos: cada fallo del SMTP reprograma el correo con espera
+ *   exponencial (30 s, 1 min, 2 min... hasta 1 h, con algo de azar). Tras
+ *   MAXIMO_INTENTOS queda FALLIDO (dead letter) hasta que un administrador lo
+ *   reintente.
+ * - Varias instancias: cada correo se toma con un findAndModify atómico,
+ *   así que dos workers nunca envían el mismo. Si una instancia se cae con un
+ *   correo tomado, vuelve a la cola pasado TIEMPO_TOMADO.
+ */
+@Service
+public class CorreosSalientesService {
+
+    /**
+     * Lotes enviados a la vez por instancia (tamaño del pool correoExecutor).
+     * Coincide con las conexiones SMTP por defecto: más hilos solo esperarían conexión.
+     */
+    public static final int ENVIOS_SIMULTANEOS = 2;
+
+    /**
+     * Correos que toma un worker de una vez y envía por la misma conexión.
+     */
+    public static final int TAMANIO_LOTE = 10;
+
+    /**
+     * Intentos antes de marcar el correo como FALLIDO.
+     */
+    public static final int MAXIMO_INTENTOS = 8;
+
+    /**
+     * Tiempo que se conservan los correos enviados o cancelados.
+     */
+    public static final Duration RETENCION_FINALIZADOS = Duration.ofDays(7);
+
+    private static final Duration ESPERA_BASE = Duration.ofSeconds(30);
+    private static final Duration ESPERA_MAXIMA = Duration.ofHours(1);
+
+    // Si un worker no termina en este tiempo, se asume caído y otro retoma el correo
+    private static final Duration TIEMPO_TOMADO = Duration.ofMinutes(5);
+
+    // El correo puede tomarse antes de que se guarde el cambio que lo originó:
+    // durante este plazo una verificación fallida se reintenta en vez de cancelar
+    private static final Duration GRACIA_VERIFICACION = Duration.ofMinutes(1);
+    private static final Duration ESPERA_VERIFICACION = Duration.ofSeconds(5);
+
+    // Un correo retenido no se toma hasta que se libera, o pasado este plazo
+    // (si el proceso se cayó entre el encolado y la escritura del paciente)
+    private static final Duration RETENCION = Duration.ofMinutes(2);
+
+    // Índice único de "clave" (ver IndicesMongoService) y código de clave repetida
+    private static final String INDICE_CLAVE = "clave_activa";
+    private static final int CLAVE_REPETIDA = 11000;
+
+    private static final int FALLIDOS_INFORMADOS = 20;
+    private static final int LARGO_MAXIMO_ERROR = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final QrService qrService;
+    private final EnvioSmtpService envioSmtpService;
+    private final UsuarioRepository usuarioRepository;
+    private final TaskExecutor correoExecutor;
+
+    // Limita los lotes tomados a los que el pool puede enviar ya
+    private final Semaphore lugaresLibres = new Semaphore(ENVIOS_SIMULTANEOS);
+
+    public CorreosSalientesService(MongoTemplate mongoTemplate,
+                                   QrService qrService,
+                                   EnvioSmtpService envioSmtpService,
+                                   UsuarioRepository usuarioRepository,
+                                   @Qualifier("correoExecutor") TaskExecutor correoExecutor) {
+        this.mongoTemplate = mongoTemplate;
+        this.qrService = qrService;
+        this.envioSmtpService = envioSmtpService;
+        this.usuarioRepository = usuarioRepository;
+        this.correoExecutor = correoExecutor;
+    }
+
+    // -----------------------------------------------------
+    //                      ENCOLADO
+    // -----------------------------------------------------
+
+    /**
+     * Encola el envío del QR de un paciente a sus primeros emails.
+     * Debe llamarse antes de escribir el paciente (ver la clase).
+     *
+     * @param pacienteId ID del paciente (ya asignado).
+     * @param emails Emails que tendrá el paciente después del cambio.
+     * @return ID del correo encolado, o null si no hay emails o ya había uno igual en cola.
+     */
+    public String encolarQrPaciente(String pacienteId, List<String> emails) {
+        return encolarQrPaciente(pacienteId, emails, Instant.now());
+    }
+
+    /**
+     * Encola el QR de un paciente retenido: ningún worker lo toma hasta que se
+     * llame a liberar() (o pase RETENCION). Sirve cuando recién después de
+     * escribir se sabe si hace falta enviarlo: si se encolara listo, un worker
+     * podría tomarlo antes de que se descarte.
+     *
+     * @param pacienteId ID del paciente.
+     * @param emails Emails que tendrá el paciente después del cambio.
+     * @return ID del correo encolado, o null si no hay emails o ya había uno igual en cola.
+     */
+    public String encolarQrPacienteRetenido(String pacienteId, List<String> emails) {
+        return encolarQrPaciente(pacienteId, emails, Instant.now().plus(RETENCION));
+    }
+
+    private String encolarQrPaciente(String pacienteId, List<String> emails, Instant proximoIntento) {
+        if (emails == null || emails.isEmpty()) {
+            return null;
+        }
+        try {
+            CorreoSaliente correo = correoQr(pacienteId, emails, Instant.now());
+            correo.setProximoIntento(proximoIntento);
+            return mongoTemplate.insert(correo).getId();
+        } catch (DuplicateKeyException e) {
+            if (!esClaveRepetida(e)) {
+                throw e;
+            }
+            // Ya hay un envío igual en cola
+            return null;
+        }
+    }
+
+    /**
+     * Encola el QR de varios pacientes en una sola escritura (importación).
+     * Los pacientes sin emails se omiten y los repetidos se ignoran.
+     *
+     * @param pacientes Pacientes con el ID ya asignado.
+     */
+    public void encolarQrPacientes(List<Paciente> pacientes) {
+        Instant ahora = Instant.now();
+        List<CorreoSaliente> correos = new ArrayList<>();
+        for (Paciente paciente : pacientes) {
+            if (paciente.getEmails() != null && !paciente.getEmails().isEmpty()) {
+                correos.add(correoQr(paciente.getId(), paciente.getEmails(), ahora));
+            }
+        }
+        if (correos.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CorreoSaliente.class)
+                    .insert(correos)
+                    .execute();
+        } catch (BulkOperationException e) {
+            // Las claves repetidas ya estaban en cola; cualquier otro error se propaga
+            if (!e.getErrors().stream().allMatch(CorreosSalientesService::esClaveRepetida)) {
+                throw e;
+            }
+            System.out.println("📧 " + e.getErrors().size() + " QR ya estaban en cola");
+        }
+    }
+
+    /**
+     * Encola el email de bienvenida de un usuario.
+     *
+     * @param usuario Usuario ya guardado.
+     */
+    public void encolarBienvenida(Usuario usuario) {
+        Instant ahora = Instant.now();
+        CorreoSaliente correo = nuevo(CorreoSaliente.Tipo.BIENVENIDA, "bienvenida:" + usuario.getEmail(), ahora);
+        correo.setReferencia(usuario.getEmail());
+        correo.setDestinatarios(List.of(usuario.getEmail()));
+        try {
+            mongoTemplate.insert(correo);
+        } catch (DuplicateKeyException e) {
+            if (!esClaveRepetida(e)) {
+                throw e;
+            }
+            // Ya hay una bienvenida en cola para ese email
+        }
+    }
+
+    /**
+     * Libera un correo retenido para que se envíe en el próximo despacho.
+     *
+     * @param correoId ID devuelto por encolarQrPacienteRetenido (puede ser null).
+     */
+    public void liberar(String correoId) {
+        if (correoId == null) {
+            return;
+        }
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(correoId).and("estado").is(CorreoSaliente.Estado.PENDIENTE)),
+                new Update().set("proximoIntento", Instant.now()),
+                CorreoSaliente.class);
+    }
+
+    /**
+     * Descarta un correo encolado que resultó innecesario (por ejemplo, una
+     * actualización que no cambió los emails). Solo si nadie lo tomó todavía.
+     *
+     * @param correoId ID devuelto por encolarQrPaciente (puede ser null).
+     */
+    public void descartar(String correoId) {
+        if (correoId == null) {
+            return;
+        }
+        mongoTemplate.remove(
+                new Query(Criteria.where("_id").is(correoId).and("estado").is(CorreoSaliente.Estado.PENDIENTE)),
+                CorreoSaliente.class);
+    }
+
+    /**
+     * Indica si el error es la clave de un correo que ya está en cola, y no
+     * otro índice único u otro error del servidor.
+     */
+    static boolean esClaveRepetida(DuplicateKeyException e) {
+        return e.getMostSpecificCause() instanceof MongoServerException error
+                && esClaveRepetida(error.getCode(), error.getMessage());
+    }
+
+    static boolean esClaveRepetida(BulkWriteError error) {
+        return esClaveRepetida(error.getCode(), error.getMessage());
+    }
+
+    private static boolean esClaveRepetida(int codigo, String mensaje) {
+        return codigo == CLAVE_REPETIDA && mensaje != null && mensaje.contains(INDICE_CLAVE);
+    }
+
+    private static CorreoSaliente correoQr(String pacienteId, List<String> emails, Instant ahora) {
+        // La clave incluye los emails: otro cambio de emails es otro correo
+        String huella = UUID.nameUUIDFromBytes(String.join("\n", emails).getBytes(StandardCharsets.UTF_8)).toString();
+        CorreoSaliente correo = nuevo(CorreoSaliente.Tipo.QR_PACIENTE, "qr:" + pacienteId + ":" + huella, ahora);
+        correo.setReferencia(pacienteId);
+        correo.setDestinatarios(List.copyOf(emails));
+        return correo;
+    }
+
+    private static CorreoSaliente nuevo(CorreoSaliente.Tipo tipo, String clave, Instant ahora) {
+        return CorreoSaliente.builder()
+                .tipo(tipo)
+                .clave(clave)
+                .activo(true)
+                .estado(CorreoSaliente.Estado.PENDIENTE)
+                .intentos(0)
+                .proximoIntento(ahora)
+                .creadoEn(ahora)
+                .build();
+    }
+
+    // -----------------------------------------------------
+    //                      DESPACHO
+    // -----------------------------------------------------
+
+    /**
+     * Toma lotes de correos pendientes mientras haya lugar en el pool y cupo
+     * de envíos, y los envía. Se ejecuta periódicamente
+     * (clinica.correos.intervalo, por defecto 2 s).
+     */
+    @Scheduled(fixedDelayString = "${clinica.correos.intervalo:PT2S}", initialDelayString = "PT10S")
+    public void despachar() {
+        try {
+            while (lugaresLibres.tryAcquire()) {
+                int cupo = envioSmtpService.reservarEnvios(TAMANIO_LOTE);
+                List<CorreoSaliente> lote = new ArrayList<>();
+                CorreoSaliente correo;
+                while (lote.size() < cupo && (correo = tomar()) != null) {
+                    lote.add(correo);
+                }
+                envioSmtpService.devolverEnvios(cupo - lote.size());
+                if (lote.isEmpty()) {
+                    lugaresLibres.release();
+                    return;
+                }
+                try {
+                    correoExecutor.execute(() -> {
+                        try {
+                            procesarLote(lote);
+                        } finally {
+                            lugaresLibres.release();
+                        }
+                    });
+                } catch (TaskRejectedException e) {
+                    lugaresLibres.release();
+                    envioSmtpService.devolverEnvios(lote.size());
+                    Instant proximoIntento = Instant.now().plus(ESPERA_VERIFICACION);
+                    lote.forEach(tomado -> reprogramar(tomado, proximoIntento, tomado.getIntentos(), null));
+                    return;
+                }
+                if (lote.size() < cupo) {
+                    // No quedan pendientes (o se agotó el cupo)
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Error al despachar correos salientes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Toma atómicamente el próximo correo listo para enviar: un PENDIENTE
+     * cuyo reintento ya venció, o uno tomado por un worker que no respondió.
+     *
+     * @return Correo tomado, o null si no hay ninguno.
+     */
+    private CorreoSaliente tomar() {
+        Instant ahora = Instant.now();
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("estado").is(CorreoSaliente.Estado.PENDIENTE).and("proximoIntento").lte(ahora),
+                Criteria.where("estado").is(CorreoSaliente.Estado.ENVIANDO).and("tomadoEn").lt(ahora.minus(TIEMPO_TOMADO))
+        )).with(Sort.by("proximoIntento"));
+        Update update = new Update()
+                .set("estado", CorreoSaliente.Estado.ENVIANDO)
+                .set("tomadoEn", ahora);
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), CorreoSaliente.class);
+    }
+
+    /**
+     * Arma los correos de un lote, los envía por una misma conexión y
+     * registra el resultado de cada uno.
+     */
+    void procesarLote(List<CorreoSaliente> lote) {
+        Instant ahora = Instant.now();
+        List<CorreoSaliente> aEnviar = new ArrayList<>();
+        List<MimeMessage> mensajes = new ArrayList<>();
+
+        for (CorreoSaliente correo : lote) {
+            try {
+                MimeMessage mensaje = envioSmtpService.crearMensaje();
+                String motivo = switch (correo.getTipo()) {
+                    case QR_PACIENTE -> armarQr(correo, mensaje);
+                    case BIENVENIDA -> armarBienvenida(correo, mensaje);
+                };
+                if (motivo == null) {
+                    aEnviar.add(correo);
+                    mensajes.add(mensaje);
+                } else {
+                    noCorresponde(correo, motivo, ahora);
+                }
+            } catch (Exception e) {
+                registrarFallo(correo, e, ahora);
+            }
+        }
+        // El cupo de los que no se envían vuelve al límite
+        envioSmtpService.devolverEnvios(lote.size() - aEnviar.size());
+
+        List<Exception> errores = envioSmtpService.enviar(mensajes);
+        int enviados = 0;
+        Instant enviadoEn = Instant.now();
+        for (int i = 0; i < aEnviar.size(); i++) {
+            if (errores.get(i) == null) {
+                finalizar(aEnviar.get(i), CorreoSaliente.Estado.ENVIADO, aEnviar.get(i).getIntentos(), null, enviadoEn);
+                enviados++;
+            } else {
+                registrarFallo(aEnviar.get(i), errores.get(i), enviadoEn);
+            }
+        }
+        if (!aEnviar.isEmpty()) {
+            System.out.println("📧 Lote de correos: " + enviados + " enviados, "
+                    + (aEnviar.size() - enviados) + " con error");
+        }
+    }
+
+    /**
+     * El correo no corresponde (el paciente o usuario no está como se
+     * esperaba): se reintenta durante el plazo de gracia y luego se cancela.
+     */
+    private void noCorresponde(CorreoSaliente correo, String motivo, Instant ahora) {
+        if (correo.getCreadoEn() != null && correo.getCreadoEn().plus(GRACIA_VERIFICACION).isAfter(ahora)) {
+            // El cambio que lo originó puede no haberse guardado todavía
+            reprogramar(correo, ahora.plus(ESPERA_VERIFICACION), correo.getIntentos(), motivo);
+        } else {
+            finalizar(correo, CorreoSaliente.Estado.CANCELADO, correo.getIntentos(), motivo, ahora);
+        }
+    }
+
+    /**
+     * Cuenta un intento fallido: reprograma con espera creciente o, agotados
+     * los intentos, deja el correo FALLIDO.
+     */
+    private void registrarFallo(CorreoSaliente correo, Exception e, Instant ahora) {
+        int intentos = correo.getIntentos() + 1;
+        String error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        if (intentos >= MAXIMO_INTENTOS) {
+            finalizar(correo, CorreoSaliente.Estado.FALLIDO, intentos, error, null);
+            System.err.println("❌ Correo " + correo.getId() + " (" + correo.getTipo() + ") FALLIDO tras "
+                    + intentos + " intentos: " + error);
+        } else {
+            reprogramar(correo, ahora.plus(espera(intentos)), intentos, error);
+            System.err.println("⚠️ Falló el envío del correo " + correo.getId() + " (intento " + intentos
+                    + "), se reintentará: " + error);
+        }
+    }
+
+    /**
+     * Espera antes del reintento: exponencial desde ESPERA_BASE hasta
+     * ESPERA_MAXIMA, más hasta un 20% al azar para no reintentar todos juntos.
+     */
+    static Duration espera(int intentos) {
+        long base = ESPERA_BASE.toMillis() << Math.min(intentos - 1, 20);
+        long acotada = Math.min(base, ESPERA_MAXIMA.toMillis());
+        return Duration.ofMillis(acotada + ThreadLocalRandom.current().nextLong(acotada / 5 + 1));
+    }
+
+    private void reprogramar(CorreoSaliente correo, Instant proximoIntento, int intentos, String error) {
+        Update update = new Update()
+                .set("estado", CorreoSaliente.Estado.PENDIENTE)
+                .set("proximoIntento", proximoIntento)
+                .set("intentos", intentos)
+                .unset("tomadoEn");
+        if (error != null) {
+            update.set("ultimoError", recortar(error));
+        }
+        mongoTemplate.updateFirst(tomadoPorMi(correo), update, CorreoSaliente.class);
+    }
+
+    private void finalizar(CorreoSaliente correo, CorreoSaliente.Estado estado, int intentos,
+                           String error, Instant finalizadoEn) {
+        Update update = new Update()
+                .set("estado", estado)
+                .set("intentos", intentos)
+                .unset("activo")
+                .unset("tomadoEn");
+        if (error != null) {
+            update.set("ultimoError", recortar(error));
+        }
+        if (finalizadoEn != null) {
+            update.set("finalizadoEn", finalizadoEn);
+        }
+        mongoTemplate.updateFirst(tomadoPorMi(correo), update, CorreoSaliente.class);
+    }
+
+    /**
+     * Filtro del correo mientras siga tomado por este worker (si otro lo
+     * retomó por demora, este resultado ya no cuenta).
+     */
+    private static Query tomadoPorMi(CorreoSaliente correo) {
+        return new Query(Criteria.where("_id").is(correo.getId())
+                .and("estado").is(CorreoSaliente.Estado.ENVIANDO)
+                .and("tomadoEn").is(correo.getTomadoEn()));
+    }
+
+    private static String recortar(String texto) {
+        return texto.length() <= LARGO_MAXIMO_ERROR ? texto : texto.substring(0, LARGO_MAXIMO_ERROR);
+    }
+
+    // -----------------------------------------------------
+    //                 ARMADO DE LOS CORREOS
+    // -----------------------------------------------------
+
+    /**
+     * Arma el correo del QR si el paciente existe y sigue con los emails esperados.
+     *
+     * @return null si quedó listo para enviar, o el motivo por el que no corresponde enviarlo.
+     */
+    private String armarQr(CorreoSaliente correo, MimeMessage mensaje) throws MessagingException {
+        Query query = new Query(Criteria.where("_id").is(correo.getReferencia()));
+        query.fields().include("emails").include("qrCodeData");
+        Document paciente = mongoTemplate.findOne(query, Document.class, "pacientes");
+        if (paciente == null) {
+            return "el paciente no existe";
+        }
+        List<String> emails = paciente.getList("emails", String.class);
+        if (emails == null || !emails.equals(correo.getDestinatarios())) {
+            return "los emails del paciente cambiaron";
+        }
+        qrService.armarCorreoQr(mensaje, correo.getReferencia(), paciente.getString("qrCodeData"), emails);
+        return null;
+    }
+
+    /**
+     * Arma la bienvenida si el usuario existe.
+     *
+     * Contenido:
+     * - Datos de acceso (solo email; la contraseña la entregará el administrador).
+     * - Instrucciones para iniciar sesión en la aplicación web.
+     *
+     * @return null si quedó listo para enviar, o el motivo por el que no corresponde enviarlo.
+     */
+    private String armarBienvenida(CorreoSaliente correo, MimeMessage mensaje) throws MessagingException {
+        Usuario usuario = usuarioRepository.findByEmail(correo.getReferencia()).orElse(null);
+        if (usuario == null) {
+            return "el usuario no existe";
+        }
+
+        MimeMessageHelper helper = new MimeMessageHelper(mensaje, true);
+
+        helper.setTo(usuario.getEmail());
+        helper.setSubject("Bienvenido a la Clínica Nefrológica Integral");
+        helper.setText(
+                "Hola " + usuario.getNombre() + ",\n\n" +
+                        "Somos de la Clínica Nefrológica Integral y le damos la bienvenida a nuestro sistema.\n\n" +
+                        "Sus datos para acceder a nuestra página web son:\n\n" +
+                        "Email: " + usuario.getEmail() + "\n\n" +
+                        "Por favor, no divulgue estos datos personales. Son exclusivamente para su uso profesional.\n\n" +
+                        "Para acceder al sistema:\n" +
+                        "1. Visite: http://localhost:4200\n" +
+                        "2. Inicie sesión con su email y la contraseña que le proporcionará el administrador\n\n" +
+                        "Si tiene alguna duda, no dude en contactarnos.\n\n" +
+                        "Atentamente,\nClínica Nefrológica Integral"
+        );
+        return null;
+    }
+
+    // -----------------------------------------------------
+    //                  ESTADO Y DEAD LETTER
+    // -----------------------------------------------------
+
+    /**
+     * Resume el estado de la cola.
+     *
+     * @return Cantidades por estado, pendiente más antiguo y últimos fallidos.
+     */
+    public EstadoCorreos estado() {
+        // Un conteo por estado: cada uno se resuelve con el índice (estado, proximoIntento)
+        Map<String, Long> porEstado = new LinkedHashMap<>();
+        for (CorreoSaliente.Estado estado : CorreoSaliente.Estado.values()) {
+            porEstado.put(estado.name(),
+                    mongoTemplate.count(new Query(Criteria.where("estado").is(estado)), CorreoSaliente.class));
+        }
+
+        Query pendientes = new Query(Criteria.where("estado").is(CorreoSaliente.Estado.PENDIENTE))
+                .with(Sort.by("proximoIntento")).limit(1);
+        CorreoSaliente masAntiguo = mongoTemplate.findOne(pendientes, CorreoSaliente.class);
+
+        Query fallidos = new Query(Criteria.where("estado").is(CorreoSaliente.Estado.FALLIDO))
+                .with(Sort.by(Sort.Direction.DESC, "proximoIntento")).limit(FALLIDOS_INFORMADOS);
+
+        return EstadoCorreos.builder()
+                .porEstado(porEstado)
+                .pendienteMasAntiguo(masAntiguo == null ? null : masAntiguo.getCreadoEn())
+                .enviosEnCurso(ENVIOS_SIMULTANEOS - lugaresLibres.availablePermits())
+                .fallidos(mongoTemplate.find(fallidos, CorreoSaliente.class))
+                .build();
+    }
+
+    /**
+     * Devuelve a la cola un correo FALLIDO, con los intentos en cero.
+     *
+     * @param id ID del correo.
+     * @return Correo reencolado.
+     * @throws RuntimeException si no existe o no está FALLIDO.
+     * @throws DuplicateKeyException si ya hay otro correo igual en cola.
+     */
+    public CorreoSaliente reintentar(String id) {
+        Update update = new Update()
+                .set("estado", CorreoSaliente.Estado.PENDIENTE)
+                .set("activo", true)
+                .set("intentos", 0)
+                .set("proximoIntento", Instant.now())
+                // La verificación del paciente o usuario vuelve a tener plazo de gracia
+                .set("creadoEn", Instant.now());
+        CorreoSaliente correo = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(id).and("estado").is(CorreoSaliente.Estado.FALLIDO)),
+                update, FindAndModifyOptions.options().returnNew(true), CorreoSaliente.class);
+        if (correo == null) {
+            throw new RuntimeException("Correo no encontrado");
+        }
+        return correo;
+    }
+}
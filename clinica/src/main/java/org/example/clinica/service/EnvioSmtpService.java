@@ -0,0 +1,290 @@
+package org.example.clinica.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Envío de correos por SMTP reutilizando conexiones.
+ *
+ * JavaMailSender.send abre una conexión (TCP + TLS + autenticación) por cada
+ * mensaje. Este servicio mantiene un pool chico de conexiones autenticadas y
+ * envía lotes de mensajes por una misma conexión:
+ * - Hasta clinica.correos.conexiones-smtp conexiones abiertas a la vez; si
+ *   están todas ocupadas, el lote espera a que se libere una.
+ * - Una conexión se descarta tras MENSAJES_POR_CONEXION mensajes o
+ *   INACTIVIDAD_MAXIMA sin uso (los servidores cortan las conexiones ociosas).
+ * - Si la conexión se cortó a mitad del lote, se reconecta una vez y se sigue.
+ *   Un destinatario rechazado solo hace fallar su mensaje, no el lote.
+ * - Límite de envíos por minuto (clinica.correos.limite-por-minuto), para
+ *   no superar la cuota del proveedor. Quien envía reserva cupo antes de
+ *   armar el lote (ver CorreosSalientesService), así ningún hilo queda
+ *   bloqueado esperando cupo.
+ *
+ * Usa la sesión y los datos de conexión de spring.mail.*.
+ */
+@Service
+public class EnvioSmtpService {
+
+    /**
+     * Mensajes máximos por conexión antes de renovarla.
+     */
+    public static final int MENSAJES_POR_CONEXION = 100;
+
+    /**
+     * Tiempo sin uso tras el que se cierra una conexión.
+     */
+    public static final Duration INACTIVIDAD_MAXIMA = Duration.ofMinutes(2);
+
+    /**
+     * Conexión abierta con el servidor y su uso.
+     */
+    private static final class Conexion {
+        private final Transport transporte;
+        private int mensajes;
+        private long ultimoUso = System.nanoTime();
+
+        private Conexion(Transport transporte) {
+            this.transporte = transporte;
+        }
+
+        private boolean vencida() {
+            return mensajes >= MENSAJES_POR_CONEXION
+                    || System.nanoTime() - ultimoUso > INACTIVIDAD_MAXIMA.toNanos();
+        }
+    }
+
+    private final JavaMailSenderImpl mailSender;
+    private final int limitePorMinuto;
+
+    // Conexiones libres, la usada más recientemente primero
+    private final BlockingDeque<Conexion> libres = new LinkedBlockingDeque<>();
+    private final Semaphore conexionesDisponibles;
+
+    // Cupo de envíos (token bucket): se recarga de forma continua hasta limitePorMinuto
+    private double cupo;
+    private long ultimaRecarga = System.nanoTime();
+
+    public EnvioSmtpService(JavaMailSenderImpl mailSender,
+                            @Value("${clinica.correos.conexiones-smtp:2}") int conexiones,
+                            @Value("${clinica.correos.limite-por-minuto:20}") int limitePorMinuto) {
+        if (conexiones <= 0) {
+            throw new IllegalArgumentException("clinica.correos.conexiones-smtp debe ser mayor que cero");
+        }
+        this.mailSender = mailSender;
+        this.conexionesDisponibles = new Semaphore(conexiones);
+        this.limitePorMinuto = limitePorMinuto;
+        this.cupo = limitePorMinuto;
+    }
+
+    // -----------------------------------------------------
+    //                    LÍMITE DE ENVÍOS
+    // -----------------------------------------------------
+
+    /**
+     * Reserva cupo para enviar hasta la cantidad pedida.
+     *
+     * @param cantidad Mensajes que se quieren enviar.
+     * @return Mensajes que pueden enviarse ahora (puede ser 0).
+     */
+    public synchronized int reservarEnvios(int cantidad) {
+        if (limitePorMinuto <= 0) {
+            return cantidad;
+        }
+        long ahora = System.nanoTime();
+        cupo = Math.min(limitePorMinuto, cupo + (ahora - ultimaRecarga) * limitePorMinuto / 60e9);
+        ultimaRecarga = ahora;
+        int reservados = (int) Math.min(cantidad, Math.floor(cupo));
+        cupo -= reservados;
+        return reservados;
+    }
+
+    /**
+     * Devuelve cupo reservado que no se usó.
+     *
+     * @param cantidad Mensajes reservados y no enviados.
+     */
+    public synchronized void devolverEnvios(int cantidad) {
+        if (limitePorMinuto > 0 && cantidad > 0) {
+            cupo = Math.min(limitePorMinuto, cupo + cantidad);
+        }
+    }
+
+    // -----------------------------------------------------
+    //                         ENVÍO
+    // -----------------------------------------------------
+
+    /**
+     * Crea un mensaje vacío en la sesión de correo de la aplicación.
+     *
+     * @return Mensaje a completar.
+     */
+    public MimeMessage crearMensaje() {
+        return mailSender.createMimeMessage();
+    }
+
+    /**
+     * Envía un lote de mensajes por una misma conexión del pool.
+     *
+     * El cupo de envíos debe haberse reservado antes (reservarEnvios).
+     *
+     * @param mensajes Mensajes a enviar.
+     * @return Por cada mensaje, en el mismo orden: null si se envió o el error.
+     */
+    public List<Exception> enviar(List<MimeMessage> mensajes) {
+        List<Exception> errores = new ArrayList<>(mensajes.size());
+        if (mensajes.isEmpty()) {
+            return errores;
+        }
+
+        try {
+            conexionesDisponibles.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mensajes.forEach(mensaje -> errores.add(e));
+            return errores;
+        }
+
+        Conexion conexion = null;
+        try {
+            for (int i = 0; i < mensajes.size() && errores.size() == i; i++) {
+                MimeMessage mensaje = mensajes.get(i);
+                try {
+                    if (conexion == null) {
+                        conexion = tomarConexion();
+                    }
+                    enviar(conexion, mensaje);
+                    errores.add(null);
+                } catch (SendFailedException e) {
+                    // Destinatarios rechazados: falla este mensaje, la conexión sigue sana
+                    errores.add(e);
+                } catch (Exception e) {
+                    // La conexión se cortó (o nunca se abrió): se reintenta una vez con una nueva
+                    cerrar(conexion);
+                    conexion = null;
+                    try {
+                        conexion = conectar();
+                        enviar(conexion, mensaje);
+                        errores.add(null);
+                    } catch (SendFailedException rechazo) {
+                        errores.add(rechazo);
+                    } catch (Exception reintento) {
+                        // El servidor no responde: el resto del lote falla igual, sin más intentos
+                        cerrar(conexion);
+                        conexion = null;
+                        while (errores.size() < mensajes.size()) {
+                            errores.add(reintento);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (conexion != null) {
+                conexion.ultimoUso = System.nanoTime();
+                if (conexion.vencida()) {
+                    cerrar(conexion);
+                } else {
+                    libres.offerFirst(conexion);
+                }
+            }
+            conexionesDisponibles.release();
+        }
+        return errores;
+    }
+
+    private void enviar(Conexion conexion, MimeMessage mensaje) throws MessagingException {
+        if (mensaje.getSentDate() == null) {
+            mensaje.setSentDate(new Date());
+        }
+        mensaje.saveChanges();
+        conexion.transporte.sendMessage(mensaje, mensaje.getAllRecipients());
+        conexion.mensajes++;
+    }
+
+    /**
+     * Toma una conexión libre todavía vigente, o abre una nueva.
+     */
+    private Conexion tomarConexion() throws MessagingException {
+        Conexion conexion;
+        while ((conexion = libres.pollFirst()) != null) {
+            if (!conexion.vencida() && conexion.transporte.isConnected()) {
+                return conexion;
+            }
+            cerrar(conexion);
+        }
+        return conectar();
+    }
+
+    private Conexion conectar() throws MessagingException {
+        String protocolo = mailSender.getProtocol() == null
+                ? JavaMailSenderImpl.DEFAULT_PROTOCOL
+                : mailSender.getProtocol();
+        Transport transporte = mailSender.getSession().getTransport(protocolo);
+        transporte.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+        return new Conexion(transporte);
+    }
+
+    private static void cerrar(Conexion conexion) {
+        if (conexion == null) {
+            return;
+        }
+        try {
+            conexion.transporte.close();
+        } catch (MessagingException e) {
+            // Ya estaba cerrada del lado del servidor
+        }
+    }
+
+    /**
+     * Cierra las conexiones libres que pasaron INACTIVIDAD_MAXIMA sin uso,
+     * antes de que las corte el servidor.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void cerrarInactivas() {
+        List<Conexion> vigentes = new ArrayList<>();
+        Conexion conexion;
+        while ((conexion = libres.pollLast()) != null) {
+            if (conexion.vencida()) {
+                cerrar(conexion);
+            } else {
+                vigentes.add(conexion);
+            }
+        }
+        // Salieron de la más vieja a la más reciente: se devuelven con la más reciente primero
+        for (Conexion vigente : vigentes) {
+            libres.offerFirst(vigente);
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones libres al detener la aplicación.
+     */
+    @PreDestroy
+    public void cerrarTodas() {
+        Conexion conexion;
+        while ((conexion = libres.pollFirst()) != null) {
+            cerrar(conexion);
+        }
+    }
+
+    /**
+     * Conexiones abiertas sin uso en este momento.
+     */
+    public int conexionesLibres() {
+        return libres.size();
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.clinica.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Escritor mínimo de PDF que escribe página por página en la salida.
+ *
+ * Cada página se comprime y se escribe apenas se agrega; en memoria solo
+ * quedan la página actual y la posición de cada objeto (para la tabla xref
+ * del final). Así un documento de miles de páginas ocupa lo mismo que uno
+ * de una.
+ *
+ * Todas las páginas comparten el mismo tamaño y una única fuente: Helvetica
+ * (una de las 14 estándar, no se embebe) con codificación WinAnsi, que
+ * cubre los acentos y la ñ. El contenido de cada página son operadores de
+ * PDF en texto, donde la fuente se llama /F1.
+ *
+ * Objetos: 1 = catálogo, 2 = árbol de páginas (se escribe al final, cuando
+ * ya se conocen todas), 3 = fuente; luego contenido y página alternados.
+ */
+final class EscritorPdf {
+
+    private static final int CATALOGO = 1;
+    private static final int PAGINAS = 2;
+    private static final int FUENTE = 3;
+
+    private static final Charset WIN_ANSI = Charset.forName("windows-1252");
+
+    private final OutputStream salida;
+    private final String tamanioPagina;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final ByteArrayOutputStream comprimido = new ByteArrayOutputStream();
+    private final byte[] buffer = new byte[8192];
+
+    // Posición de cada objeto en la salida (índice = número de objeto)
+    private long[] posiciones = new long[64];
+    private int objetos = FUENTE;
+    private int paginas;
+    private long escritos;
+
+    /**
+     * Escribe el encabezado del documento.
+     *
+     * @param salida Stream donde se escribe el PDF (no se cierra aquí).
+     * @param ancho Ancho de las páginas, en puntos (1/72 de pulgada).
+     * @param alto Alto de las páginas, en puntos.
+     */
+    EscritorPdf(OutputStream salida, int ancho, int alto) throws IOException {
+        this.salida = salida;
+        this.tamanioPagina = "[0 0 " + ancho + " " + alto + "]";
+        // El comentario binario indica a los lectores que el archivo no es texto
+        escribir("%PDF-1.4\n%âãÏÓ\n");
+        iniciarObjeto(FUENTE);
+        escribir("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>\nendobj\n");
+    }
+
+    /**
+     * Agrega una página y la escribe en la salida.
+     *
+     * @param contenido Operadores de la página (ASCII).
+     */
+    void agregarPagina(byte[] contenido) throws IOException {
+        comprimido.reset();
+        deflater.reset();
+        deflater.setInput(contenido);
+        deflater.finish();
+        while (!deflater.finished()) {
+            comprimido.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        int numeroContenido = ++objetos;
+        iniciarObjeto(numeroContenido);
+        escribir("<< /Length " + comprimido.size() + " /Filter /FlateDecode >>\nstream\n");
+        comprimido.writeTo(salida);
+        escritos += comprimido.size();
+        escribir("\nendstream\nendobj\n");
+
+        iniciarObjeto(++objetos);
+        escribir("<< /Type /Page /Parent " + PAGINAS + " 0 R /MediaBox " + tamanioPagina
+                + " /Resources << /Font << /F1 " + FUENTE + " 0 R >> >> /Contents " + numeroContenido + " 0 R >>\nendobj\n");
+        paginas++;
+        salida.flush();
+    }
+
+    /**
+     * Escribe el árbol de páginas, el catálogo y la tabla xref. No cierra la salida.
+     *
+     * @param titulo Título del documento (metadatos).
+     */
+    void terminar(String titulo) throws IOException {
+        deflater.end();
+
+        // Las páginas son los objetos 5, 7, 9... (cada una precedida por su contenido)
+        iniciarObjeto(PAGINAS);
+        StringBuilder hijos = new StringBuilder("<< /Type /Pages /Count ").append(paginas).append(" /Kids [");
+        for (int pagina = 0; pagina < paginas; pagina++) {
+            hijos.append(FUENTE + 2 + 2 * pagina).append(" 0 R ");
+        }
+        escribir(hijos.append("] >>\nendobj\n").toString());
+
+        iniciarObjeto(CATALOGO);
+        escribir("<< /Type /Catalog /Pages " + PAGINAS + " 0 R >>\nendobj\n");
+
+        int informacion = ++objetos;
+        iniciarObjeto(informacion);
+        escribir("<< /Title " + texto(titulo) + " /Producer (Clinica) >>\nendobj\n");
+
+        long inicioXref = escritos;
+        StringBuilder xref = new StringBuilder("xref\n0 ").append(objetos + 1).append('\n');
+        xref.append("0000000000 65535 f \n");
+        for (int objeto = 1; objeto <= objetos; objeto++) {
+            String posicion = Long.toString(posiciones[objeto]);
+            xref.append("0".repeat(10 - posicion.length())).append(posicion).append(" 00000 n \n");
+        }
+        xref.append("trailer\n<< /Size ").append(objetos + 1)
+                .append(" /Root ").append(CATALOGO).append(" 0 R /Info ").append(informacion).append(" 0 R >>\n")
+                .append("startxref\n").append(inicioXref).append("\n%%EOF\n");
+        escribir(xref.toString());
+        salida.flush();
+    }
+
+    /**
+     * Páginas escritas hasta ahora.
+     */
+    int paginas() {
+        return paginas;
+    }
+
+    /**
+     * Cadena de texto de PDF en WinAnsi, con los caracteres especiales
+     * escapados. Todo lo que no es ASCII imprimible se escribe como octal,
+     * así el contenido de la página sigue siendo ASCII. Los caracteres que
+     * WinAnsi no tiene se reemplazan por '?'.
+     *
+     * @param valor Texto a escribir.
+     * @return Cadena entre paréntesis, lista para usar con Tj.
+     */
+    static String texto(String valor) {
+        byte[] bytes = valor.getBytes(WIN_ANSI);
+        StringBuilder cadena = new StringBuilder(bytes.length + 2).append('(');
+        for (byte b : bytes) {
+            int c = b & 0xFF;
+            if (c == '(' || c == ')' || c == '\\') {
+                cadena.append('\\').append((char) c);
+            } else if (c < 32 || c > 126) {
+                // Siempre tres dígitos, para que un número siguiente no se lea como parte del código
+                cadena.append('\\').append((char) ('0' + (c >> 6))).append((char) ('0' + (c >> 3 & 7)))
+                        .append((char) ('0' + (c & 7)));
+            } else {
+                cadena.append((char) c);
+            }
+        }
+        return cadena.append(')').toString();
+    }
+
+    private void iniciarObjeto(int numero) throws IOException {
+        if (numero >= posiciones.length) {
+            posiciones = Arrays.copyOf(posiciones, posiciones.length * 2);
+        }
+        posiciones[numero] = escritos;
+        escribir(numero + " 0 obj\n");
+    }
+
+    /**
+     * Escribe texto con un byte por carácter (ISO-8859-1).
+     */
+    private void escribir(String valor) throws IOException {
+        byte[] bytes = valor.getBytes(StandardCharsets.ISO_8859_1);
+        salida.write(bytes);
+        escritos += bytes.length;
+    }
+}
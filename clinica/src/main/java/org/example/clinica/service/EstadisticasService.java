@@ -0,0 +1,348 @@
+package org.example.clinica.service;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.example.clinica.model.mongo.Estadisticas;
+import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.model.postgres.Role;
+import org.example.clinica.repository.postgres.UsuarioRepository;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Servicio que mantiene las estadísticas del dashboard.
+ *
+ * Funcionamiento:
+ * - PacienteService, ParchePacienteService, ImportacionPacientesService y
+ *   UsuarioService informan cada alta, modificación y baja; aquí se traduce
+ *   en un único $inc sobre el documento de estadísticas (solo de los
+ *   contadores que cambiaron).
+ * - Una tarea periódica recalcula todo con una agregación sobre pacientes y
+ *   un GROUP BY sobre usuarios, y reemplaza el documento. Corrige desvíos por
+ *   escrituras concurrentes, fallos puntuales o cambios hechos fuera de la API.
+ * - Si el documento todavía no existe, la primera lectura lo calcula.
+ *
+ * Un error al actualizar los contadores nunca hace fallar la escritura del
+ * paciente o usuario: se registra y lo corrige el próximo recálculo.
+ */
+@Service
+@RequiredArgsConstructor
+public class EstadisticasService {
+
+    /**
+     * Clave que agrupa los valores vacíos.
+     */
+    public static final String SIN_DATO = "Sin dato";
+
+    /**
+     * Campos del paciente que afectan a las estadísticas.
+     */
+    public static final Set<String> CAMPOS_PACIENTE =
+            Set.of("obraSocial", "institucion", "genero", "testigoJehova", "seTransfunde");
+
+    private static final String COLECCION_PACIENTES = "pacientes";
+
+    private final MongoTemplate mongoTemplate;
+    private final UsuarioRepository usuarioRepository;
+
+    /**
+     * Valores de un paciente que cuentan en las estadísticas.
+     */
+    private record Clasificacion(String obraSocial, String institucion, String genero, String transfusion) {
+
+        static Clasificacion de(Paciente paciente) {
+            return new Clasificacion(
+                    clave(paciente.getObraSocial()),
+                    clave(paciente.getInstitucion()),
+                    clave(paciente.getGenero()),
+                    categoriaTransfusion(paciente.isTestigoJehova(), paciente.isSeTransfunde()));
+        }
+
+        static Clasificacion de(Document documento) {
+            return new Clasificacion(
+                    clave(documento.get("obraSocial")),
+                    clave(documento.get("institucion")),
+                    clave(documento.get("genero")),
+                    categoriaTransfusion(Boolean.TRUE.equals(documento.get("testigoJehova")),
+                            Boolean.TRUE.equals(documento.get("seTransfunde"))));
+        }
+    }
+
+    // ============================================================
+    // 🟦 LECTURA
+    // ============================================================
+
+    /**
+     * Devuelve las estadísticas actuales; los mapas vienen ordenados de mayor
+     * a menor cantidad y sin las claves en cero.
+     *
+     * @return Estadísticas del dashboard.
+     */
+    public Estadisticas obtener() {
+        Estadisticas guardadas = mongoTemplate.findById(Estadisticas.ID_GLOBAL, Estadisticas.class);
+        if (guardadas == null) {
+            guardadas = recalcular();
+        }
+        return Estadisticas.builder()
+                .id(guardadas.getId())
+                .pacientes(guardadas.getPacientes())
+                .pacientesPorObraSocial(decodificar(guardadas.getPacientesPorObraSocial()))
+                .pacientesPorInstitucion(decodificar(guardadas.getPacientesPorInstitucion()))
+                .pacientesPorGenero(decodificar(guardadas.getPacientesPorGenero()))
+                .pacientesPorTransfusion(decodificar(guardadas.getPacientesPorTransfusion()))
+                .usuarios(guardadas.getUsuarios())
+                .usuariosPorRol(decodificar(guardadas.getUsuariosPorRol()))
+                .recalculadoEn(guardadas.getRecalculadoEn())
+                .build();
+    }
+
+    // ============================================================
+    // 🟦 MANTENIMIENTO INCREMENTAL
+    // ============================================================
+
+    /**
+     * Suma un paciente nuevo.
+     *
+     * @param paciente Paciente insertado.
+     */
+    public void registrarAlta(Paciente paciente) {
+        registrarAltas(List.of(paciente));
+    }
+
+    /**
+     * Suma varios pacientes nuevos con una sola escritura (importación masiva).
+     *
+     * @param pacientes Pacientes insertados.
+     */
+    public void registrarAltas(Collection<Paciente> pacientes) {
+        Map<String, Long> incrementos = new LinkedHashMap<>();
+        pacientes.forEach(paciente -> sumar(incrementos, Clasificacion.de(paciente), 1));
+        aplicar(incrementos);
+    }
+
+    /**
+     * Mueve un paciente de categoría si cambió alguno de los campos contados.
+     *
+     * @param anterior Documento del paciente antes de la escritura.
+     * @param actual Paciente después de la escritura.
+     */
+    public void registrarModificacion(Document anterior, Paciente actual) {
+        Map<String, Long> incrementos = new LinkedHashMap<>();
+        sumar(incrementos, Clasificacion.de(anterior), -1);
+        sumar(incrementos, Clasificacion.de(actual), 1);
+        aplicar(incrementos);
+    }
+
+    /**
+     * Resta un paciente eliminado.
+     *
+     * @param eliminado Documento del paciente tal como estaba al borrarlo.
+     */
+    public void registrarBaja(Document eliminado) {
+        Map<String, Long> incrementos = new LinkedHashMap<>();
+        sumar(incrementos, Clasificacion.de(eliminado), -1);
+        aplicar(incrementos);
+    }
+
+    /**
+     * Suma un usuario nuevo.
+     *
+     * @param rol Rol del usuario.
+     */
+    public void registrarAltaUsuario(Role rol) {
+        aplicar(Map.of("usuarios", 1L, ruta("usuariosPorRol", clave(rol)), 1L));
+    }
+
+    /**
+     * Mueve un usuario de un rol a otro.
+     *
+     * @param anterior Rol antes de la edición.
+     * @param actual Rol después de la edición.
+     */
+    public void registrarCambioRol(Role anterior, Role actual) {
+        Map<String, Long> incrementos = new LinkedHashMap<>();
+        incrementos.merge(ruta("usuariosPorRol", clave(anterior)), -1L, Long::sum);
+        incrementos.merge(ruta("usuariosPorRol", clave(actual)), 1L, Long::sum);
+        aplicar(incrementos);
+    }
+
+    /**
+     * Resta un usuario eliminado.
+     *
+     * @param rol Rol que tenía el usuario.
+     */
+    public void registrarBajaUsuario(Role rol) {
+        aplicar(Map.of("usuarios", -1L, ruta("usuariosPorRol", clave(rol)), -1L));
+    }
+
+    // ============================================================
+    // 🟦 RECÁLCULO COMPLETO
+    // ============================================================
+
+    /**
+     * Recalcula todas las estadísticas y reemplaza el documento.
+     *
+     * Una sola agregación ($facet) recorre los pacientes agrupando por cada
+     * campo a la vez; los usuarios se cuentan por rol en PostgreSQL.
+     *
+     * @return Estadísticas recalculadas.
+     */
+    @Scheduled(
+            fixedDelayString = "${clinica.estadisticas.recalculo:PT1H}",
+            initialDelayString = "${clinica.estadisticas.recalculo-inicial:PT1M}")
+    public Estadisticas recalcular() {
+        Document facetas = new Document()
+                .append("obraSocial", List.of(agrupar("$obraSocial")))
+                .append("institucion", List.of(agrupar("$institucion")))
+                .append("genero", List.of(agrupar("$genero")))
+                .append("transfusion", List.of(agrupar(new Document("$cond", List.of(
+                        new Document("$eq", List.of("$testigoJehova", true)),
+                        "testigoJehova",
+                        new Document("$cond", List.of(
+                                new Document("$ne", List.of("$seTransfunde", true)),
+                                "noSeTransfunde",
+                                "sinRestriccion"))
+                )))));
+        AggregationOperation facet = contexto -> new Document("$facet", facetas);
+
+        Document resultado = mongoTemplate.aggregate(
+                Aggregation.newAggregation(facet), COLECCION_PACIENTES, Document.class).getUniqueMappedResult();
+
+        Map<String, Long> porObraSocial = contar(resultado, "obraSocial");
+        Map<String, Long> porRol = new LinkedHashMap<>();
+        for (Object[] fila : usuarioRepository.contarPorRol()) {
+            porRol.merge(clave(fila[0]), ((Number) fila[1]).longValue(), Long::sum);
+        }
+
+        Estadisticas estadisticas = Estadisticas.builder()
+                .id(Estadisticas.ID_GLOBAL)
+                .pacientes(porObraSocial.values().stream().mapToLong(Long::longValue).sum())
+                .pacientesPorObraSocial(codificar(porObraSocial))
+                .pacientesPorInstitucion(codificar(contar(resultado, "institucion")))
+                .pacientesPorGenero(codificar(contar(resultado, "genero")))
+                .pacientesPorTransfusion(codificar(contar(resultado, "transfusion")))
+                .usuarios(porRol.values().stream().mapToLong(Long::longValue).sum())
+                .usuariosPorRol(codificar(porRol))
+                .recalculadoEn(Instant.now())
+                .build();
+        mongoTemplate.save(estadisticas);
+
+        System.out.println("📊 Estadísticas recalculadas: " + estadisticas.getPacientes()
+                + " pacientes, " + estadisticas.getUsuarios() + " usuarios");
+        return estadisticas;
+    }
+
+    // ============================================================
+    // 🟦 AUXILIARES
+    // ============================================================
+
+    private static Document agrupar(Object expresion) {
+        return new Document("$group", new Document("_id", expresion).append("cantidad", new Document("$sum", 1)));
+    }
+
+    /**
+     * Convierte los grupos de una faceta en un mapa, unificando los valores
+     * que solo difieren en espacios o están vacíos.
+     */
+    private static Map<String, Long> contar(Document resultado, String faceta) {
+        Map<String, Long> conteo = new LinkedHashMap<>();
+        if (resultado == null) {
+            return conteo;
+        }
+        for (Document grupo : resultado.getList(faceta, Document.class, List.of())) {
+            conteo.merge(clave(grupo.get("_id")), grupo.get("cantidad", Number.class).longValue(), Long::sum);
+        }
+        return conteo;
+    }
+
+    private static void sumar(Map<String, Long> incrementos, Clasificacion clasificacion, long signo) {
+        incrementos.merge("pacientes", signo, Long::sum);
+        incrementos.merge(ruta("pacientesPorObraSocial", clasificacion.obraSocial()), signo, Long::sum);
+        incrementos.merge(ruta("pacientesPorInstitucion", clasificacion.institucion()), signo, Long::sum);
+        incrementos.merge(ruta("pacientesPorGenero", clasificacion.genero()), signo, Long::sum);
+        incrementos.merge(ruta("pacientesPorTransfusion", clasificacion.transfusion()), signo, Long::sum);
+    }
+
+    /**
+     * Aplica los incrementos distintos de cero con un único update. Si el
+     * documento aún no existe no se crea: lo arma completo la primera lectura.
+     */
+    private void aplicar(Map<String, Long> incrementos) {
+        Update update = new Update();
+        incrementos.forEach((ruta, cantidad) -> {
+            if (cantidad != 0) {
+                update.inc(ruta, cantidad);
+            }
+        });
+        if (update.getUpdateObject().isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(Estadisticas.ID_GLOBAL)), update, Estadisticas.class);
+        } catch (Exception e) {
+            System.err.println("⚠️ No se pudieron actualizar las estadísticas: " + e.getMessage());
+        }
+    }
+
+    private static String categoriaTransfusion(boolean testigoJehova, boolean seTransfunde) {
+        if (testigoJehova) {
+            return "testigoJehova";
+        }
+        return seTransfunde ? "sinRestriccion" : "noSeTransfunde";
+    }
+
+    private static String clave(Object valor) {
+        if (valor == null || valor.toString().isBlank()) {
+            return SIN_DATO;
+        }
+        return valor.toString().trim();
+    }
+
+    private static String ruta(String mapa, String clave) {
+        return mapa + "." + codificarClave(clave);
+    }
+
+    /**
+     * MongoDB no admite '.' ni '$' en los nombres de campo usados en $inc:
+     * se escapan como en una URL ("O.S.D.E." se guarda "O%2ES%2ED%2EE%2E").
+     */
+    private static String codificarClave(String clave) {
+        return clave.replace("%", "%25").replace(".", "%2E").replace("$", "%24");
+    }
+
+    private static String decodificarClave(String clave) {
+        return clave.replace("%2E", ".").replace("%24", "$").replace("%25", "%");
+    }
+
+    private static Map<String, Long> codificar(Map<String, Long> mapa) {
+        Map<String, Long> codificado = new LinkedHashMap<>();
+        mapa.forEach((clave, cantidad) -> codificado.put(codificarClave(clave), cantidad));
+        return codificado;
+    }
+
+    private static Map<String, Long> decodificar(Map<String, Long> mapa) {
+        Map<String, Long> decodificado = new LinkedHashMap<>();
+        if (mapa == null) {
+            return decodificado;
+        }
+        mapa.entrySet().stream()
+                .filter(entrada -> entrada.getValue() != null && entrada.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entrada -> decodificado.put(decodificarClave(entrada.getKey()), entrada.getValue()));
+        return decodificado;
+    }
+}
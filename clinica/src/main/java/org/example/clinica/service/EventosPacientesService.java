@@ -0,0 +1,211 @@
+package org.example.clinica.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.example.clinica.dto.CambioPaciente;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Servicio que envía a las pantallas abiertas los cambios de pacientes
+ * mediante Server-Sent Events (SSE), para que no tengan que recargar.
+ *
+ * Funcionamiento:
+ * - Una única fuente de cambios (change stream de MongoDB) alimenta a todos
+ *   los suscriptores: no se abre un cursor por pestaña.
+ * - Suscripción por paciente: recibe todos los cambios de ese paciente
+ *   (modificaciones, baja, nuevas entradas de historia y evolución).
+ * - Suscripción al listado: recibe altas, bajas y cambios en los campos del
+ *   resumen (nombre, apellido, documento, fecha de nacimiento).
+ * - Cada cambio recibido invalida el paciente en PacienteCache, lo que también
+ *   cubre escrituras hechas desde otras instancias.
+ * - Un comentario periódico mantiene viva la conexión a través de proxies.
+ */
+@Service
+@RequiredArgsConstructor
+public class EventosPacientesService {
+
+    /**
+     * Duración máxima de una conexión SSE; el navegador se reconecta solo.
+     */
+    public static final Duration DURACION_CONEXION = Duration.ofMinutes(30);
+
+    // Campos que muestra el listado de pacientes
+    private static final Set<String> CAMPOS_RESUMEN = Set.of("nombre", "apellido", "documento", "fechaNacimiento");
+
+    private final FuenteCambiosPacientes fuenteCambios;
+    private final PacienteCache pacienteCache;
+
+    // Suscriptores por ID de paciente
+    private final Map<String, Set<SseEmitter>> suscriptoresPorPaciente = new ConcurrentHashMap<>();
+
+    // Suscriptores del listado
+    private final Set<SseEmitter> suscriptoresListado = new CopyOnWriteArraySet<>();
+
+    /**
+     * Conecta la fuente de cambios al iniciar la aplicación.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        fuenteCambios.iniciar(this::publicar);
+    }
+
+    @PreDestroy
+    public void detener() {
+        fuenteCambios.detener();
+        suscriptoresListado.forEach(SseEmitter::complete);
+        suscriptoresPorPaciente.values().forEach(emisores -> emisores.forEach(SseEmitter::complete));
+    }
+
+    /**
+     * Abre una suscripción a los cambios de un paciente.
+     *
+     * @param pacienteId ID del paciente.
+     * @return Emisor SSE a devolver desde el controlador.
+     */
+    public SseEmitter suscribirPaciente(String pacienteId) {
+        SseEmitter emisor = new SseEmitter(DURACION_CONEXION.toMillis());
+        registrarPaciente(pacienteId, emisor);
+        return emisor;
+    }
+
+    /**
+     * Abre una suscripción a los cambios del listado de pacientes.
+     *
+     * @return Emisor SSE a devolver desde el controlador.
+     */
+    public SseEmitter suscribirListado() {
+        SseEmitter emisor = new SseEmitter(DURACION_CONEXION.toMillis());
+        registrarListado(emisor);
+        return emisor;
+    }
+
+    /**
+     * Reparte un cambio a los suscriptores que corresponda.
+     * Los emisores que fallan (pestaña cerrada) se descartan.
+     *
+     * @param cambio Cambio recibido de la fuente.
+     */
+    public void publicar(CambioPaciente cambio) {
+        if (cambio.getPacienteId() == null) {
+            return;
+        }
+        if (cambio.getTipo() == CambioPaciente.Tipo.MODIFICACION || cambio.getTipo() == CambioPaciente.Tipo.BAJA) {
+            pacienteCache.invalidar(cambio.getPacienteId());
+        }
+
+        Set<SseEmitter> delPaciente = suscriptoresPorPaciente.get(cambio.getPacienteId());
+        if (delPaciente != null) {
+            delPaciente.forEach(emisor -> enviar(emisor, cambio, () -> quitarPaciente(cambio.getPacienteId(), emisor)));
+        }
+
+        CambioPaciente paraListado = cambioParaListado(cambio);
+        if (paraListado != null) {
+            suscriptoresListado.forEach(emisor -> enviar(emisor, paraListado, () -> suscriptoresListado.remove(emisor)));
+        }
+    }
+
+    /**
+     * Envía un comentario vacío a todas las conexiones para que proxies y
+     * balanceadores no las cierren por inactividad.
+     */
+    @Scheduled(fixedDelay = 25_000)
+    public void mantenerConexiones() {
+        suscriptoresListado.forEach(emisor -> latido(emisor, () -> suscriptoresListado.remove(emisor)));
+        suscriptoresPorPaciente.forEach((pacienteId, emisores) ->
+                emisores.forEach(emisor -> latido(emisor, () -> quitarPaciente(pacienteId, emisor))));
+    }
+
+    /**
+     * @return Cantidad de conexiones abiertas (por paciente y de listado).
+     */
+    public int cantidadSuscriptores() {
+        return suscriptoresListado.size()
+                + suscriptoresPorPaciente.values().stream().mapToInt(Set::size).sum();
+    }
+
+    void registrarPaciente(String pacienteId, SseEmitter emisor) {
+        suscriptoresPorPaciente.computeIfAbsent(pacienteId, id -> new CopyOnWriteArraySet<>()).add(emisor);
+        Runnable quitar = () -> quitarPaciente(pacienteId, emisor);
+        emisor.onCompletion(quitar);
+        emisor.onTimeout(quitar);
+        emisor.onError(error -> quitar.run());
+    }
+
+    void registrarListado(SseEmitter emisor) {
+        suscriptoresListado.add(emisor);
+        Runnable quitar = () -> suscriptoresListado.remove(emisor);
+        emisor.onCompletion(quitar);
+        emisor.onTimeout(quitar);
+        emisor.onError(error -> quitar.run());
+    }
+
+    private void quitarPaciente(String pacienteId, SseEmitter emisor) {
+        suscriptoresPorPaciente.computeIfPresent(pacienteId, (id, emisores) -> {
+            emisores.remove(emisor);
+            return emisores.isEmpty() ? null : emisores;
+        });
+    }
+
+    /**
+     * Versión del cambio que le interesa al listado, o null si no le afecta.
+     */
+    private static CambioPaciente cambioParaListado(CambioPaciente cambio) {
+        switch (cambio.getTipo()) {
+            case ALTA, BAJA -> {
+                return cambio;
+            }
+            case MODIFICACION -> {
+                Map<String, Object> campos = new LinkedHashMap<>();
+                if (cambio.getCampos() != null) {
+                    cambio.getCampos().forEach((campo, valor) -> {
+                        if (CAMPOS_RESUMEN.contains(campo)) {
+                            campos.put(campo, valor);
+                        }
+                    });
+                }
+                if (campos.isEmpty()) {
+                    return null;
+                }
+                return CambioPaciente.builder()
+                        .tipo(cambio.getTipo())
+                        .pacienteId(cambio.getPacienteId())
+                        .campos(campos)
+                        .fecha(cambio.getFecha())
+                        .build();
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private static void enviar(SseEmitter emisor, CambioPaciente cambio, Runnable alFallar) {
+        try {
+            emisor.send(SseEmitter.event()
+                    .name(cambio.getTipo().name().toLowerCase())
+                    .data(cambio));
+        } catch (IOException | IllegalStateException e) {
+            alFallar.run();
+        }
+    }
+
+    private static void latido(SseEmitter emisor, Runnable alFallar) {
+        try {
+            emisor.send(SseEmitter.event().comment("latido"));
+        } catch (IOException | IllegalStateException e) {
+            alFallar.run();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.example.clinica.model.mongo.Paciente;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Servicio encargado de exportar la colección de pacientes en formato NDJSON
+ * (un objeto JSON por línea).
+ *
+ * Los pacientes se leen con un cursor de MongoDB y se escriben en la salida a
+ * medida que llegan, sin construir nunca la lista completa en memoria. El uso
+ * de memoria depende del tamaño de un solo documento, no de la cantidad de
+ * pacientes exportados.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExportacionPacientesService {
+
+    // Cantidad de documentos que MongoDB envía por cada lote del cursor
+    private static final int TAMANIO_LOTE_CURSOR = 200;
+
+    // Cada cuántos pacientes se vacía el buffer hacia el cliente
+    private static final int PACIENTES_POR_FLUSH = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Escribe los pacientes en la salida indicada, uno por línea.
+     *
+     * Proceso:
+     * 1. Se arma la consulta con el filtro "desde" y la proyección de campos.
+     * 2. Se recorre un cursor ordenado por _id.
+     * 3. Cada paciente se serializa con Jackson (mismo formato que la API)
+     *    conservando solo los campos pedidos, y se escribe seguido de '\n'.
+     *
+     * @param salida Stream donde se escribe el NDJSON (no se cierra aquí).
+     * @param campos Campos a incluir; vacío para exportar el documento completo.
+     * @param desde Solo exporta pacientes dados de alta a partir de este instante (puede ser null).
+     * @return Cantidad de pacientes exportados.
+     * @throws IOException si falla la escritura hacia el cliente.
+     */
+    public long exportar(OutputStream salida, Set<String> campos, Instant desde) throws IOException {
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.cursorBatchSize(TAMANIO_LOTE_CURSOR);
+
+        // El _id de MongoDB contiene la fecha de creación del documento
+        if (desde != null) {
+            query.addCriteria(Criteria.where("_id").gte(new ObjectId(Date.from(desde))));
+        }
+
+        Set<String> camposSalida = new LinkedHashSet<>();
+        if (!campos.isEmpty()) {
+            camposSalida.add("id");
+            camposSalida.addAll(campos);
+            campos.forEach(campo -> query.fields().include(campo));
+        }
+
+        long exportados = 0;
+        try (Stream<Paciente> pacientes = mongoTemplate.stream(query, Paciente.class);
+             SequenceWriter writer = objectMapper.writer()
+                     .withRootValueSeparator("\n")
+                     .writeValues(new SalidaSinCierre(salida))) {
+
+            for (Paciente paciente : (Iterable<Paciente>) pacientes::iterator) {
+                ObjectNode nodo = objectMapper.valueToTree(paciente);
+                if (!camposSalida.isEmpty()) {
+                    nodo.retain(camposSalida);
+                }
+                writer.write(nodo);
+
+                exportados++;
+                if (exportados % PACIENTES_POR_FLUSH == 0) {
+                    writer.flush();
+                }
+            }
+            if (exportados > 0) {
+                // Salto de línea final para que cada registro termine en '\n'
+                writer.flush();
+                salida.write('\n');
+            }
+        }
+        salida.flush();
+        return exportados;
+    }
+
+    /**
+     * Interpreta el parámetro "since" de la exportación.
+     * Acepta una fecha (2024-01-31, se toma el inicio del día) o un instante ISO-8601.
+     *
+     * @param valor Texto recibido (puede ser null o vacío).
+     * @return Instante correspondiente, o null si no se indicó.
+     * @throws IllegalArgumentException si el formato no es válido.
+     */
+    public static Instant parsearDesde(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return null;
+        }
+        try {
+            if (valor.length() == 10) {
+                return LocalDate.parse(valor).atStartOfDay(ZoneId.systemDefault()).toInstant();
+            }
+            return Instant.parse(valor);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha 'since' inválida: " + valor);
+        }
+    }
+
+    /**
+     * Envoltorio que evita que Jackson cierre el stream de la respuesta al
+     * terminar; el cierre queda a cargo del contenedor o del GZIP.
+     */
+    private static final class SalidaSinCierre extends FilterOutputStream {
+
+        private SalidaSinCierre(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.example.clinica.service;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import lombok.RequiredArgsConstructor;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.clinica.dto.CambioPaciente;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Fuente de cambios basada en los change streams de MongoDB.
+ *
+ * Abre un único cursor sobre la base, filtrado a las colecciones de pacientes,
+ * historia clínica y evolución, y lo lee desde un hilo propio. Cada evento se
+ * traduce a un CambioPaciente con solo los campos modificados.
+ *
+ * Si el cursor se corta (reinicio del servidor, elección de primario) se
+ * vuelve a abrir desde el último evento recibido (resume token). Si el
+ * token ya no sirve (el oplog avanzó más allá, o el servidor lo rechaza) se
+ * descarta y se abre desde el momento actual; como los eventos intermedios se
+ * perdieron, se vacía PacienteCache para no servir pacientes desactualizados.
+ * Los change streams requieren un replica set: con un MongoDB standalone se informa el
+ * error y se reintenta periódicamente, sin afectar al resto de la aplicación.
+ */
+@Component
+@RequiredArgsConstructor
+public class FuenteCambiosMongo implements FuenteCambiosPacientes {
+
+    private static final String COLECCION_PACIENTES = "pacientes";
+    private static final String COLECCION_HISTORIA = "historia_clinica";
+    private static final String COLECCION_EVOLUCION = "evolucion_mensual";
+
+    // Campos del resumen que se informan en las altas
+    private static final List<String> CAMPOS_RESUMEN = List.of("nombre", "apellido", "documento", "fechaNacimiento");
+
+    // Campos internos que no se exponen en la API
+    private static final Set<String> CAMPOS_INTERNOS = Set.of("_id", "_class", "nombreNormalizado", "apellidoNormalizado");
+
+    private static final long ESPERA_MINIMA_MS = 1_000;
+    private static final long ESPERA_MAXIMA_MS = 60_000;
+
+    // Errores del servidor con los que el resume token ya no sirve
+    private static final int HISTORIA_PERDIDA = 286;
+    private static final int TOKEN_INVALIDO = 260;
+    private static final String ETIQUETA_REANUDABLE = "ResumableChangeStreamError";
+
+    private final MongoTemplate mongoTemplate;
+    private final PacienteCache pacienteCache;
+
+    private volatile boolean activa;
+    private Thread hilo;
+    private BsonDocument tokenReanudacion;
+
+    @Override
+    public synchronized void iniciar(Consumer<CambioPaciente> destino) {
+        if (activa) {
+            return;
+        }
+        activa = true;
+        hilo = new Thread(() -> leer(destino), "cambios-pacientes");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    @Override
+    public synchronized void detener() {
+        activa = false;
+    }
+
+    /**
+     * Bucle del hilo lector: abre el cursor, reparte los eventos y, si falla,
+     * lo reabre con espera creciente.
+     */
+    private void leer(Consumer<CambioPaciente> destino) {
+        long espera = ESPERA_MINIMA_MS;
+        while (activa) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = abrir().cursor()) {
+                System.out.println("Escuchando cambios de pacientes (change stream)");
+                espera = ESPERA_MINIMA_MS;
+                while (activa) {
+                    ChangeStreamDocument<Document> evento = cursor.tryNext();
+                    if (evento == null) {
+                        // Sin eventos el servidor igual avanza el token (postBatchResumeToken)
+                        if (cursor.getResumeToken() != null) {
+                            recordarToken(cursor.getResumeToken());
+                        }
+                        continue;
+                    }
+                    recordarToken(evento.getResumeToken());
+                    try {
+                        convertir(evento).ifPresent(destino);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error al repartir un cambio de paciente: " + e.getMessage());
+                    }
+                }
+            } catch (MongoException e) {
+                descartarTokenSiNoSirve(e);
+                System.err.println("Change stream de pacientes no disponible, reintento en "
+                        + espera / 1000 + "s: " + e.getMessage());
+                dormir(espera);
+                espera = Math.min(espera * 2, ESPERA_MAXIMA_MS);
+            }
+        }
+    }
+
+    /**
+     * Si el error no permite reanudar, descarta el resume token (el cursor se
+     * reabre desde ahora) y vacía la caché de pacientes, porque los cambios
+     * ocurridos entretanto no se van a recibir.
+     *
+     * Se consideran reanudables los errores de red y los que el servidor marca
+     * con la etiqueta ResumableChangeStreamError, salvo historia perdida (286)
+     * y token inválido (260).
+     *
+     * @return true si se descartó el token.
+     */
+    boolean descartarTokenSiNoSirve(MongoException error) {
+        if (tokenReanudacion == null || esReanudable(error)) {
+            return false;
+        }
+        System.err.println("No se puede reanudar el change stream de pacientes (código "
+                + error.getCode() + "); se abre desde ahora y se vacía la caché de pacientes");
+        tokenReanudacion = null;
+        pacienteCache.invalidarTodo();
+        return true;
+    }
+
+    private static boolean esReanudable(MongoException error) {
+        if (error.getCode() == HISTORIA_PERDIDA || error.getCode() == TOKEN_INVALIDO) {
+            return false;
+        }
+        return error instanceof MongoSocketException
+                || error instanceof MongoTimeoutException
+                || error.hasErrorLabel(ETIQUETA_REANUDABLE);
+    }
+
+    /**
+     * Último resume token recibido (null si se abre desde el momento actual).
+     */
+    BsonDocument tokenReanudacion() {
+        return tokenReanudacion;
+    }
+
+    void recordarToken(BsonDocument token) {
+        tokenReanudacion = token;
+    }
+
+    private ChangeStreamIterable<Document> abrir() {
+        ChangeStreamIterable<Document> stream = mongoTemplate.getDb()
+                .watch(List.of(Aggregates.match(Filters.in("ns.coll",
+                        COLECCION_PACIENTES, COLECCION_HISTORIA, COLECCION_EVOLUCION))))
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        if (tokenReanudacion != null) {
+            stream = stream.resumeAfter(tokenReanudacion);
+        }
+        return stream;
+    }
+
+    /**
+     * Traduce un evento del change stream a un cambio de paciente.
+     *
+     * @return El cambio, o vacío si el evento no interesa a los suscriptores.
+     */
+    private Optional<CambioPaciente> convertir(ChangeStreamDocument<Document> evento) {
+        if (evento.getNamespace() == null || evento.getDocumentKey() == null) {
+            return Optional.empty();
+        }
+        String coleccion = evento.getNamespace().getCollectionName();
+        String id = textoId(evento.getDocumentKey().get("_id"));
+        Document documento = evento.getFullDocument();
+
+        CambioPaciente.CambioPacienteBuilder cambio = CambioPaciente.builder().fecha(Instant.now());
+
+        if (!coleccion.equals(COLECCION_PACIENTES)) {
+            // En historia y evolución solo se informan las entradas nuevas
+            if (!"insert".equals(evento.getOperationTypeString()) || documento == null) {
+                return Optional.empty();
+            }
+            Map<String, Object> entrada = sinCamposInternos(documento);
+            entrada.put("id", id);
+            return Optional.of(cambio
+                    .tipo(coleccion.equals(COLECCION_HISTORIA) ? CambioPaciente.Tipo.HISTORIA : CambioPaciente.Tipo.EVOLUCION)
+                    .pacienteId(documento.getString("pacienteId"))
+                    .campos(entrada)
+                    .build());
+        }
+
+        cambio.pacienteId(id);
+        switch (evento.getOperationTypeString()) {
+            case "insert" -> {
+                Map<String, Object> resumen = new LinkedHashMap<>();
+                if (documento != null) {
+                    CAMPOS_RESUMEN.forEach(campo -> resumen.put(campo, documento.get(campo)));
+                }
+                return Optional.of(cambio.tipo(CambioPaciente.Tipo.ALTA).campos(resumen).build());
+            }
+            case "update" -> {
+                UpdateDescription descripcion = evento.getUpdateDescription();
+                Map<String, Object> campos = descripcion == null || descripcion.getUpdatedFields() == null
+                        ? Map.of()
+                        : sinCamposInternos(Document.parse(descripcion.getUpdatedFields().toJson()));
+                List<String> eliminados = descripcion == null || descripcion.getRemovedFields() == null
+                        ? List.of()
+                        : descripcion.getRemovedFields().stream().filter(c -> !CAMPOS_INTERNOS.contains(c)).toList();
+                if (campos.isEmpty() && eliminados.isEmpty()) {
+                    return Optional.empty();
+                }
+                return Optional.of(cambio.tipo(CambioPaciente.Tipo.MODIFICACION)
+                        .campos(campos).eliminados(eliminados).build());
+            }
+            case "replace" -> {
+                return Optional.of(cambio.tipo(CambioPaciente.Tipo.MODIFICACION)
+                        .campos(documento == null ? Map.of() : sinCamposInternos(documento))
+                        .eliminados(List.of())
+                        .build());
+            }
+            case "delete" -> {
+                return Optional.of(cambio.tipo(CambioPaciente.Tipo.BAJA).build());
+            }
+            default -> {
+                return Optional.empty();
+            }
+        }
+    }
+
+    private static Map<String, Object> sinCamposInternos(Document documento) {
+        Map<String, Object> campos = new LinkedHashMap<>();
+        documento.forEach((clave, valor) -> {
+            if (!CAMPOS_INTERNOS.contains(clave)) {
+                campos.put(clave, valor instanceof ObjectId objectId ? objectId.toHexString() : valor);
+            }
+        });
+        return campos;
+    }
+
+    private static String textoId(BsonValue valor) {
+        if (valor == null) {
+            return null;
+        }
+        return valor.isObjectId() ? valor.asObjectId().getValue().toHexString() : valor.asString().getValue();
+    }
+
+    private static void dormir(long milisegundos) {
+        try {
+            Thread.sleep(milisegundos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
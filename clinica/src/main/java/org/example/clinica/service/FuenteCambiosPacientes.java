@@ -0,0 +1,27 @@
+package org.example.clinica.service;
+
+import org.example.clinica.dto.CambioPaciente;
+
+import java.util.function.Consumer;
+
+/**
+ * Origen de los cambios de pacientes que EventosPacientesService reparte a
+ * los suscriptores SSE.
+ *
+ * La implementación real es FuenteCambiosMongo (change streams); los tests
+ * usan una fuente propia que emite cambios a mano.
+ */
+public interface FuenteCambiosPacientes {
+
+    /**
+     * Comienza a emitir cambios. Se invoca una sola vez al iniciar la aplicación.
+     *
+     * @param destino Recibe cada cambio, siempre desde un mismo hilo.
+     */
+    void iniciar(Consumer<CambioPaciente> destino);
+
+    /**
+     * Deja de emitir cambios y libera el cursor.
+     */
+    void detener();
+}
@@ -0,0 +1,334 @@
+package org.example.clinica.service;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import org.bson.types.ObjectId;
+import org.example.clinica.model.mongo.Paciente;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * Servicio que genera hojas imprimibles de etiquetas QR de pacientes, en PDF.
+ *
+ * Cada etiqueta lleva el QR del paciente (la misma URL que el QR del correo),
+ * apellido, nombre, documento e institución. Las hojas son A4 con
+ * COLUMNAS x FILAS etiquetas y una línea punteada de corte.
+ *
+ * Pensado para reimprimir las etiquetas de un centro completo:
+ * - Los pacientes se leen con un cursor de MongoDB, solo con los campos de
+ *   la etiqueta.
+ * - Las etiquetas se dibujan en paralelo (hojaQrExecutor), de a
+ *   ETIQUETAS_POR_TANDA. Mientras se dibuja una tanda se escriben en la
+ *   salida las páginas de la anterior.
+ * - Cada página se escribe apenas está completa (EscritorPdf): la memoria
+ *   usada no depende de la cantidad de etiquetas.
+ *
+ * El QR se dibuja como vectores (un rectángulo por tramo de módulos
+ * oscuros), así que se imprime nítido a cualquier resolución y no hace
+ * falta generar ni embeber imágenes.
+ */
+@Service
+public class HojaQrService {
+
+    // Página A4, en puntos (1/72 de pulgada)
+    private static final int ANCHO_PAGINA = 595;
+    private static final int ALTO_PAGINA = 842;
+    private static final double MARGEN_PAGINA = 28;
+
+    /**
+     * Etiquetas por página: COLUMNAS x FILAS.
+     */
+    public static final int COLUMNAS = 2;
+    public static final int FILAS = 7;
+    public static final int ETIQUETAS_POR_PAGINA = COLUMNAS * FILAS;
+
+    /**
+     * Etiquetas que se dibujan en paralelo antes de escribirlas (páginas completas).
+     */
+    public static final int ETIQUETAS_POR_TANDA = 4 * ETIQUETAS_POR_PAGINA;
+
+    /**
+     * Cantidad máxima de IDs que se pueden pedir en una hoja.
+     */
+    public static final int MAXIMO_IDS = 1000;
+
+    private static final double ANCHO_ETIQUETA = (ANCHO_PAGINA - 2 * MARGEN_PAGINA) / COLUMNAS;
+    private static final double ALTO_ETIQUETA = (ALTO_PAGINA - 2 * MARGEN_PAGINA) / FILAS;
+    private static final double MARGEN_ETIQUETA = 8;
+    private static final double LADO_QR = 96;
+
+    // Cantidad de documentos que MongoDB envía por cada lote del cursor
+    private static final int TAMANIO_LOTE_CURSOR = 200;
+
+    // Anchos de Helvetica (milésimas del tamaño de fuente) para los caracteres 32 a 126
+    private static final short[] ANCHOS_HELVETICA = {
+            278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278,
+            556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556,
+            1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778,
+            667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556,
+            333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556,
+            556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584
+    };
+    private static final int ANCHO_PUNTOS_SUSPENSIVOS = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final TaskExecutor executor;
+
+    public HojaQrService(MongoTemplate mongoTemplate,
+                         @Qualifier("hojaQrExecutor") TaskExecutor executor) {
+        this.mongoTemplate = mongoTemplate;
+        this.executor = executor;
+    }
+
+    /**
+     * Escribe la hoja de etiquetas de los pacientes que cumplen el filtro.
+     * Sin filtros incluye a todos los pacientes.
+     *
+     * Orden: institución, apellido y nombre (índice institucion_apellido_nombre),
+     * así las etiquetas de cada centro salen juntas.
+     *
+     * @param salida Stream donde se escribe el PDF (no se cierra aquí).
+     * @param institucion Solo pacientes de esta institución (puede ser null).
+     * @param ids Solo estos pacientes (vacío para no filtrar por ID).
+     * @return Cantidad de etiquetas escritas.
+     * @throws IOException si falla la escritura hacia el cliente.
+     */
+    public long escribir(OutputStream salida, String institucion, List<String> ids) throws IOException {
+        Query query = new Query().with(Sort.by("institucion", "apellidoNormalizado", "nombreNormalizado"));
+        query.cursorBatchSize(TAMANIO_LOTE_CURSOR);
+        if (institucion != null && !institucion.isBlank()) {
+            query.addCriteria(Criteria.where("institucion").is(institucion.trim()));
+        }
+        if (!ids.isEmpty()) {
+            query.addCriteria(Criteria.where("_id").in(ids.stream().map(ObjectId::new).toList()));
+        }
+        query.fields().include("nombre", "apellido", "documento", "institucion");
+
+        try (Stream<Paciente> pacientes = mongoTemplate.stream(query, Paciente.class)) {
+            return escribir(salida, pacientes.iterator());
+        }
+    }
+
+    /**
+     * Escribe la hoja con los pacientes indicados, en el orden recibido.
+     *
+     * @return Cantidad de etiquetas escritas.
+     */
+    long escribir(OutputStream salida, Iterator<Paciente> pacientes) throws IOException {
+        EscritorPdf pdf = new EscritorPdf(salida, ANCHO_PAGINA, ALTO_PAGINA);
+        long etiquetas = 0;
+
+        List<CompletableFuture<String>> anterior = List.of();
+        while (pacientes.hasNext()) {
+            List<CompletableFuture<String>> tanda = new ArrayList<>(ETIQUETAS_POR_TANDA);
+            while (tanda.size() < ETIQUETAS_POR_TANDA && pacientes.hasNext()) {
+                Paciente paciente = pacientes.next();
+                int posicion = tanda.size() % ETIQUETAS_POR_PAGINA;
+                tanda.add(CompletableFuture.supplyAsync(() -> etiqueta(paciente, posicion), executor));
+            }
+            // Mientras se dibuja esta tanda, se escriben las páginas de la anterior
+            etiquetas += escribirPaginas(pdf, anterior);
+            anterior = tanda;
+        }
+        etiquetas += escribirPaginas(pdf, anterior);
+
+        if (pdf.paginas() == 0) {
+            pdf.agregarPagina(("BT /F1 12 Tf " + (int) MARGEN_PAGINA + " " + (int) (ALTO_PAGINA - 2 * MARGEN_PAGINA)
+                    + " Td " + EscritorPdf.texto("No hay pacientes para el filtro indicado.") + " Tj ET\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+        }
+        pdf.terminar("Etiquetas QR de pacientes");
+        return etiquetas;
+    }
+
+    /**
+     * Espera las etiquetas de una tanda (en orden) y escribe sus páginas.
+     *
+     * @return Cantidad de etiquetas escritas.
+     */
+    private static int escribirPaginas(EscritorPdf pdf, List<CompletableFuture<String>> tanda) throws IOException {
+        for (int inicio = 0; inicio < tanda.size(); inicio += ETIQUETAS_POR_PAGINA) {
+            StringBuilder pagina = new StringBuilder();
+            for (CompletableFuture<String> etiqueta : tanda.subList(inicio, Math.min(inicio + ETIQUETAS_POR_PAGINA, tanda.size()))) {
+                try {
+                    pagina.append(etiqueta.join());
+                } catch (CompletionException e) {
+                    throw new IllegalStateException("Error al generar la hoja de QR: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+            pdf.agregarPagina(pagina.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return tanda.size();
+    }
+
+    /**
+     * Dibuja una etiqueta: línea de corte, QR y datos del paciente.
+     *
+     * @param paciente Paciente (con ID, nombre, apellido, documento e institución).
+     * @param posicion Posición en la página (0 arriba a la izquierda, por filas).
+     * @return Operadores de PDF de la etiqueta.
+     */
+    static String etiqueta(Paciente paciente, int posicion) {
+        ByteMatrix modulos;
+        try {
+            modulos = RenderizadorQr.modulos(QrService.construirUrlPaciente(paciente.getId()));
+        } catch (WriterException e) {
+            throw new IllegalStateException("Error al generar el Código QR: " + e.getMessage(), e);
+        }
+
+        double x = MARGEN_PAGINA + (posicion % COLUMNAS) * ANCHO_ETIQUETA;
+        double y = ALTO_PAGINA - MARGEN_PAGINA - (posicion / COLUMNAS + 1) * ALTO_ETIQUETA;
+        StringBuilder etiqueta = new StringBuilder(8192);
+
+        // Línea de corte punteada, en gris
+        etiqueta.append("q 0.7 G 0.5 w [3 3] 0 d ");
+        rectangulo(etiqueta, x, y, ANCHO_ETIQUETA, ALTO_ETIQUETA);
+        etiqueta.append("S Q\n");
+
+        // QR: un rectángulo por tramo horizontal de módulos oscuros, todos rellenados juntos
+        int cantidad = modulos.getWidth();
+        double modulo = LADO_QR / (cantidad + 2 * RenderizadorQr.MARGEN);
+        double xQr = x + MARGEN_ETIQUETA;
+        double yQr = y + (ALTO_ETIQUETA - LADO_QR) / 2;
+        etiqueta.append("0 g\n");
+        for (int fila = 0; fila < cantidad; fila++) {
+            double yFila = yQr + LADO_QR - (fila + 1 + RenderizadorQr.MARGEN) * modulo;
+            int columna = 0;
+            while (columna < cantidad) {
+                if (modulos.get(columna, fila) != 1) {
+                    columna++;
+                    continue;
+                }
+                int inicio = columna;
+                while (columna < cantidad && modulos.get(columna, fila) == 1) {
+                    columna++;
+                }
+                rectangulo(etiqueta, xQr + (inicio + RenderizadorQr.MARGEN) * modulo, yFila,
+                        (columna - inicio) * modulo, modulo);
+            }
+        }
+        etiqueta.append("f\n");
+
+        // Datos del paciente, a la derecha del QR
+        double xTexto = xQr + LADO_QR + MARGEN_ETIQUETA;
+        double anchoTexto = x + ANCHO_ETIQUETA - MARGEN_ETIQUETA - xTexto;
+        double arriba = y + ALTO_ETIQUETA;
+        linea(etiqueta, paciente.getApellido(), 13, xTexto, arriba - 32, anchoTexto);
+        linea(etiqueta, paciente.getNombre(), 11, xTexto, arriba - 48, anchoTexto);
+        if (paciente.getDocumento() != null && !paciente.getDocumento().isBlank()) {
+            linea(etiqueta, "DNI " + paciente.getDocumento(), 10, xTexto, arriba - 66, anchoTexto);
+        }
+        linea(etiqueta, paciente.getInstitucion(), 8, xTexto, arriba - 84, anchoTexto);
+        return etiqueta.toString();
+    }
+
+    /**
+     * Escribe una línea de texto, recortada con puntos suspensivos si no entra en el ancho.
+     */
+    private static void linea(StringBuilder salida, String texto, int tamanio, double x, double y, double ancho) {
+        if (texto == null || texto.isBlank()) {
+            return;
+        }
+        salida.append("BT /F1 ").append(tamanio).append(" Tf ");
+        numero(salida, x);
+        numero(salida, y);
+        salida.append("Td ").append(EscritorPdf.texto(ajustar(texto.trim(), tamanio, ancho))).append(" Tj ET\n");
+    }
+
+    /**
+     * Recorta el texto para que, en Helvetica del tamaño indicado, no supere el ancho.
+     *
+     * @return El texto completo, o un prefijo seguido de "…".
+     */
+    static String ajustar(String texto, int tamanio, double ancho) {
+        double limite = ancho * 1000 / tamanio;
+        double usado = 0;
+        int corte = -1;
+        for (int i = 0; i < texto.length(); i++) {
+            usado += anchoCaracter(texto.charAt(i));
+            if (corte < 0 && usado + ANCHO_PUNTOS_SUSPENSIVOS > limite) {
+                // Último punto donde todavía entran los puntos suspensivos
+                corte = i;
+            }
+            if (usado > limite) {
+                return texto.substring(0, corte).stripTrailing() + "…";
+            }
+        }
+        return texto;
+    }
+
+    /**
+     * Ancho de un carácter en Helvetica. Las letras acentuadas miden lo mismo
+     * que su letra base; lo que no está en la tabla se toma como un dígito.
+     */
+    private static int anchoCaracter(char caracter) {
+        char base = caracter < 128 ? caracter : Normalizer.normalize(String.valueOf(caracter), Normalizer.Form.NFD).charAt(0);
+        if (base >= 32 && base <= 126) {
+            return ANCHOS_HELVETICA[base - 32];
+        }
+        return 556;
+    }
+
+    private static void rectangulo(StringBuilder salida, double x, double y, double ancho, double alto) {
+        numero(salida, x);
+        numero(salida, y);
+        numero(salida, ancho);
+        numero(salida, alto);
+        salida.append("re\n");
+    }
+
+    /**
+     * Agrega un número positivo con dos decimales, seguido de un espacio.
+     */
+    private static void numero(StringBuilder salida, double valor) {
+        long centesimos = Math.round(valor * 100);
+        long decimales = centesimos % 100;
+        salida.append(centesimos / 100).append('.').append(decimales < 10 ? "0" : "").append(decimales).append(' ');
+    }
+
+    /**
+     * Valida la lista de IDs de la hoja.
+     *
+     * @param ids IDs recibidos (puede ser null o vacía).
+     * @return IDs sin repetir ni vacíos, en el orden recibido.
+     * @throws IllegalArgumentException si algún ID no es válido o son más de MAXIMO_IDS.
+     */
+    public static List<String> validarIds(List<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        Set<String> resultado = new LinkedHashSet<>();
+        for (String id : ids) {
+            String limpio = id == null ? "" : id.trim();
+            if (limpio.isEmpty()) {
+                continue;
+            }
+            if (!ObjectId.isValid(limpio)) {
+                throw new IllegalArgumentException("ID de paciente inválido: " + limpio);
+            }
+            resultado.add(limpio);
+        }
+        if (resultado.size() > MAXIMO_IDS) {
+            throw new IllegalArgumentException("Se pueden pedir hasta " + MAXIMO_IDS + " pacientes por hoja");
+        }
+        return new ArrayList<>(resultado);
+    }
+}
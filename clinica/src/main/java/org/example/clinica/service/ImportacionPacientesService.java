@@ -0,0 +1,390 @@
+package org.example.clinica.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import org.example.clinica.dto.ErrorImportacion;
+import org.example.clinica.dto.ImportacionEstado;
+import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.util.LectorCsv;
+import org.example.clinica.util.ValoresClinicos;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Servicio encargado de la importación masiva de pacientes (alta de un centro
+ * satélite completo).
+ *
+ * Funcionamiento:
+ * - Recibe un array JSON de pacientes o un archivo CSV.
+ * - Registra un trabajo y lo procesa en segundo plano, devolviendo un jobId
+ *   para consultar el progreso.
+ * - Inserta en lotes no ordenados (bulk UNORDERED): una fila inválida no
+ *   detiene al resto y su error queda informado con el número de fila.
+ * - El ID de cada paciente se asigna antes de insertar, por lo que la URL del
+ *   QR se guarda en la misma inserción.
+ * - La generación del QR y el envío por email se encolan en un pool aparte,
+ *   fuera del camino de la inserción.
+ */
+@Service
+public class ImportacionPacientesService {
+
+    /**
+     * Cantidad de pacientes por cada inserción masiva.
+     */
+    public static final int TAMANIO_LOTE = 500;
+
+    /**
+     * Cantidad máxima de filas aceptadas en una importación.
+     */
+    public static final int MAXIMO_FILAS = 10_000;
+
+    // Tiempo que se conserva el estado de una importación terminada
+    private static final Duration RETENCION_TRABAJOS = Duration.ofHours(24);
+
+    // Columnas aceptadas en el CSV; telefonos y emails admiten varios valores separados por '|'
+    private static final Set<String> COLUMNAS_CSV = Set.of(
+            "nombre", "apellido", "documento", "fechaNacimiento", "genero", "estadoCivil",
+            "fechaPrimeraDialisis", "telefonos", "emails", "domicilio", "obraSocial",
+            "institucion", "testigoJehova", "seTransfunde"
+    );
+
+    private final MongoTemplate mongoTemplate;
+    private final PacienteService pacienteService;
+    private final CorreosSalientesService correosSalientesService;
+    private final EstadisticasService estadisticasService;
+    private final TaskExecutor importacionExecutor;
+
+    // Trabajos de importación en curso y recientes, por jobId
+    private final Map<String, Trabajo> trabajos = new ConcurrentHashMap<>();
+
+    public ImportacionPacientesService(MongoTemplate mongoTemplate,
+                                       PacienteService pacienteService,
+                                       CorreosSalientesService correosSalientesService,
+                                       EstadisticasService estadisticasService,
+                                       @Qualifier("importacionExecutor") TaskExecutor importacionExecutor) {
+        this.mongoTemplate = mongoTemplate;
+        this.pacienteService = pacienteService;
+        this.correosSalientesService = correosSalientesService;
+        this.estadisticasService = estadisticasService;
+        this.importacionExecutor = importacionExecutor;
+    }
+
+    // -----------------------------------------------------
+    //                 MÉTODOS DE NEGOCIO
+    // -----------------------------------------------------
+
+    /**
+     * Inicia la importación de un array JSON de pacientes.
+     *
+     * @param pacientes Pacientes recibidos.
+     * @return Estado inicial del trabajo (incluye el jobId).
+     * @throws IllegalArgumentException si no hay filas o se supera MAXIMO_FILAS.
+     */
+    public ImportacionEstado importarJson(List<Paciente> pacientes) {
+        return iniciar(pacientes == null ? List.of() : pacientes, new ArrayList<>());
+    }
+
+    /**
+     * Inicia la importación de un CSV con cabecera.
+     *
+     * La primera fila debe contener los nombres de columna (ver COLUMNAS_CSV).
+     * Los booleanos aceptan "si", "true" o "1".
+     *
+     * @param contenido Texto completo del CSV.
+     * @return Estado inicial del trabajo (incluye el jobId).
+     * @throws IllegalArgumentException si el CSV es inválido o tiene columnas desconocidas.
+     */
+    public ImportacionEstado importarCsv(String contenido) {
+        if (contenido == null || contenido.isBlank()) {
+            throw new IllegalArgumentException("El CSV está vacío");
+        }
+        // Excel suele agregar un BOM al inicio del archivo
+        String sinBom = contenido.startsWith("\uFEFF") ? contenido.substring(1) : contenido;
+        List<List<String>> filas = LectorCsv.leer(sinBom.strip());
+        if (filas.isEmpty()) {
+            throw new IllegalArgumentException("El CSV está vacío");
+        }
+
+        List<String> cabecera = filas.get(0);
+        for (String columna : cabecera) {
+            if (!COLUMNAS_CSV.contains(columna)) {
+                throw new IllegalArgumentException("Columna desconocida en el CSV: " + columna);
+            }
+        }
+
+        // Las filas ilegibles quedan como null y se informan como error de esa fila
+        List<Paciente> pacientes = new ArrayList<>();
+        List<ErrorImportacion> erroresLectura = new ArrayList<>();
+        for (int i = 1; i < filas.size(); i++) {
+            List<String> valores = filas.get(i);
+            if (valores.size() > cabecera.size()) {
+                erroresLectura.add(new ErrorImportacion(i, null,
+                        "La fila tiene " + valores.size() + " columnas y la cabecera " + cabecera.size()));
+                pacientes.add(null);
+                continue;
+            }
+            try {
+                pacientes.add(pacienteDesdeCsv(cabecera, valores));
+            } catch (IllegalArgumentException e) {
+                erroresLectura.add(new ErrorImportacion(i, null, e.getMessage()));
+                pacientes.add(null);
+            }
+        }
+
+        return iniciar(pacientes, erroresLectura);
+    }
+
+    /**
+     * Consulta el progreso de una importación.
+     *
+     * @param jobId Identificador devuelto al iniciar la importación.
+     * @return Estado actual, o vacío si el trabajo no existe o ya expiró.
+     */
+    public Optional<ImportacionEstado> consultar(String jobId) {
+        return Optional.ofNullable(trabajos.get(jobId)).map(Trabajo::estado);
+    }
+
+    // -----------------------------------------------------
+    //                 PROCESAMIENTO
+    // -----------------------------------------------------
+
+    private ImportacionEstado iniciar(List<Paciente> pacientes, List<ErrorImportacion> erroresLectura) {
+        if (pacientes.isEmpty()) {
+            throw new IllegalArgumentException("La importación no contiene pacientes");
+        }
+        if (pacientes.size() > MAXIMO_FILAS) {
+            throw new IllegalArgumentException(
+                    "La importación supera el máximo de " + MAXIMO_FILAS + " pacientes");
+        }
+
+        descartarTrabajosViejos();
+
+        Trabajo trabajo = new Trabajo(UUID.randomUUID().toString(), pacientes.size());
+        erroresLectura.forEach(trabajo::registrarError);
+        trabajos.put(trabajo.jobId, trabajo);
+
+        try {
+            importacionExecutor.execute(() -> procesar(trabajo, pacientes));
+        } catch (TaskRejectedException e) {
+            trabajos.remove(trabajo.jobId);
+            throw new IllegalStateException("Hay demasiadas importaciones en cola, intente más tarde", e);
+        }
+
+        return trabajo.estado();
+    }
+
+    /**
+     * Procesa todas las filas de un trabajo en lotes de TAMANIO_LOTE.
+     */
+    private void procesar(Trabajo trabajo, List<Paciente> filas) {
+        trabajo.iniciar();
+        try {
+            for (int inicio = 0; inicio < filas.size(); inicio += TAMANIO_LOTE) {
+                int fin = Math.min(inicio + TAMANIO_LOTE, filas.size());
+                procesarLote(trabajo, filas, inicio, fin);
+            }
+            trabajo.finalizar(ImportacionEstado.Estado.FINALIZADA);
+        } catch (RuntimeException e) {
+            System.err.println("Error en la importación " + trabajo.jobId + ": " + e.getMessage());
+            trabajo.finalizar(ImportacionEstado.Estado.FALLIDA);
+        }
+    }
+
+    private void procesarLote(Trabajo trabajo, List<Paciente> filas, int inicio, int fin) {
+        List<Paciente> lote = new ArrayList<>();
+        List<Integer> numerosDeFila = new ArrayList<>();
+
+        for (int i = inicio; i < fin; i++) {
+            Paciente paciente = filas.get(i);
+            int numeroFila = i + 1;
+            if (paciente == null) {
+                // Ya informada como error de lectura
+                trabajo.sumarProcesados(1);
+                continue;
+            }
+
+            String error = validar(paciente);
+            if (error != null) {
+                trabajo.registrarError(new ErrorImportacion(numeroFila, paciente.getDocumento(), error));
+                trabajo.sumarProcesados(1);
+                continue;
+            }
+
+            pacienteService.prepararAlta(paciente);
+            lote.add(paciente);
+            numerosDeFila.add(numeroFila);
+        }
+
+        if (lote.isEmpty()) {
+            return;
+        }
+
+        // QR de los nuevos pacientes, en cola antes de insertarlos; los de las
+        // filas rechazadas se cancelan solos al no encontrar el paciente
+        correosSalientesService.encolarQrPacientes(lote);
+
+        Set<Integer> fallidos = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Paciente.class)
+                    .insert(lote)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                fallidos.add(error.getIndex());
+                Paciente paciente = lote.get(error.getIndex());
+                trabajo.registrarError(new ErrorImportacion(
+                        numerosDeFila.get(error.getIndex()), paciente.getDocumento(), error.getMessage()));
+            }
+        }
+
+        List<Paciente> insertados = new ArrayList<>();
+        for (int i = 0; i < lote.size(); i++) {
+            if (!fallidos.contains(i)) {
+                trabajo.sumarInsertados(1);
+                Paciente insertado = lote.get(i);
+                insertados.add(insertado);
+            }
+        }
+        estadisticasService.registrarAltas(insertados);
+        trabajo.sumarProcesados(lote.size());
+    }
+
+    /**
+     * Valida los datos mínimos de una fila.
+     *
+     * @return Mensaje de error, o null si la fila es válida.
+     */
+    private String validar(Paciente paciente) {
+        List<String> faltantes = new ArrayList<>();
+        if (paciente.getDocumento() == null || paciente.getDocumento().isBlank()) {
+            faltantes.add("documento");
+        }
+        if (paciente.getNombre() == null || paciente.getNombre().isBlank()) {
+            faltantes.add("nombre");
+        }
+        if (paciente.getApellido() == null || paciente.getApellido().isBlank()) {
+            faltantes.add("apellido");
+        }
+        return faltantes.isEmpty() ? null : "Faltan campos obligatorios: " + String.join(", ", faltantes);
+    }
+
+    private Paciente pacienteDesdeCsv(List<String> cabecera, List<String> valores) {
+        Paciente paciente = new Paciente();
+        for (int i = 0; i < valores.size(); i++) {
+            String valor = valores.get(i);
+            if (valor.isEmpty()) {
+                continue;
+            }
+            switch (cabecera.get(i)) {
+                case "nombre" -> paciente.setNombre(valor);
+                case "apellido" -> paciente.setApellido(valor);
+                case "documento" -> paciente.setDocumento(valor);
+                case "fechaNacimiento" -> paciente.setFechaNacimiento(ValoresClinicos.parsearFecha(valor));
+                case "genero" -> paciente.setGenero(valor);
+                case "estadoCivil" -> paciente.setEstadoCivil(valor);
+                case "fechaPrimeraDialisis" -> paciente.setFechaPrimeraDialisis(ValoresClinicos.parsearFecha(valor));
+                case "telefonos" -> paciente.setTelefonos(separarLista(valor));
+                case "emails" -> paciente.setEmails(separarLista(valor));
+                case "domicilio" -> paciente.setDomicilio(valor);
+                case "obraSocial" -> paciente.setObraSocial(valor);
+                case "institucion" -> paciente.setInstitucion(valor);
+                case "testigoJehova" -> paciente.setTestigoJehova(esVerdadero(valor));
+                case "seTransfunde" -> paciente.setSeTransfunde(esVerdadero(valor));
+                default -> {
+                    // Las columnas ya fueron validadas contra COLUMNAS_CSV
+                }
+            }
+        }
+        return paciente;
+    }
+
+    private static List<String> separarLista(String valor) {
+        return Arrays.stream(valor.split("\\|"))
+                .map(String::trim)
+                .filter(v -> !v.isEmpty())
+                .toList();
+    }
+
+    private static boolean esVerdadero(String valor) {
+        String v = valor.trim().toLowerCase(Locale.ROOT);
+        return v.equals("si") || v.equals("sí") || v.equals("true") || v.equals("1");
+    }
+
+    private void descartarTrabajosViejos() {
+        Instant limite = Instant.now().minus(RETENCION_TRABAJOS);
+        trabajos.values().removeIf(t -> t.finalizadoEn != null && t.finalizadoEn.isBefore(limite));
+    }
+
+    /**
+     * Estado mutable de una importación. Lo modifica un solo hilo de
+     * importación y lo leen los requests de progreso, por eso se sincroniza.
+     */
+    private static final class Trabajo {
+
+        private final String jobId;
+        private final int total;
+        private final List<ErrorImportacion> errores = new ArrayList<>();
+        private ImportacionEstado.Estado estado = ImportacionEstado.Estado.PENDIENTE;
+        private int procesados;
+        private int insertados;
+        private Instant iniciadoEn;
+        private volatile Instant finalizadoEn;
+
+        private Trabajo(String jobId, int total) {
+            this.jobId = jobId;
+            this.total = total;
+        }
+
+        synchronized void iniciar() {
+            estado = ImportacionEstado.Estado.EN_PROCESO;
+            iniciadoEn = Instant.now();
+        }
+
+        synchronized void finalizar(ImportacionEstado.Estado estadoFinal) {
+            estado = estadoFinal;
+            finalizadoEn = Instant.now();
+        }
+
+        synchronized void registrarError(ErrorImportacion error) {
+            errores.add(error);
+        }
+
+        synchronized void sumarProcesados(int cantidad) {
+            procesados += cantidad;
+        }
+
+        synchronized void sumarInsertados(int cantidad) {
+            insertados += cantidad;
+        }
+
+        synchronized ImportacionEstado estado() {
+            return ImportacionEstado.builder()
+                    .jobId(jobId)
+                    .estado(estado)
+                    .total(total)
+                    .procesados(procesados)
+                    .insertados(insertados)
+                    .errores(List.copyOf(errores))
+                    .iniciadoEn(iniciadoEn)
+                    .finalizadoEn(finalizadoEn)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package org.example.clinica.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.example.clinica.dto.EstadoIndice;
+import org.example.clinica.model.mongo.PacienteEliminado;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registro de los índices de MongoDB que necesitan las consultas de la aplicación.
+ *
+ * Todos los índices se declaran aquí, en un solo lugar, en vez de repartidos
+ * en anotaciones del modelo (la creación automática de Spring Data está
+ * desactivada). Al iniciar:
+ * - Se crean los índices que faltan, en segundo plano (background) para no
+ *   bloquear la colección mientras se construyen.
+ * - Se informan las diferencias con lo que hay en la base: índices con las
+ *   mismas claves pero otras opciones (por ejemplo, "documento" sin unique) e
+ *   índices que existen pero no están registrados. No se borra nada salvo que
+ *   clinica.indices.corregir-diferencias=true, en cuyo caso los índices
+ *   distintos se reemplazan por los registrados.
+ *
+ * Los tests de ConsultasIndexadasTest verifican con explain que ninguna
+ * consulta de los servicios termine en un recorrido completo (COLLSCAN).
+ */
+@Service
+public class IndicesMongoService {
+
+    /**
+     * Un índice registrado.
+     *
+     * @param coleccion Colección a la que pertenece.
+     * @param nombre Nombre con el que se crea.
+     * @param claves Campos y sentido, en orden.
+     * @param unico Si rechaza valores repetidos.
+     * @param disperso Si omite los documentos sin el campo (sparse).
+     * @param expiracion Tiempo de vida de los documentos (índice TTL), o null.
+     * @param filtroParcial Solo indexa los documentos que cumplen este filtro
+     *                      (partialFilterExpression), o null.
+     */
+    public record IndiceRegistrado(String coleccion, String nombre, Document claves,
+                                   boolean unico, boolean disperso, Duration expiracion,
+                                   Document filtroParcial) {
+
+        IndiceRegistrado comoUnico() {
+            return new IndiceRegistrado(coleccion, nombre, claves, true, disperso, expiracion, filtroParcial);
+        }
+
+        IndiceRegistrado comoDisperso() {
+            return new IndiceRegistrado(coleccion, nombre, claves, unico, true, expiracion, filtroParcial);
+        }
+
+        IndiceRegistrado conExpiracion(Duration duracion) {
+            return new IndiceRegistrado(coleccion, nombre, claves, unico, disperso, duracion, filtroParcial);
+        }
+
+        IndiceRegistrado conFiltroParcial(Document filtro) {
+            return new IndiceRegistrado(coleccion, nombre, claves, unico, disperso, expiracion, filtro);
+        }
+
+        IndexOptions opciones() {
+            IndexOptions opciones = new IndexOptions()
+                    .name(nombre)
+                    .background(true)
+                    .unique(unico)
+                    .sparse(disperso);
+            if (expiracion != null) {
+                opciones.expireAfter(expiracion.toSeconds(), TimeUnit.SECONDS);
+            }
+            if (filtroParcial != null) {
+                opciones.partialFilterExpression(filtroParcial);
+            }
+            return opciones;
+        }
+    }
+
+    /**
+     * Índices de la aplicación, por colección.
+     */
+    public static final List<IndiceRegistrado> REGISTRO = List.of(
+            // Pacientes: documento único (los pacientes sin documento no chocan entre sí)
+            indice("pacientes", "documento_unico", new Document("documento", 1)).comoUnico().comoDisperso(),
+            // Pacientes: claves de búsqueda por prefijo
+            indice("pacientes", "nombre_normalizado", new Document("nombreNormalizado", 1)),
+            indice("pacientes", "apellido_normalizado", new Document("apellidoNormalizado", 1)),
+            // Pacientes: auditoría (sincronización por cambios y completado de fechas)
+            indice("pacientes", "creado_en", new Document("creadoEn", 1)),
+            indice("pacientes", "actualizado_en", new Document("actualizadoEn", 1)),
+            // Pacientes: filtros por rango de fechas
+            indice("pacientes", "fecha_nacimiento", new Document("fechaNacimiento", 1)),
+            indice("pacientes", "fecha_primera_dialisis", new Document("fechaPrimeraDialisis", 1)),
+            // Pacientes: hojas de etiquetas QR por institución, en orden alfabético
+            indice("pacientes", "institucion_apellido_nombre", new Document("institucion", 1)
+                    .append("apellidoNormalizado", 1).append("nombreNormalizado", 1)),
+            // Historia clínica y evolución: páginas por paciente, más recientes primero
+            indice("historia_clinica", "paciente_fecha",
+                    new Document("pacienteId", 1).append("fecha", -1).append("_id", -1)),
+            // Historia clínica: tendencias de toda la unidad por rango de fechas
+            indice("historia_clinica", "fecha", new Document("fecha", 1)),
+            indice("evolucion_mensual", "paciente_fecha",
+                    new Document("pacienteId", 1).append("fecha", -1).append("_id", -1)),
+            // Marcas de borrado: MongoDB las elimina al vencer la retención
+            indice("pacientes_eliminados", "eliminado_en", new Document("eliminadoEn", 1))
+                    .conExpiracion(PacienteEliminado.RETENCION),
+            // Correos salientes: un solo correo activo por clave (deduplicación)
+            indice("correos_salientes", "clave_activa", new Document("clave", 1))
+                    .comoUnico().conFiltroParcial(new Document("activo", true)),
+            // Correos salientes: cola de envío y conteo por estado
+            indice("correos_salientes", "estado_proximo_intento",
+                    new Document("estado", 1).append("proximoIntento", 1)),
+            // Correos salientes: los enviados y cancelados se borran solos
+            indice("correos_salientes", "finalizado_en", new Document("finalizadoEn", 1))
+                    .conExpiracion(CorreosSalientesService.RETENCION_FINALIZADOS)
+    );
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean corregirDiferencias;
+
+    public IndicesMongoService(MongoTemplate mongoTemplate,
+                               @Value("${clinica.indices.corregir-diferencias:false}") boolean corregirDiferencias) {
+        this.mongoTemplate = mongoTemplate;
+        this.corregirDiferencias = corregirDiferencias;
+    }
+
+    /**
+     * Crea los índices faltantes al iniciar, antes que las migraciones de
+     * datos, e informa las diferencias.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void aplicarAlIniciar() {
+        List<EstadoIndice> estados = aplicar();
+
+        Map<String, Integer> resumen = new LinkedHashMap<>();
+        for (EstadoIndice estado : estados) {
+            resumen.merge(estado.getEstado(), 1, Integer::sum);
+            if (!EstadoIndice.OK.equals(estado.getEstado())) {
+                String linea = "   " + estado.getEstado() + " " + estado.getColeccion() + "." + estado.getNombre()
+                        + " " + estado.getClaves() + (estado.getDetalle() == null ? "" : " → " + estado.getDetalle());
+                if (EstadoIndice.CREADO.equals(estado.getEstado()) || EstadoIndice.SOBRANTE.equals(estado.getEstado())) {
+                    System.out.println(linea);
+                } else {
+                    System.err.println(linea);
+                }
+            }
+        }
+        System.out.println("🗂️ Índices de MongoDB: " + resumen);
+    }
+
+    /**
+     * Crea los índices faltantes (y corrige los distintos, si está habilitado).
+     *
+     * @return Estado de cada índice registrado y de los sobrantes.
+     */
+    public List<EstadoIndice> aplicar() {
+        return revisar(true);
+    }
+
+    /**
+     * Compara la base con el registro sin modificar nada.
+     *
+     * @return Estado de cada índice registrado y de los sobrantes.
+     */
+    public List<EstadoIndice> verificar() {
+        return revisar(false);
+    }
+
+    private List<EstadoIndice> revisar(boolean aplicarCambios) {
+        Map<String, List<IndiceRegistrado>> porColeccion = new LinkedHashMap<>();
+        for (IndiceRegistrado registrado : REGISTRO) {
+            porColeccion.computeIfAbsent(registrado.coleccion(), c -> new ArrayList<>()).add(registrado);
+        }
+
+        List<EstadoIndice> estados = new ArrayList<>();
+        porColeccion.forEach((coleccion, registrados) -> {
+            MongoCollection<Document> mongoColeccion = mongoTemplate.getCollection(coleccion);
+            List<Document> existentes = mongoColeccion.listIndexes().into(new ArrayList<>());
+            Set<String> reconocidos = new HashSet<>(Set.of("_id_"));
+
+            for (IndiceRegistrado registrado : registrados) {
+                Document existente = existentes.stream()
+                        .filter(indice -> mismasClaves(indice.get("key", Document.class), registrado.claves()))
+                        .findFirst()
+                        .orElse(null);
+                if (existente != null) {
+                    reconocidos.add(existente.getString("name"));
+                }
+                estados.add(revisarIndice(mongoColeccion, registrado, existente, aplicarCambios));
+            }
+
+            for (Document existente : existentes) {
+                if (!reconocidos.contains(existente.getString("name"))) {
+                    estados.add(estado(coleccion, existente.getString("name"), existente.get("key", Document.class),
+                            EstadoIndice.SOBRANTE, "no está en el registro de índices"));
+                }
+            }
+        });
+
+        return estados;
+    }
+
+    private EstadoIndice revisarIndice(MongoCollection<Document> coleccion, IndiceRegistrado registrado,
+                                       Document existente, boolean aplicarCambios) {
+        if (existente == null) {
+            if (!aplicarCambios) {
+                return estado(registrado, registrado.nombre(), EstadoIndice.FALTANTE, null);
+            }
+            try {
+                coleccion.createIndex(registrado.claves(), registrado.opciones());
+                return estado(registrado, registrado.nombre(), EstadoIndice.CREADO, null);
+            } catch (Exception e) {
+                return estado(registrado, registrado.nombre(), EstadoIndice.ERROR, e.getMessage());
+            }
+        }
+
+        String nombreExistente = existente.getString("name");
+        String diferencia = diferencia(registrado, existente);
+        if (diferencia == null) {
+            return estado(registrado, nombreExistente, EstadoIndice.OK, null);
+        }
+        if (!aplicarCambios || !corregirDiferencias) {
+            return estado(registrado, nombreExistente, EstadoIndice.DISTINTO, diferencia);
+        }
+
+        // MongoDB no admite dos índices con las mismas claves: se borra y se crea el registrado
+        coleccion.dropIndex(nombreExistente);
+        try {
+            coleccion.createIndex(registrado.claves(), registrado.opciones());
+            return estado(registrado, registrado.nombre(), EstadoIndice.CREADO, "reemplazó a " + nombreExistente
+                    + " (" + diferencia + ")");
+        } catch (Exception e) {
+            // Se restaura el índice anterior para no dejar la consulta sin índice
+            coleccion.createIndex(registrado.claves(), opcionesDe(existente));
+            return estado(registrado, nombreExistente, EstadoIndice.ERROR,
+                    "no se pudo reemplazar (" + diferencia + "): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Describe en qué difieren las opciones del índice existente y el registrado.
+     *
+     * @return Descripción, o null si coinciden.
+     */
+    private static String diferencia(IndiceRegistrado registrado, Document existente) {
+        List<String> diferencias = new ArrayList<>();
+        if (registrado.unico() != existente.getBoolean("unique", false)) {
+            diferencias.add("unique " + existente.getBoolean("unique", false) + " → " + registrado.unico());
+        }
+        if (registrado.disperso() != existente.getBoolean("sparse", false)) {
+            diferencias.add("sparse " + existente.getBoolean("sparse", false) + " → " + registrado.disperso());
+        }
+        Number segundos = existente.get("expireAfterSeconds", Number.class);
+        Long actual = segundos == null ? null : segundos.longValue();
+        Long esperado = registrado.expiracion() == null ? null : registrado.expiracion().toSeconds();
+        if (!Objects.equals(actual, esperado)) {
+            diferencias.add("expireAfterSeconds " + actual + " → " + esperado);
+        }
+        Document filtro = existente.get("partialFilterExpression", Document.class);
+        if (!Objects.equals(filtro, registrado.filtroParcial())) {
+            diferencias.add("partialFilterExpression " + (filtro == null ? null : filtro.toJson())
+                    + " → " + (registrado.filtroParcial() == null ? null : registrado.filtroParcial().toJson()));
+        }
+        return diferencias.isEmpty() ? null : String.join(", ", diferencias);
+    }
+
+    private static IndexOptions opcionesDe(Document existente) {
+        IndexOptions opciones = new IndexOptions()
+                .name(existente.getString("name"))
+                .background(true)
+                .unique(existente.getBoolean("unique", false))
+                .sparse(existente.getBoolean("sparse", false));
+        Number segundos = existente.get("expireAfterSeconds", Number.class);
+        if (segundos != null) {
+            opciones.expireAfter(segundos.longValue(), TimeUnit.SECONDS);
+        }
+        Document filtro = existente.get("partialFilterExpression", Document.class);
+        if (filtro != null) {
+            opciones.partialFilterExpression(filtro);
+        }
+        return opciones;
+    }
+
+    /**
+     * Compara claves en orden; 1 y 1.0 se consideran iguales.
+     */
+    private static boolean mismasClaves(Document a, Document b) {
+        if (a == null || b == null || a.size() != b.size()) {
+            return false;
+        }
+        List<Map.Entry<String, Object>> entradasA = new ArrayList<>(a.entrySet());
+        List<Map.Entry<String, Object>> entradasB = new ArrayList<>(b.entrySet());
+        for (int i = 0; i < entradasA.size(); i++) {
+            if (!entradasA.get(i).getKey().equals(entradasB.get(i).getKey())
+                    || !normalizar(entradasA.get(i).getValue()).equals(normalizar(entradasB.get(i).getValue()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object normalizar(Object valor) {
+        return valor instanceof Number numero ? (Object) numero.intValue() : String.valueOf(valor);
+    }
+
+    private static IndiceRegistrado indice(String coleccion, String nombre, Document claves) {
+        return new IndiceRegistrado(coleccion, nombre, claves, false, false, null, null);
+    }
+
+    private static EstadoIndice estado(IndiceRegistrado registrado, String nombre, String estado, String detalle) {
+        return estado(registrado.coleccion(), nombre, registrado.claves(), estado, detalle);
+    }
+
+    private static EstadoIndice estado(String coleccion, String nombre, Document claves, String estado, String detalle) {
+        return EstadoIndice.builder()
+                .coleccion(coleccion)
+                .nombre(nombre)
+                .claves(claves == null ? null : claves.toJson())
+                .estado(estado)
+                .detalle(detalle)
+                .build();
+    }
+}
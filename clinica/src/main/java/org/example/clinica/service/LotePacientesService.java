@@ -0,0 +1,105 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.example.clinica.dto.LotePacientes;
+import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.util.CamposPaciente;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Servicio que lee varios pacientes por ID en una sola consulta.
+ *
+ * Lo usan los paneles y la impresión de listados, que conocen de antemano
+ * qué pacientes necesitan: en lugar de un GET por paciente (cada uno con su
+ * validación de token) se hace una única petición y un único $in en MongoDB.
+ */
+@Service
+@RequiredArgsConstructor
+public class LotePacientesService {
+
+    /**
+     * Cantidad máxima de IDs por solicitud.
+     */
+    public static final int MAXIMO_IDS = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Obtiene los pacientes indicados, en el orden pedido.
+     *
+     * Proceso:
+     * 1. Se validan los IDs (sin repetidos, hasta MAXIMO_IDS) y los campos.
+     * 2. Se consulta MongoDB una sola vez con _id $in, proyectando solo los
+     *    campos pedidos.
+     * 3. Se arma la respuesta recorriendo los IDs en el orden de la solicitud;
+     *    los que no aparecieron van a noEncontrados.
+     *
+     * @param ids IDs de los pacientes.
+     * @param campos Campos a incluir; vacío o null para el documento completo.
+     * @return Pacientes encontrados y IDs inexistentes.
+     * @throws IllegalArgumentException si no hay IDs, si son demasiados o si
+     *         algún campo no existe.
+     */
+    public LotePacientes obtener(List<String> ids, Collection<String> campos) {
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("Se debe indicar al menos un ID");
+        }
+        Set<String> pedidos = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (id != null && !id.isBlank()) {
+                pedidos.add(id.trim());
+            }
+        }
+        if (pedidos.size() > MAXIMO_IDS) {
+            throw new IllegalArgumentException("No se pueden pedir más de " + MAXIMO_IDS + " pacientes por solicitud");
+        }
+        Set<String> seleccion = campos == null ? Set.of() : CamposPaciente.validar(campos);
+
+        Query query = new Query(Criteria.where("_id").in(pedidos));
+        Set<String> camposSalida = new LinkedHashSet<>();
+        if (!seleccion.isEmpty()) {
+            camposSalida.add("id");
+            camposSalida.addAll(seleccion);
+            seleccion.forEach(campo -> query.fields().include(campo));
+        }
+
+        Map<String, ObjectNode> encontrados = new HashMap<>();
+        for (Paciente paciente : mongoTemplate.find(query, Paciente.class)) {
+            ObjectNode nodo = objectMapper.valueToTree(paciente);
+            if (!camposSalida.isEmpty()) {
+                nodo.retain(camposSalida);
+            }
+            encontrados.put(paciente.getId(), nodo);
+        }
+
+        List<ObjectNode> pacientes = new ArrayList<>(encontrados.size());
+        List<String> noEncontrados = new ArrayList<>();
+        for (String id : pedidos) {
+            ObjectNode nodo = encontrados.get(id);
+            if (nodo != null) {
+                pacientes.add(nodo);
+            } else {
+                noEncontrados.add(id);
+            }
+        }
+
+        return LotePacientes.builder()
+                .pacientes(pacientes)
+                .noEncontrados(noEncontrados)
+                .build();
+    }
+}
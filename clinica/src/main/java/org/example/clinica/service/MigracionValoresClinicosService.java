@@ -0,0 +1,143 @@
+package org.example.clinica.service;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.example.clinica.util.ValoresClinicos;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Migración de las fechas y medidas clínicas guardadas como texto a sus tipos
+ * reales (fecha y número de MongoDB).
+ *
+ * La migración es perezosa y tolerante:
+ * - Mientras un documento no se migra, se sigue leyendo bien gracias a los
+ *   conversores de lectura (ver MongoConfig).
+ * - Cada alta o modificación ya guarda los valores tipados.
+ * - Al iniciar la aplicación se recorren, por lotes, solo los documentos que
+ *   todavía tienen texto en alguno de esos campos, para que los filtros por
+ *   rango los encuentren. Los textos que no se pueden interpretar se dejan
+ *   como están y se informan en el log.
+ */
+@Service
+@RequiredArgsConstructor
+public class MigracionValoresClinicosService {
+
+    private static final int TAMANIO_LOTE = 500;
+
+    private enum Tipo { FECHA, NUMERO }
+
+    // Campos a migrar por colección
+    private static final Map<String, Map<String, Tipo>> CAMPOS = Map.of(
+            "pacientes", Map.of(
+                    "fechaNacimiento", Tipo.FECHA,
+                    "fechaPrimeraDialisis", Tipo.FECHA),
+            "historia_clinica", Map.of(
+                    "fecha", Tipo.FECHA,
+                    "fechaPrimeraDialisisVida", Tipo.FECHA,
+                    "fechaPrimeraDialisisClinica", Tipo.FECHA,
+                    "peso", Tipo.NUMERO,
+                    "pesoSeco", Tipo.NUMERO,
+                    "altura", Tipo.NUMERO),
+            "evolucion_mensual", Map.of(
+                    "fecha", Tipo.FECHA)
+    );
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Recorre las colecciones y tipa los valores pendientes. Se ejecuta después
+     * de la migración de registros embebidos, así también alcanza a esas entradas.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void migrarPendientes() {
+        CAMPOS.forEach(this::migrarColeccion);
+    }
+
+    private void migrarColeccion(String coleccion, Map<String, Tipo> campos) {
+        List<Criteria> conTexto = campos.keySet().stream()
+                .map(campo -> Criteria.where(campo).type(2)) // 2 = string
+                .toList();
+        Query pendientes = new Query(new Criteria().orOperator(conTexto));
+        campos.keySet().forEach(campo -> pendientes.fields().include(campo));
+        pendientes.cursorBatchSize(TAMANIO_LOTE);
+
+        int migrados = 0;
+        int sinInterpretar = 0;
+        BulkOperations lote = null;
+        int enLote = 0;
+
+        try (Stream<Document> stream = mongoTemplate.stream(pendientes, Document.class, coleccion)) {
+            for (Document documento : (Iterable<Document>) stream::iterator) {
+                Update update = new Update();
+                for (Map.Entry<String, Tipo> campo : campos.entrySet()) {
+                    if (!(documento.get(campo.getKey()) instanceof String texto)) {
+                        continue;
+                    }
+                    try {
+                        Object valor = convertir(texto, campo.getValue());
+                        if (valor == null) {
+                            update.unset(campo.getKey());
+                        } else {
+                            update.set(campo.getKey(), valor);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        sinInterpretar++;
+                    }
+                }
+                if (update.getUpdateObject().isEmpty()) {
+                    continue;
+                }
+
+                if (lote == null) {
+                    lote = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, coleccion);
+                }
+                lote.updateOne(new Query(Criteria.where("_id").is(documento.get("_id"))), update);
+                migrados++;
+                if (++enLote == TAMANIO_LOTE) {
+                    lote.execute();
+                    lote = null;
+                    enLote = 0;
+                }
+            }
+            if (lote != null) {
+                lote.execute();
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudieron tipar los valores de " + coleccion + ": " + e.getMessage());
+            return;
+        }
+
+        if (migrados > 0) {
+            System.out.println("Valores tipados en " + migrados + " documentos de " + coleccion);
+        }
+        if (sinInterpretar > 0) {
+            System.err.println(sinInterpretar + " valores de " + coleccion + " no se pudieron interpretar y quedaron como texto");
+        }
+    }
+
+    private static Object convertir(String texto, Tipo tipo) {
+        if (tipo == Tipo.NUMERO) {
+            return ValoresClinicos.parsearNumero(texto);
+        }
+        LocalDate fecha = ValoresClinicos.parsearFecha(texto);
+        // Misma representación que usa MongoConfig: medianoche UTC
+        return fecha == null ? null : Date.from(fecha.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+}
@@ -0,0 +1,187 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.example.clinica.dto.EstadisticasCache;
+import org.example.clinica.model.mongo.Paciente;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Caché en memoria de pacientes leídos por ID.
+ *
+ * Durante un turno de diálisis se consultan una y otra vez los mismos 30-40
+ * pacientes (escaneos de QR, apertura de fichas); esta caché evita ir a
+ * MongoDB en cada lectura repetida.
+ *
+ * Características:
+ * - Acotada por peso: cada paciente pesa el tamaño aproximado de su JSON, así
+ *   una ficha grande ocupa más lugar que una chica.
+ * - Desalojo W-TinyLFU (Caffeine): conserva los pacientes más consultados.
+ * - Vencimiento (TTL) desde la lectura, como red de seguridad.
+ * - Invalidación exacta: PacienteService la llama en cada alta, modificación
+ *   y baja. Escrituras hechas por fuera de la aplicación (u otra instancia)
+ *   se ven recién al vencer el TTL.
+ * - Lecturas concurrentes del mismo paciente (varios escaneos del mismo QR
+ *   en pocos segundos) comparten una sola consulta a la base.
+ * - Contadores de aciertos, fallos, desalojos y lecturas compartidas.
+ */
+@Component
+public class PacienteCache {
+
+    private final Cache<String, Paciente> cache;
+    private final ObjectMapper objectMapper;
+    private final long pesoMaximo;
+
+    // Consultas a la base en curso, por ID: los demás lectores esperan la misma
+    private final Map<String, CompletableFuture<Optional<Paciente>>> lecturasEnCurso = new ConcurrentHashMap<>();
+
+    // Lectores que recibieron el resultado de una consulta ya en curso
+    private final LongAdder lecturasCompartidas = new LongAdder();
+
+    public PacienteCache(ObjectMapper objectMapper,
+                         @Value("${clinica.cache.pacientes.peso-maximo:16777216}") long pesoMaximo,
+                         @Value("${clinica.cache.pacientes.ttl:10m}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.pesoMaximo = pesoMaximo;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(pesoMaximo)
+                .weigher((String id, Paciente paciente) -> estimarPeso(paciente))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Devuelve el paciente desde la caché o, si no está, lo carga con la
+     * función indicada y lo guarda. Los pacientes inexistentes no se guardan.
+     *
+     * Si ya hay una consulta en curso para el mismo ID, no se lanza otra: se
+     * espera esa y se comparte su resultado. La consulta no se ejecuta dentro
+     * de ningún lock de la caché, así una lectura lenta no bloquea a otros
+     * pacientes ni a las escrituras.
+     *
+     * Si el paciente se modifica mientras la consulta está en curso,
+     * invalidar() la descarta: quienes ya esperaban reciben su resultado,
+     * pero no se guarda en caché y los lectores siguientes consultan de nuevo.
+     *
+     * @param id ID del paciente.
+     * @param cargador Lectura desde la base (se invoca solo en un fallo).
+     * @return Paciente encontrado, o vacío si no existe.
+     */
+    public Optional<Paciente> obtener(String id, Function<String, Optional<Paciente>> cargador) {
+        Paciente enCache = cache.getIfPresent(id);
+        if (enCache != null) {
+            return Optional.of(enCache);
+        }
+
+        CompletableFuture<Optional<Paciente>> lectura = new CompletableFuture<>();
+        CompletableFuture<Optional<Paciente>> enCurso = lecturasEnCurso.putIfAbsent(id, lectura);
+        if (enCurso != null) {
+            lecturasCompartidas.increment();
+            return esperar(enCurso);
+        }
+
+        try {
+            Optional<Paciente> resultado = cargador.apply(id);
+            resultado.ifPresent(paciente -> cache.put(id, paciente));
+            // Si una escritura la quitó del mapa mientras tanto, el resultado ya es viejo
+            if (!lecturasEnCurso.remove(id, lectura)) {
+                cache.invalidate(id);
+            }
+            lectura.complete(resultado);
+            return resultado;
+        } catch (RuntimeException e) {
+            lecturasEnCurso.remove(id, lectura);
+            lectura.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Devuelve el paciente solo si ya está en caché (no cuenta como fallo ni carga nada).
+     *
+     * @param id ID del paciente.
+     * @return Paciente en caché, o vacío.
+     */
+    public Optional<Paciente> obtenerSiPresente(String id) {
+        return Optional.ofNullable(cache.policy().getIfPresentQuietly(id));
+    }
+
+    /**
+     * Quita un paciente de la caché. Se invoca después de cada escritura.
+     *
+     * @param id ID del paciente modificado.
+     */
+    public void invalidar(String id) {
+        lecturasEnCurso.remove(id);
+        cache.invalidate(id);
+    }
+
+    /**
+     * Vacía la caché completa (por ejemplo, tras una migración de datos, o si
+     * se perdieron eventos del change stream). Las lecturas en curso tampoco
+     * se guardan.
+     */
+    public void invalidarTodo() {
+        lecturasEnCurso.clear();
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return Contadores acumulados desde el inicio de la aplicación.
+     */
+    public EstadisticasCache estadisticas() {
+        CacheStats stats = cache.stats();
+        return EstadisticasCache.builder()
+                .aciertos(stats.hitCount())
+                .fallos(stats.missCount())
+                .tasaAciertos(stats.hitRate())
+                .desalojos(stats.evictionCount())
+                .entradas(cache.estimatedSize())
+                .pesoTotal(cache.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L))
+                        .orElse(0L))
+                .pesoMaximo(pesoMaximo)
+                .lecturasCompartidas(lecturasCompartidas.sum())
+                .build();
+    }
+
+    /**
+     * Espera una consulta iniciada por otro hilo y propaga su error tal cual.
+     */
+    private static Optional<Paciente> esperar(CompletableFuture<Optional<Paciente>> lectura) {
+        try {
+            return lectura.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Peso de un paciente: largo de su JSON en bytes. Solo se calcula al
+     * guardarlo, es decir, después de una lectura a la base.
+     */
+    private int estimarPeso(Paciente paciente) {
+        try {
+            return objectMapper.writeValueAsBytes(paciente).length;
+        } catch (JsonProcessingException e) {
+            return 4096;
+        }
+    }
+}
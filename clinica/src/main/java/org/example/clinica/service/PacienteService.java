@@ -1,15 +1,37 @@
 package org.example.clinica.service;
 
 import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.clinica.dto.CambiosPacientes;
+import org.example.clinica.dto.FiltroPacientes;
+import org.example.clinica.dto.PacienteResumen;
+import org.example.clinica.dto.PaginaPacientes;
+import org.example.clinica.exception.VersionConflictoException;
 import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.model.mongo.PacienteEliminado;
 import org.example.clinica.repository.mongo.PacienteRepository;
-import org.springframework.beans.BeanUtils;
+import org.example.clinica.util.NormalizadorTexto;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Servicio encargado de gestionar las operaciones relacionadas con los pacientes.
@@ -19,70 +41,349 @@ import java.util.Optional;
  * - Actualización parcial de datos fusionando solo campos no nulos.
  * - Reenvío automático de QR cuando cambian los emails registrados.
  * - Borrado y consulta de pacientes almacenados en MongoDB.
+ * - Listado paginado por cursor con una proyección resumida.
+ * - Filtros indexados por rango de fecha de nacimiento y de inicio de diálisis.
+ * - Sincronización incremental del listado (cambios y borrados desde un token).
+ * - Búsqueda indexada por documento, nombre y apellido.
+ * - Caché de lecturas por ID, invalidada en cada escritura.
+ * - Actualización incremental de las estadísticas del dashboard.
  */
 @Service
 @RequiredArgsConstructor
 public class PacienteService {
 
+    /**
+     * Cantidad de pacientes por página cuando el cliente no indica un límite.
+     */
+    public static final int TAMANIO_PAGINA_DEFECTO = 50;
+
+    /**
+     * Cantidad máxima de pacientes que se devuelven en una sola página.
+     */
+    public static final int TAMANIO_PAGINA_MAXIMO = 200;
+
+    /**
+     * Cantidad de resultados de búsqueda cuando el cliente no indica un límite.
+     */
+    public static final int LIMITE_BUSQUEDA_DEFECTO = 20;
+
+    /**
+     * Cantidad máxima de resultados que devuelve una búsqueda.
+     */
+    public static final int LIMITE_BUSQUEDA_MAXIMO = 50;
+
+    /**
+     * Cantidad máxima de cambios que devuelve una sincronización; si hay más,
+     * se le pide al cliente que recargue el listado.
+     */
+    public static final int LIMITE_CAMBIOS = 1000;
+
+    /**
+     * Margen que se resta al token al buscar cambios, para no perder
+     * escrituras que estaban en curso al emitirlo (o relojes desfasados entre
+     * instancias). Los cambios repetidos son inofensivos para el cliente.
+     */
+    static final Duration MARGEN_SINCRONIZACION = Duration.ofSeconds(10);
+
+    /**
+     * Antigüedad máxima de un token: coincide con la retención de las marcas de borrado.
+     */
+    static final Duration ANTIGUEDAD_MAXIMA_TOKEN = PacienteEliminado.RETENCION;
+
+    private static final String COLECCION_PACIENTES = "pacientes";
+
+    /**
+     * Una etapa del ranking de búsqueda: el filtro y el campo indexado por el que se ordena.
+     */
+    private record EtapaBusqueda(Criteria criterio, String orden) {
+    }
+
     private final PacienteRepository pacienteRepository;
-    private final QrService qrService; // Servicio encargado de generar y enviar códigos QR
+    private final MongoTemplate mongoTemplate;
+    private final CorreosSalientesService correosSalientesService; // Cola de envíos del QR por email
+    private final RegistrosClinicosService registrosClinicosService; // Historia clínica y evolución
+    private final PacienteCache pacienteCache; // Lecturas por ID repetidas
+    private final EstadisticasService estadisticasService; // Contadores del dashboard
 
     /**
      * Crea un nuevo paciente en la base de datos.
      *
      * Proceso:
-     * 1. Se guarda inicialmente para obtener un ID generado por MongoDB.
-     * 2. Se construye la URL que estará dentro del código QR.
-     * 3. Se genera la imagen del QR.
-     * 4. Se envía automáticamente el QR a los primeros emails registrados.
-     * 5. Se vuelve a guardar el paciente con la URL del QR incorporada.
+     * 1. Se asigna el ID (ObjectId) antes de insertar, se construye la URL
+     *    que estará dentro del código QR y se calculan las claves de búsqueda.
+     * 2. Se encola el envío del QR a los primeros emails registrados (antes
+     *    de insertar, para que no se pierda si el proceso se cae; el worker
+     *    verifica que el paciente exista antes de enviarlo).
+     * 3. Se inserta el paciente con una única escritura.
      *
      * @param paciente Datos del paciente a registrar.
      * @return Paciente recién creado y con la URL del QR asignada.
      */
     public Paciente crearPaciente(Paciente paciente) {
-        Paciente nuevoPaciente = pacienteRepository.save(paciente);
+        prepararAlta(paciente);
 
-        // URL para QR
-        nuevoPaciente.setQrCodeData(
-                "http://localhost:4200/pacientes/" + nuevoPaciente.getId() + "/observar"
-        );
+        // Envío del QR, en cola
+        String correoQr = correosSalientesService.encolarQrPaciente(paciente.getId(), paciente.getEmails());
 
-        // Generación y envío del QR
-        byte[] qrImage = qrService.generateQrCodeImage(nuevoPaciente.getQrCodeData());
-        List<String> emailsParaQr = nuevoPaciente.getEmails();
+        Paciente nuevoPaciente;
+        try {
+            nuevoPaciente = mongoTemplate.insert(paciente);
+        } catch (RuntimeException e) {
+            correosSalientesService.descartar(correoQr);
+            throw e;
+        }
+        pacienteCache.invalidar(nuevoPaciente.getId());
+        estadisticasService.registrarAlta(nuevoPaciente);
 
-        if (emailsParaQr != null && !emailsParaQr.isEmpty()) {
-            List<String> emailsPrioritarios =
-                    emailsParaQr.subList(0, Math.min(2, emailsParaQr.size()));
+        return nuevoPaciente;
+    }
 
-            qrService.enviarQrPorEmail(
-                    nuevoPaciente.getId(),
-                    emailsPrioritarios,
-                    qrImage
-            );
+    /**
+     * Obtiene una página de pacientes en formato resumido.
+     *
+     * Funcionamiento:
+     * - Paginación por cursor (keyset) sobre el _id: cada página comienza
+     *   después del último ID devuelto, por lo que el costo no crece con la
+     *   cantidad de páginas recorridas.
+     * - Solo se leen de MongoDB los campos del resumen; las alergias,
+     *   la medicación y los parámetros de diálisis nunca salen de la base.
+     * - Se pide un elemento extra para saber si existe una página siguiente.
+     *
+     * @param cursor ID del último paciente de la página anterior (null para la primera).
+     * @param limite Cantidad de pacientes deseada (se acota a TAMANIO_PAGINA_MAXIMO).
+     * @return Página con los resúmenes y el cursor para continuar.
+     * @throws IllegalArgumentException si el cursor no es un ID válido.
+     */
+    public PaginaPacientes listarResumen(String cursor, Integer limite) {
+        return listarResumen(cursor, limite, null);
+    }
+
+    /**
+     * Obtiene una página del listado resumido aplicando filtros por rango de fechas.
+     *
+     * @param cursor ID del último paciente de la página anterior (null para la primera).
+     * @param limite Cantidad de pacientes deseada (se acota a TAMANIO_PAGINA_MAXIMO).
+     * @param filtro Rangos de fechas (puede ser null).
+     * @return Página con los resúmenes y el cursor para continuar.
+     * @throws IllegalArgumentException si el cursor no es un ID válido.
+     */
+    public PaginaPacientes listarResumen(String cursor, Integer limite, FiltroPacientes filtro) {
+        int tamanio = acotarLimite(limite);
+        String token = emitirToken();
+
+        Query query = new Query();
+        Criteria rango = criterioFiltro(filtro);
+        if (rango != null) {
+            query.addCriteria(rango);
         }
+        if (cursor != null && !cursor.isBlank()) {
+            if (!ObjectId.isValid(cursor)) {
+                throw new IllegalArgumentException("Cursor de paginación inválido: " + cursor);
+            }
+            query.addCriteria(Criteria.where("_id").gt(new ObjectId(cursor)));
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(tamanio + 1);
+        query.fields().include("nombre", "apellido", "documento", "fechaNacimiento");
+
+        List<PacienteResumen> resultados =
+                mongoTemplate.find(query, PacienteResumen.class, COLECCION_PACIENTES);
 
-        return pacienteRepository.save(nuevoPaciente);
+        boolean hayMas = resultados.size() > tamanio;
+        if (hayMas) {
+            resultados = resultados.subList(0, tamanio);
+        }
+
+        return PaginaPacientes.builder()
+                .pacientes(resultados)
+                .siguienteCursor(hayMas ? resultados.get(resultados.size() - 1).getId() : null)
+                .hayMas(hayMas)
+                .token(token)
+                .build();
     }
 
     /**
-     * Obtiene una lista de todos los pacientes registrados.
+     * Obtiene los cambios del listado desde un token de sincronización.
+     *
+     * Funcionamiento:
+     * - El token es el instante (en milisegundos) en que se emitió; se toma uno
+     *   nuevo antes de consultar, así ningún cambio posterior queda afuera.
+     * - Se buscan los pacientes con actualizadoEn posterior al token (menos
+     *   MARGEN_SINCRONIZACION) usando su índice, y las marcas de borrado
+     *   posteriores al token.
+     * - Si el token es más viejo que la retención de las marcas, o hubo más de
+     *   LIMITE_CAMBIOS cambios, se responde recargar = true.
      *
-     * @return Lista completa de pacientes.
+     * @param since Token recibido en la sincronización anterior.
+     * @return Resúmenes modificados, IDs eliminados y el token siguiente.
+     * @throws IllegalArgumentException si el token no es válido.
      */
-    public List<Paciente> listarTodos() {
-        return pacienteRepository.findAll();
+    public CambiosPacientes listarCambios(String since) {
+        Instant desde = leerToken(since);
+        String token = emitirToken();
+
+        if (desde.isBefore(Instant.now().minus(ANTIGUEDAD_MAXIMA_TOKEN))) {
+            return CambiosPacientes.builder()
+                    .pacientes(List.of())
+                    .eliminados(List.of())
+                    .token(token)
+                    .recargar(true)
+                    .build();
+        }
+        Instant desdeConMargen = desde.minus(MARGEN_SINCRONIZACION);
+
+        Query modificados = new Query(Criteria.where("actualizadoEn").gte(desdeConMargen))
+                .with(Sort.by(Sort.Direction.ASC, "actualizadoEn"))
+                .limit(LIMITE_CAMBIOS + 1);
+        modificados.fields().include("nombre", "apellido", "documento", "fechaNacimiento");
+        List<PacienteResumen> pacientes =
+                mongoTemplate.find(modificados, PacienteResumen.class, COLECCION_PACIENTES);
+
+        Query borrados = new Query(Criteria.where("eliminadoEn").gte(desdeConMargen))
+                .limit(LIMITE_CAMBIOS + 1);
+        List<String> eliminados = mongoTemplate.find(borrados, PacienteEliminado.class).stream()
+                .map(PacienteEliminado::getId)
+                .toList();
+
+        boolean recargar = pacientes.size() > LIMITE_CAMBIOS || eliminados.size() > LIMITE_CAMBIOS;
+        return CambiosPacientes.builder()
+                .pacientes(recargar ? List.of() : pacientes)
+                .eliminados(recargar ? List.of() : eliminados)
+                .token(token)
+                .recargar(recargar)
+                .build();
+    }
+
+    /**
+     * Busca pacientes por documento, nombre o apellido usando índices de MongoDB.
+     *
+     * Orden de los resultados (ranking):
+     * 1. Documento exacto.
+     * 2. Documento que comienza con el término.
+     * 3. Apellido que comienza con el término.
+     * 4. Nombre que comienza con el término.
+     *
+     * Nombre y apellido se comparan contra las claves normalizadas (sin acentos
+     * y en minúsculas), por lo que "gomez" encuentra a "Gómez". Si el término
+     * tiene varias palabras, cada una debe ser prefijo del nombre o del apellido.
+     *
+     * Cada etapa es una consulta anclada (^término) resuelta por índice y
+     * limitada a los lugares que quedan libres, así la latencia no depende del
+     * tamaño de la colección.
+     *
+     * @param termino Texto ingresado por el usuario.
+     * @param limite Cantidad máxima de resultados (se acota a LIMITE_BUSQUEDA_MAXIMO).
+     * @return Resúmenes de los pacientes encontrados, ordenados por relevancia.
+     */
+    public List<PacienteResumen> buscar(String termino, Integer limite) {
+        return buscar(termino, limite, null);
+    }
+
+    /**
+     * Busca pacientes como buscar(termino, limite), restringiendo cada etapa
+     * a los rangos de fechas indicados.
+     *
+     * @param termino Texto ingresado por el usuario.
+     * @param limite Cantidad máxima de resultados (se acota a LIMITE_BUSQUEDA_MAXIMO).
+     * @param filtro Rangos de fechas (puede ser null).
+     * @return Resúmenes de los pacientes encontrados, ordenados por relevancia.
+     */
+    public List<PacienteResumen> buscar(String termino, Integer limite, FiltroPacientes filtro) {
+        if (termino == null || termino.isBlank()) {
+            return List.of();
+        }
+        int maximo = (limite == null || limite <= 0)
+                ? LIMITE_BUSQUEDA_DEFECTO
+                : Math.min(limite, LIMITE_BUSQUEDA_MAXIMO);
+
+        String documento = termino.trim();
+        String normalizado = NormalizadorTexto.normalizar(termino);
+        String[] palabras = normalizado.split(" ");
+
+        List<EtapaBusqueda> etapas = new ArrayList<>();
+        etapas.add(new EtapaBusqueda(Criteria.where("documento").is(documento), "documento"));
+        etapas.add(new EtapaBusqueda(
+                Criteria.where("documento").regex("^" + NormalizadorTexto.escaparRegex(documento)), "documento"));
+
+        if (palabras.length == 1) {
+            String prefijo = "^" + NormalizadorTexto.escaparRegex(palabras[0]);
+            etapas.add(new EtapaBusqueda(Criteria.where("apellidoNormalizado").regex(prefijo), "apellidoNormalizado"));
+            etapas.add(new EtapaBusqueda(Criteria.where("nombreNormalizado").regex(prefijo), "nombreNormalizado"));
+        } else {
+            List<Criteria> porPalabra = new ArrayList<>();
+            for (String palabra : palabras) {
+                String prefijo = "^" + NormalizadorTexto.escaparRegex(palabra);
+                porPalabra.add(new Criteria().orOperator(
+                        Criteria.where("apellidoNormalizado").regex(prefijo),
+                        Criteria.where("nombreNormalizado").regex(prefijo)
+                ));
+            }
+            etapas.add(new EtapaBusqueda(new Criteria().andOperator(porPalabra), "apellidoNormalizado"));
+        }
+
+        Criteria rango = criterioFiltro(filtro);
+
+        // Se acumulan por ID para no repetir pacientes entre etapas
+        Map<String, PacienteResumen> resultados = new LinkedHashMap<>();
+        for (EtapaBusqueda etapa : etapas) {
+            int restantes = maximo - resultados.size();
+            if (restantes <= 0) {
+                break;
+            }
+            // Se piden también los ya encontrados, porque pueden volver a aparecer en esta etapa
+            Criteria criterio = rango == null ? etapa.criterio() : new Criteria().andOperator(etapa.criterio(), rango);
+            Query query = new Query(criterio)
+                    .with(Sort.by(etapa.orden()))
+                    .limit(restantes + resultados.size());
+            query.fields().include("nombre", "apellido", "documento", "fechaNacimiento");
+
+            for (PacienteResumen resumen : mongoTemplate.find(query, PacienteResumen.class, COLECCION_PACIENTES)) {
+                if (resultados.size() >= maximo) {
+                    break;
+                }
+                resultados.putIfAbsent(resumen.getId(), resumen);
+            }
+        }
+
+        return new ArrayList<>(resultados.values());
     }
 
     /**
      * Busca un paciente por su ID.
+     * Las lecturas repetidas se resuelven desde PacienteCache, y las
+     * concurrentes del mismo ID comparten una sola consulta a MongoDB.
      *
      * @param id Identificador único del paciente.
      * @return Optional que puede contener el paciente encontrado.
      */
     public Optional<Paciente> buscarPorId(String id) {
-        return pacienteRepository.findById(id);
+        return pacienteCache.obtener(id, pacienteRepository::findById);
+    }
+
+    /**
+     * Obtiene solo la versión actual de un paciente (proyección del campo
+     * "version"). Permite responder una lectura condicional sin traer ni
+     * serializar el documento completo.
+     *
+     * @param id Identificador del paciente.
+     * @return Versión del paciente (0 si el documento es anterior a este campo),
+     *         o vacío si no existe.
+     */
+    public Optional<Long> obtenerVersion(String id) {
+        Optional<Paciente> enCache = pacienteCache.obtenerSiPresente(id);
+        if (enCache.isPresent()) {
+            Long version = enCache.get().getVersion();
+            return Optional.of(version == null ? 0L : version);
+        }
+
+        Query query = new Query(Criteria.where("_id").is(id));
+        query.fields().include("version");
+
+        Document documento = mongoTemplate.findOne(query, Document.class, COLECCION_PACIENTES);
+        if (documento == null) {
+            return Optional.empty();
+        }
+        Number version = documento.get("version", Number.class);
+        return Optional.of(version == null ? 0L : version.longValue());
     }
 
     /**
@@ -91,76 +392,320 @@ public class PacienteService {
      * Comportamiento:
      * - Ignora campos nulos del objeto recibido (solo sobrescribe valores presentes).
      * - Mantiene campos inmutables como el ID y la URL del QR.
+     * - Recalcula las claves de búsqueda si cambian el nombre o el apellido.
      * - Si cambian los emails, se genera y reenvía automáticamente el código QR.
      *
+     * Funcionamiento:
+     * Los campos presentes se convierten con el conversor de Spring Data (el
+     * mismo que usa save) y se aplican con un único findAndModify con $set.
+     * MongoDB devuelve el documento anterior, que sirve para comparar los
+     * emails, y el documento nuevo se arma aplicando el mismo $set en memoria.
+     * No hay lectura previa ni reescritura del documento completo.
+     *
      * @param id ID del paciente a actualizar.
      * @param pacienteActualizado Objeto con los nuevos datos.
      * @return Paciente actualizado y persistido.
+     * @throws RuntimeException si el paciente no existe.
      */
     public Paciente actualizarPaciente(String id, Paciente pacienteActualizado) {
-        Paciente pacienteExistente = pacienteRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Paciente no encontrado"));
+        return actualizarPaciente(id, pacienteActualizado, null);
+    }
+
+    /**
+     * Actualiza parcialmente un paciente solo si sigue en alguna de las versiones indicadas
+     * (control de concurrencia optimista). La condición forma parte del
+     * filtro del findAndModify, así que la verificación y la escritura son
+     * una sola operación atómica. Cada actualización incrementa la versión.
+     *
+     * @param id ID del paciente a actualizar.
+     * @param pacienteActualizado Objeto con los nuevos datos.
+     * @param versionesEsperadas Versiones aceptadas, según If-Match (null para no verificar).
+     * @return Paciente actualizado y persistido.
+     * @throws VersionConflictoException si el paciente no está en ninguna de esas versiones.
+     * @throws RuntimeException si el paciente no existe.
+     */
+    public Paciente actualizarPaciente(String id, Paciente pacienteActualizado, Set<Long> versionesEsperadas) {
+        Document cambios = new Document();
+        mongoTemplate.getConverter().write(pacienteActualizado, cambios);
 
-        boolean emailsModificados = false;
+        // Campos protegidos y metadatos del conversor
+        cambios.remove("_id");
+        cambios.remove("_class");
+        cambios.remove("qrCodeData");
+        cambios.remove("version");
+        cambios.remove("creadoEn");
+        cambios.remove("actualizadoEn");
+        cambios.remove("nombreNormalizado");
+        cambios.remove("apellidoNormalizado");
 
-        // Verificar si se modificaron los emails
-        if (pacienteActualizado.getEmails() != null &&
-                !pacienteActualizado.getEmails().equals(pacienteExistente.getEmails())) {
-            emailsModificados = true;
+        // Claves de búsqueda derivadas del nombre y el apellido
+        if (cambios.containsKey("nombre")) {
+            cambios.put("nombreNormalizado", NormalizadorTexto.normalizar(pacienteActualizado.getNombre()));
+        }
+        if (cambios.containsKey("apellido")) {
+            cambios.put("apellidoNormalizado", NormalizadorTexto.normalizar(pacienteActualizado.getApellido()));
         }
 
-        // Copiar campos no nulos (update parcial)
+        cambios.put("actualizadoEn", Instant.now());
+
+        Update update = new Update();
+        cambios.forEach(update::set);
+        update.inc("version", 1);
+
+        // Reenvío del QR a los emails nuevos: se encola retenido antes de
+        // escribir, y según el documento anterior se libera o se descarta. Así
+        // ningún worker lo toma mientras todavía no se sabe si hace falta.
+        String correoQr = correosSalientesService.encolarQrPacienteRetenido(id, pacienteActualizado.getEmails());
+
+        Document anterior;
         try {
-            PropertyDescriptor[] descriptors = BeanUtils.getPropertyDescriptors(Paciente.class);
+            anterior = mongoTemplate.findAndModify(
+                    new Query(criterioVersion(id, versionesEsperadas)),
+                    update,
+                    FindAndModifyOptions.options().returnNew(false),
+                    Document.class,
+                    COLECCION_PACIENTES
+            );
+        } catch (RuntimeException e) {
+            correosSalientesService.descartar(correoQr);
+            throw e;
+        }
+        pacienteCache.invalidar(id);
+        if (anterior == null) {
+            correosSalientesService.descartar(correoQr);
+            throw noEncontradoOConflicto(id, versionesEsperadas);
+        }
 
-            for (PropertyDescriptor descriptor : descriptors) {
-                String propertyName = descriptor.getName();
+        Number versionAnterior = anterior.get("version", Number.class);
+        Document actualizado = new Document(anterior);
+        actualizado.putAll(cambios);
+        actualizado.put("version", (versionAnterior == null ? 0L : versionAnterior.longValue()) + 1);
+        Paciente pacienteGuardado = mongoTemplate.getConverter().read(Paciente.class, actualizado);
+        estadisticasService.registrarModificacion(anterior, pacienteGuardado);
 
-                // Campos protegidos
-                if ("id".equals(propertyName)
-                        || "qrCodeData".equals(propertyName)
-                        || "class".equals(propertyName)) {
-                    continue;
-                }
+        // Sin cambio de emails no se reenvía el QR
+        if (pacienteActualizado.getEmails() != null &&
+                pacienteActualizado.getEmails().equals(anterior.getList("emails", String.class))) {
+            correosSalientesService.descartar(correoQr);
+        } else {
+            correosSalientesService.liberar(correoQr);
+        }
 
-                Method readMethod = descriptor.getReadMethod();
-                if (readMethod != null) {
-                    Object value = readMethod.invoke(pacienteActualizado);
+        return pacienteGuardado;
+    }
 
-                    if (value != null) {
-                        Method writeMethod = descriptor.getWriteMethod();
-                        if (writeMethod != null) {
-                            writeMethod.invoke(pacienteExistente, value);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("Error al fusionar propiedades del paciente", e);
+    /**
+     * Elimina un paciente por su ID, junto con su historia clínica y evolución.
+     *
+     * @param id Identificador del paciente.
+     */
+    public void eliminarPaciente(String id) {
+        eliminarPaciente(id, null);
+    }
+
+    /**
+     * Elimina un paciente solo si sigue en alguna de las versiones indicadas.
+     *
+     * @param id Identificador del paciente.
+     * @param versionesEsperadas Versiones aceptadas, según If-Match (null para no verificar).
+     * @throws VersionConflictoException si el paciente no está en ninguna de esas versiones.
+     * @throws RuntimeException si el paciente no existe.
+     */
+    public void eliminarPaciente(String id, Set<Long> versionesEsperadas) {
+        // findAndRemove devuelve el documento borrado: sus campos se restan de las estadísticas
+        Query query = new Query(criterioVersion(id, versionesEsperadas));
+        EstadisticasService.CAMPOS_PACIENTE.forEach(query.fields()::include);
+        Document eliminado = mongoTemplate.findAndRemove(query, Document.class, COLECCION_PACIENTES);
+        pacienteCache.invalidar(id);
+        // Sin documento borrado no hay baja que informar: ni marca para /changes ni registros
+        if (eliminado == null) {
+            throw noEncontradoOConflicto(id, versionesEsperadas);
         }
+        estadisticasService.registrarBaja(eliminado);
+        mongoTemplate.save(new PacienteEliminado(id, Instant.now()));
+        registrosClinicosService.eliminarDePaciente(id);
+    }
 
-        // Reenvío del QR si cambiaron los emails
-        if (emailsModificados &&
-                pacienteExistente.getEmails() != null &&
-                !pacienteExistente.getEmails().isEmpty()) {
+    /**
+     * Filtro por ID y, si se indican, por versión (cualquiera de ellas). Los
+     * documentos sin el campo "version" (anteriores a su incorporación) se
+     * consideran versión 0.
+     */
+    static Criteria criterioVersion(String id, Set<Long> versionesEsperadas) {
+        Criteria criterio = Criteria.where("_id").is(id);
+        if (versionesEsperadas == null) {
+            return criterio;
+        }
+        if (versionesEsperadas.contains(0L)) {
+            return criterio.orOperator(
+                    Criteria.where("version").in(versionesEsperadas),
+                    Criteria.where("version").exists(false)
+            );
+        }
+        return criterio.and("version").in(versionesEsperadas);
+    }
 
-            byte[] qrImage = qrService.generateQrCodeImage(pacienteExistente.getQrCodeData());
+    /**
+     * Distingue, tras una escritura condicional que no encontró documento,
+     * si el paciente no existe o si cambió de versión.
+     */
+    private RuntimeException noEncontradoOConflicto(String id, Set<Long> versionesEsperadas) {
+        if (versionesEsperadas != null && pacienteRepository.existsById(id)) {
+            return new VersionConflictoException("El paciente fue modificado por otro usuario");
+        }
+        return new RuntimeException("Paciente no encontrado");
+    }
 
-            List<String> emailsPrioritarios =
-                    pacienteExistente.getEmails().subList(0, Math.min(2, pacienteExistente.getEmails().size()));
+    /**
+     * Convierte los rangos de fechas en un criterio de MongoDB.
+     *
+     * @return Criterio sobre fechaNacimiento y/o fechaPrimeraDialisis, o null si no hay filtros.
+     */
+    private static Criteria criterioFiltro(FiltroPacientes filtro) {
+        if (filtro == null || filtro.vacio()) {
+            return null;
+        }
+        List<Criteria> rangos = new ArrayList<>();
+        agregarRango(rangos, "fechaNacimiento", filtro.getNacidoDesde(), filtro.getNacidoHasta());
+        agregarRango(rangos, "fechaPrimeraDialisis", filtro.getDialisisDesde(), filtro.getDialisisHasta());
+        return rangos.size() == 1 ? rangos.get(0) : new Criteria().andOperator(rangos);
+    }
 
-            qrService.enviarQrPorEmail(pacienteExistente.getId(), emailsPrioritarios, qrImage);
+    private static void agregarRango(List<Criteria> rangos, String campo, LocalDate desde, LocalDate hasta) {
+        if (desde == null && hasta == null) {
+            return;
+        }
+        Criteria rango = Criteria.where(campo);
+        if (desde != null) {
+            rango.gte(desde);
         }
+        if (hasta != null) {
+            rango.lte(hasta);
+        }
+        rangos.add(rango);
+    }
+
+    /**
+     * Token de sincronización: el instante actual en milisegundos.
+     */
+    private static String emitirToken() {
+        return String.valueOf(Instant.now().toEpochMilli());
+    }
 
-        return pacienteRepository.save(pacienteExistente);
+    private static Instant leerToken(String token) {
+        try {
+            return Instant.ofEpochMilli(Long.parseLong(token.trim()));
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IllegalArgumentException("Token de sincronización inválido: " + token);
+        }
     }
 
     /**
-     * Elimina un paciente por su ID.
+     * Normaliza el tamaño de página solicitado por el cliente.
      *
-     * @param id Identificador del paciente.
+     * @param limite Límite recibido (puede ser null).
+     * @return Un valor entre 1 y TAMANIO_PAGINA_MAXIMO.
      */
-    public void eliminarPaciente(String id) {
-        pacienteRepository.deleteById(id);
+    private int acotarLimite(Integer limite) {
+        if (limite == null || limite <= 0) {
+            return TAMANIO_PAGINA_DEFECTO;
+        }
+        return Math.min(limite, TAMANIO_PAGINA_MAXIMO);
+    }
+
+    /**
+     * Prepara un paciente nuevo para insertarlo: asigna el ID, la URL del QR y
+     * las fechas de alta y modificación, y calcula las claves de búsqueda. Los
+     * valores de id, qrCodeData y fechas enviados por el cliente se ignoran.
+     * Lo usan el alta individual y la importación.
+     *
+     * @param paciente Paciente a preparar.
+     */
+    void prepararAlta(Paciente paciente) {
+        Instant ahora = Instant.now();
+        paciente.setId(new ObjectId().toHexString());
+        paciente.setQrCodeData(QrService.construirUrlPaciente(paciente.getId()));
+        paciente.setCreadoEn(ahora);
+        paciente.setActualizadoEn(ahora);
+        actualizarCamposBusqueda(paciente);
+    }
+
+    /**
+     * Recalcula las claves de búsqueda (nombre y apellido normalizados).
+     * Debe invocarse antes de cada escritura del documento completo
+     * (las actualizaciones parciales las calculan en el propio $set).
+     *
+     * @param paciente Paciente a preparar.
+     */
+    void actualizarCamposBusqueda(Paciente paciente) {
+        paciente.setNombreNormalizado(NormalizadorTexto.normalizar(paciente.getNombre()));
+        paciente.setApellidoNormalizado(NormalizadorTexto.normalizar(paciente.getApellido()));
+    }
+
+    /**
+     * Completa las claves de búsqueda de los pacientes guardados antes de que
+     * existieran estos campos. Se ejecuta una vez al iniciar la aplicación y
+     * recorre solo los documentos que todavía no las tienen.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void completarCamposBusquedaPendientes() {
+        Query pendientes = new Query(new Criteria().orOperator(
+                Criteria.where("nombreNormalizado").exists(false),
+                Criteria.where("apellidoNormalizado").exists(false)
+        ));
+        pendientes.fields().include("nombre", "apellido");
+
+        int actualizados = 0;
+        try (Stream<Paciente> stream = mongoTemplate.stream(pendientes, Paciente.class)) {
+            for (Paciente paciente : (Iterable<Paciente>) stream::iterator) {
+                mongoTemplate.updateFirst(
+                        new Query(Criteria.where("_id").is(paciente.getId())),
+                        new Update()
+                                .set("nombreNormalizado", NormalizadorTexto.normalizar(paciente.getNombre()))
+                                .set("apellidoNormalizado", NormalizadorTexto.normalizar(paciente.getApellido())),
+                        Paciente.class
+                );
+                actualizados++;
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudieron completar las claves de búsqueda: " + e.getMessage());
+            return;
+        }
+
+        if (actualizados > 0) {
+            System.out.println("Claves de búsqueda completadas para " + actualizados + " pacientes");
+        }
+    }
+
+    /**
+     * Completa creadoEn y actualizadoEn de los pacientes guardados antes de que
+     * existieran estos campos, usando la fecha contenida en su ObjectId. Se
+     * ejecuta una vez al iniciar la aplicación y solo toca esos documentos.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void completarFechasPendientes() {
+        Query pendientes = new Query(Criteria.where("creadoEn").exists(false));
+        pendientes.fields().include("_id", "actualizadoEn");
+
+        int actualizados = 0;
+        try (Stream<Document> stream = mongoTemplate.stream(pendientes, Document.class, COLECCION_PACIENTES)) {
+            for (Document documento : (Iterable<Document>) stream::iterator) {
+                Object id = documento.get("_id");
+                Instant alta = id instanceof ObjectId objectId ? objectId.getDate().toInstant() : Instant.now();
+                Update update = new Update().set("creadoEn", alta);
+                if (!documento.containsKey("actualizadoEn")) {
+                    update.set("actualizadoEn", alta);
+                }
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(id)), update, COLECCION_PACIENTES);
+                actualizados++;
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudieron completar las fechas de alta: " + e.getMessage());
+            return;
+        }
+
+        if (actualizados > 0) {
+            System.out.println("Fechas de alta completadas para " + actualizados + " pacientes");
+        }
     }
 }
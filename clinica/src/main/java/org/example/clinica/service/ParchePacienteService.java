@@ -0,0 +1,508 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.example.clinica.exception.ParcheConflictoException;
+import org.example.clinica.exception.VersionConflictoException;
+import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.util.NormalizadorTexto;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Servicio que aplica parches parciales (PATCH) sobre un paciente.
+ *
+ * Formatos aceptados:
+ * - JSON Merge Patch (RFC 7396, application/merge-patch+json): un objeto con
+ *   los campos a cambiar; un valor null quita el campo.
+ * - JSON Patch (RFC 6902, application/json-patch+json): una lista de
+ *   operaciones add, remove, replace y test sobre rutas como
+ *   "/medicacionActual/2/dosis".
+ *
+ * Cada parche se traduce a una única actualización de MongoDB ($set, $unset,
+ * $push), de modo que cambiar la dosis de un medicamento no requiere
+ * reenviar la lista completa y se aplica en una sola escritura atómica.
+ *
+ * Las rutas y los valores se validan contra el modelo Paciente: una ruta
+ * inexistente o un valor del tipo equivocado se rechazan antes de escribir.
+ * Las operaciones "test" y la existencia de las rutas a reemplazar o quitar
+ * se verifican como condiciones del mismo filtro de la escritura.
+ *
+ * MongoDB no quita elementos de una lista por posición ($pull quita por
+ * valor, y con él todos los iguales). Para "remove" sobre una lista se lee
+ * la lista, se quitan las posiciones en el orden del parche (RFC 6902: cada
+ * operación ve el resultado de la anterior) y se escribe la lista resultante
+ * con la condición de que la guardada siga siendo la leída.
+ */
+@Service
+@RequiredArgsConstructor
+public class ParchePacienteService {
+
+    /**
+     * Tipo de contenido de JSON Merge Patch.
+     */
+    public static final String MERGE_PATCH = "application/merge-patch+json";
+
+    /**
+     * Tipo de contenido de JSON Patch.
+     */
+    public static final String JSON_PATCH = "application/json-patch+json";
+
+    // Campos que el cliente no puede modificar
+    private static final Set<String> CAMPOS_PROTEGIDOS = Set.of(
+            "id", "version", "qrCodeData", "creadoEn", "actualizadoEn");
+
+    private static final String COLECCION_PACIENTES = "pacientes";
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final PacienteCache pacienteCache;
+    private final CorreosSalientesService correosSalientesService;
+    private final EstadisticasService estadisticasService;
+
+    /**
+     * Destino de una ruta del parche: la ruta en notación de MongoDB y el tipo
+     * Java esperado en ese lugar.
+     */
+    private record Destino(String ruta, JavaType tipo) {
+    }
+
+    /**
+     * Aplica un JSON Merge Patch.
+     *
+     * @param id ID del paciente.
+     * @param parche Objeto con los cambios.
+     * @param versionesEsperadas Versiones aceptadas, según If-Match (null para no verificar).
+     * @return Paciente ya modificado.
+     * @throws IllegalArgumentException si el parche no respeta el modelo Paciente.
+     * @throws VersionConflictoException si el paciente no está en ninguna de esas versiones.
+     * @throws RuntimeException si el paciente no existe.
+     */
+    public Paciente aplicarMergePatch(String id, JsonNode parche, Set<Long> versionesEsperadas) {
+        if (parche == null || !parche.isObject()) {
+            throw new IllegalArgumentException("El merge patch debe ser un objeto JSON");
+        }
+        return ejecutar(id, compilarMergePatch(parche), versionesEsperadas);
+    }
+
+    /**
+     * Aplica un JSON Patch.
+     *
+     * @param id ID del paciente.
+     * @param operaciones Lista de operaciones.
+     * @param versionesEsperadas Versiones aceptadas, según If-Match (null para no verificar).
+     * @return Paciente ya modificado.
+     * @throws IllegalArgumentException si alguna operación es inválida o no está soportada.
+     * @throws ParcheConflictoException si falla un "test" o una ruta ya no existe.
+     * @throws VersionConflictoException si el paciente no está en ninguna de esas versiones.
+     * @throws RuntimeException si el paciente no existe.
+     */
+    public Paciente aplicarJsonPatch(String id, JsonNode operaciones, Set<Long> versionesEsperadas) {
+        if (operaciones == null || !operaciones.isArray()) {
+            throw new IllegalArgumentException("El JSON Patch debe ser una lista de operaciones");
+        }
+        return ejecutar(id, compilarJsonPatch(id, operaciones), versionesEsperadas);
+    }
+
+    // ============================================================
+    // 🟦 COMPILACIÓN
+    // ============================================================
+
+    /**
+     * Traduce un JSON Merge Patch a operaciones de MongoDB, sin escribir.
+     */
+    Compilacion compilarMergePatch(JsonNode parche) {
+        Compilacion compilacion = new Compilacion();
+        compilarMerge(parche, new ArrayList<>(), compilacion);
+        return compilacion;
+    }
+
+    /**
+     * Traduce un JSON Patch a operaciones de MongoDB, sin escribir. Solo lee
+     * el paciente si hay "remove" sobre elementos de una lista.
+     */
+    Compilacion compilarJsonPatch(String id, JsonNode operaciones) {
+        Compilacion compilacion = new Compilacion();
+        for (JsonNode operacion : operaciones) {
+            compilarOperacion(id, operacion, compilacion);
+        }
+        return compilacion;
+    }
+
+    private void compilarMerge(JsonNode parche, List<String> prefijo, Compilacion compilacion) {
+        parche.properties().forEach(entrada -> {
+            List<String> segmentos = new ArrayList<>(prefijo);
+            segmentos.add(entrada.getKey());
+            Destino destino = resolver(segmentos);
+            JsonNode valor = entrada.getValue();
+
+            if (valor.isNull()) {
+                compilacion.unset(destino.ruta());
+            } else if (valor.isObject() && (esModelo(destino.tipo()) || destino.tipo().isMapLikeType())) {
+                // Objetos anidados: se fusionan campo por campo
+                compilarMerge(valor, segmentos, compilacion);
+            } else {
+                compilacion.set(destino.ruta(), convertir(valor, destino.tipo()));
+            }
+        });
+    }
+
+    private void compilarOperacion(String id, JsonNode operacion, Compilacion compilacion) {
+        String op = operacion.path("op").asText("");
+        List<String> segmentos = leerPuntero(operacion.path("path").asText(null));
+        JsonNode valor = operacion.get("value");
+
+        switch (op) {
+            case "add" -> {
+                requerirValor(valor, op);
+                String ultimo = segmentos.get(segmentos.size() - 1);
+                Destino padre = segmentos.size() > 1 ? resolver(segmentos.subList(0, segmentos.size() - 1)) : null;
+                if (padre != null && padre.tipo().isCollectionLikeType()) {
+                    Object elemento = convertir(valor, padre.tipo().getContentType());
+                    if (ultimo.equals("-")) {
+                        compilacion.push(padre.ruta(), elemento, null);
+                    } else {
+                        int posicion = leerIndice(ultimo);
+                        // RFC 6902: se puede insertar hasta el final, pero no más allá
+                        if (posicion > 0) {
+                            compilacion.exigir(Criteria.where(padre.ruta() + "." + (posicion - 1)).exists(true));
+                        }
+                        compilacion.push(padre.ruta(), elemento, posicion);
+                    }
+                } else {
+                    Destino destino = resolver(segmentos);
+                    compilacion.set(destino.ruta(), convertir(valor, destino.tipo()));
+                }
+            }
+            case "replace" -> {
+                requerirValor(valor, op);
+                Destino destino = resolver(segmentos);
+                compilacion.exigir(Criteria.where(destino.ruta()).exists(true));
+                compilacion.set(destino.ruta(), convertir(valor, destino.tipo()));
+            }
+            case "remove" -> {
+                Destino destino = resolver(segmentos);
+                Destino padre = segmentos.size() > 1 ? resolver(segmentos.subList(0, segmentos.size() - 1)) : null;
+                if (padre != null && padre.tipo().isCollectionLikeType()) {
+                    // Se quita por posición sobre la lista ya modificada por los "remove" anteriores
+                    List<Object> lista = compilacion.reescribir(padre.ruta(), () -> leerListaActual(id, padre.ruta()));
+                    int posicion = leerIndice(segmentos.get(segmentos.size() - 1));
+                    if (posicion >= lista.size()) {
+                        throw new ParcheConflictoException("No existe el elemento " + posicion + " de " + padre.ruta());
+                    }
+                    lista.remove(posicion);
+                } else {
+                    compilacion.exigir(Criteria.where(destino.ruta()).exists(true));
+                    compilacion.unset(destino.ruta());
+                }
+            }
+            case "test" -> {
+                requerirValor(valor, op);
+                Destino destino = resolver(segmentos);
+                compilacion.exigir(Criteria.where(destino.ruta()).is(convertir(valor, destino.tipo())));
+            }
+            case "move", "copy" -> throw new IllegalArgumentException("Operación no soportada: " + op);
+            default -> throw new IllegalArgumentException("Operación de JSON Patch inválida: " + op);
+        }
+    }
+
+    /**
+     * Recorre los segmentos de una ruta sobre el modelo Paciente y devuelve la
+     * ruta de MongoDB y el tipo esperado.
+     *
+     * - En un objeto del modelo, el segmento debe ser uno de sus campos.
+     * - En una lista, el segmento debe ser una posición (0, 1, ...).
+     * - En un mapa (parametrosDialisis), cualquier clave sin '.' ni '$' inicial.
+     */
+    private Destino resolver(List<String> segmentos) {
+        if (segmentos.isEmpty()) {
+            throw new IllegalArgumentException("No se puede reemplazar el paciente completo");
+        }
+        JavaType tipo = objectMapper.getTypeFactory().constructType(Paciente.class);
+        StringBuilder ruta = new StringBuilder();
+
+        for (int i = 0; i < segmentos.size(); i++) {
+            String segmento = segmentos.get(i);
+            if (tipo.isCollectionLikeType()) {
+                leerIndice(segmento);
+                tipo = tipo.getContentType();
+            } else if (tipo.isMapLikeType()) {
+                if (segmento.isEmpty() || segmento.contains(".") || segmento.startsWith("$")) {
+                    throw new IllegalArgumentException("Clave inválida: " + segmento);
+                }
+                tipo = tipo.getContentType();
+            } else if (esModelo(tipo)) {
+                if (i == 0 && CAMPOS_PROTEGIDOS.contains(segmento)) {
+                    throw new IllegalArgumentException("El campo " + segmento + " no se puede modificar");
+                }
+                Field campo = buscarCampo(tipo.getRawClass(), segmento);
+                tipo = objectMapper.getTypeFactory().constructType(campo.getGenericType());
+            } else {
+                throw new IllegalArgumentException("Ruta inválida: /" + String.join("/", segmentos));
+            }
+            if (ruta.length() > 0) {
+                ruta.append('.');
+            }
+            ruta.append(segmento);
+        }
+        return new Destino(ruta.toString(), tipo);
+    }
+
+    private static Field buscarCampo(Class<?> clase, String nombre) {
+        try {
+            Field campo = clase.getDeclaredField(nombre);
+            if (Modifier.isStatic(campo.getModifiers()) || campo.isAnnotationPresent(JsonIgnore.class)) {
+                throw new NoSuchFieldException(nombre);
+            }
+            return campo;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("Campo desconocido: " + nombre);
+        }
+    }
+
+    /**
+     * Indica si el tipo es una clase del modelo (Paciente, Alergia, Medicacion...).
+     */
+    private static boolean esModelo(JavaType tipo) {
+        return tipo.getRawClass().getPackageName().equals(Paciente.class.getPackageName());
+    }
+
+    /**
+     * Convierte un valor JSON al tipo del modelo (validándolo) y luego a su
+     * representación en MongoDB.
+     */
+    private Object convertir(JsonNode valor, JavaType tipo) {
+        try {
+            Object objeto = objectMapper.convertValue(valor, tipo);
+            return mongoTemplate.getConverter().convertToMongoType(objeto);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Valor inválido para " + tipo.getRawClass().getSimpleName() + ": " + valor);
+        }
+    }
+
+    /**
+     * Lee una lista embebida tal como está guardada.
+     */
+    private List<?> leerListaActual(String id, String rutaLista) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        query.fields().include(rutaLista);
+        Document documento = mongoTemplate.findOne(query, Document.class, COLECCION_PACIENTES);
+        if (documento == null) {
+            throw new RuntimeException("Paciente no encontrado");
+        }
+        Object actual = documento;
+        for (String segmento : rutaLista.split("\\.")) {
+            actual = actual instanceof Document anidado ? anidado.get(segmento) : null;
+        }
+        if (!(actual instanceof List<?> lista)) {
+            throw new ParcheConflictoException("No existe la lista " + rutaLista);
+        }
+        return lista;
+    }
+
+    private static List<String> leerPuntero(String puntero) {
+        if (puntero == null || !puntero.startsWith("/")) {
+            throw new IllegalArgumentException("Ruta de JSON Patch inválida: " + puntero);
+        }
+        List<String> segmentos = new ArrayList<>();
+        for (String segmento : puntero.substring(1).split("/", -1)) {
+            segmentos.add(segmento.replace("~1", "/").replace("~0", "~"));
+        }
+        return segmentos;
+    }
+
+    private static int leerIndice(String segmento) {
+        if (!segmento.matches("0|[1-9][0-9]{0,5}")) {
+            throw new IllegalArgumentException("Posición de lista inválida: " + segmento);
+        }
+        return Integer.parseInt(segmento);
+    }
+
+    private static void requerirValor(JsonNode valor, String op) {
+        if (valor == null) {
+            throw new IllegalArgumentException("La operación " + op + " requiere 'value'");
+        }
+    }
+
+    // ============================================================
+    // 🟦 ESCRITURA
+    // ============================================================
+
+    /**
+     * Ejecuta el parche compilado con una sola escritura condicional.
+     */
+    private Paciente ejecutar(String id, Compilacion compilacion, Set<Long> versionesEsperadas) {
+        Update update = compilacion.construir();
+        update.set("actualizadoEn", Instant.now());
+        update.inc("version", 1);
+
+        List<Criteria> criterios = new ArrayList<>();
+        criterios.add(PacienteService.criterioVersion(id, versionesEsperadas));
+        criterios.addAll(compilacion.condiciones);
+
+        Query query = new Query(new Criteria().andOperator(criterios));
+        Paciente paciente;
+        if (EstadisticasService.CAMPOS_PACIENTE.stream().noneMatch(compilacion::toca)) {
+            paciente = mongoTemplate.findAndModify(
+                    query, update, FindAndModifyOptions.options().returnNew(true), Paciente.class);
+            pacienteCache.invalidar(id);
+            if (paciente == null) {
+                throw explicarFallo(id, versionesEsperadas);
+            }
+        } else {
+            // El parche cambia campos de las estadísticas: hace falta el estado anterior
+            Document anterior = mongoTemplate.findAndModify(
+                    query, update, FindAndModifyOptions.options().returnNew(false), Document.class, COLECCION_PACIENTES);
+            pacienteCache.invalidar(id);
+            if (anterior == null) {
+                throw explicarFallo(id, versionesEsperadas);
+            }
+            paciente = mongoTemplate.findById(id, Paciente.class);
+            if (paciente == null) {
+                throw new RuntimeException("Paciente no encontrado");
+            }
+            estadisticasService.registrarModificacion(anterior, paciente);
+        }
+
+        // Reenvío del QR si el parche tocó los emails. Los emails finales
+        // recién se conocen después de aplicar el parche, así que se encola al final
+        if (compilacion.toca("emails")) {
+            correosSalientesService.encolarQrPaciente(paciente.getId(), paciente.getEmails());
+        }
+        return paciente;
+    }
+
+    /**
+     * Determina por qué la escritura no encontró el documento: paciente
+     * inexistente, versión distinta o condición del parche no cumplida.
+     */
+    private RuntimeException explicarFallo(String id, Set<Long> versionesEsperadas) {
+        Query query = new Query(Criteria.where("_id").is(id));
+        query.fields().include("version");
+        Document actual = mongoTemplate.findOne(query, Document.class, COLECCION_PACIENTES);
+        if (actual == null) {
+            return new RuntimeException("Paciente no encontrado");
+        }
+        Number version = actual.get("version", Number.class);
+        if (versionesEsperadas != null && !versionesEsperadas.contains(version == null ? 0L : version.longValue())) {
+            return new VersionConflictoException("El paciente fue modificado por otro usuario");
+        }
+        return new ParcheConflictoException("El parche no se puede aplicar al estado actual del paciente");
+    }
+
+    /**
+     * Operaciones acumuladas de un parche. Rechaza las combinaciones que MongoDB
+     * no acepta en una misma actualización (dos operaciones sobre la misma ruta
+     * o sobre una ruta y otra contenida en ella).
+     */
+    static final class Compilacion {
+
+        private final Map<String, Object> sets = new LinkedHashMap<>();
+        private final List<String> unsets = new ArrayList<>();
+        private final Map<String, List<Object>> pushes = new LinkedHashMap<>();
+        private final Map<String, Integer> posiciones = new LinkedHashMap<>();
+        // Listas a las que se les quitan elementos: se escriben completas
+        private final Map<String, List<Object>> listas = new LinkedHashMap<>();
+        private final List<Criteria> condiciones = new ArrayList<>();
+        private final List<String> rutas = new ArrayList<>();
+
+        void set(String ruta, Object valor) {
+            registrar(ruta);
+            sets.put(ruta, valor);
+            if (ruta.equals("nombre") || ruta.equals("apellido")) {
+                sets.put(ruta + "Normalizado", NormalizadorTexto.normalizar((String) valor));
+            }
+        }
+
+        void unset(String ruta) {
+            registrar(ruta);
+            unsets.add(ruta);
+            if (ruta.equals("nombre") || ruta.equals("apellido")) {
+                unsets.add(ruta + "Normalizado");
+            }
+        }
+
+        void push(String ruta, Object valor, Integer posicion) {
+            // Varios "add" al final de la misma lista se combinan en un $push con $each
+            if (pushes.containsKey(ruta) && posicion == null && posiciones.get(ruta) == null) {
+                pushes.get(ruta).add(valor);
+                return;
+            }
+            registrar(ruta);
+            pushes.computeIfAbsent(ruta, r -> new ArrayList<>()).add(valor);
+            posiciones.put(ruta, posicion);
+        }
+
+        /**
+         * Lista a modificar en memoria. La primera vez se lee la guardada y se
+         * exige que siga igual al escribir; las siguientes devuelve la misma
+         * copia, con los cambios ya hechos.
+         */
+        List<Object> reescribir(String ruta, Supplier<List<?>> lectura) {
+            List<Object> lista = listas.get(ruta);
+            if (lista == null) {
+                registrar(ruta);
+                List<?> guardada = lectura.get();
+                condiciones.add(Criteria.where(ruta).is(guardada));
+                lista = new ArrayList<>(guardada);
+                listas.put(ruta, lista);
+            }
+            return lista;
+        }
+
+        void exigir(Criteria condicion) {
+            condiciones.add(condicion);
+        }
+
+        boolean toca(String campo) {
+            return rutas.stream().anyMatch(ruta -> ruta.equals(campo) || ruta.startsWith(campo + "."));
+        }
+
+        Update construir() {
+            Update update = new Update();
+            sets.forEach(update::set);
+            unsets.forEach(update::unset);
+            pushes.forEach((ruta, valores) -> {
+                Update.PushOperatorBuilder push = update.push(ruta);
+                Integer posicion = posiciones.get(ruta);
+                if (posicion != null) {
+                    push.atPosition(posicion);
+                }
+                push.each(valores.toArray());
+            });
+            listas.forEach(update::set);
+            return update;
+        }
+
+        List<Criteria> condiciones() {
+            return condiciones;
+        }
+
+        private void registrar(String ruta) {
+            for (String existente : rutas) {
+                if (existente.equals(ruta) || existente.startsWith(ruta + ".") || ruta.startsWith(existente + ".")) {
+                    throw new IllegalArgumentException("Operaciones en conflicto sobre " + ruta);
+                }
+            }
+            rutas.add(ruta);
+        }
+    }
+}
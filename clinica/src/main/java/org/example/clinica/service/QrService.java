@@ -1,151 +1,238 @@
 package org.example.clinica.service;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
-import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.zxing.WriterException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
-import java.io.ByteArrayOutputStream;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Servicio encargado de generar códigos QR y enviarlos por correo electrónico.
  * Funcionalidades principales:
- * - Generación de QR en formato PNG usando ZXing.
- * - Envío del QR por email a una lista de destinatarios.
- * Este servicio es utilizado por PacienteService para automatizar el envío
- * del QR de acceso al perfil del paciente.
+ * - Generación de QR en formato PNG o SVG (codificado con ZXing y dibujado
+ *   por RenderizadorQr), con caché de imágenes.
+ * - Armado del correo con el QR para los emails del paciente.
+ * Los envíos no se hacen durante el request: PacienteService los encola en
+ * CorreosSalientesService, que arma los correos con este servicio y los
+ * envía en lotes.
  */
 @Service
 public class QrService {
 
     private static final int WIDTH = 200;
-    private static final int HEIGHT = 200;
 
-    @Autowired
-    private JavaMailSender mailSender;
+    /**
+     * Tamaño mínimo y máximo (en píxeles) que se puede pedir al endpoint de imágenes.
+     */
+    public static final int TAMANIO_MINIMO = 64;
+    public static final int TAMANIO_MAXIMO = 1024;
+
+    // Cantidad de emails del paciente que reciben el QR (los primeros de la lista)
+    private static final int EMAILS_PRIORITARIOS = 2;
 
     /**
-     * Genera una imagen PNG de un código QR a partir de un texto.
-     * Proceso:
-     * - Se configura ZXing con compresión UTF-8 y nivel de corrección alto.
-     * - Se genera la matriz del QR.
-     * - Se convierte la matriz en bytes PNG.
-     *
-     * @param content Contenido a codificar en el QR (por ejemplo, la URL del paciente).
-     * @param width Ancho deseado del QR.
-     * @param height Alto deseado del QR.
-     * @return Array de bytes correspondiente a la imagen PNG generada.
+     * Formatos de imagen del QR.
      */
-    public byte[] generateQrCodeImage(String content, int width, int height) {
-        try {
-            Map<EncodeHintType, Object> hints = new HashMap<>();
-            hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-            hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
-            hints.put(EncodeHintType.MARGIN, 1);
-
-            QRCodeWriter qrCodeWriter = new QRCodeWriter();
-            BitMatrix bitMatrix = qrCodeWriter.encode(
-                    content,
-                    BarcodeFormat.QR_CODE,
-                    width,
-                    height,
-                    hints
-            );
+    public enum Formato {
+        PNG("png", "image/png"),
+        SVG("svg", "image/svg+xml");
 
-            ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
-            MatrixToImageWriter.writeToStream(bitMatrix, "PNG", pngOutputStream);
+        private final String extension;
+        private final String tipoContenido;
 
-            return pngOutputStream.toByteArray();
+        Formato(String extension, String tipoContenido) {
+            this.extension = extension;
+            this.tipoContenido = tipoContenido;
+        }
 
-        } catch (Exception e) {
-            System.err.println(
-                    "Error al generar el Código QR para el contenido: "
-                            + content + " - " + e.getMessage()
-            );
-            return new byte[0];
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getTipoContenido() {
+            return tipoContenido;
+        }
+
+        /**
+         * @param extension "png" o "svg" (sin distinguir mayúsculas).
+         * @throws IllegalArgumentException si no es un formato soportado.
+         */
+        public static Formato desdeExtension(String extension) {
+            for (Formato formato : values()) {
+                if (formato.extension.equalsIgnoreCase(extension)) {
+                    return formato;
+                }
+            }
+            throw new IllegalArgumentException("Formato de QR no soportado: " + extension);
         }
     }
 
     /**
-     * Genera una imagen PNG de un QR usando el tamaño por defecto (200x200).
+     * Imágenes ya generadas, por huella del contenido, tamaño y formato.
+     * Una misma URL siempre produce la misma imagen, así que nunca hace falta
+     * invalidar: solo se desalojan por peso (bytes) las menos usadas.
+     */
+    private final Cache<String, byte[]> imagenes;
+
+    public QrService(@Value("${clinica.qr.cache.peso-maximo:8388608}") long pesoMaximo) {
+        this.imagenes = Caffeine.newBuilder()
+                .maximumWeight(pesoMaximo)
+                .weigher((String clave, byte[] imagen) -> clave.length() + imagen.length)
+                .build();
+    }
+
+    /**
+     * Construye la URL que se codifica en el QR de un paciente.
+     * Apunta a la vista de observación del frontend.
      *
-     * @param content Contenido a codificar.
-     * @return Imagen del QR en bytes.
+     * @param pacienteId ID del paciente.
+     * @return URL completa, por ejemplo http://localhost:4200/pacientes/{id}/observar
      */
-    public byte[] generateQrCodeImage(String content) {
-        return generateQrCodeImage(content, WIDTH, HEIGHT);
+    public static String construirUrlPaciente(String pacienteId) {
+        return "http://localhost:4200/pacientes/" + pacienteId + "/observar";
     }
 
     /**
-     * Envía un código QR por correo electrónico utilizando JavaMailSender.
-     * Proceso:
-     * - Crea un correo electrónico con asunto, cuerpo y adjunto.
-     * - Adjunta la imagen del QR previamente generada.
-     * - Envía el correo a los destinatarios especificados.
-     * Notas:
-     * - Este método es usado automáticamente cuando se crea o actualiza un paciente.
-     * - Solo se envía si la lista de emails contiene al menos un destinatario.
+     * Devuelve la imagen del QR de un contenido, generándola solo la primera
+     * vez: las siguientes salen de la caché. Pedidos simultáneos de la misma
+     * imagen esperan una única generación.
      *
-     * @param pacienteId ID del paciente asociado al QR.
-     * @param emails Lista de destinatarios.
-     * @param qrData Imagen del QR en bytes.
+     * El arreglo devuelto es compartido: no debe modificarse.
+     *
+     * @param contenido Contenido a codificar (por ejemplo, la URL del paciente).
+     * @param tamanio Ancho y alto en píxeles.
+     * @param formato PNG o SVG.
+     * @return Imagen en bytes.
+     * @throws IllegalStateException si ZXing no pudo codificar el contenido.
      */
-    public void enviarQrPorEmail(String pacienteId, List<String> emails, byte[] qrData) {
-        if (emails == null || emails.isEmpty()) {
-            System.out.println(
-                    "No hay emails configurados para enviar el QR del paciente: " + pacienteId
-            );
-            return;
-        }
+    public byte[] imagenQr(String contenido, int tamanio, Formato formato) {
+        return imagenes.get(clave(contenido, tamanio, formato), c -> renderizar(contenido, tamanio, formato));
+    }
 
-        try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true);
-
-            helper.setTo(emails.toArray(new String[0]));
-            helper.setSubject("Código QR de Paciente - Clínica Nefrológica");
-            helper.setText(
-                    "Adjunto el código QR para acceder a la información del paciente.\n\n" +
-                            "Para probar el QR:\n" +
-                            "1. Escanea el código QR adjunto con tu teléfono\n" +
-                            "2. O ingresa manualmente en tu navegador: http://localhost:4200/pacientes/"
-                            + pacienteId + "/observar/datos-personales\n\n" +
-                            "Nota: El QR contiene la URL completa para acceder directamente al paciente.\n" +
-                            "Si estás en móvil, necesitarás iniciar sesión primero en la aplicación.\n\n" +
-                            "Atentamente,\nClínica Nefrológica"
-            );
+    /**
+     * ETag fuerte de una imagen. Depende solo del contenido, el tamaño y el
+     * formato, así que se calcula sin generar la imagen y permite responder
+     * 304 directamente.
+     *
+     * @return ETag entre comillas.
+     */
+    public String etagQr(String contenido, int tamanio, Formato formato) {
+        return "\"" + clave(contenido, tamanio, formato) + "\"";
+    }
 
-            // Se adjunta el archivo PNG generado
-            helper.addAttachment(
-                    "qr_paciente_" + pacienteId + ".png",
-                    new ByteArrayResource(qrData)
-            );
+    /**
+     * Valida el tamaño pedido.
+     *
+     * @param tamanio Tamaño recibido (null para el de por defecto).
+     * @return Tamaño a usar.
+     * @throws IllegalArgumentException si está fuera de TAMANIO_MINIMO..TAMANIO_MAXIMO.
+     */
+    public static int validarTamanio(Integer tamanio) {
+        if (tamanio == null) {
+            return WIDTH;
+        }
+        if (tamanio < TAMANIO_MINIMO || tamanio > TAMANIO_MAXIMO) {
+            throw new IllegalArgumentException("El tamaño del QR debe estar entre "
+                    + TAMANIO_MINIMO + " y " + TAMANIO_MAXIMO);
+        }
+        return tamanio;
+    }
 
-            mailSender.send(message);
+    /**
+     * Clave de caché y ETag: huella SHA-256 (128 bits) del contenido, tamaño y formato.
+     */
+    private static String clave(String contenido, int tamanio, Formato formato) {
+        try {
+            byte[] huella = MessageDigest.getInstance("SHA-256").digest(contenido.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(huella, 0, 16) + "-" + tamanio + "." + formato.getExtension();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            System.out.println("=== QR ENVIADO POR EMAIL ===");
-            System.out.println("Paciente ID: " + pacienteId);
-            System.out.println("Destinatarios: " + String.join(", ", emails));
-            System.out.println("Estado: QR enviado exitosamente");
-            System.out.println("============================");
+    private byte[] renderizar(String contenido, int tamanio, Formato formato) {
+        try {
+            return formato == Formato.SVG
+                    ? RenderizadorQr.svg(contenido, tamanio)
+                    : RenderizadorQr.png(contenido, tamanio);
+        } catch (WriterException e) {
+            throw new IllegalStateException("Error al generar el Código QR: " + e.getMessage(), e);
+        }
+    }
 
-        } catch (Exception e) {
+    /**
+     * Genera una imagen PNG de un QR usando el tamaño por defecto (200x200).
+     * Sale de la caché de imágenes si ya se generó antes.
+     *
+     * @param content Contenido a codificar.
+     * @return Imagen del QR en bytes (vacía si no se pudo generar).
+     */
+    public byte[] generateQrCodeImage(String content) {
+        try {
+            return imagenQr(content, WIDTH, Formato.PNG);
+        } catch (IllegalStateException e) {
             System.err.println(
-                    "Error al enviar QR por email para paciente "
-                            + pacienteId + ": " + e.getMessage()
+                    "Error al generar el Código QR para el contenido: "
+                            + content + " - " + e.getMessage()
             );
-            e.printStackTrace();
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Arma el correo con el QR de un paciente para sus primeros emails registrados.
+     * Proceso:
+     * - Genera la imagen PNG del QR.
+     * - Completa asunto, cuerpo y destinatarios (los primeros EMAILS_PRIORITARIOS).
+     * - Adjunta la imagen.
+     * El envío lo hace CorreosSalientesService, en lotes, por EnvioSmtpService.
+     *
+     * @param message Mensaje vacío a completar.
+     * @param pacienteId ID del paciente asociado al QR.
+     * @param qrUrl URL codificada en el QR.
+     * @param emails Emails registrados del paciente (al menos uno).
+     * @return Destinatarios del correo.
+     * @throws MessagingException si no se pudo armar el correo.
+     */
+    public List<String> armarCorreoQr(MimeMessage message, String pacienteId, String qrUrl, List<String> emails)
+            throws MessagingException {
+        byte[] qrData = generateQrCodeImage(qrUrl);
+        if (qrData.length == 0) {
+            throw new MessagingException("No se pudo generar el QR del paciente " + pacienteId);
         }
+        List<String> emailsPrioritarios = emails.subList(0, Math.min(EMAILS_PRIORITARIOS, emails.size()));
+
+        MimeMessageHelper helper = new MimeMessageHelper(message, true);
+
+        helper.setTo(emailsPrioritarios.toArray(new String[0]));
+        helper.setSubject("Código QR de Paciente - Clínica Nefrológica");
+        helper.setText(
+                "Adjunto el código QR para acceder a la información del paciente.\n\n" +
+                        "Para probar el QR:\n" +
+                        "1. Escanea el código QR adjunto con tu teléfono\n" +
+                        "2. O ingresa manualmente en tu navegador: http://localhost:4200/pacientes/"
+                        + pacienteId + "/observar/datos-personales\n\n" +
+                        "Nota: El QR contiene la URL completa para acceder directamente al paciente.\n" +
+                        "Si estás en móvil, necesitarás iniciar sesión primero en la aplicación.\n\n" +
+                        "Atentamente,\nClínica Nefrológica"
+        );
+
+        // Se adjunta el archivo PNG generado
+        helper.addAttachment(
+                "qr_paciente_" + pacienteId + ".png",
+                new ByteArrayResource(qrData)
+        );
+
+        return emailsPrioritarios;
     }
 }
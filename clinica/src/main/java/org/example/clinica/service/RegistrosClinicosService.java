@@ -0,0 +1,320 @@
+package org.example.clinica.service;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.clinica.dto.PaginaRegistros;
+import org.example.clinica.model.mongo.Evolucion;
+import org.example.clinica.model.mongo.Historial;
+import org.example.clinica.repository.mongo.EvolucionRepository;
+import org.example.clinica.repository.mongo.HistorialRepository;
+import org.example.clinica.repository.mongo.PacienteRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Servicio encargado de la historia clínica y la evolución mensual de los pacientes.
+ *
+ * Cada entrada se guarda como un documento independiente en las colecciones
+ * "historia_clinica" y "evolucion_mensual", con referencia al paciente. Así el
+ * documento del Paciente mantiene un tamaño fijo y leer la ficha, escanear el
+ * QR o actualizar datos personales no arrastra años de controles.
+ *
+ * Incluye:
+ * - Alta de entradas (una inserción por entrada).
+ * - Consulta paginada por rango de fechas, más recientes primero.
+ * - Borrado de todas las entradas al eliminar un paciente.
+ * - Migración única de las listas que antes estaban embebidas en el paciente.
+ */
+@Service
+@RequiredArgsConstructor
+public class RegistrosClinicosService {
+
+    /**
+     * Cantidad de entradas por página cuando el cliente no indica un tamaño.
+     */
+    public static final int TAMANIO_PAGINA_DEFECTO = 20;
+
+    /**
+     * Cantidad máxima de entradas que se devuelven en una sola página.
+     */
+    public static final int TAMANIO_PAGINA_MAXIMO = 100;
+
+    private static final String COLECCION_PACIENTES = "pacientes";
+    private static final String COLECCION_HISTORIA = "historia_clinica";
+    private static final String COLECCION_EVOLUCION = "evolucion_mensual";
+
+    // Orden "más recientes primero"; el _id desempata entradas del mismo día
+    private static final Sort ORDEN_RECIENTES =
+            Sort.by(Sort.Direction.DESC, "fecha").and(Sort.by(Sort.Direction.DESC, "_id"));
+
+    private final PacienteRepository pacienteRepository;
+    private final HistorialRepository historialRepository;
+    private final EvolucionRepository evolucionRepository;
+    private final MongoTemplate mongoTemplate;
+    private final TendenciasService tendenciasService;
+
+    /**
+     * Agrega una entrada a la historia clínica del paciente.
+     *
+     * Es una única inserción en la colección de historia: no se lee ni se
+     * reescribe el paciente ni las entradas anteriores, por lo que dos
+     * profesionales pueden cargar notas a la vez sin pisarse.
+     *
+     * @param pacienteId ID del paciente.
+     * @param historial Entrada a agregar (si no trae fecha se usa la de hoy).
+     * @param maximo Si se indica, conserva solo las últimas N entradas del paciente.
+     * @return La entrada agregada, con su ID.
+     * @throws RuntimeException si el paciente no existe.
+     */
+    public Historial agregarHistorial(String pacienteId, Historial historial, Integer maximo) {
+        verificarPaciente(pacienteId);
+
+        historial.setId(null);
+        historial.setPacienteId(pacienteId);
+        if (historial.getFecha() == null) {
+            historial.setFecha(LocalDate.now());
+        }
+        Historial guardado = historialRepository.save(historial);
+
+        recortar(pacienteId, maximo, Historial.class);
+        tendenciasService.invalidar(pacienteId);
+        return guardado;
+    }
+
+    /**
+     * Agrega una entrada a la evolución mensual del paciente.
+     * Mismo comportamiento que agregarHistorial.
+     *
+     * @param pacienteId ID del paciente.
+     * @param evolucion Entrada a agregar (si no trae fecha se usa la de hoy).
+     * @param maximo Si se indica, conserva solo las últimas N entradas del paciente.
+     * @return La entrada agregada, con su ID.
+     * @throws RuntimeException si el paciente no existe.
+     */
+    public Evolucion agregarEvolucion(String pacienteId, Evolucion evolucion, Integer maximo) {
+        verificarPaciente(pacienteId);
+
+        evolucion.setId(null);
+        evolucion.setPacienteId(pacienteId);
+        if (evolucion.getFecha() == null) {
+            evolucion.setFecha(LocalDate.now());
+        }
+        Evolucion guardada = evolucionRepository.save(evolucion);
+
+        recortar(pacienteId, maximo, Evolucion.class);
+        return guardada;
+    }
+
+    /**
+     * Obtiene una página de la historia clínica del paciente, más recientes primero.
+     *
+     * @param pacienteId ID del paciente.
+     * @param desde Fecha inicial inclusive, formato yyyy-MM-dd (puede ser null).
+     * @param hasta Fecha final inclusive, formato yyyy-MM-dd (puede ser null).
+     * @param pagina Número de página, desde 0 (null para la primera).
+     * @param tamanio Entradas por página (se acota a TAMANIO_PAGINA_MAXIMO).
+     * @return Página de entradas.
+     * @throws IllegalArgumentException si alguna fecha no es válida.
+     * @throws RuntimeException si el paciente no existe.
+     */
+    public PaginaRegistros<Historial> listarHistorial(
+            String pacienteId, String desde, String hasta, Integer pagina, Integer tamanio) {
+        return listar(pacienteId, desde, hasta, pagina, tamanio, Historial.class);
+    }
+
+    /**
+     * Obtiene una página de la evolución mensual del paciente, más recientes primero.
+     * Mismos parámetros que listarHistorial.
+     */
+    public PaginaRegistros<Evolucion> listarEvolucion(
+            String pacienteId, String desde, String hasta, Integer pagina, Integer tamanio) {
+        return listar(pacienteId, desde, hasta, pagina, tamanio, Evolucion.class);
+    }
+
+    /**
+     * Elimina la historia clínica y la evolución de un paciente.
+     * Se invoca al borrar el paciente.
+     *
+     * @param pacienteId ID del paciente eliminado.
+     */
+    public void eliminarDePaciente(String pacienteId) {
+        historialRepository.deleteByPacienteId(pacienteId);
+        evolucionRepository.deleteByPacienteId(pacienteId);
+        tendenciasService.invalidar(pacienteId);
+    }
+
+    /**
+     * Consulta paginada común a historia y evolución.
+     *
+     * Filtra por paciente y rango de fechas, ordena por fecha descendente y
+     * pide un elemento extra para saber si hay página siguiente (sin count).
+     * Las fechas se guardan como fecha de MongoDB, por lo que el índice
+     * (pacienteId, fecha) resuelve tanto el filtro como el orden.
+     */
+    private <T> PaginaRegistros<T> listar(
+            String pacienteId, String desde, String hasta, Integer pagina, Integer tamanio, Class<T> tipo) {
+        LocalDate fechaDesde = parsearFecha(desde);
+        LocalDate fechaHasta = parsearFecha(hasta);
+        verificarPaciente(pacienteId);
+
+        int numeroPagina = (pagina == null || pagina < 0) ? 0 : pagina;
+        int tamanioPagina = (tamanio == null || tamanio <= 0)
+                ? TAMANIO_PAGINA_DEFECTO
+                : Math.min(tamanio, TAMANIO_PAGINA_MAXIMO);
+
+        Criteria criterio = Criteria.where("pacienteId").is(pacienteId);
+        if (fechaDesde != null || fechaHasta != null) {
+            Criteria rango = criterio.and("fecha");
+            if (fechaDesde != null) {
+                rango.gte(fechaDesde);
+            }
+            if (fechaHasta != null) {
+                rango.lte(fechaHasta);
+            }
+        }
+
+        Query query = new Query(criterio)
+                .with(ORDEN_RECIENTES)
+                .skip((long) numeroPagina * tamanioPagina)
+                .limit(tamanioPagina + 1);
+
+        List<T> registros = mongoTemplate.find(query, tipo);
+        boolean hayMas = registros.size() > tamanioPagina;
+        if (hayMas) {
+            registros = registros.subList(0, tamanioPagina);
+        }
+
+        return PaginaRegistros.<T>builder()
+                .registros(registros)
+                .pagina(numeroPagina)
+                .tamanio(tamanioPagina)
+                .hayMas(hayMas)
+                .build();
+    }
+
+    /**
+     * Si se pidió un máximo, borra las entradas del paciente más antiguas que las últimas N.
+     */
+    private void recortar(String pacienteId, Integer maximo, Class<?> tipo) {
+        if (maximo == null || maximo <= 0) {
+            return;
+        }
+        Query sobrantes = new Query(Criteria.where("pacienteId").is(pacienteId))
+                .with(ORDEN_RECIENTES)
+                .skip(maximo);
+        sobrantes.fields().include("_id");
+
+        List<Object> ids = new ArrayList<>();
+        mongoTemplate.find(sobrantes, Document.class, mongoTemplate.getCollectionName(tipo))
+                .forEach(documento -> ids.add(documento.get("_id")));
+
+        if (!ids.isEmpty()) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), tipo);
+        }
+    }
+
+    private void verificarPaciente(String pacienteId) {
+        if (!pacienteRepository.existsById(pacienteId)) {
+            throw new RuntimeException("Paciente no encontrado");
+        }
+    }
+
+    private static LocalDate parsearFecha(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(valor);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha inválida (se espera yyyy-MM-dd): " + valor);
+        }
+    }
+
+    /**
+     * Migración única: mueve las listas "historiaClinica" y "evolucionMensual"
+     * que estaban embebidas en los pacientes a sus propias colecciones.
+     *
+     * Se ejecuta al iniciar la aplicación y solo recorre los pacientes que
+     * todavía tienen alguna de esas listas, por lo que una vez migrados no
+     * vuelve a hacer trabajo. Por cada paciente se insertan sus entradas y
+     * luego se quitan las listas del documento con $unset.
+     *
+     * Si se corta entre la copia y el $unset, la próxima ejecución vuelve a
+     * copiar el mismo paciente: cada entrada tiene un _id fijo (paciente +
+     * posición en la lista) y se escribe con un upsert que solo completa los
+     * campos al insertar, así que las que ya estaban no se duplican ni se
+     * pisan.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public void migrarRegistrosEmbebidos() {
+        Query pendientes = new Query(new Criteria().orOperator(
+                Criteria.where("historiaClinica").exists(true),
+                Criteria.where("evolucionMensual").exists(true)
+        ));
+        pendientes.fields().include("historiaClinica", "evolucionMensual");
+
+        int migrados = 0;
+        try (Stream<Document> stream = mongoTemplate.stream(pendientes, Document.class, COLECCION_PACIENTES)) {
+            for (Document paciente : (Iterable<Document>) stream::iterator) {
+                Object idPaciente = paciente.get("_id");
+                String pacienteId = idPaciente instanceof ObjectId objectId
+                        ? objectId.toHexString()
+                        : String.valueOf(idPaciente);
+
+                copiarEntradas(paciente.getList("historiaClinica", Document.class), pacienteId, COLECCION_HISTORIA);
+                copiarEntradas(paciente.getList("evolucionMensual", Document.class), pacienteId, COLECCION_EVOLUCION);
+
+                mongoTemplate.updateFirst(
+                        new Query(Criteria.where("_id").is(idPaciente)),
+                        new Update().unset("historiaClinica").unset("evolucionMensual"),
+                        COLECCION_PACIENTES
+                );
+                migrados++;
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudo migrar la historia clínica embebida: " + e.getMessage());
+            return;
+        }
+
+        if (migrados > 0) {
+            System.out.println("Historia clínica y evolución migradas para " + migrados + " pacientes");
+        }
+    }
+
+    private void copiarEntradas(List<Document> entradas, String pacienteId, String coleccion) {
+        if (entradas == null || entradas.isEmpty()) {
+            return;
+        }
+        BulkOperations operaciones = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, coleccion);
+        for (int posicion = 0; posicion < entradas.size(); posicion++) {
+            Update update = new Update();
+            entradas.get(posicion).forEach((campo, valor) -> {
+                if (!"_id".equals(campo) && !"_class".equals(campo)) {
+                    update.setOnInsert(campo, valor);
+                }
+            });
+            update.setOnInsert("pacienteId", pacienteId);
+            // Con la posición rellenada con ceros, el orden por _id sigue el de la lista
+            String id = String.format("%s-%05d", pacienteId, posicion);
+            operaciones.upsert(new Query(Criteria.where("_id").is(id)), update);
+        }
+        operaciones.execute();
+    }
+}
@@ -0,0 +1,294 @@
+package org.example.clinica.service;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Dibuja códigos QR en PNG o SVG directamente desde la matriz de módulos.
+ *
+ * El camino de ZXing (QRCodeWriter + MatrixToImageWriter) arma una BitMatrix
+ * escalada, la copia a un BufferedImage y la pasa por ImageIO. Acá:
+ * - Se codifica con Encoder, que da la matriz de módulos sin escalar.
+ * - El PNG se escribe a mano en escala de grises de 1 bit: cada fila de
+ *   módulos se arma una vez y se comprime tantas veces como píxeles mide el
+ *   módulo. No hay BufferedImage ni ImageIO.
+ * - El SVG es un único path con un rectángulo por tramo horizontal de
+ *   módulos oscuros, escrito directo en bytes.
+ * - El Deflater, el CRC y los buffers se reutilizan entre llamadas (un pool
+ *   chico); el único arreglo nuevo por imagen es el resultado.
+ *
+ * La geometría (margen, escala y centrado) es la de QRCodeWriter, así que el
+ * PNG tiene exactamente los mismos píxeles que el de ZXing.
+ */
+final class RenderizadorQr {
+
+    /**
+     * Margen alrededor del código, en módulos.
+     */
+    static final int MARGEN = 1;
+
+    private static final Map<EncodeHintType, Object> HINTS = Map.of(EncodeHintType.CHARACTER_SET, "UTF-8");
+
+    private static final byte[] FIRMA_PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    // Recursos reutilizables; se conservan a lo sumo tantos como hilos generen a la vez
+    private static final BlockingQueue<Recursos> LIBRES = new ArrayBlockingQueue<>(8);
+
+    /**
+     * Deflater, CRC y buffers de una generación.
+     */
+    private static final class Recursos {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final CRC32 crc = new CRC32();
+        private byte[] fila = new byte[0];
+        private byte[] datos = new byte[4096];
+        private int largo;
+
+        private byte[] fila(int tamanio) {
+            if (fila.length < tamanio) {
+                fila = new byte[tamanio];
+            }
+            return fila;
+        }
+
+        private void asegurar(int adicional) {
+            if (largo + adicional > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length * 2, largo + adicional));
+            }
+        }
+
+        private void escribir(byte b) {
+            asegurar(1);
+            datos[largo++] = b;
+        }
+
+        private void escribir(String ascii) {
+            asegurar(ascii.length());
+            for (int i = 0; i < ascii.length(); i++) {
+                datos[largo++] = (byte) ascii.charAt(i);
+            }
+        }
+
+        private void escribir(int numero) {
+            if (numero < 0) {
+                escribir((byte) '-');
+                numero = -numero;
+            }
+            if (numero >= 10) {
+                escribir(numero / 10);
+            }
+            escribir((byte) ('0' + numero % 10));
+        }
+
+        /**
+         * Comprime la fila y agrega el resultado a los datos.
+         */
+        private void comprimir(byte[] entrada, int cantidad) {
+            deflater.setInput(entrada, 0, cantidad);
+            while (!deflater.needsInput()) {
+                desinflar();
+            }
+        }
+
+        private void terminarCompresion() {
+            deflater.finish();
+            while (!deflater.finished()) {
+                desinflar();
+            }
+        }
+
+        private void desinflar() {
+            asegurar(1024);
+            largo += deflater.deflate(datos, largo, datos.length - largo);
+        }
+    }
+
+    private RenderizadorQr() {
+    }
+
+    /**
+     * Codifica el contenido: UTF-8 y corrección de errores alta.
+     *
+     * @return Matriz de módulos (1 = oscuro), sin margen.
+     */
+    static ByteMatrix modulos(String contenido) throws WriterException {
+        return Encoder.encode(contenido, ErrorCorrectionLevel.H, HINTS).getMatrix();
+    }
+
+    /**
+     * PNG en escala de grises de 1 bit.
+     *
+     * @param contenido Contenido a codificar.
+     * @param tamanio Ancho y alto pedidos (si no entra el código con su margen, se usa el mínimo).
+     * @return Bytes del PNG.
+     */
+    static byte[] png(String contenido, int tamanio) throws WriterException {
+        ByteMatrix modulos = modulos(contenido);
+        int cantidad = modulos.getWidth();
+        int conMargen = cantidad + 2 * MARGEN;
+        int lado = Math.max(tamanio, conMargen);
+        int escala = lado / conMargen;
+        int relleno = (lado - cantidad * escala) / 2;
+        int bytesFila = (lado + 7) / 8;
+
+        Recursos recursos = tomar();
+        try {
+            recursos.largo = 0;
+            recursos.deflater.reset();
+            // Cada fila del PNG empieza con el tipo de filtro (0 = ninguno)
+            byte[] fila = recursos.fila(bytesFila + 1);
+
+            // Filas blancas de arriba (en escala de grises de 1 bit, 1 = blanco)
+            blanca(fila, bytesFila);
+            for (int y = 0; y < relleno; y++) {
+                recursos.comprimir(fila, bytesFila + 1);
+            }
+            for (int y = 0; y < cantidad; y++) {
+                blanca(fila, bytesFila);
+                for (int x = 0; x < cantidad; x++) {
+                    if (modulos.get(x, y) == 1) {
+                        oscurecer(fila, relleno + x * escala, escala);
+                    }
+                }
+                for (int repeticion = 0; repeticion < escala; repeticion++) {
+                    recursos.comprimir(fila, bytesFila + 1);
+                }
+            }
+            blanca(fila, bytesFila);
+            for (int y = relleno + cantidad * escala; y < lado; y++) {
+                recursos.comprimir(fila, bytesFila + 1);
+            }
+            recursos.terminarCompresion();
+
+            int largoIdat = recursos.largo;
+            byte[] png = new byte[FIRMA_PNG.length + (12 + 13) + (12 + largoIdat) + 12];
+            System.arraycopy(FIRMA_PNG, 0, png, 0, FIRMA_PNG.length);
+            int posicion = FIRMA_PNG.length;
+
+            byte[] encabezado = new byte[13];
+            entero(encabezado, 0, lado);
+            entero(encabezado, 4, lado);
+            encabezado[8] = 1;   // 1 bit por píxel
+            encabezado[9] = 0;   // escala de grises
+            posicion = bloque(png, posicion, IHDR, encabezado, 13, recursos.crc);
+            posicion = bloque(png, posicion, IDAT, recursos.datos, largoIdat, recursos.crc);
+            bloque(png, posicion, IEND, encabezado, 0, recursos.crc);
+            return png;
+        } finally {
+            devolver(recursos);
+        }
+    }
+
+    /**
+     * SVG con un único path.
+     *
+     * @param contenido Contenido a codificar.
+     * @param tamanio Ancho y alto con que se muestra (el dibujo escala sin perder nitidez).
+     * @return Bytes del SVG (UTF-8).
+     */
+    static byte[] svg(String contenido, int tamanio) throws WriterException {
+        ByteMatrix modulos = modulos(contenido);
+        int cantidad = modulos.getWidth();
+        int conMargen = cantidad + 2 * MARGEN;
+
+        Recursos recursos = tomar();
+        try {
+            recursos.largo = 0;
+            recursos.escribir("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+            recursos.escribir(tamanio);
+            recursos.escribir("\" height=\"");
+            recursos.escribir(tamanio);
+            recursos.escribir("\" viewBox=\"0 0 ");
+            recursos.escribir(conMargen);
+            recursos.escribir((byte) ' ');
+            recursos.escribir(conMargen);
+            recursos.escribir("\" shape-rendering=\"crispEdges\">"
+                    + "<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/><path fill=\"#000\" d=\"");
+            for (int y = 0; y < cantidad; y++) {
+                int x = 0;
+                while (x < cantidad) {
+                    if (modulos.get(x, y) != 1) {
+                        x++;
+                        continue;
+                    }
+                    int inicio = x;
+                    while (x < cantidad && modulos.get(x, y) == 1) {
+                        x++;
+                    }
+                    recursos.escribir((byte) 'M');
+                    recursos.escribir(inicio + MARGEN);
+                    recursos.escribir((byte) ' ');
+                    recursos.escribir(y + MARGEN);
+                    recursos.escribir((byte) 'h');
+                    recursos.escribir(x - inicio);
+                    recursos.escribir("v1h-");
+                    recursos.escribir(x - inicio);
+                    recursos.escribir((byte) 'z');
+                }
+            }
+            recursos.escribir("\"/></svg>");
+            return Arrays.copyOf(recursos.datos, recursos.largo);
+        } finally {
+            devolver(recursos);
+        }
+    }
+
+    private static void blanca(byte[] fila, int bytesFila) {
+        fila[0] = 0;
+        Arrays.fill(fila, 1, bytesFila + 1, (byte) 0xFF);
+    }
+
+    /**
+     * Pone en negro (bit 0) los píxeles [desde, desde + cantidad) de la fila.
+     */
+    private static void oscurecer(byte[] fila, int desde, int cantidad) {
+        for (int pixel = desde; pixel < desde + cantidad; pixel++) {
+            fila[1 + (pixel >> 3)] &= (byte) ~(0x80 >> (pixel & 7));
+        }
+    }
+
+    /**
+     * Escribe un bloque PNG (largo, tipo, datos y CRC) y devuelve la posición siguiente.
+     */
+    private static int bloque(byte[] png, int posicion, byte[] tipo, byte[] datos, int largo, CRC32 crc) {
+        entero(png, posicion, largo);
+        System.arraycopy(tipo, 0, png, posicion + 4, 4);
+        System.arraycopy(datos, 0, png, posicion + 8, largo);
+        crc.reset();
+        crc.update(png, posicion + 4, 4 + largo);
+        entero(png, posicion + 8 + largo, (int) crc.getValue());
+        return posicion + 12 + largo;
+    }
+
+    private static void entero(byte[] destino, int posicion, int valor) {
+        destino[posicion] = (byte) (valor >>> 24);
+        destino[posicion + 1] = (byte) (valor >>> 16);
+        destino[posicion + 2] = (byte) (valor >>> 8);
+        destino[posicion + 3] = (byte) valor;
+    }
+
+    private static Recursos tomar() {
+        Recursos recursos = LIBRES.poll();
+        return recursos != null ? recursos : new Recursos();
+    }
+
+    private static void devolver(Recursos recursos) {
+        if (!LIBRES.offer(recursos)) {
+            // Pool lleno: se libera la memoria nativa del Deflater
+            recursos.deflater.end();
+        }
+    }
+}
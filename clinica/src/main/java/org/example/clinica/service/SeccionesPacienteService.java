@@ -0,0 +1,145 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.example.clinica.dto.PaginaRegistros;
+import org.example.clinica.model.mongo.Paciente;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicio que arma la lectura de una sola sección de la ficha del paciente
+ * para las pantallas de observación (las que se abren al escanear el QR).
+ *
+ * Cada sección lee de MongoDB únicamente sus campos (proyección), más los
+ * datos de cabecera (id, nombre, apellido, documento). Las secciones que son
+ * listas se devuelven paginadas: las embebidas en el paciente con $slice y la
+ * historia clínica / evolución desde sus propias colecciones.
+ *
+ * La respuesta conserva los nombres de campo del Paciente, así el frontend
+ * usa el mismo modelo que con el documento completo.
+ */
+@Service
+@RequiredArgsConstructor
+public class SeccionesPacienteService {
+
+    /**
+     * Una sección de la ficha: campos simples que incluye y, si corresponde,
+     * el campo lista que se pagina.
+     */
+    private record Seccion(List<String> campos, String campoLista) {
+    }
+
+    // Datos que acompañan a todas las secciones (encabezado de la pantalla)
+    private static final List<String> CAMPOS_CABECERA = List.of("nombre", "apellido", "documento");
+
+    private static final String HISTORIA = "historia";
+    private static final String EVOLUCION = "evolucion";
+
+    private static final Map<String, Seccion> SECCIONES = Map.of(
+            "datos-personales", new Seccion(List.of(
+                    "fechaNacimiento", "genero", "estadoCivil", "fechaPrimeraDialisis", "telefonos",
+                    "emails", "domicilio", "obraSocial", "institucion"), null),
+            "alergias", new Seccion(List.of("testigoJehova", "seTransfunde"), "alergias"),
+            "antecedentes", new Seccion(List.of(), "antecedentesPersonales"),
+            "medicacion", new Seccion(List.of(), "medicacionActual"),
+            "dialisis", new Seccion(List.of("parametrosDialisis"), null),
+            HISTORIA, new Seccion(List.of(), "historiaClinica"),
+            EVOLUCION, new Seccion(List.of(), "evolucionMensual")
+    );
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final RegistrosClinicosService registrosClinicosService;
+
+    /**
+     * Obtiene una sección de la ficha de un paciente.
+     *
+     * Proceso:
+     * 1. Se consulta el paciente proyectando solo la cabecera y los campos de la sección
+     *    (si la sección es una lista embebida, con $slice para traer solo la página).
+     * 2. Se serializa con Jackson (mismo formato que la API) y se quitan los demás campos.
+     * 3. Para historia y evolución, la página se obtiene de RegistrosClinicosService.
+     * 4. En las secciones paginadas se agregan "pagina", "tamanio" y "hayMas".
+     *
+     * @param id ID del paciente.
+     * @param seccion datos-personales, alergias, antecedentes, medicacion, historia, dialisis o evolucion.
+     * @param pagina Número de página para secciones con listas (desde 0).
+     * @param tamanio Elementos por página (se acota a RegistrosClinicosService.TAMANIO_PAGINA_MAXIMO).
+     * @param desde Fecha inicial para historia/evolución (opcional).
+     * @param hasta Fecha final para historia/evolución (opcional).
+     * @return Objeto JSON con los campos de la sección.
+     * @throws IllegalArgumentException si alguna fecha no es válida.
+     * @throws RuntimeException si el paciente o la sección no existen.
+     */
+    public ObjectNode obtenerSeccion(String id, String seccion, Integer pagina, Integer tamanio,
+                                     String desde, String hasta) {
+        Seccion definicion = SECCIONES.get(seccion);
+        if (definicion == null) {
+            throw new RuntimeException("Sección no encontrada: " + seccion);
+        }
+
+        int numeroPagina = (pagina == null || pagina < 0) ? 0 : pagina;
+        int tamanioPagina = (tamanio == null || tamanio <= 0)
+                ? RegistrosClinicosService.TAMANIO_PAGINA_DEFECTO
+                : Math.min(tamanio, RegistrosClinicosService.TAMANIO_PAGINA_MAXIMO);
+        boolean listaEmbebida = definicion.campoLista() != null
+                && !seccion.equals(HISTORIA) && !seccion.equals(EVOLUCION);
+
+        List<String> campos = new ArrayList<>(CAMPOS_CABECERA);
+        campos.addAll(definicion.campos());
+
+        Query query = new Query(Criteria.where("_id").is(id));
+        campos.forEach(campo -> query.fields().include(campo));
+        if (listaEmbebida) {
+            // Un elemento extra para saber si hay página siguiente
+            query.fields().slice(definicion.campoLista(), numeroPagina * tamanioPagina, tamanioPagina + 1);
+        }
+
+        Paciente paciente = mongoTemplate.findOne(query, Paciente.class);
+        if (paciente == null) {
+            throw new RuntimeException("Paciente no encontrado");
+        }
+
+        ObjectNode resultado = objectMapper.valueToTree(paciente);
+        List<String> salida = new ArrayList<>(campos);
+        salida.add("id");
+        if (listaEmbebida) {
+            salida.add(definicion.campoLista());
+        }
+        resultado.retain(salida);
+
+        if (listaEmbebida) {
+            JsonNode valor = resultado.get(definicion.campoLista());
+            ArrayNode lista = valor instanceof ArrayNode arreglo ? arreglo : resultado.putArray(definicion.campoLista());
+            boolean hayMas = lista.size() > tamanioPagina;
+            if (hayMas) {
+                lista.remove(tamanioPagina);
+            }
+            agregarPaginacion(resultado, numeroPagina, tamanioPagina, hayMas);
+        } else if (seccion.equals(HISTORIA) || seccion.equals(EVOLUCION)) {
+            PaginaRegistros<?> registros = seccion.equals(HISTORIA)
+                    ? registrosClinicosService.listarHistorial(id, desde, hasta, numeroPagina, tamanioPagina)
+                    : registrosClinicosService.listarEvolucion(id, desde, hasta, numeroPagina, tamanioPagina);
+            resultado.set(definicion.campoLista(), objectMapper.valueToTree(registros.getRegistros()));
+            agregarPaginacion(resultado, registros.getPagina(), registros.getTamanio(), registros.isHayMas());
+        }
+
+        return resultado;
+    }
+
+    private static void agregarPaginacion(ObjectNode resultado, int pagina, int tamanio, boolean hayMas) {
+        resultado.put("pagina", pagina);
+        resultado.put("tamanio", tamanio);
+        resultado.put("hayMas", hayMas);
+    }
+}
@@ -0,0 +1,304 @@
+package org.example.clinica.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.bson.Document;
+import org.example.clinica.dto.PuntoTendencia;
+import org.example.clinica.dto.Tendencias;
+import org.example.clinica.repository.mongo.PacienteRepository;
+import org.example.clinica.util.ValoresClinicos;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servicio que calcula las tendencias de diálisis (peso, peso seco y heparina)
+ * a partir de la historia clínica, por paciente o para toda la unidad.
+ *
+ * El cálculo se hace en MongoDB con un pipeline de agregación: se filtran las
+ * entradas por paciente y rango de fechas (índice pacienteId + fecha), se
+ * agrupan por mes o semana con $dateTrunc y se obtienen promedio, mínimo y
+ * máximo de cada medida. Al navegador solo llega un punto por período.
+ *
+ * Los resultados se guardan en una caché:
+ * - Las tendencias de un paciente se invalidan en cuanto cambia su historia
+ *   clínica (ver RegistrosClinicosService).
+ * - Las de toda la unidad vencen solas después de un tiempo configurable, para
+ *   no recalcularlas con cada nota que carga cualquier profesional.
+ */
+@Service
+public class TendenciasService {
+
+    /**
+     * Agrupaciones aceptadas.
+     */
+    public static final String MES = "mes";
+    public static final String SEMANA = "semana";
+
+    private static final String COLECCION_HISTORIA = "historia_clinica";
+
+    private final MongoTemplate mongoTemplate;
+    private final PacienteRepository pacienteRepository;
+
+    // Tendencias calculadas por paciente; se invalidan con cada cambio de su historia
+    private final Cache<String, Tendencias> cache;
+
+    // Tendencias de toda la unidad; vencen por tiempo
+    private final Cache<String, Tendencias> cacheUnidad;
+
+    // Se incrementa con cada invalidación: un cálculo que empezó antes no se guarda
+    private final AtomicLong generacion = new AtomicLong();
+
+    public TendenciasService(MongoTemplate mongoTemplate,
+                             PacienteRepository pacienteRepository,
+                             @Value("${clinica.cache.tendencias.maximo:2000}") long maximo,
+                             @Value("${clinica.cache.tendencias.ttl-unidad:15m}") Duration ttlUnidad) {
+        this.mongoTemplate = mongoTemplate;
+        this.pacienteRepository = pacienteRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfterWrite(Duration.ofHours(6))
+                .build();
+        this.cacheUnidad = Caffeine.newBuilder()
+                .maximumSize(100)
+                .expireAfterWrite(ttlUnidad)
+                .build();
+    }
+
+    /**
+     * Tendencias de un paciente.
+     *
+     * @param pacienteId ID del paciente.
+     * @param agrupacion "mes" o "semana" (null para mes).
+     * @param desde Fecha inicial inclusive, yyyy-MM-dd (null: un año antes de "hasta").
+     * @param hasta Fecha final inclusive, yyyy-MM-dd (null: hoy).
+     * @return Puntos de la tendencia, del más antiguo al más reciente.
+     * @throws IllegalArgumentException si la agrupación o las fechas no son válidas.
+     * @throws RuntimeException si el paciente no existe.
+     */
+    public Tendencias delPaciente(String pacienteId, String agrupacion, String desde, String hasta) {
+        Rango rango = Rango.de(agrupacion, desde, hasta);
+        String clave = pacienteId + "|" + rango.clave();
+
+        Tendencias guardadas = cache.getIfPresent(clave);
+        if (guardadas != null) {
+            return guardadas;
+        }
+        if (!pacienteRepository.existsById(pacienteId)) {
+            throw new RuntimeException("Paciente no encontrado");
+        }
+        return calcularYGuardar(clave, pacienteId, rango);
+    }
+
+    /**
+     * Tendencias de toda la unidad: mismas medidas, agregando las entradas de
+     * todos los pacientes, más la cantidad de pacientes por período.
+     *
+     * @param agrupacion "mes" o "semana" (null para mes).
+     * @param desde Fecha inicial inclusive, yyyy-MM-dd (null: un año antes de "hasta").
+     * @param hasta Fecha final inclusive, yyyy-MM-dd (null: hoy).
+     * @return Puntos de la tendencia, del más antiguo al más reciente.
+     * @throws IllegalArgumentException si la agrupación o las fechas no son válidas.
+     */
+    public Tendencias deLaUnidad(String agrupacion, String desde, String hasta) {
+        Rango rango = Rango.de(agrupacion, desde, hasta);
+        // Las de la unidad no se invalidan con cada escritura: vencen por tiempo
+        return cacheUnidad.get(rango.clave(), clave -> calcular(null, rango));
+    }
+
+    /**
+     * Descarta las tendencias guardadas de un paciente. Se invoca cada vez que
+     * cambia su historia clínica.
+     *
+     * @param pacienteId ID del paciente.
+     */
+    public void invalidar(String pacienteId) {
+        generacion.incrementAndGet();
+        String prefijo = pacienteId + "|";
+        cache.asMap().keySet().removeIf(clave -> clave.startsWith(prefijo));
+    }
+
+    private Tendencias calcularYGuardar(String clave, String pacienteId, Rango rango) {
+        long generacionInicial = generacion.get();
+        Tendencias tendencias = calcular(pacienteId, rango);
+        if (generacion.get() == generacionInicial) {
+            cache.put(clave, tendencias);
+        }
+        return tendencias;
+    }
+
+    /**
+     * Ejecuta el pipeline de agregación:
+     * 1. $match por paciente (si corresponde) y rango de fechas.
+     * 2. $group por período ($dateTrunc de la fecha) con promedio, mínimo y
+     *    máximo de peso y peso seco, promedio de heparina, cantidad de
+     *    entradas y pacientes distintos.
+     * 3. $sort por período ascendente.
+     */
+    private Tendencias calcular(String pacienteId, Rango rango) {
+        Document filtro = new Document("fecha", new Document("$gte", aFechaMongo(rango.desde()))
+                .append("$lte", aFechaMongo(rango.hasta())));
+        if (pacienteId != null) {
+            filtro = new Document("pacienteId", pacienteId).append("fecha", filtro.get("fecha"));
+        }
+
+        Document truncado = new Document("date", "$fecha")
+                .append("unit", rango.agrupacion().equals(SEMANA) ? "week" : "month");
+        if (rango.agrupacion().equals(SEMANA)) {
+            truncado.append("startOfWeek", "monday");
+        }
+
+        Document grupo = new Document("_id", new Document("$dateTrunc", truncado))
+                .append("registros", new Document("$sum", 1))
+                .append("pacientes", new Document("$addToSet", "$pacienteId"))
+                .append("pesoPromedio", new Document("$avg", "$peso"))
+                .append("pesoMinimo", new Document("$min", numerico("$peso")))
+                .append("pesoMaximo", new Document("$max", numerico("$peso")))
+                .append("pesoSecoPromedio", new Document("$avg", "$pesoSeco"))
+                .append("pesoSecoMinimo", new Document("$min", numerico("$pesoSeco")))
+                .append("pesoSecoMaximo", new Document("$max", numerico("$pesoSeco")))
+                .append("heparinaPromedio", new Document("$avg", heparinaNumerica()));
+
+        List<AggregationOperation> etapas = List.of(
+                etapa(new Document("$match", filtro)),
+                etapa(new Document("$group", grupo)),
+                etapa(new Document("$sort", new Document("_id", 1)))
+        );
+
+        List<PuntoTendencia> puntos = new ArrayList<>();
+        for (Document resultado : mongoTemplate.aggregate(
+                Aggregation.newAggregation(etapas), COLECCION_HISTORIA, Document.class)) {
+            Date periodo = resultado.getDate("_id");
+            puntos.add(PuntoTendencia.builder()
+                    .periodo(periodo == null ? null : periodo.toInstant().atZone(ZoneOffset.UTC).toLocalDate())
+                    .registros(resultado.get("registros", Number.class).longValue())
+                    .pacientes(resultado.getList("pacientes", Object.class).size())
+                    .pesoPromedio(redondear(resultado.get("pesoPromedio")))
+                    .pesoMinimo(redondear(resultado.get("pesoMinimo")))
+                    .pesoMaximo(redondear(resultado.get("pesoMaximo")))
+                    .pesoSecoPromedio(redondear(resultado.get("pesoSecoPromedio")))
+                    .pesoSecoMinimo(redondear(resultado.get("pesoSecoMinimo")))
+                    .pesoSecoMaximo(redondear(resultado.get("pesoSecoMaximo")))
+                    .heparinaPromedio(redondear(resultado.get("heparinaPromedio")))
+                    .build());
+        }
+
+        return Tendencias.builder()
+                .pacienteId(pacienteId)
+                .agrupacion(rango.agrupacion())
+                .desde(rango.desde())
+                .hasta(rango.hasta())
+                .puntos(puntos)
+                .build();
+    }
+
+    private static AggregationOperation etapa(Document documento) {
+        return contexto -> documento;
+    }
+
+    /**
+     * El campo solo si es numérico; $min y $max, a diferencia de $avg, no
+     * ignoran los textos que todavía no se migraron.
+     */
+    private static Document numerico(String campo) {
+        return new Document("$cond", List.of(new Document("$isNumber", campo), campo, "$$REMOVE"));
+    }
+
+    /**
+     * La heparina se carga como texto ("5000 UI", "2.500", "2,5"): se toma el
+     * primer número que aparece, con el mismo criterio que
+     * ValoresClinicos.parsearNumero:
+     * - Con punto y coma ("1.234,5"): los puntos son de miles y la coma decimal.
+     * - Solo con puntos seguidos de tres dígitos ("2.500"): puntos de miles.
+     * - Si no, la coma o el punto es decimal ("2,5", "2.5").
+     */
+    private static Document heparinaNumerica() {
+        Document coincidencia = new Document("$regexFind", new Document("input", new Document("$toString", "$heparina"))
+                .append("regex", "[0-9]+(?:[.,][0-9]+)*"));
+        Document sinPuntos = reemplazar("$$t", ".", "");
+        Document texto = new Document("$switch", new Document("branches", List.of(
+                new Document("case", new Document("$and", List.of(
+                        new Document("$gte", List.of(new Document("$indexOfCP", List.of("$$t", ",")), 0)),
+                        new Document("$gte", List.of(new Document("$indexOfCP", List.of("$$t", ".")), 0)))))
+                        .append("then", reemplazar(sinPuntos, ",", ".")),
+                new Document("case", new Document("$regexMatch", new Document("input", "$$t")
+                        .append("regex", ValoresClinicos.MILES_CON_PUNTO)))
+                        .append("then", sinPuntos)))
+                .append("default", reemplazar("$$t", ",", ".")));
+        Document convertido = new Document("$convert", new Document("input", texto)
+                .append("to", "double")
+                .append("onError", null)
+                .append("onNull", null));
+        // Sin número en el texto, t queda vacío y la conversión da null ($avg lo ignora)
+        Document numero = new Document("$let", new Document("vars",
+                new Document("t", new Document("$ifNull", List.of("$$m.match", "")))).append("in", convertido));
+        return new Document("$cond", List.of(
+                new Document("$isNumber", "$heparina"),
+                "$heparina",
+                new Document("$let", new Document("vars", new Document("m", coincidencia)).append("in", numero))
+        ));
+    }
+
+    private static Document reemplazar(Object entrada, String buscar, String reemplazo) {
+        return new Document("$replaceAll", new Document("input", entrada)
+                .append("find", buscar)
+                .append("replacement", reemplazo));
+    }
+
+    private static Date aFechaMongo(LocalDate fecha) {
+        // Misma representación que usa MongoConfig: medianoche UTC
+        return Date.from(fecha.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    private static Double redondear(Object valor) {
+        if (!(valor instanceof Number numero)) {
+            return null;
+        }
+        return Math.round(numero.doubleValue() * 100) / 100.0;
+    }
+
+    /**
+     * Agrupación y rango de fechas ya validados.
+     */
+    private record Rango(String agrupacion, LocalDate desde, LocalDate hasta) {
+
+        static Rango de(String agrupacion, String desde, String hasta) {
+            String tipo = (agrupacion == null || agrupacion.isBlank()) ? MES : agrupacion.trim().toLowerCase();
+            if (!tipo.equals(MES) && !tipo.equals(SEMANA)) {
+                throw new IllegalArgumentException("Agrupación inválida (mes o semana): " + agrupacion);
+            }
+            LocalDate fin = parsear(hasta, LocalDate.now());
+            LocalDate inicio = parsear(desde, fin.minusYears(1));
+            if (inicio.isAfter(fin)) {
+                throw new IllegalArgumentException("La fecha 'desde' es posterior a 'hasta'");
+            }
+            return new Rango(tipo, inicio, fin);
+        }
+
+        String clave() {
+            return agrupacion + "|" + desde + "|" + hasta;
+        }
+
+        private static LocalDate parsear(String valor, LocalDate defecto) {
+            if (valor == null || valor.isBlank()) {
+                return defecto;
+            }
+            try {
+                return LocalDate.parse(valor.trim());
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Fecha inválida (se espera yyyy-MM-dd): " + valor);
+            }
+        }
+    }
+}
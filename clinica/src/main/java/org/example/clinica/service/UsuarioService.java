@@ -1,17 +1,15 @@
 package org.example.clinica.service;
 
 import lombok.RequiredArgsConstructor;
+import org.example.clinica.model.postgres.Role;
 import org.example.clinica.model.postgres.Usuario;
 import org.example.clinica.repository.postgres.UsuarioRepository;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import jakarta.mail.internet.MimeMessage;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,8 +19,9 @@ import java.util.Optional;
  * Funcionalidades principales:
  * - Registro, edición y eliminación de usuarios.
  * - Encriptación de contraseñas antes de ser almacenadas.
- * - Envío automático de email de bienvenida con instrucciones de acceso.
+ * - Envío automático de email de bienvenida con instrucciones de acceso (en cola).
  * - Integración con Spring Security mediante UserDetailsService.
+ * - Actualización de los contadores de usuarios por rol del dashboard.
  *
  * Esta capa de servicio abstrae toda la lógica vinculada a usuarios,
  * permitiendo un tratamiento seguro y ordenado de credenciales y datos sensibles.
@@ -33,7 +32,8 @@ public class UsuarioService implements UserDetailsService {
 
     private final UsuarioRepository usuarioRepository;
     private final PasswordEncoder passwordEncoder;
-    private final JavaMailSender mailSender;
+    private final CorreosSalientesService correosSalientesService;
+    private final EstadisticasService estadisticasService;
 
     // -----------------------------------------------------
     //                 MÉTODOS DE NEGOCIO
@@ -64,8 +64,9 @@ public class UsuarioService implements UserDetailsService {
      * Proceso:
      * 1. Valida que la contraseña no esté vacía.
      * 2. Encripta la contraseña usando PasswordEncoder.
-     * 3. Envía un email de bienvenida al correo del usuario.
-     * 4. Guarda el usuario con su contraseña ya encriptada.
+     * 3. Guarda el usuario con su contraseña ya encriptada.
+     * 4. Encola el email de bienvenida; lo envía CorreosSalientesService en
+     *    segundo plano, así el alta no espera al servidor SMTP.
      *
      * @param usuario Usuario a persistir.
      * @return Usuario guardado.
@@ -84,11 +85,30 @@ public class UsuarioService implements UserDetailsService {
             throw new IllegalArgumentException("La contraseña no puede estar vacía o nula.");
         }
 
-        // Envío de email antes de guardar (para incluir sus datos)
-        enviarEmailBienvenidaUsuario(usuario);
+        // Usuario previo (si es una edición), para las estadísticas por rol
+        Optional<Usuario> anterior = usuario.getIdUsuario() == null
+                ? Optional.empty()
+                : usuarioRepository.findById(usuario.getIdUsuario());
+        Role rolAnterior = anterior.map(Usuario::getRol).orElse(null);
 
         // Guarda el usuario en la BD
-        return usuarioRepository.save(usuario);
+        Usuario guardado = usuarioRepository.save(usuario);
+
+        // Email de bienvenida, en cola. Usuarios (PostgreSQL) y cola (MongoDB) no
+        // comparten transacción: si no se pudo encolar, el usuario igual queda guardado
+        try {
+            correosSalientesService.encolarBienvenida(guardado);
+        } catch (Exception e) {
+            System.err.println("Error al encolar email de bienvenida a usuario "
+                    + guardado.getEmail() + ": " + e.getMessage());
+        }
+
+        if (anterior.isEmpty()) {
+            estadisticasService.registrarAltaUsuario(guardado.getRol());
+        } else if (rolAnterior != guardado.getRol()) {
+            estadisticasService.registrarCambioRol(rolAnterior, guardado.getRol());
+        }
+        return guardado;
     }
 
     /**
@@ -97,7 +117,9 @@ public class UsuarioService implements UserDetailsService {
      * @param id ID del usuario.
      */
     public void eliminarUsuario(Long id) {
+        Optional<Usuario> existente = usuarioRepository.findById(id);
         usuarioRepository.deleteById(id);
+        existente.ifPresent(usuario -> estadisticasService.registrarBajaUsuario(usuario.getRol()));
     }
 
     /**
@@ -135,56 +157,4 @@ public class UsuarioService implements UserDetailsService {
         return usuarioRepository.findByEmail(email)
                 .orElseThrow(() -> new UsernameNotFoundException("Usuario no encontrado con email: " + email));
     }
-
-    // -----------------------------------------------------
-    //         ENVÍO DE EMAIL AUTOMÁTICO AL REGISTRAR
-    // -----------------------------------------------------
-
-    /**
-     * Envía un email de bienvenida al nuevo usuario.
-     *
-     * Contenido:
-     * - Datos de acceso (solo email; la contraseña la entregará el administrador).
-     * - Instrucciones para iniciar sesión en la aplicación web.
-     *
-     * Este método se ejecuta automáticamente en guardar().
-     *
-     * @param usuario Usuario destinatario.
-     */
-    private void enviarEmailBienvenidaUsuario(Usuario usuario) {
-        try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true);
-
-            helper.setTo(usuario.getEmail());
-            helper.setSubject("Bienvenido a la Clínica Nefrológica Integral");
-            helper.setText(
-                    "Hola " + usuario.getNombre() + ",\n\n" +
-                            "Somos de la Clínica Nefrológica Integral y le damos la bienvenida a nuestro sistema.\n\n" +
-                            "Sus datos para acceder a nuestra página web son:\n\n" +
-                            "Email: " + usuario.getEmail() + "\n\n" +
-                            "Por favor, no divulgue estos datos personales. Son exclusivamente para su uso profesional.\n\n" +
-                            "Para acceder al sistema:\n" +
-                            "1. Visite: http://localhost:4200\n" +
-                            "2. Inicie sesión con su email y la contraseña que le proporcionará el administrador\n\n" +
-                            "Si tiene alguna duda, no dude en contactarnos.\n\n" +
-                            "Atentamente,\nClínica Nefrológica Integral"
-            );
-
-            mailSender.send(message);
-
-            System.out.println("=== EMAIL DE BIENVENIDA ENVIADO ===");
-            System.out.println("Usuario: " + usuario.getNombre() + " (" + usuario.getEmail() + ")");
-            System.out.println("Rol: " + usuario.getRol());
-            System.out.println("Estado: Email enviado exitosamente");
-            System.out.println("===================================");
-
-        } catch (Exception e) {
-            System.err.println(
-                    "Error al enviar email de bienvenida a usuario "
-                            + usuario.getEmail() + ": " + e.getMessage()
-            );
-            e.printStackTrace();
-        }
-    }
 }
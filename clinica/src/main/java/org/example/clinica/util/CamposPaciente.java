@@ -0,0 +1,70 @@
+package org.example.clinica.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.example.clinica.model.mongo.Paciente;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Catálogo de los campos públicos de un Paciente.
+ *
+ * Se usa para validar las selecciones de campos que llegan desde la API
+ * (exportación, proyecciones) antes de convertirlas en proyecciones de MongoDB.
+ * Los campos internos marcados con @JsonIgnore no se pueden seleccionar.
+ */
+public final class CamposPaciente {
+
+    /**
+     * Nombres de todos los campos seleccionables, en el orden de declaración.
+     */
+    public static final Set<String> TODOS = Arrays.stream(Paciente.class.getDeclaredFields())
+            .filter(campo -> !Modifier.isStatic(campo.getModifiers()))
+            .filter(campo -> !campo.isAnnotationPresent(JsonIgnore.class))
+            .map(Field::getName)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+
+    private CamposPaciente() {
+    }
+
+    /**
+     * Interpreta una lista de campos separada por comas (por ejemplo "nombre,apellido").
+     *
+     * @param lista Texto recibido en la petición (puede ser null o vacío).
+     * @return Conjunto de campos válidos; vacío si no se pidió ninguno.
+     * @throws IllegalArgumentException si algún campo no existe en Paciente.
+     */
+    public static Set<String> parsear(String lista) {
+        if (lista == null || lista.isBlank()) {
+            return Set.of();
+        }
+        return validar(Arrays.asList(lista.split(",")));
+    }
+
+    /**
+     * Valida una colección de nombres de campo.
+     *
+     * @param campos Nombres recibidos.
+     * @return Conjunto ordenado con los nombres, sin espacios ni repetidos.
+     * @throws IllegalArgumentException si algún campo no existe en Paciente.
+     */
+    public static Set<String> validar(Collection<String> campos) {
+        Set<String> resultado = new LinkedHashSet<>();
+        for (String campo : campos) {
+            String nombre = campo.trim();
+            if (nombre.isEmpty()) {
+                continue;
+            }
+            if (!TODOS.contains(nombre)) {
+                throw new IllegalArgumentException("Campo de paciente desconocido: " + nombre);
+            }
+            resultado.add(nombre);
+        }
+        return resultado;
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.clinica.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Deserializador de fechas clínicas que acepta los formatos que enviaban los
+ * formularios cuando estos campos eran texto libre (ver ValoresClinicos).
+ * Un texto vacío se interpreta como null.
+ */
+public class FechaFlexibleDeserializer extends StdScalarDeserializer<LocalDate> {
+
+    public FechaFlexibleDeserializer() {
+        super(LocalDate.class);
+    }
+
+    @Override
+    public LocalDate deserialize(JsonParser parser, DeserializationContext contexto) throws IOException {
+        if (!parser.hasToken(JsonToken.VALUE_STRING)) {
+            return (LocalDate) contexto.handleUnexpectedToken(LocalDate.class, parser);
+        }
+        try {
+            return ValoresClinicos.parsearFecha(parser.getText());
+        } catch (IllegalArgumentException e) {
+            return (LocalDate) contexto.handleWeirdStringValue(LocalDate.class, parser.getText(), e.getMessage());
+        }
+    }
+}
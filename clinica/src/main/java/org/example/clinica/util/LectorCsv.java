@@ -0,0 +1,89 @@
+package org.example.clinica.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector mínimo de archivos CSV (RFC 4180).
+ *
+ * Soporta:
+ * - Separador ',' o ';' (se detecta en la primera línea, como exporta Excel en español).
+ * - Valores entre comillas, con comillas escapadas ("") y saltos de línea internos.
+ * - Finales de línea \n o \r\n.
+ *
+ * Se usa en la importación masiva de pacientes.
+ */
+public final class LectorCsv {
+
+    private LectorCsv() {
+    }
+
+    /**
+     * Separa el contenido en filas y columnas.
+     *
+     * @param contenido Texto completo del CSV.
+     * @return Filas leídas (incluida la cabecera); las líneas vacías se omiten.
+     * @throws IllegalArgumentException si hay comillas sin cerrar.
+     */
+    public static List<List<String>> leer(String contenido) {
+        char separador = detectarSeparador(contenido);
+
+        List<List<String>> filas = new ArrayList<>();
+        List<String> fila = new ArrayList<>();
+        StringBuilder valor = new StringBuilder();
+        boolean entreComillas = false;
+
+        for (int i = 0; i < contenido.length(); i++) {
+            char c = contenido.charAt(i);
+
+            if (entreComillas) {
+                if (c == '"') {
+                    if (i + 1 < contenido.length() && contenido.charAt(i + 1) == '"') {
+                        valor.append('"');
+                        i++;
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    valor.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == separador) {
+                fila.add(valor.toString().trim());
+                valor.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < contenido.length() && contenido.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                fila.add(valor.toString().trim());
+                valor.setLength(0);
+                agregarSiNoVacia(filas, fila);
+                fila = new ArrayList<>();
+            } else {
+                valor.append(c);
+            }
+        }
+
+        if (entreComillas) {
+            throw new IllegalArgumentException("CSV inválido: hay comillas sin cerrar");
+        }
+        fila.add(valor.toString().trim());
+        agregarSiNoVacia(filas, fila);
+
+        return filas;
+    }
+
+    private static void agregarSiNoVacia(List<List<String>> filas, List<String> fila) {
+        boolean vacia = fila.stream().allMatch(String::isEmpty);
+        if (!vacia) {
+            filas.add(fila);
+        }
+    }
+
+    private static char detectarSeparador(String contenido) {
+        int finPrimeraLinea = contenido.indexOf('\n');
+        String cabecera = finPrimeraLinea >= 0 ? contenido.substring(0, finPrimeraLinea) : contenido;
+        return cabecera.indexOf(';') >= 0 && cabecera.indexOf(',') < 0 ? ';' : ',';
+    }
+}
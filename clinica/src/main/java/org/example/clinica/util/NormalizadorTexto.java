@@ -0,0 +1,57 @@
+package org.example.clinica.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Utilidades para normalizar texto antes de guardarlo o buscarlo.
+ *
+ * Se usa para mantener las claves de búsqueda de los pacientes
+ * (nombre y apellido sin acentos y en minúsculas), de modo que
+ * "José" y "jose" coincidan usando un índice de MongoDB.
+ */
+public final class NormalizadorTexto {
+
+    // Marcas diacríticas que quedan separadas luego de descomponer en NFD
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+
+    // Caracteres con significado especial dentro de una expresión regular
+    private static final String ESPECIALES_REGEX = "\\^$.|?*+()[]{}";
+
+    private NormalizadorTexto() {
+    }
+
+    /**
+     * Quita acentos, pasa a minúsculas y colapsa espacios.
+     *
+     * @param texto Texto original (puede ser null).
+     * @return Texto normalizado, o null si el original era null o vacío.
+     */
+    public static String normalizar(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return null;
+        }
+        String sinAcentos = DIACRITICOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return sinAcentos.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Escapa un texto para usarlo literalmente dentro de una expresión regular.
+     * A diferencia de Pattern.quote, mantiene el prefijo "simple" que MongoDB
+     * necesita para resolver un regex anclado (^texto) con un índice.
+     *
+     * @param texto Texto a escapar.
+     * @return Texto con los caracteres especiales precedidos por '\'.
+     */
+    public static String escaparRegex(String texto) {
+        StringBuilder sb = new StringBuilder(texto.length() + 8);
+        for (char c : texto.toCharArray()) {
+            if (ESPECIALES_REGEX.indexOf(c) >= 0) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.clinica.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Deserializador de medidas clínicas (peso, altura...) que acepta tanto
+ * números JSON como el texto que se cargaba antes ("70,5", "70.5 kg").
+ * Un texto vacío se interpreta como null.
+ */
+public class NumeroFlexibleDeserializer extends StdScalarDeserializer<Double> {
+
+    public NumeroFlexibleDeserializer() {
+        super(Double.class);
+    }
+
+    @Override
+    public Double deserialize(JsonParser parser, DeserializationContext contexto) throws IOException {
+        if (parser.currentToken().isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        String texto = parser.getValueAsString();
+        if (texto == null) {
+            return (Double) contexto.handleUnexpectedToken(Double.class, parser);
+        }
+        try {
+            return ValoresClinicos.parsearNumero(texto);
+        } catch (IllegalArgumentException e) {
+            return (Double) contexto.handleWeirdStringValue(Double.class, texto, e.getMessage());
+        }
+    }
+}
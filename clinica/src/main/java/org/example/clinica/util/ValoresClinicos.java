@@ -0,0 +1,122 @@
+package org.example.clinica.util;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Interpretación tolerante de fechas y valores numéricos clínicos.
+ *
+ * Las fechas y medidas se guardaban como texto libre, por lo que conviven
+ * formatos como "2024-01-31", "31/01/2024", "2024-01-31T03:00:00.000Z",
+ * "70,5" o "70.5 kg". Esta clase los convierte al tipo real (LocalDate o
+ * Double) para guardarlos tipados y poder filtrarlos por rango con índices.
+ *
+ * Se usa al leer datos viejos de MongoDB, al recibir datos de la API o del
+ * CSV de importación, y en la migración de los documentos existentes.
+ */
+public final class ValoresClinicos {
+
+    // Formatos de fecha aceptados además de ISO (yyyy-MM-dd)
+    private static final List<DateTimeFormatter> FORMATOS_FECHA = List.of(
+            DateTimeFormatter.ofPattern("d/M/uuuu"),
+            DateTimeFormatter.ofPattern("d-M-uuuu"),
+            DateTimeFormatter.ofPattern("d.M.uuuu")
+    );
+
+    // Primer número del texto, con coma o punto decimal
+    private static final Pattern NUMERO = Pattern.compile("-?\\d+(?:[.,]\\d+)*");
+
+    /**
+     * Número escrito solo con puntos de miles ("2.500", "1.250.000"): cada
+     * punto va seguido de exactamente tres dígitos. TendenciasService usa la
+     * misma expresión dentro de MongoDB.
+     */
+    public static final String MILES_CON_PUNTO = "^[0-9]{1,3}(\\.[0-9]{3})+$";
+
+    private ValoresClinicos() {
+    }
+
+    /**
+     * Convierte un texto en fecha.
+     *
+     * Acepta yyyy-MM-dd, fecha y hora ISO-8601 (se toma el día en la zona
+     * horaria del servidor) y dd/MM/yyyy, dd-MM-yyyy o dd.MM.yyyy.
+     *
+     * @param texto Texto recibido (puede ser null o vacío).
+     * @return Fecha correspondiente, o null si el texto está vacío.
+     * @throws IllegalArgumentException si el texto no es una fecha reconocible.
+     */
+    public static LocalDate parsearFecha(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return null;
+        }
+        String valor = texto.trim();
+        try {
+            if (valor.length() == 10 && valor.charAt(4) == '-') {
+                return LocalDate.parse(valor);
+            }
+            if (valor.length() > 10 && valor.charAt(10) == 'T') {
+                return leerFechaHora(valor);
+            }
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha inválida: " + texto);
+        }
+        for (DateTimeFormatter formato : FORMATOS_FECHA) {
+            try {
+                return LocalDate.parse(valor, formato);
+            } catch (DateTimeParseException e) {
+                // Se prueba el formato siguiente
+            }
+        }
+        throw new IllegalArgumentException("Fecha inválida: " + texto);
+    }
+
+    /**
+     * Convierte un texto en número. Acepta coma o punto decimal y unidades
+     * ("70,5 kg"); si tiene separadores de miles y coma decimal ("1.234,5")
+     * también se interpreta. Un punto seguido de exactamente tres dígitos es
+     * separador de miles ("2.500" = 2500, "70.5" = 70,5).
+     *
+     * @param texto Texto recibido (puede ser null o vacío).
+     * @return Valor numérico, o null si el texto está vacío.
+     * @throws IllegalArgumentException si el texto no contiene un número.
+     */
+    public static Double parsearNumero(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return null;
+        }
+        Matcher coincidencia = NUMERO.matcher(texto);
+        if (!coincidencia.find()) {
+            throw new IllegalArgumentException("Número inválido: " + texto);
+        }
+        String numero = coincidencia.group();
+        String sinSigno = numero.startsWith("-") ? numero.substring(1) : numero;
+        if (numero.contains(",") && numero.contains(".")) {
+            numero = numero.replace(".", "").replace(',', '.');
+        } else if (sinSigno.matches(MILES_CON_PUNTO)) {
+            numero = numero.replace(".", "");
+        } else {
+            numero = numero.replace(',', '.');
+        }
+        try {
+            return Double.valueOf(numero);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Número inválido: " + texto);
+        }
+    }
+
+    private static LocalDate leerFechaHora(String valor) {
+        try {
+            return OffsetDateTime.parse(valor).atZoneSameInstant(ZoneId.systemDefault()).toLocalDate();
+        } catch (DateTimeParseException e) {
+            // Sin zona horaria: se toma la fecha tal cual
+            return LocalDate.parse(valor.substring(0, 10));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.util.NormalizadorTexto;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compara el rendimiento del alta de pacientes:
+ * - Flujo anterior: save para obtener el ID, armar la URL del QR y save otra vez.
+ * - Flujo actual (PacienteService.crearPaciente): ID asignado antes y una sola inserción.
+ *
+ * Necesita un MongoDB real, por lo que solo corre si se indica la URI:
+ *
+ *   mvn test -Dtest=AltaPacienteBenchmarkTest -Dbenchmark.mongo.uri=mongodb://localhost:27017
+ *
+ * Opcional: -Dbenchmark.altas=5000 (cantidad de altas medidas por flujo).
+ * Usa una base temporal que se elimina al terminar.
+ */
+@EnabledIfSystemProperty(named = "benchmark.mongo.uri", matches = ".+")
+class AltaPacienteBenchmarkTest {
+
+    private static final String BASE_TEMPORAL = "clinica_benchmark_altas";
+    private static final int CALENTAMIENTO = 300;
+
+    private static MongoClient cliente;
+    private static MongoTemplate mongoTemplate;
+    private static PacienteService pacienteService;
+
+    @BeforeAll
+    static void conectar() {
+        cliente = MongoClients.create(System.getProperty("benchmark.mongo.uri"));
+        mongoTemplate = new MongoTemplate(cliente, BASE_TEMPORAL);
+        mongoTemplate.getDb().drop();
+        // Sin emails no se encola ningún QR, así que la cola de correos solo usa MongoDB
+        pacienteService = new PacienteService(null, mongoTemplate,
+                new CorreosSalientesService(mongoTemplate, null, null, null, null), null,
+                new PacienteCache(new ObjectMapper(), 1 << 20, Duration.ofMinutes(1)),
+                new EstadisticasService(mongoTemplate, null));
+    }
+
+    @AfterAll
+    static void limpiar() {
+        if (mongoTemplate != null) {
+            mongoTemplate.getDb().drop();
+        }
+        if (cliente != null) {
+            cliente.close();
+        }
+    }
+
+    @Test
+    void unaInsercionSuperaADosEscrituras() {
+        int altas = Integer.getInteger("benchmark.altas", 2000);
+
+        // Calentamiento de ambos caminos (JIT y pool de conexiones)
+        medir(CALENTAMIENTO, this::altaConDosEscrituras);
+        medir(CALENTAMIENTO, pacienteService::crearPaciente);
+        mongoTemplate.dropCollection(Paciente.class);
+
+        double dosEscrituras = medir(altas, this::altaConDosEscrituras);
+        double unaInsercion = medir(altas, pacienteService::crearPaciente);
+
+        System.out.printf("Alta con dos escrituras: %,.0f altas/s%n", dosEscrituras);
+        System.out.printf("Alta con una inserción:  %,.0f altas/s%n", unaInsercion);
+        System.out.printf("Mejora: x%.2f%n", unaInsercion / dosEscrituras);
+
+        assertEquals(2L * altas, mongoTemplate.count(new Query(), Paciente.class));
+        assertEquals(0, mongoTemplate.count(new Query(Criteria.where("qrCodeData").exists(false)), Paciente.class));
+    }
+
+    /**
+     * Flujo anterior de crearPaciente, reproducido tal como era.
+     */
+    private Paciente altaConDosEscrituras(Paciente paciente) {
+        paciente.setNombreNormalizado(NormalizadorTexto.normalizar(paciente.getNombre()));
+        paciente.setApellidoNormalizado(NormalizadorTexto.normalizar(paciente.getApellido()));
+        Paciente nuevoPaciente = mongoTemplate.save(paciente);
+        nuevoPaciente.setQrCodeData(QrService.construirUrlPaciente(nuevoPaciente.getId()));
+        return mongoTemplate.save(nuevoPaciente);
+    }
+
+    /**
+     * Ejecuta la cantidad indicada de altas y devuelve las altas por segundo.
+     */
+    private double medir(int cantidad, UnaryOperator<Paciente> alta) {
+        long inicio = System.nanoTime();
+        for (int i = 0; i < cantidad; i++) {
+            alta.apply(nuevoPaciente(i));
+        }
+        long transcurrido = System.nanoTime() - inicio;
+        return cantidad / (transcurrido / 1_000_000_000.0);
+    }
+
+    private static Paciente nuevoPaciente(int numero) {
+        Paciente paciente = new Paciente();
+        paciente.setNombre("Paciente");
+        paciente.setApellido("Benchmark " + numero);
+        paciente.setDocumento(String.valueOf(30_000_000 + numero));
+        paciente.setFechaNacimiento(LocalDate.of(1960, 1, 1));
+        paciente.setInstitucion("Centro de prueba");
+        return paciente;
+    }
+}
@@ -0,0 +1,352 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.example.clinica.config.MongoConfig;
+import org.example.clinica.dto.EstadoIndice;
+import org.example.clinica.dto.FiltroPacientes;
+import org.example.clinica.dto.PaginaPacientes;
+import org.example.clinica.model.mongo.CorreoSaliente;
+import org.example.clinica.model.mongo.Evolucion;
+import org.example.clinica.model.mongo.Historial;
+import org.example.clinica.model.mongo.Paciente;
+import org.example.clinica.repository.mongo.EvolucionRepository;
+import org.example.clinica.repository.mongo.HistorialRepository;
+import org.example.clinica.repository.mongo.PacienteRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica que las consultas de los servicios usen los índices del registro
+ * (IndicesMongoService) y ninguna termine en un recorrido completo de la
+ * colección (COLLSCAN).
+ *
+ * Cada prueba activa el profiler de MongoDB, ejecuta operaciones reales de
+ * los servicios y luego vuelve a pasar cada consulta registrada por explain,
+ * revisando las etapas del plan ganador. Así se prueban las consultas tal
+ * como las arma el código, sin copiarlas en el test.
+ *
+ * Necesita un MongoDB real (standalone o replica set, con profiler), por lo
+ * que solo corre si se indica la URI:
+ *
+ *   mvn test -Dtest=ConsultasIndexadasTest -Dtest.mongo.uri=mongodb://localhost:27017
+ *
+ * Usa una base temporal que se elimina al terminar.
+ */
+@EnabledIfSystemProperty(named = "test.mongo.uri", matches = ".+")
+class ConsultasIndexadasTest {
+
+    private static final String BASE_TEMPORAL = "clinica_test_indices";
+    private static final Set<String> COLECCIONES = Set.of(
+            "pacientes", "historia_clinica", "evolucion_mensual", "pacientes_eliminados", "estadisticas");
+
+    // Campos de sesión y de envío que explain no acepta
+    private static final Set<String> CAMPOS_DE_ENVIO = Set.of("lsid", "txnNumber", "readConcern", "writeConcern");
+
+    private static MongoClient cliente;
+    private static MongoTemplate mongoTemplate;
+    private static IndicesMongoService indicesMongoService;
+    private static PacienteService pacienteService;
+    private static RegistrosClinicosService registrosClinicosService;
+    private static TendenciasService tendenciasService;
+    private static LotePacientesService lotePacientesService;
+    private static HojaQrService hojaQrService;
+    private static final List<String> ids = new ArrayList<>();
+
+    @BeforeAll
+    static void preparar() {
+        cliente = MongoClients.create(System.getProperty("test.mongo.uri"));
+        SimpleMongoClientDatabaseFactory fabrica = new SimpleMongoClientDatabaseFactory(cliente, BASE_TEMPORAL);
+
+        // Mismas conversiones que la aplicación (fechas como fecha BSON)
+        MongoCustomConversions conversiones = new MongoConfig().mongoCustomConversions();
+        MongoMappingContext contexto = new MongoMappingContext();
+        contexto.setSimpleTypeHolder(conversiones.getSimpleTypeHolder());
+        contexto.afterPropertiesSet();
+        MappingMongoConverter conversor = new MappingMongoConverter(new DefaultDbRefResolver(fabrica), contexto);
+        conversor.setCustomConversions(conversiones);
+        conversor.afterPropertiesSet();
+        mongoTemplate = new MongoTemplate(fabrica, conversor);
+        mongoTemplate.getDb().drop();
+
+        MongoRepositoryFactory repositorios = new MongoRepositoryFactory(mongoTemplate);
+        PacienteRepository pacienteRepository = repositorios.getRepository(PacienteRepository.class);
+
+        indicesMongoService = new IndicesMongoService(mongoTemplate, false);
+        tendenciasService = new TendenciasService(mongoTemplate, pacienteRepository, 100, Duration.ofMinutes(1));
+        registrosClinicosService = new RegistrosClinicosService(
+                pacienteRepository,
+                repositorios.getRepository(HistorialRepository.class),
+                repositorios.getRepository(EvolucionRepository.class),
+                mongoTemplate,
+                tendenciasService);
+        // Sin emails no se encola ningún QR, así que la cola de correos solo usa MongoDB
+        pacienteService = new PacienteService(pacienteRepository, mongoTemplate,
+                new CorreosSalientesService(mongoTemplate, null, null, null, null), registrosClinicosService,
+                new PacienteCache(new ObjectMapper(), 1 << 20, Duration.ofMinutes(1)),
+                new EstadisticasService(mongoTemplate, null));
+        lotePacientesService = new LotePacientesService(mongoTemplate, new ObjectMapper());
+        hojaQrService = new HojaQrService(mongoTemplate, new SyncTaskExecutor());
+
+        indicesMongoService.aplicar();
+
+        // Datos suficientes para que cada consulta tenga resultados
+        String[] apellidos = {"Gómez", "Pérez", "García", "López", "Martínez"};
+        for (int i = 0; i < 50; i++) {
+            Paciente paciente = new Paciente();
+            paciente.setNombre("Paciente" + i);
+            paciente.setApellido(apellidos[i % apellidos.length]);
+            paciente.setDocumento(String.valueOf(30_000_000 + i));
+            paciente.setFechaNacimiento(LocalDate.of(1950 + i % 40, 1 + i % 12, 1));
+            paciente.setFechaPrimeraDialisis(LocalDate.of(2015 + i % 10, 1, 1));
+            paciente.setInstitucion(i % 2 == 0 ? "Centro Norte" : "Centro Sur");
+            ids.add(pacienteService.crearPaciente(paciente).getId());
+        }
+        for (int i = 0; i < 20; i++) {
+            Historial historial = new Historial();
+            historial.setFecha(LocalDate.now().minusWeeks(i));
+            historial.setPeso(70.0 + i % 3);
+            historial.setPesoSeco(68.0);
+            historial.setHeparina("5000 UI");
+            registrosClinicosService.agregarHistorial(ids.get(i % 3), historial, null);
+        }
+    }
+
+    @AfterAll
+    static void limpiar() {
+        if (mongoTemplate != null) {
+            mongoTemplate.getDb().drop();
+        }
+        if (cliente != null) {
+            cliente.close();
+        }
+    }
+
+    @Test
+    void elRegistroQuedaAplicadoSinDiferencias() {
+        List<EstadoIndice> estados = indicesMongoService.verificar();
+
+        assertEquals(IndicesMongoService.REGISTRO.size(), estados.size());
+        assertTrue(estados.stream().allMatch(estado -> EstadoIndice.OK.equals(estado.getEstado())), estados::toString);
+    }
+
+    @Test
+    void listadoYBusquedaDePacientes() {
+        verificarSinColscan(() -> {
+            PaginaPacientes pagina = pacienteService.listarResumen(null, 10);
+            pacienteService.listarResumen(pagina.getSiguienteCursor(), 10);
+            pacienteService.listarResumen(null, 10,
+                    FiltroPacientes.desdeParametros("1960-01-01", "1970-12-31", null, null));
+            pacienteService.listarResumen(null, 10,
+                    FiltroPacientes.desdeParametros(null, null, "2020-01-01", null));
+            pacienteService.buscar("30000012", 10);
+            pacienteService.buscar("3000001", 10);
+            pacienteService.buscar("gomez", 10);
+            pacienteService.buscar("paciente1", 10);
+            pacienteService.buscar("perez paciente", 10);
+            pacienteService.buscar("garcia", 10, FiltroPacientes.desdeParametros("1955-01-01", null, null, null));
+            lotePacientesService.obtener(ids.subList(0, 5), List.of("nombre"));
+        });
+    }
+
+    @Test
+    void escrituraYSincronizacionDePacientes() {
+        verificarSinColscan(() -> {
+            String token = pacienteService.listarResumen(null, 1).getToken();
+            String id = ids.get(40);
+
+            Long version = pacienteService.obtenerVersion(id).orElseThrow();
+            Paciente cambios = new Paciente();
+            cambios.setDomicilio("Calle Falsa 123");
+            cambios.setObraSocial("O.S.D.E.");
+            pacienteService.actualizarPaciente(id, cambios, Set.of(version));
+            pacienteService.buscarPorId(ids.get(41));
+
+            pacienteService.eliminarPaciente(ids.get(49), null);
+            pacienteService.listarCambios(token);
+        });
+    }
+
+    @Test
+    void historiaEvolucionYTendencias() {
+        verificarSinColscan(() -> {
+            String id = ids.get(0);
+            Historial historial = new Historial();
+            historial.setPeso(71.5);
+            registrosClinicosService.agregarHistorial(id, historial, 5);
+            registrosClinicosService.listarHistorial(id, null, null, 0, 10);
+            registrosClinicosService.listarHistorial(id, LocalDate.now().minusMonths(2).toString(), null, 0, 10);
+
+            Evolucion evolucion = new Evolucion();
+            evolucion.setInformeGeneral("Estable");
+            registrosClinicosService.agregarEvolucion(id, evolucion, 3);
+            registrosClinicosService.listarEvolucion(id, null, null, 0, 10);
+
+            tendenciasService.delPaciente(ids.get(1), "semana", null, null);
+            tendenciasService.deLaUnidad("mes", null, null);
+
+            pacienteService.eliminarPaciente(ids.get(2), null);
+        });
+    }
+
+    @Test
+    void hojasDeEtiquetasQr() {
+        verificarSinColscan(() -> {
+            try {
+                hojaQrService.escribir(OutputStream.nullOutputStream(), "Centro Norte", List.of());
+                hojaQrService.escribir(OutputStream.nullOutputStream(), null, List.of(ids.get(0), ids.get(1)));
+                hojaQrService.escribir(OutputStream.nullOutputStream(), null, List.of());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Test
+    void colaDeCorreosSalientes() {
+        // Sin servidor SMTP (puerto cerrado): el envío falla y el correo queda reprogramado
+        JavaMailSenderImpl sinServidor = new JavaMailSenderImpl();
+        sinServidor.setHost("localhost");
+        sinServidor.setPort(1);
+        CorreosSalientesService correosSalientesService = new CorreosSalientesService(mongoTemplate,
+                new QrService(1 << 20), new EnvioSmtpService(sinServidor, 1, 0), null, new SyncTaskExecutor());
+        String id = ids.get(30);
+
+        verificarSinColscan(() -> {
+            Paciente cambios = new Paciente();
+            cambios.setEmails(List.of("familia@example.com"));
+            pacienteService.actualizarPaciente(id, cambios);
+            correosSalientesService.despachar();
+            correosSalientesService.estado();
+        });
+
+        CorreoSaliente correo = mongoTemplate.findOne(
+                new Query(Criteria.where("referencia").is(id)), CorreoSaliente.class);
+        assertNotNull(correo);
+        assertEquals(CorreoSaliente.Estado.PENDIENTE, correo.getEstado());
+        assertEquals(1, correo.getIntentos());
+        assertNotNull(correo.getUltimoError());
+    }
+
+    /**
+     * Ejecuta las operaciones con el profiler activo y falla si alguna
+     * consulta sobre las colecciones de la aplicación usa COLLSCAN.
+     */
+    private void verificarSinColscan(Runnable operaciones) {
+        mongoTemplate.getDb().runCommand(new Document("profile", 0));
+        mongoTemplate.getDb().getCollection("system.profile").drop();
+        mongoTemplate.getDb().runCommand(new Document("profile", 2));
+        try {
+            operaciones.run();
+        } finally {
+            mongoTemplate.getDb().runCommand(new Document("profile", 0));
+        }
+
+        List<String> colscans = new ArrayList<>();
+        int consultas = 0;
+        for (Document entrada : mongoTemplate.getDb().getCollection("system.profile").find()) {
+            String ns = entrada.getString("ns");
+            String coleccion = ns.substring(ns.indexOf('.') + 1);
+            if (!COLECCIONES.contains(coleccion)) {
+                continue;
+            }
+            Document comando = comandoExplicable(entrada.getString("op"), coleccion, entrada.get("command", Document.class));
+            if (comando == null) {
+                continue;
+            }
+            consultas++;
+
+            Document explicacion = mongoTemplate.getDb().runCommand(
+                    new Document("explain", comando).append("verbosity", "queryPlanner"));
+            List<String> etapas = new ArrayList<>();
+            etapasGanadoras(explicacion, false, etapas);
+            if (etapas.contains("COLLSCAN")) {
+                colscans.add(coleccion + ": " + comando.toJson());
+            }
+        }
+
+        assertTrue(consultas > 0, "El profiler no registró consultas");
+        assertTrue(colscans.isEmpty(), "Consultas sin índice (COLLSCAN):\n" + String.join("\n", colscans));
+    }
+
+    /**
+     * Arma, a partir de una entrada del profiler, el comando que se pasa a explain.
+     *
+     * @return Comando, o null si la operación no consulta (inserciones, getMore, índices).
+     */
+    private static Document comandoExplicable(String op, String coleccion, Document registrado) {
+        if (registrado == null) {
+            return null;
+        }
+        Document comando = new Document();
+        registrado.forEach((clave, valor) -> {
+            if (!clave.startsWith("$") && !CAMPOS_DE_ENVIO.contains(clave)) {
+                comando.put(clave, valor);
+            }
+        });
+        return switch (op) {
+            case "query" -> comando;
+            case "update" -> comando.containsKey("update")
+                    ? comando
+                    : new Document("update", coleccion).append("updates", List.of(comando));
+            case "remove" -> comando.containsKey("delete")
+                    ? comando
+                    : new Document("delete", coleccion).append("deletes", List.of(
+                            new Document("q", comando.get("q")).append("limit", comando.getOrDefault("limit", 0))));
+            case "command" -> {
+                String nombre = comando.keySet().stream().findFirst().orElse("");
+                yield Set.of("aggregate", "count", "distinct", "findAndModify", "find").contains(nombre) ? comando : null;
+            }
+            default -> null;
+        };
+    }
+
+    /**
+     * Junta las etapas de los planes ganadores (en cualquier nivel de la
+     * respuesta de explain, incluidos los $cursor de una agregación).
+     */
+    private static void etapasGanadoras(Object nodo, boolean dentroDelPlan, List<String> etapas) {
+        if (nodo instanceof Document documento) {
+            for (var entrada : documento.entrySet()) {
+                if (entrada.getKey().equals("rejectedPlans")) {
+                    continue;
+                }
+                boolean plan = dentroDelPlan || entrada.getKey().equals("winningPlan");
+                if (plan && entrada.getKey().equals("stage") && entrada.getValue() instanceof String etapa) {
+                    etapas.add(etapa);
+                }
+                etapasGanadoras(entrada.getValue(), plan, etapas);
+            }
+        } else if (nodo instanceof List<?> lista) {
+            lista.forEach(elemento -> etapasGanadoras(elemento, dentroDelPlan, etapas));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.clinica.service;
+
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.BsonDocument;
+import org.example.clinica.model.mongo.CorreoSaliente;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del encolado de correos: qué errores de escritura se toman como
+ * "ya estaba en cola" y cuándo un correo queda disponible para los workers.
+ */
+class CorreosSalientesServiceTest {
+
+    private static final String CLAVE_REPETIDA = "E11000 duplicate key error collection: clinica.correos_salientes "
+            + "index: clave_activa dup key: { clave: \"qr:64b7f0c2a1b2c3d4e5f60718:abc\" }";
+
+    @Test
+    void soloLaClaveDelCorreoCuentaComoRepetida() {
+        assertTrue(CorreosSalientesService.esClaveRepetida(duplicado(11000, CLAVE_REPETIDA)));
+        // Otro índice único de la colección no significa que el correo ya estuviera en cola
+        assertFalse(CorreosSalientesService.esClaveRepetida(duplicado(11000,
+                "E11000 duplicate key error collection: clinica.correos_salientes index: _id_ dup key: { _id: 1 }")));
+        // Sin causa del driver no se puede saber
+        assertFalse(CorreosSalientesService.esClaveRepetida(new DuplicateKeyException(CLAVE_REPETIDA)));
+    }
+
+    @Test
+    void enLotesSoloSeIgnoranLasClavesRepetidas() {
+        assertTrue(CorreosSalientesService.esClaveRepetida(new BulkWriteError(11000, CLAVE_REPETIDA, new BsonDocument(), 0)));
+        assertFalse(CorreosSalientesService.esClaveRepetida(
+                new BulkWriteError(121, "Document failed validation", new BsonDocument(), 1)));
+        assertFalse(CorreosSalientesService.esClaveRepetida(
+                new BulkWriteError(11000, "E11000 duplicate key error index: _id_", new BsonDocument(), 2)));
+    }
+
+    @Test
+    void elQrRetenidoNoQuedaDisponibleEnseguida() {
+        try (MongoClient cliente = MongoClients.create("mongodb://localhost:1")) {
+            MongoTemplateFalso mongoTemplate = new MongoTemplateFalso(cliente);
+            CorreosSalientesService servicio = new CorreosSalientesService(mongoTemplate, null, null, null, null);
+            List<String> emails = List.of("ana@example.com");
+
+            servicio.encolarQrPaciente("64b7f0c2a1b2c3d4e5f60718", emails);
+            assertFalse(mongoTemplate.guardado.getProximoIntento().isAfter(Instant.now()));
+
+            servicio.encolarQrPacienteRetenido("64b7f0c2a1b2c3d4e5f60718", emails);
+            assertTrue(mongoTemplate.guardado.getProximoIntento().isAfter(Instant.now()));
+            assertTrue(mongoTemplate.guardado.getActivo());
+        }
+    }
+
+    private static DuplicateKeyException duplicado(int codigo, String mensaje) {
+        MongoWriteException causa = new MongoWriteException(
+                new WriteError(codigo, mensaje, new BsonDocument()), new ServerAddress(), Set.of());
+        return new DuplicateKeyException(mensaje, causa);
+    }
+
+    /**
+     * MongoTemplate que guarda en memoria el último correo insertado.
+     */
+    private static final class MongoTemplateFalso extends MongoTemplate {
+        private CorreoSaliente guardado;
+
+        private MongoTemplateFalso(MongoClient cliente) {
+            super(cliente, "clinica_test_correos");
+        }
+
+        @Override
+        public <T> T insert(T objeto) {
+            guardado = (CorreoSaliente) objeto;
+            guardado.setId("correo");
+            return objeto;
+        }
+    }
+}
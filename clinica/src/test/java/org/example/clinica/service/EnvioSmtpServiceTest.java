@@ -0,0 +1,244 @@
+package org.example.clinica.service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Pruebas del envío por SMTP con conexiones reutilizadas, contra un
+ * servidor SMTP mínimo que corre en el mismo proceso.
+ */
+class EnvioSmtpServiceTest {
+
+    private ServidorSmtpFalso servidor;
+    private JavaMailSenderImpl mailSender;
+
+    @BeforeEach
+    void preparar() throws IOException {
+        servidor = new ServidorSmtpFalso();
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(servidor.puerto());
+    }
+
+    @AfterEach
+    void cerrar() throws IOException {
+        servidor.cerrar();
+    }
+
+    @Test
+    void unLoteViajaPorUnaSolaConexion() throws Exception {
+        EnvioSmtpService envio = new EnvioSmtpService(mailSender, 2, 0);
+
+        List<Exception> errores = envio.enviar(mensajes(envio, "a@example.com", "b@example.com", "c@example.com"));
+
+        assertEquals(List.of(true, true, true), errores.stream().map(error -> error == null).toList());
+        assertEquals(1, servidor.conexiones.get());
+        assertEquals(3, servidor.mensajes.size());
+        assertEquals(1, envio.conexionesLibres());
+    }
+
+    @Test
+    void losLotesSiguientesReutilizanLaConexionLibre() throws Exception {
+        EnvioSmtpService envio = new EnvioSmtpService(mailSender, 2, 0);
+
+        envio.enviar(mensajes(envio, "a@example.com"));
+        envio.enviar(mensajes(envio, "b@example.com", "c@example.com"));
+
+        assertEquals(1, servidor.conexiones.get());
+        assertEquals(3, servidor.mensajes.size());
+    }
+
+    @Test
+    void unDestinatarioRechazadoNoCortaElLote() throws Exception {
+        servidor.rechazados.add("rebota@example.com");
+        EnvioSmtpService envio = new EnvioSmtpService(mailSender, 1, 0);
+
+        List<Exception> errores = envio.enviar(mensajes(envio, "a@example.com", "rebota@example.com", "b@example.com"));
+
+        assertNull(errores.get(0));
+        assertInstanceOf(SendFailedException.class, errores.get(1));
+        assertNull(errores.get(2));
+        assertEquals(2, servidor.mensajes.size());
+        assertEquals(1, servidor.conexiones.get());
+    }
+
+    @Test
+    void reconectaSiElServidorCortoLaConexion() throws Exception {
+        EnvioSmtpService envio = new EnvioSmtpService(mailSender, 1, 0);
+        envio.enviar(mensajes(envio, "a@example.com"));
+
+        servidor.cortarConexiones();
+        List<Exception> errores = envio.enviar(mensajes(envio, "b@example.com", "c@example.com"));
+
+        assertEquals(List.of(true, true), errores.stream().map(error -> error == null).toList());
+        assertEquals(2, servidor.conexiones.get());
+        assertEquals(3, servidor.mensajes.size());
+    }
+
+    @Test
+    void sinServidorFallaTodoElLote() throws Exception {
+        int puertoCerrado;
+        try (ServerSocket libre = new ServerSocket(0)) {
+            puertoCerrado = libre.getLocalPort();
+        }
+        mailSender.setPort(puertoCerrado);
+        EnvioSmtpService envio = new EnvioSmtpService(mailSender, 1, 0);
+
+        List<Exception> errores = envio.enviar(mensajes(envio, "a@example.com", "b@example.com"));
+
+        assertEquals(2, errores.size());
+        assertNotNull(errores.get(0));
+        assertNotNull(errores.get(1));
+        assertEquals(0, envio.conexionesLibres());
+    }
+
+    @Test
+    void elLimiteAcotaLosEnviosPorMinuto() {
+        EnvioSmtpService envio = new EnvioSmtpService(mailSender, 1, 3);
+
+        assertEquals(3, envio.reservarEnvios(10));
+        assertEquals(0, envio.reservarEnvios(10));
+
+        envio.devolverEnvios(2);
+        assertEquals(2, envio.reservarEnvios(10));
+    }
+
+    @Test
+    void sinLimiteNoAcota() {
+        EnvioSmtpService envio = new EnvioSmtpService(mailSender, 1, 0);
+
+        assertEquals(10, envio.reservarEnvios(10));
+        assertEquals(10, envio.reservarEnvios(10));
+    }
+
+    private static List<MimeMessage> mensajes(EnvioSmtpService envio, String... destinatarios) throws MessagingException {
+        List<MimeMessage> mensajes = new ArrayList<>();
+        for (String destinatario : destinatarios) {
+            MimeMessage mensaje = envio.crearMensaje();
+            mensaje.setFrom(new InternetAddress("clinica@example.com"));
+            mensaje.setRecipients(MimeMessage.RecipientType.TO, destinatario);
+            mensaje.setSubject("Prueba");
+            mensaje.setText("Hola " + destinatario);
+            mensajes.add(mensaje);
+        }
+        return mensajes;
+    }
+
+    /**
+     * Servidor SMTP mínimo (sin TLS ni autenticación): acepta los mensajes,
+     * los guarda en memoria y cuenta las conexiones recibidas. Los
+     * destinatarios de "rechazados" reciben un 550.
+     */
+    private static final class ServidorSmtpFalso {
+        private final ServerSocket socket = new ServerSocket(0);
+        private final AtomicInteger conexiones = new AtomicInteger();
+        private final List<String> mensajes = Collections.synchronizedList(new ArrayList<>());
+        private final Set<String> rechazados = Collections.synchronizedSet(new HashSet<>());
+        private final List<Socket> abiertos = Collections.synchronizedList(new ArrayList<>());
+
+        private ServidorSmtpFalso() throws IOException {
+            Thread aceptador = new Thread(() -> {
+                while (!socket.isClosed()) {
+                    try {
+                        Socket cliente = socket.accept();
+                        conexiones.incrementAndGet();
+                        abiertos.add(cliente);
+                        Thread atencion = new Thread(() -> atender(cliente));
+                        atencion.setDaemon(true);
+                        atencion.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            aceptador.setDaemon(true);
+            aceptador.start();
+        }
+
+        private int puerto() {
+            return socket.getLocalPort();
+        }
+
+        private void atender(Socket cliente) {
+            try (cliente;
+                 BufferedReader entrada = new BufferedReader(
+                         new InputStreamReader(cliente.getInputStream(), StandardCharsets.US_ASCII));
+                 PrintWriter salida = new PrintWriter(cliente.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+                responder(salida, "220 localhost SMTP de prueba");
+                String linea;
+                while ((linea = entrada.readLine()) != null) {
+                    String comando = linea.toUpperCase();
+                    if (comando.startsWith("EHLO") || comando.startsWith("HELO")) {
+                        responder(salida, "250 localhost");
+                    } else if (comando.startsWith("RCPT TO:")) {
+                        String destinatario = linea.substring(linea.indexOf('<') + 1, linea.indexOf('>'));
+                        responder(salida, rechazados.contains(destinatario) ? "550 Destinatario inexistente" : "250 OK");
+                    } else if (comando.equals("DATA")) {
+                        responder(salida, "354 Fin con <CRLF>.<CRLF>");
+                        StringBuilder datos = new StringBuilder();
+                        while ((linea = entrada.readLine()) != null && !linea.equals(".")) {
+                            datos.append(linea).append('\n');
+                        }
+                        mensajes.add(datos.toString());
+                        responder(salida, "250 OK");
+                    } else if (comando.equals("QUIT")) {
+                        responder(salida, "221 Chau");
+                        return;
+                    } else {
+                        // MAIL FROM, RSET, NOOP
+                        responder(salida, "250 OK");
+                    }
+                }
+            } catch (IOException e) {
+                // Conexión cortada por el cliente o por cortarConexiones()
+            }
+        }
+
+        private static void responder(PrintWriter salida, String respuesta) {
+            salida.print(respuesta + "\r\n");
+            salida.flush();
+        }
+
+        /**
+         * Corta las conexiones abiertas, como un servidor que expulsa a los clientes ociosos.
+         */
+        private void cortarConexiones() throws IOException {
+            synchronized (abiertos) {
+                for (Socket abierto : abiertos) {
+                    abierto.close();
+                }
+                abiertos.clear();
+            }
+        }
+
+        private void cerrar() throws IOException {
+            socket.close();
+            cortarConexiones();
+        }
+    }
+}
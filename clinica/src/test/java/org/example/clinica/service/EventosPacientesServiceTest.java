@@ -0,0 +1,216 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.example.clinica.dto.CambioPaciente;
+import org.example.clinica.model.mongo.Paciente;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del reparto de cambios a los suscriptores SSE, usando una fuente
+ * de cambios falsa en lugar del change stream de MongoDB.
+ */
+class EventosPacientesServiceTest {
+
+    private static final BsonDocument TOKEN = new BsonDocument("_data", new BsonString("8263F0A1B2000000012B"));
+
+    private FuenteFalsa fuente;
+    private PacienteCache cache;
+    private EventosPacientesService servicio;
+
+    @BeforeEach
+    void preparar() {
+        fuente = new FuenteFalsa();
+        cache = new PacienteCache(new ObjectMapper(), 1 << 20, Duration.ofMinutes(1));
+        servicio = new EventosPacientesService(fuente, cache);
+        servicio.iniciar();
+    }
+
+    @Test
+    void reparteLosCambiosAlPacienteYAlListado() {
+        EmisorCapturador delPaciente = new EmisorCapturador();
+        EmisorCapturador deOtroPaciente = new EmisorCapturador();
+        EmisorCapturador listado = new EmisorCapturador();
+        servicio.registrarPaciente("p1", delPaciente);
+        servicio.registrarPaciente("p2", deOtroPaciente);
+        servicio.registrarListado(listado);
+
+        fuente.emitir(cambio(CambioPaciente.Tipo.MODIFICACION, "p1", Map.of("nombre", "Ana", "alergias", List.of())));
+        fuente.emitir(cambio(CambioPaciente.Tipo.HISTORIA, "p1", Map.of("descripcion", "Control")));
+
+        assertEquals(2, delPaciente.eventos);
+        assertEquals(0, deOtroPaciente.eventos);
+        // El listado solo recibe la modificación, y no la historia
+        assertEquals(1, listado.eventos);
+    }
+
+    @Test
+    void elListadoIgnoraCambiosFueraDelResumen() {
+        EmisorCapturador listado = new EmisorCapturador();
+        servicio.registrarListado(listado);
+
+        fuente.emitir(cambio(CambioPaciente.Tipo.MODIFICACION, "p1", Map.of("medicacionActual", List.of())));
+        fuente.emitir(cambio(CambioPaciente.Tipo.ALTA, "p2", Map.of("nombre", "Luis")));
+        fuente.emitir(cambio(CambioPaciente.Tipo.BAJA, "p3", Map.of()));
+
+        assertEquals(2, listado.eventos);
+    }
+
+    @Test
+    void descartaLosEmisoresQueFallan() {
+        EmisorCapturador cerrado = new EmisorCapturador();
+        cerrado.fallar = true;
+        EmisorCapturador abierto = new EmisorCapturador();
+        servicio.registrarPaciente("p1", cerrado);
+        servicio.registrarPaciente("p1", abierto);
+        assertEquals(2, servicio.cantidadSuscriptores());
+
+        fuente.emitir(cambio(CambioPaciente.Tipo.BAJA, "p1", Map.of()));
+
+        assertEquals(1, servicio.cantidadSuscriptores());
+        assertEquals(1, abierto.eventos);
+    }
+
+    @Test
+    void unaSolaFuenteParaTodosLosSuscriptores() {
+        servicio.suscribirPaciente("p1");
+        servicio.suscribirPaciente("p2");
+        servicio.suscribirListado();
+
+        assertEquals(1, fuente.inicios);
+        assertNotNull(fuente.destino);
+        assertEquals(3, servicio.cantidadSuscriptores());
+
+        servicio.detener();
+        assertTrue(fuente.detenida);
+    }
+
+    @Test
+    void sinHistoriaDelChangeStreamSeDescartaElTokenYLaCache() {
+        FuenteCambiosMongo fuenteMongo = new FuenteCambiosMongo(null, cache);
+        fuenteMongo.recordarToken(TOKEN);
+        cache.obtener("p1", id -> Optional.of(new Paciente()));
+
+        // ChangeStreamHistoryLost: el oplog ya no tiene el evento del token
+        assertTrue(fuenteMongo.descartarTokenSiNoSirve(errorDelServidor(286, null)));
+
+        assertNull(fuenteMongo.tokenReanudacion());
+        assertTrue(cache.obtenerSiPresente("p1").isEmpty());
+    }
+
+    @Test
+    void conTokenInvalidoOErrorSinEtiquetaTambienSeAbreDesdeAhora() {
+        FuenteCambiosMongo fuenteMongo = new FuenteCambiosMongo(null, cache);
+
+        fuenteMongo.recordarToken(TOKEN);
+        assertTrue(fuenteMongo.descartarTokenSiNoSirve(errorDelServidor(260, "ResumableChangeStreamError")));
+        assertNull(fuenteMongo.tokenReanudacion());
+
+        fuenteMongo.recordarToken(TOKEN);
+        assertTrue(fuenteMongo.descartarTokenSiNoSirve(errorDelServidor(40573, null)));
+        assertNull(fuenteMongo.tokenReanudacion());
+    }
+
+    @Test
+    void losErroresReanudablesConservanElTokenYLaCache() {
+        FuenteCambiosMongo fuenteMongo = new FuenteCambiosMongo(null, cache);
+        fuenteMongo.recordarToken(TOKEN);
+        cache.obtener("p1", id -> Optional.of(new Paciente()));
+
+        assertFalse(fuenteMongo.descartarTokenSiNoSirve(errorDelServidor(11602, "ResumableChangeStreamError")));
+        assertFalse(fuenteMongo.descartarTokenSiNoSirve(
+                new MongoSocketReadException("Conexión cortada", new ServerAddress())));
+
+        assertEquals(TOKEN, fuenteMongo.tokenReanudacion());
+        assertTrue(cache.obtenerSiPresente("p1").isPresent());
+    }
+
+    /**
+     * Error de un comando con el código y, opcionalmente, la etiqueta que envía el servidor.
+     */
+    private static MongoCommandException errorDelServidor(int codigo, String etiqueta) {
+        BsonDocument respuesta = new BsonDocument("ok", new BsonInt32(0))
+                .append("code", new BsonInt32(codigo))
+                .append("errmsg", new BsonString("Error " + codigo));
+        if (etiqueta != null) {
+            respuesta.append("errorLabels", new BsonArray(List.of(new BsonString(etiqueta))));
+        }
+        return new MongoCommandException(respuesta, new ServerAddress());
+    }
+
+    private static CambioPaciente cambio(CambioPaciente.Tipo tipo, String pacienteId, Map<String, Object> campos) {
+        return CambioPaciente.builder()
+                .tipo(tipo)
+                .pacienteId(pacienteId)
+                .campos(campos)
+                .fecha(Instant.now())
+                .build();
+    }
+
+    /**
+     * Fuente que entrega los cambios a mano desde la prueba.
+     */
+    private static final class FuenteFalsa implements FuenteCambiosPacientes {
+
+        private Consumer<CambioPaciente> destino;
+        private int inicios;
+        private boolean detenida;
+
+        @Override
+        public void iniciar(Consumer<CambioPaciente> destino) {
+            this.destino = destino;
+            inicios++;
+        }
+
+        @Override
+        public void detener() {
+            detenida = true;
+        }
+
+        void emitir(CambioPaciente cambio) {
+            destino.accept(cambio);
+        }
+    }
+
+    /**
+     * Emisor que cuenta los eventos enviados o simula una conexión cerrada.
+     */
+    private static final class EmisorCapturador extends SseEmitter {
+
+        private final List<Object> enviados = new ArrayList<>();
+        private int eventos;
+        private boolean fallar;
+
+        @Override
+        public void send(SseEventBuilder evento) throws IOException {
+            if (fallar) {
+                throw new IOException("Conexión cerrada");
+            }
+            enviados.add(evento.build());
+            eventos++;
+        }
+    }
+}
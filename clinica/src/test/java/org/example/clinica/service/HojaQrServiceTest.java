@@ -0,0 +1,177 @@
+package org.example.clinica.service;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import org.example.clinica.model.mongo.Paciente;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de la hoja de etiquetas QR en PDF, sin MongoDB (los pacientes se
+ * pasan directamente).
+ */
+class HojaQrServiceTest {
+
+    private final HojaQrService hojaQrService = new HojaQrService(null, new SyncTaskExecutor());
+
+    @Test
+    void unaPaginaCadaEtiquetasPorPagina() throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+
+        long etiquetas = hojaQrService.escribir(salida, pacientes(30).iterator());
+
+        String pdf = salida.toString(StandardCharsets.ISO_8859_1);
+        assertEquals(30, etiquetas);
+        assertTrue(pdf.startsWith("%PDF-1.4\n"));
+        assertTrue(pdf.endsWith("%%EOF\n"));
+        assertTrue(pdf.contains("/Type /Pages /Count 3 "));
+        verificarXref(pdf);
+    }
+
+    @Test
+    void enParaleloConservaElOrden() throws Exception {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.initialize();
+        List<Paciente> pacientes = pacientes(HojaQrService.ETIQUETAS_POR_TANDA * 2 + 5);
+        ByteArrayOutputStream enParalelo = new ByteArrayOutputStream();
+        ByteArrayOutputStream secuencial = new ByteArrayOutputStream();
+
+        try {
+            new HojaQrService(null, executor).escribir(enParalelo, pacientes.iterator());
+            hojaQrService.escribir(secuencial, pacientes.iterator());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(secuencial.toString(StandardCharsets.ISO_8859_1), enParalelo.toString(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void sinPacientesHayUnaPaginaConAviso() throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+
+        long etiquetas = hojaQrService.escribir(salida, Collections.<Paciente>emptyList().iterator());
+
+        String pdf = salida.toString(StandardCharsets.ISO_8859_1);
+        assertEquals(0, etiquetas);
+        assertTrue(pdf.contains("/Type /Pages /Count 1 "));
+        verificarXref(pdf);
+    }
+
+    @Test
+    void laEtiquetaLlevaLosDatosDelPaciente() {
+        Paciente paciente = pacientes(1).get(0);
+        paciente.setApellido("Pérez (hijo)");
+
+        String etiqueta = HojaQrService.etiqueta(paciente, 0);
+
+        // WinAnsi: é = octal 351; los paréntesis van escapados
+        assertTrue(etiqueta.contains("(P\\351rez \\(hijo\\))"), etiqueta);
+        assertTrue(etiqueta.contains("(Paciente0)"));
+        assertTrue(etiqueta.contains("(DNI 30000000)"));
+        assertTrue(etiqueta.contains("(Centro Norte)"));
+        assertTrue(etiqueta.contains(" re\n"));
+    }
+
+    @Test
+    void elQrDeLaEtiquetaSeLeeConLaUrlDelPaciente() throws Exception {
+        Paciente paciente = pacientes(1).get(0);
+        String etiqueta = HojaQrService.etiqueta(paciente, 3);
+
+        // Se pintan los rectángulos del QR (entre "0 g" y "f") a 4 píxeles por punto
+        int escala = 4;
+        BufferedImage imagen = new BufferedImage(842 * escala / 2, 842 * escala, BufferedImage.TYPE_INT_RGB);
+        Graphics2D grafico = imagen.createGraphics();
+        grafico.setColor(Color.WHITE);
+        grafico.fillRect(0, 0, imagen.getWidth(), imagen.getHeight());
+        grafico.setColor(Color.BLACK);
+        String qr = etiqueta.substring(etiqueta.indexOf("0 g\n") + 4, etiqueta.indexOf("f\n"));
+        for (String operacion : qr.split("\n")) {
+            String[] valores = operacion.split(" ");
+            double x = Double.parseDouble(valores[0]);
+            double y = Double.parseDouble(valores[1]);
+            double ancho = Double.parseDouble(valores[2]);
+            double alto = Double.parseDouble(valores[3]);
+            // En PDF el eje y crece hacia arriba
+            grafico.fill(new Rectangle2D.Double(x * escala, (842 - y - alto) * escala, ancho * escala, alto * escala));
+        }
+        grafico.dispose();
+
+        String leido = new QRCodeReader().decode(
+                new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(imagen)))).getText();
+        assertEquals(QrService.construirUrlPaciente(paciente.getId()), leido);
+    }
+
+    @Test
+    void recortaLosTextosQueNoEntran() {
+        assertEquals("Gómez", HojaQrService.ajustar("Gómez", 12, 150));
+
+        String recortado = HojaQrService.ajustar("Fernández de la Santísima Trinidad", 12, 150);
+        assertTrue(recortado.endsWith("…"));
+        assertTrue(recortado.length() < 30);
+        assertTrue("Fernández de la Santísima Trinidad".startsWith(recortado.substring(0, recortado.length() - 1)));
+    }
+
+    @Test
+    void validaLosIds() {
+        assertEquals(List.of(), HojaQrService.validarIds(null));
+        assertEquals(List.of("64b7f0c2a1b2c3d4e5f60718", "64b7f0c2a1b2c3d4e5f60719"),
+                HojaQrService.validarIds(Arrays.asList(" 64b7f0c2a1b2c3d4e5f60718", "", null,
+                        "64b7f0c2a1b2c3d4e5f60719", "64b7f0c2a1b2c3d4e5f60718")));
+        assertThrows(IllegalArgumentException.class,
+                () -> HojaQrService.validarIds(List.of("64b7f0c2a1b2c3d4e5f60718", "abc")));
+
+        List<String> demasiados = new ArrayList<>();
+        for (int i = 0; i <= HojaQrService.MAXIMO_IDS; i++) {
+            demasiados.add(String.format("%024x", i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> HojaQrService.validarIds(demasiados));
+    }
+
+    /**
+     * Cada entrada de la tabla xref debe apuntar al inicio de su objeto.
+     */
+    private static void verificarXref(String pdf) {
+        int inicioXref = Integer.parseInt(pdf.substring(pdf.lastIndexOf("startxref\n") + 10, pdf.lastIndexOf("\n%%EOF")));
+        String[] lineas = pdf.substring(inicioXref).split("\n");
+        assertEquals("xref", lineas[0]);
+        int objetos = Integer.parseInt(lineas[1].split(" ")[1]);
+        for (int objeto = 1; objeto < objetos; objeto++) {
+            int posicion = Integer.parseInt(lineas[2 + objeto].substring(0, 10));
+            assertTrue(pdf.startsWith(objeto + " 0 obj\n", posicion), "Objeto " + objeto);
+        }
+    }
+
+    private static List<Paciente> pacientes(int cantidad) {
+        List<Paciente> pacientes = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            Paciente paciente = new Paciente();
+            paciente.setId(String.format("64b7f0c2a1b2%012x", i));
+            paciente.setNombre("Paciente" + i);
+            paciente.setApellido("Gómez");
+            paciente.setDocumento(String.valueOf(30_000_000 + i));
+            paciente.setInstitucion("Centro Norte");
+            pacientes.add(paciente);
+        }
+        return pacientes;
+    }
+}
@@ -0,0 +1,213 @@
+package org.example.clinica.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.example.clinica.exception.ParcheConflictoException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de la traducción de JSON Patch y JSON Merge Patch a operaciones de
+ * MongoDB, sin escribir: se revisan la actualización y las condiciones que
+ * arma el servicio. La única lectura (la lista actual, para los "remove")
+ * sale de un MongoTemplate falso.
+ */
+class ParchePacienteServiceTest {
+
+    private static final String ID = "64b7f0c2a1b2c3d4e5f60718";
+
+    private static final Document A = medicacion("Enalapril");
+    private static final Document B = medicacion("Losartán");
+    private static final Document C = medicacion("Furosemida");
+
+    // Cliente sin servidor: el MongoTemplate solo se usa por su conversor
+    private static MongoClient cliente;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private MongoTemplateFalso mongoTemplate;
+    private ParchePacienteService parchePacienteService;
+
+    @BeforeAll
+    static void crearCliente() {
+        cliente = MongoClients.create("mongodb://localhost:1");
+    }
+
+    @AfterAll
+    static void cerrarCliente() {
+        cliente.close();
+    }
+
+    @BeforeEach
+    void preparar() {
+        mongoTemplate = new MongoTemplateFalso(cliente);
+        mongoTemplate.guardado = new Document("_id", ID).append("medicacionActual", List.of(A, B, C, A));
+        parchePacienteService = new ParchePacienteService(mongoTemplate, objectMapper, null, null, null);
+    }
+
+    @Test
+    void losRemoveSeAplicanEnOrdenYPorPosicion() throws Exception {
+        // RFC 6902: el segundo remove ve la lista sin el primero, así que quita la C original
+        ParchePacienteService.Compilacion compilacion = parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "remove", "path": "/medicacionActual/0"},
+                 {"op": "remove", "path": "/medicacionActual/1"}]"""));
+
+        // La A repetida al final se conserva: se quita por posición, no por valor
+        assertEquals(List.of(B, A), sets(compilacion).get("medicacionActual"));
+        assertEquals(1, mongoTemplate.lecturas);
+        assertTrue(condiciones(compilacion).contains(
+                new Document("medicacionActual", List.of(A, B, C, A))));
+    }
+
+    @Test
+    void unRemoveRepetidoQuitaDosElementos() throws Exception {
+        ParchePacienteService.Compilacion compilacion = parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "remove", "path": "/medicacionActual/0"},
+                 {"op": "remove", "path": "/medicacionActual/0"}]"""));
+
+        assertEquals(List.of(C, A), sets(compilacion).get("medicacionActual"));
+    }
+
+    @Test
+    void quitarFueraDeLaListaEsConflicto() {
+        assertThrows(ParcheConflictoException.class, () -> parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "remove", "path": "/medicacionActual/3"},
+                 {"op": "remove", "path": "/medicacionActual/3"}]""")));
+
+        mongoTemplate.guardado = new Document("_id", ID);
+        assertThrows(ParcheConflictoException.class, () -> parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "remove", "path": "/medicacionActual/0"}]""")));
+    }
+
+    @Test
+    void quitarYAgregarEnLaMismaListaSeRechaza() {
+        assertThrows(IllegalArgumentException.class, () -> parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "remove", "path": "/medicacionActual/0"},
+                 {"op": "add", "path": "/medicacionActual/-", "value": {"nombre": "Enalapril"}}]""")));
+    }
+
+    @Test
+    void variosAddAlFinalSeCombinanEnUnPush() throws Exception {
+        ParchePacienteService.Compilacion compilacion = parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "add", "path": "/medicacionActual/-", "value": {"nombre": "Enalapril", "dosis": "10 mg"}},
+                 {"op": "add", "path": "/medicacionActual/-", "value": {"nombre": "Losartán", "dosis": "10 mg"}}]"""));
+
+        Document push = (Document) actualizacion(compilacion).get("$push");
+        List<?> elementos = (List<?>) ((Document) push.get("medicacionActual")).get("$each");
+        assertEquals(2, elementos.size());
+        assertEquals(0, mongoTemplate.lecturas);
+    }
+
+    @Test
+    void agregarEnUnaPosicionExigeQueLaAnteriorExista() throws Exception {
+        ParchePacienteService.Compilacion compilacion = parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "add", "path": "/medicacionActual/2", "value": {"nombre": "Enalapril"}}]"""));
+
+        Document push = (Document) actualizacion(compilacion).get("$push");
+        assertEquals(2, ((Document) push.get("medicacionActual")).get("$position"));
+        assertTrue(condiciones(compilacion).contains(
+                new Document("medicacionActual.1", new Document("$exists", true))));
+    }
+
+    @Test
+    void replaceExigeLaRutaYMantieneLaClaveDeBusqueda() throws Exception {
+        ParchePacienteService.Compilacion compilacion = parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "test", "path": "/medicacionActual/1/dosis", "value": "5 mg"},
+                 {"op": "replace", "path": "/medicacionActual/1/dosis", "value": "10 mg"},
+                 {"op": "replace", "path": "/apellido", "value": "Pérez"}]"""));
+
+        Document sets = sets(compilacion);
+        assertEquals("10 mg", sets.get("medicacionActual.1.dosis"));
+        assertEquals("Pérez", sets.get("apellido"));
+        assertEquals("perez", sets.get("apellidoNormalizado"));
+        List<Document> condiciones = condiciones(compilacion);
+        assertTrue(condiciones.contains(new Document("medicacionActual.1.dosis", "5 mg")));
+        assertTrue(condiciones.contains(new Document("apellido", new Document("$exists", true))));
+    }
+
+    @Test
+    void mergePatchFusionaObjetosYQuitaLosNull() throws Exception {
+        ParchePacienteService.Compilacion compilacion = parchePacienteService.compilarMergePatch(json("""
+                {"nombre": "José", "obraSocial": null, "parametrosDialisis": {"flujo": "300"}}"""));
+
+        Document update = compilacion.construir().getUpdateObject();
+        Document sets = (Document) update.get("$set");
+        assertEquals("José", sets.get("nombre"));
+        assertEquals("jose", sets.get("nombreNormalizado"));
+        assertEquals("300", sets.get("parametrosDialisis.flujo"));
+        assertTrue(((Document) update.get("$unset")).containsKey("obraSocial"));
+        assertTrue(compilacion.condiciones().isEmpty());
+    }
+
+    @Test
+    void rechazaRutasYOperacionesInvalidas() {
+        assertThrows(IllegalArgumentException.class, () -> parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "replace", "path": "/version", "value": 3}]""")));
+        assertThrows(IllegalArgumentException.class, () -> parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "replace", "path": "/noExiste", "value": 3}]""")));
+        assertThrows(IllegalArgumentException.class, () -> parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "move", "from": "/nombre", "path": "/apellido"}]""")));
+        assertThrows(IllegalArgumentException.class, () -> parchePacienteService.compilarJsonPatch(ID, json("""
+                [{"op": "remove", "path": "/medicacionActual/01"}]""")));
+        assertThrows(IllegalArgumentException.class, () -> parchePacienteService.compilarMergePatch(json("""
+                {"medicacionActual": "Enalapril"}""")));
+    }
+
+    private JsonNode json(String texto) throws Exception {
+        return objectMapper.readTree(texto);
+    }
+
+    /**
+     * Actualización tal como se envía a MongoDB (con los modificadores de $push ya traducidos).
+     */
+    private Document actualizacion(ParchePacienteService.Compilacion compilacion) {
+        return new UpdateMapper(mongoTemplate.getConverter())
+                .getMappedObject(compilacion.construir().getUpdateObject(), (MongoPersistentEntity<?>) null);
+    }
+
+    private static Document sets(ParchePacienteService.Compilacion compilacion) {
+        return (Document) compilacion.construir().getUpdateObject().get("$set");
+    }
+
+    private static List<Document> condiciones(ParchePacienteService.Compilacion compilacion) {
+        return compilacion.condiciones().stream().map(Criteria::getCriteriaObject).toList();
+    }
+
+    private static Document medicacion(String nombre) {
+        return new Document("nombre", nombre).append("dosis", "5 mg");
+    }
+
+    /**
+     * MongoTemplate que responde las lecturas con un documento fijo y cuenta las consultas.
+     */
+    private static final class MongoTemplateFalso extends MongoTemplate {
+        private Document guardado;
+        private int lecturas;
+
+        private MongoTemplateFalso(MongoClient cliente) {
+            super(cliente, "clinica_test_parches");
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T findOne(Query query, Class<T> entityClass, String collectionName) {
+            lecturas++;
+            return (T) guardado;
+        }
+    }
+}
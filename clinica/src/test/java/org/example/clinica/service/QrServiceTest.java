@@ -0,0 +1,108 @@
+package org.example.clinica.service;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de la generación de imágenes de QR y su caché.
+ */
+class QrServiceTest {
+
+    private static final String URL = QrService.construirUrlPaciente("64b7f0c2a1b2c3d4e5f60718");
+
+    private final QrService qrService = new QrService(1 << 20);
+
+    @Test
+    void elPngSeLeeConLaUrlDelPaciente() throws Exception {
+        byte[] png = qrService.imagenQr(URL, 300, QrService.Formato.PNG);
+
+        BufferedImage imagen = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(300, imagen.getWidth());
+        assertEquals(300, imagen.getHeight());
+        String leido = new QRCodeReader().decode(
+                new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(imagen)))).getText();
+        assertEquals(URL, leido);
+    }
+
+    @Test
+    void elPngTieneLosMismosPixelesQueElDeZxing() throws Exception {
+        Map<EncodeHintType, Object> hints = Map.of(
+                EncodeHintType.CHARACTER_SET, "UTF-8",
+                EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H,
+                EncodeHintType.MARGIN, 1);
+        // Tamaños con escala exacta, con relleno impar y menores que el código
+        for (int tamanio : new int[]{200, 203, 64, 1024, 10}) {
+            BufferedImage esperada = MatrixToImageWriter.toBufferedImage(
+                    new QRCodeWriter().encode(URL, BarcodeFormat.QR_CODE, tamanio, tamanio, hints));
+            BufferedImage generada = ImageIO.read(new ByteArrayInputStream(RenderizadorQr.png(URL, tamanio)));
+
+            assertEquals(esperada.getWidth(), generada.getWidth());
+            assertEquals(esperada.getHeight(), generada.getHeight());
+            for (int y = 0; y < esperada.getHeight(); y++) {
+                for (int x = 0; x < esperada.getWidth(); x++) {
+                    assertEquals(esperada.getRGB(x, y), generada.getRGB(x, y),
+                            "Píxel (" + x + ", " + y + ") con tamaño " + tamanio);
+                }
+            }
+        }
+    }
+
+    @Test
+    void laSegundaVezSaleDeLaCache() {
+        byte[] primera = qrService.imagenQr(URL, 200, QrService.Formato.PNG);
+        byte[] segunda = qrService.imagenQr(URL, 200, QrService.Formato.PNG);
+
+        assertSame(primera, segunda);
+        assertSame(primera, qrService.generateQrCodeImage(URL));
+    }
+
+    @Test
+    void elSvgTieneElTamanioPedido() {
+        String svg = new String(qrService.imagenQr(URL, 512, QrService.Formato.SVG), StandardCharsets.UTF_8);
+
+        assertTrue(svg.startsWith("<svg"));
+        assertTrue(svg.contains("width=\"512\" height=\"512\""));
+        assertTrue(svg.contains("<path"));
+    }
+
+    @Test
+    void elEtagDependeDelContenidoTamanioYFormato() {
+        String etag = qrService.etagQr(URL, 200, QrService.Formato.PNG);
+
+        assertEquals(etag, qrService.etagQr(URL, 200, QrService.Formato.PNG));
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        assertNotEquals(etag, qrService.etagQr(URL, 300, QrService.Formato.PNG));
+        assertNotEquals(etag, qrService.etagQr(URL, 200, QrService.Formato.SVG));
+        assertNotEquals(etag, qrService.etagQr(URL + "x", 200, QrService.Formato.PNG));
+    }
+
+    @Test
+    void validaTamanioYFormato() {
+        assertEquals(200, QrService.validarTamanio(null));
+        assertEquals(QrService.TAMANIO_MAXIMO, QrService.validarTamanio(QrService.TAMANIO_MAXIMO));
+        assertThrows(IllegalArgumentException.class, () -> QrService.validarTamanio(QrService.TAMANIO_MINIMO - 1));
+        assertThrows(IllegalArgumentException.class, () -> QrService.validarTamanio(QrService.TAMANIO_MAXIMO + 1));
+        assertEquals(QrService.Formato.SVG, QrService.Formato.desdeExtension("SVG"));
+        assertThrows(IllegalArgumentException.class, () -> QrService.Formato.desdeExtension("gif"));
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.clinica.service;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compara el rendimiento de la generación de imágenes de QR:
+ * - Flujo anterior: QRCodeWriter + MatrixToImageWriter (BufferedImage e ImageIO)
+ *   para el PNG, y StringBuilder sobre la BitMatrix para el SVG.
+ * - Flujo actual (RenderizadorQr): PNG de 1 bit y SVG escritos directo desde
+ *   la matriz de módulos, con compresor y buffers reutilizados.
+ *
+ * Mide imágenes por segundo y bytes reservados en el heap por imagen (los
+ * del hilo que genera, según ThreadMXBean). No pasa por la caché de QrService.
+ * Solo corre si se pide explícitamente:
+ *
+ *   mvn test -Dtest=RenderizadoQrBenchmarkTest -Dbenchmark.qr=true
+ *
+ * Opcional: -Dbenchmark.qr.imagenes=5000 (imágenes medidas por flujo y formato).
+ */
+@EnabledIfSystemProperty(named = "benchmark.qr", matches = "true")
+class RenderizadoQrBenchmarkTest {
+
+    private static final int CALENTAMIENTO = 2000;
+    private static final int TAMANIO = 200;
+
+    private static final com.sun.management.ThreadMXBean HILOS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Generación de una imagen a partir del número de paciente.
+     */
+    private interface Generador {
+        byte[] generar(String contenido) throws Exception;
+    }
+
+    /**
+     * Resultado de una medición.
+     */
+    private record Medicion(double imagenesPorSegundo, double bytesPorImagen) {
+    }
+
+    @Test
+    void elPngDirectoSuperaAImageIo() {
+        comparar("PNG", RenderizadoQrBenchmarkTest::pngAnterior,
+                contenido -> RenderizadorQr.png(contenido, TAMANIO));
+    }
+
+    @Test
+    void elSvgDirectoSuperaAlStringBuilder() {
+        comparar("SVG", RenderizadoQrBenchmarkTest::svgAnterior,
+                contenido -> RenderizadorQr.svg(contenido, TAMANIO));
+    }
+
+    private static void comparar(String formato, Generador anterior, Generador actual) {
+        int imagenes = Integer.getInteger("benchmark.qr.imagenes", 3000);
+
+        // Calentamiento de ambos caminos (JIT)
+        medir(CALENTAMIENTO, anterior);
+        medir(CALENTAMIENTO, actual);
+
+        Medicion antes = medir(imagenes, anterior);
+        Medicion ahora = medir(imagenes, actual);
+
+        System.out.printf("%s anterior: %,.0f imágenes/s, %,.0f bytes reservados por imagen%n",
+                formato, antes.imagenesPorSegundo(), antes.bytesPorImagen());
+        System.out.printf("%s directo:  %,.0f imágenes/s, %,.0f bytes reservados por imagen%n",
+                formato, ahora.imagenesPorSegundo(), ahora.bytesPorImagen());
+        System.out.printf("Mejora: x%.2f en velocidad, x%.2f menos memoria%n",
+                ahora.imagenesPorSegundo() / antes.imagenesPorSegundo(),
+                antes.bytesPorImagen() / ahora.bytesPorImagen());
+
+        assertTrue(ahora.bytesPorImagen() < antes.bytesPorImagen());
+    }
+
+    /**
+     * Genera la cantidad indicada de imágenes, cada una con un contenido distinto.
+     */
+    private static Medicion medir(int cantidad, Generador generador) {
+        long hilo = Thread.currentThread().getId();
+        long reservadosAntes = HILOS.getThreadAllocatedBytes(hilo);
+        long inicio = System.nanoTime();
+        long tamanioTotal = 0;
+        try {
+            for (int i = 0; i < cantidad; i++) {
+                tamanioTotal += generador.generar(QrService.construirUrlPaciente(String.format("%024x", i))).length;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        long transcurrido = System.nanoTime() - inicio;
+        long reservados = HILOS.getThreadAllocatedBytes(hilo) - reservadosAntes;
+        assertTrue(tamanioTotal > 0);
+        return new Medicion(cantidad / (transcurrido / 1_000_000_000.0), (double) reservados / cantidad);
+    }
+
+    /**
+     * PNG del flujo anterior de QrService, reproducido tal como era.
+     */
+    private static byte[] pngAnterior(String contenido) throws Exception {
+        ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(codificarAnterior(contenido, TAMANIO, TAMANIO), "PNG", pngOutputStream);
+        return pngOutputStream.toByteArray();
+    }
+
+    /**
+     * SVG del flujo anterior de QrService, reproducido tal como era.
+     */
+    private static byte[] svgAnterior(String contenido) throws Exception {
+        BitMatrix modulos = codificarAnterior(contenido, 0, 0);
+        int ancho = modulos.getWidth();
+        int alto = modulos.getHeight();
+        StringBuilder svg = new StringBuilder(ancho * alto * 2)
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(TAMANIO)
+                .append("\" height=\"").append(TAMANIO)
+                .append("\" viewBox=\"0 0 ").append(ancho).append(' ').append(alto)
+                .append("\" shape-rendering=\"crispEdges\">")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/><path fill=\"#000\" d=\"");
+        for (int y = 0; y < alto; y++) {
+            int x = 0;
+            while (x < ancho) {
+                if (!modulos.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int inicio = x;
+                while (x < ancho && modulos.get(x, y)) {
+                    x++;
+                }
+                svg.append('M').append(inicio).append(' ').append(y)
+                        .append('h').append(x - inicio).append("v1h-").append(x - inicio).append('z');
+            }
+        }
+        svg.append("\"/></svg>");
+        return svg.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static BitMatrix codificarAnterior(String contenido, int ancho, int alto) throws Exception {
+        Map<EncodeHintType, Object> hints = new HashMap<>();
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+        hints.put(EncodeHintType.MARGIN, 1);
+        return new QRCodeWriter().encode(contenido, BarcodeFormat.QR_CODE, ancho, alto, hints);
+    }
+}
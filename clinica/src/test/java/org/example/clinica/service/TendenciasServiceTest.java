@@ -0,0 +1,74 @@
+package org.example.clinica.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.example.clinica.dto.PuntoTendencia;
+import org.example.clinica.util.ValoresClinicos;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pruebas de la lectura de la dosis de heparina, que se carga como texto.
+ * El cálculo en el pipeline necesita un MongoDB real, así que esa prueba
+ * solo corre si se indica la URI:
+ *
+ *   mvn test -Dtest=TendenciasServiceTest -Dtest.mongo.uri=mongodb://localhost:27017
+ */
+class TendenciasServiceTest {
+
+    private static final String BASE_TEMPORAL = "clinica_test_tendencias";
+
+    private static final List<String> HEPARINAS = List.of("2.500", "5000 UI", "2,5");
+
+    @Test
+    void elPuntoSeguidoDeTresDigitosEsDeMiles() {
+        assertEquals(2500.0, ValoresClinicos.parsearNumero("2.500"));
+        assertEquals(5000.0, ValoresClinicos.parsearNumero("5000 UI"));
+        assertEquals(2.5, ValoresClinicos.parsearNumero("2,5"));
+        assertEquals(1250000.0, ValoresClinicos.parsearNumero("1.250.000"));
+        assertEquals(1234.5, ValoresClinicos.parsearNumero("1.234,5"));
+        assertEquals(70.5, ValoresClinicos.parsearNumero("70.5 kg"));
+        assertEquals(2.25, ValoresClinicos.parsearNumero("2.25"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "test.mongo.uri", matches = ".+")
+    void elPromedioDeHeparinaLeeLosMilesIgualQueElServidor() {
+        LocalDate hoy = LocalDate.now(ZoneOffset.UTC);
+        try (MongoClient cliente = MongoClients.create(System.getProperty("test.mongo.uri"))) {
+            MongoTemplate mongoTemplate = new MongoTemplate(cliente, BASE_TEMPORAL);
+            mongoTemplate.getDb().drop();
+            try {
+                for (int i = 0; i < HEPARINAS.size(); i++) {
+                    mongoTemplate.insert(new Document("pacienteId", "paciente" + i)
+                            .append("fecha", Date.from(hoy.atStartOfDay(ZoneOffset.UTC).toInstant()))
+                            .append("heparina", HEPARINAS.get(i)), "historia_clinica");
+                }
+                // Sin número en el texto no cuenta para el promedio
+                mongoTemplate.insert(new Document("pacienteId", "paciente3")
+                        .append("fecha", Date.from(hoy.atStartOfDay(ZoneOffset.UTC).toInstant()))
+                        .append("heparina", "sin heparina"), "historia_clinica");
+
+                TendenciasService tendenciasService = new TendenciasService(mongoTemplate, null, 10, Duration.ofMinutes(1));
+                List<PuntoTendencia> puntos = tendenciasService
+                        .deLaUnidad(TendenciasService.MES, hoy.toString(), hoy.toString()).getPuntos();
+
+                assertEquals(1, puntos.size());
+                double esperado = HEPARINAS.stream().mapToDouble(ValoresClinicos::parsearNumero).average().orElseThrow();
+                assertEquals(Math.round(esperado * 100) / 100.0, puntos.get(0).getHeparinaPromedio());
+            } finally {
+                mongoTemplate.getDb().drop();
+            }
+        }
+    }
+}